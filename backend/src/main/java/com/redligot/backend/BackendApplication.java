@@ -1,8 +1,11 @@
 package com.redligot.backend;
 
+import com.redligot.backend.config.ThreadingConfig;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.event.ApplicationEnvironmentPreparedEvent;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ApplicationListener;
 
 /**
  * Spring Boot entry point for the Photo Upload CRUD backend.
@@ -21,7 +24,10 @@ public class BackendApplication {
 	 * @param args command-line arguments
 	 */
 	public static void main(String[] args) {
-		SpringApplication.run(BackendApplication.class, args);
+		SpringApplication application = new SpringApplication(BackendApplication.class);
+		application.addListeners((ApplicationListener<ApplicationEnvironmentPreparedEvent>) event ->
+				ThreadingConfig.reserveCarrierThreads(event.getEnvironment()));
+		application.run(args);
 	}
 
 }
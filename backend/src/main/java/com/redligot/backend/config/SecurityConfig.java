@@ -53,6 +53,8 @@ public class SecurityConfig {
 				.requestMatchers("/api/auth/signup").permitAll()
 				.requestMatchers("/api/health").permitAll()
 				.requestMatchers("/actuator/**").permitAll()
+				// Signed image URLs, already verified by SignedImageFilter
+				.requestMatchers("/img/**").permitAll()
 				// Swagger UI and OpenAPI documentation
 				.requestMatchers("/swagger-ui/**").permitAll()
 				.requestMatchers("/swagger-ui.html").permitAll()
@@ -70,9 +72,11 @@ public class SecurityConfig {
 	public CorsConfigurationSource securityCorsConfigurationSource() {
         CorsConfiguration configuration = new CorsConfiguration();
         configuration.setAllowedOriginPatterns(Arrays.asList("*"));
-        configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "PATCH", "DELETE", "OPTIONS"));
-        configuration.setAllowedHeaders(Arrays.asList("authorization", "content-type", "x-auth-token"));
-        configuration.setExposedHeaders(Arrays.asList("x-auth-token"));
+        configuration.setAllowedMethods(Arrays.asList("GET", "HEAD", "POST", "PUT", "PATCH", "DELETE", "OPTIONS"));
+        configuration.setAllowedHeaders(Arrays.asList("authorization", "content-type", "x-auth-token", "upload-offset", "upload-length",
+                "idempotency-key"));
+        configuration.setExposedHeaders(Arrays.asList("x-auth-token", "upload-offset", "upload-length", "location",
+                "idempotent-replayed"));
         configuration.setAllowCredentials(true);
         
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
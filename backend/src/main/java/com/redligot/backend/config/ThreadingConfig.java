@@ -0,0 +1,92 @@
+package com.redligot.backend.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Execution model configuration.
+ *
+ * <p>With <code>spring.threads.virtual.enabled=true</code> Spring Boot runs Tomcat
+ * request handling, the <code>applicationTaskExecutor</code> used by
+ * <code>@Async</code> and <code>@Scheduled</code> tasks on virtual threads.
+ * Application code must not block inside <code>synchronized</code>; use
+ * {@link java.util.concurrent.locks.ReentrantLock} instead so the carrier thread is released while waiting.</p>
+ */
+@Configuration
+@EnableAsync
+@EnableScheduling
+public class ThreadingConfig {
+
+	private static final Logger logger = LoggerFactory.getLogger(ThreadingConfig.class);
+
+	private static final String PARALLELISM_PROPERTY = "jdk.virtualThreadScheduler.parallelism";
+
+	@Bean(initMethod = "start", destroyMethod = "close")
+	@ConditionalOnProperty(name = "app.threads.pinning-monitor.enabled", havingValue = "true")
+	public VirtualThreadPinningMonitor virtualThreadPinningMonitor(
+			@Value("${app.threads.pinning-monitor.threshold-ms:20}") long thresholdMs) {
+		return new VirtualThreadPinningMonitor(Duration.ofMillis(thresholdMs));
+	}
+
+	/**
+	 * Give the virtual-thread scheduler at least one carrier more than the JDBC pool has
+	 * connections (see {@link #carrierPoolGuard}), unless the carrier count is set
+	 * explicitly. The scheduler reads it when the first virtual thread starts, so this
+	 * runs from {@code main} once the environment is prepared, before Tomcat starts.
+	 *
+	 * @param environment Application environment
+	 */
+	public static void reserveCarrierThreads(Environment environment) {
+		if (!environment.getProperty("spring.threads.virtual.enabled", Boolean.class, false)
+				|| System.getProperty(PARALLELISM_PROPERTY) != null) {
+			return;
+		}
+		int poolSize = environment.getProperty("spring.datasource.hikari.maximum-pool-size", Integer.class, 10);
+		int processors = Runtime.getRuntime().availableProcessors();
+		if (poolSize >= processors) {
+			System.setProperty(PARALLELISM_PROPERTY, String.valueOf(poolSize + 1));
+			logger.info("Raised virtual thread carriers from {} to {} for a JDBC pool of {}",
+					processors, poolSize + 1, poolSize);
+		}
+	}
+
+	/**
+	 * The DB2 driver holds monitors while it performs socket I/O, so every checked-out
+	 * connection can pin one carrier thread. The pool must be strictly smaller than the
+	 * carrier pool so request threads that are not talking to DB2 always have a carrier;
+	 * startup fails otherwise rather than shrinking a configured pool, which the request
+	 * bulkhead sizes its limits from.
+	 */
+	@Bean
+	@ConditionalOnThreading(Threading.VIRTUAL)
+	public ApplicationRunner carrierPoolGuard(DataSource dataSource) {
+		return args -> {
+			int parallelism = Integer.getInteger(PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors());
+			if (!dataSource.isWrapperFor(HikariDataSource.class)) {
+				logger.info("Virtual threads enabled with {} carrier threads", parallelism);
+				return;
+			}
+			int poolSize = dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize();
+			if (poolSize >= parallelism) {
+				throw new IllegalStateException("Hikari pool size " + poolSize + " would let JDBC calls pin all "
+						+ parallelism + " virtual thread carriers; set -D" + PARALLELISM_PROPERTY
+						+ " above the pool size or lower spring.datasource.hikari.maximum-pool-size");
+			}
+			logger.info("Virtual threads enabled with {} carrier threads, JDBC pool size {}", parallelism, poolSize);
+		};
+	}
+}
@@ -0,0 +1,100 @@
+package com.redligot.backend.config;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Detects virtual threads that block while pinned to their carrier thread.
+ *
+ * <p>Listens to the JFR <code>jdk.VirtualThreadPinned</code> event, which the JDK
+ * emits when a virtual thread parks inside a <code>synchronized</code> block or a
+ * native frame for longer than the configured threshold. The DB2 JCC driver
+ * synchronizes around socket I/O, so pinning there is expected; pinning in our own
+ * code is a bug and should use {@link java.util.concurrent.locks.ReentrantLock}.</p>
+ */
+public class VirtualThreadPinningMonitor implements AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+
+	private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+	private static final int MAX_RECORDED_SITES = 100;
+
+	private final RecordingStream stream;
+	private final AtomicLong pinnedCount = new AtomicLong();
+	private final ConcurrentLinkedDeque<String> pinnedSites = new ConcurrentLinkedDeque<>();
+
+	public VirtualThreadPinningMonitor(Duration threshold) {
+		this.stream = new RecordingStream();
+		this.stream.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+		this.stream.onEvent(PINNED_EVENT, this::onPinned);
+	}
+
+	/**
+	 * Start consuming events in the background.
+	 */
+	public void start() {
+		stream.startAsync();
+		logger.info("Virtual thread pinning monitor started");
+	}
+
+	/**
+	 * Stop the recording and process any events that are still buffered.
+	 */
+	public void stop() {
+		stream.stop();
+	}
+
+	@Override
+	public void close() {
+		stream.close();
+	}
+
+	/**
+	 * @return number of pinned events observed since start
+	 */
+	public long getPinnedCount() {
+		return pinnedCount.get();
+	}
+
+	/**
+	 * @return the most recent pinning sites (top stack frame), newest last
+	 */
+	public List<String> getPinnedSites() {
+		return new ArrayList<>(pinnedSites);
+	}
+
+	private void onPinned(RecordedEvent event) {
+		pinnedCount.incrementAndGet();
+		String site = describeSite(event.getStackTrace());
+		pinnedSites.addLast(site);
+		while (pinnedSites.size() > MAX_RECORDED_SITES) {
+			pinnedSites.pollFirst();
+		}
+		logger.warn("Virtual thread pinned for {} ms at {}", event.getDuration().toMillis(), site);
+	}
+
+	private static String describeSite(RecordedStackTrace stackTrace) {
+		if (stackTrace == null || stackTrace.getFrames().isEmpty()) {
+			return "<unknown>";
+		}
+		// Skip JDK parking frames so the reported site is the caller that held the monitor
+		for (RecordedFrame frame : stackTrace.getFrames()) {
+			String type = frame.getMethod().getType().getName();
+			if (!type.startsWith("java.") && !type.startsWith("jdk.") && !type.startsWith("sun.")) {
+				return type + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+			}
+		}
+		RecordedFrame top = stackTrace.getFrames().get(0);
+		return top.getMethod().getType().getName() + "." + top.getMethod().getName();
+	}
+}
@@ -1,5 +1,13 @@
 package com.redligot.backend.config;
 
+import com.redligot.backend.security.ImageUrlSigner;
+import com.redligot.backend.web.BulkheadFilter;
+import com.redligot.backend.web.RequestBulkhead;
+import com.redligot.backend.web.SignedImageFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.web.config.EnableSpringDataWebSupport;
 
@@ -11,4 +19,34 @@ import org.springframework.data.web.config.EnableSpringDataWebSupport;
 @EnableSpringDataWebSupport
 public class WebConfig {
     // Spring Boot auto-configuration will handle multipart support
+
+    /**
+     * Request bulkheads run before the Spring Security filter chain so that
+     * rejected requests do not spend a database connection on authentication.
+     */
+    @Bean
+    public FilterRegistrationBean<BulkheadFilter> bulkheadFilter(
+            RequestBulkhead bulkhead,
+            @Value("${app.bulkhead.enabled:true}") boolean enabled,
+            @Value("${app.bulkhead.retry-after-seconds:2}") int retryAfterSeconds) {
+        FilterRegistrationBean<BulkheadFilter> registration =
+                new FilterRegistrationBean<>(new BulkheadFilter(bulkhead, retryAfterSeconds));
+        registration.addUrlPatterns("/api/*", "/img/*");
+        registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER - 10);
+        registration.setEnabled(enabled);
+        return registration;
+    }
+
+    /**
+     * Signed image URLs are checked first, so forged or expired links are turned
+     * away before they take a bulkhead permit or reach Spring Security.
+     */
+    @Bean
+    public FilterRegistrationBean<SignedImageFilter> signedImageFilter(ImageUrlSigner signer) {
+        FilterRegistrationBean<SignedImageFilter> registration =
+                new FilterRegistrationBean<>(new SignedImageFilter(signer));
+        registration.addUrlPatterns("/img/*");
+        registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER - 20);
+        return registration;
+    }
 }
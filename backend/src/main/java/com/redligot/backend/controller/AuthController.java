@@ -32,6 +32,8 @@ import org.springframework.http.MediaType;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.bind.annotation.ModelAttribute;
 
+import java.io.InputStream;
+
 @RestController
 @RequestMapping("/api/auth")
 @CrossOrigin(origins = "*")
@@ -241,7 +243,12 @@ public class AuthController {
                 user.setProfilePictureFilename(profilePicture.getOriginalFilename());
                 user.setProfilePictureContentType(profilePicture.getContentType());
                 user.setProfilePictureSize(profilePicture.getSize());
-                user.setProfilePictureData(profilePicture.getBytes());
+                // Read into one exactly sized array; getBytes() grows and copies intermediate ones
+                byte[] data = new byte[(int) profilePicture.getSize()];
+                try (InputStream in = profilePicture.getInputStream()) {
+                    in.readNBytes(data, 0, data.length);
+                }
+                user.setProfilePictureData(data);
                 logger.info("Profile picture saved successfully - {} bytes", profilePicture.getSize());
             } catch (Exception e) {
                 logger.error("Error processing profile picture: {}", e.getMessage(), e);
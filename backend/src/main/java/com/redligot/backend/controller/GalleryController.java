@@ -4,8 +4,13 @@ import com.redligot.backend.dto.CreateGalleryRequest;
 import com.redligot.backend.dto.GalleryDto;
 import com.redligot.backend.dto.MovePhotosRequest;
 import com.redligot.backend.security.CustomUserDetails;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redligot.backend.service.GalleryCoverService;
+import com.redligot.backend.service.GalleryImportService;
 import com.redligot.backend.service.GalleryService;
+import com.redligot.backend.service.PhotoExportService;
 import com.redligot.backend.model.User;
+import com.redligot.backend.web.StreamingMultipartReader;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -13,15 +18,29 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 @RestController
@@ -33,6 +52,18 @@ public class GalleryController {
     @Autowired
     private GalleryService galleryService;
     
+    @Autowired
+    private PhotoExportService photoExportService;
+    
+    @Autowired
+    private GalleryImportService galleryImportService;
+    
+    @Autowired
+    private GalleryCoverService galleryCoverService;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
     @PostMapping
     @Operation(summary = "Create a new gallery", description = "Create a new gallery for the authenticated user")
     @ApiResponses(value = {
@@ -102,6 +133,105 @@ public class GalleryController {
         return ResponseEntity.ok(gallery);
     }
     
+    /**
+     * Serve the gallery's cover: its first four photos as one 2x2 JPEG.
+     * The ETag is the cover version, so revalidating an unchanged cover costs one
+     * small query and no image data.
+     */
+    @GetMapping(value = "/{id}/cover", produces = MediaType.IMAGE_JPEG_VALUE)
+    @Operation(summary = "Get gallery cover", description = "Get the 2x2 mosaic of the gallery's first four photos as one JPEG")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Cover returned"),
+            @ApiResponse(responseCode = "304", description = "Cached copy is still current"),
+            @ApiResponse(responseCode = "404", description = "Gallery not found or has no photos"),
+            @ApiResponse(responseCode = "401", description = "Not authenticated")
+    })
+    public ResponseEntity<byte[]> getCover(
+            @Parameter(description = "Gallery ID") @PathVariable Long id,
+            @AuthenticationPrincipal CustomUserDetails userDetails,
+            WebRequest request) {
+        Long userId = userDetails.getId();
+        CacheControl cacheControl = CacheControl.noCache().cachePrivate();
+        String etag = "\"cover-" + id + "-" + galleryCoverService.getVersion(id, userId) + "\"";
+        if (request.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cacheControl).build();
+        }
+        GalleryCoverService.GalleryCover cover = galleryCoverService.getCover(id, userId);
+        return ResponseEntity.ok()
+                .contentType(MediaType.IMAGE_JPEG)
+                .eTag("\"cover-" + id + "-" + cover.version() + "\"")
+                .cacheControl(cacheControl)
+                .body(cover.data());
+    }
+    
+    @GetMapping(value = "/{id}/export.zip", produces = "application/zip")
+    @Operation(summary = "Export gallery as ZIP", description = "Download all photos of a gallery as a ZIP archive streamed as it is built")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "ZIP archive streamed"),
+            @ApiResponse(responseCode = "404", description = "Gallery not found"),
+            @ApiResponse(responseCode = "401", description = "Not authenticated")
+    })
+    public ResponseEntity<StreamingResponseBody> exportGallery(
+            @Parameter(description = "Gallery ID") @PathVariable Long id,
+            @AuthenticationPrincipal CustomUserDetails userDetails) {
+        Long userId = userDetails.getId();
+        String filename = photoExportService.galleryArchiveName(id, userId);
+        StreamingResponseBody body = out -> photoExportService.writeGallery(id, userId, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(filename, StandardCharsets.UTF_8).build().toString())
+                .body(body);
+    }
+    
+    /**
+     * Import the images of a ZIP archive into a gallery while it uploads.
+     * The body is the archive itself (or a multipart form whose first file part is the
+     * archive). Progress is written as newline-delimited JSON: one line per entry as it
+     * is committed or skipped, then a summary line with totals.
+     */
+    @PostMapping(value = "/{id}/import",
+            consumes = {"application/zip", "application/x-zip-compressed", MediaType.APPLICATION_OCTET_STREAM_VALUE, MediaType.MULTIPART_FORM_DATA_VALUE},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Import ZIP into gallery", description = "Stream a ZIP archive and add its images to the gallery, reporting progress per entry as NDJSON")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Import progress streamed"),
+            @ApiResponse(responseCode = "400", description = "Multipart request without a file part"),
+            @ApiResponse(responseCode = "404", description = "Gallery not found"),
+            @ApiResponse(responseCode = "401", description = "Not authenticated")
+    })
+    public void importArchive(
+            @Parameter(description = "Gallery ID") @PathVariable Long id,
+            @AuthenticationPrincipal CustomUserDetails userDetails,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        Long userId = userDetails.getId();
+        galleryImportService.checkGallery(id, userId);
+
+        InputStream archive = request.getInputStream();
+        String boundary = StreamingMultipartReader.boundaryOf(request.getContentType());
+        if (boundary != null) {
+            StreamingMultipartReader reader = new StreamingMultipartReader(archive, boundary);
+            StreamingMultipartReader.Part part;
+            while ((part = reader.next()) != null && !part.isFile()) {
+                // Form fields ahead of the archive are not used
+            }
+            if (part == null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Required ZIP file part is not present");
+            }
+            archive = part.getInputStream();
+        }
+
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        ServletOutputStream out = response.getOutputStream();
+        galleryImportService.importArchive(id, userId, archive, progress -> {
+            out.write(objectMapper.writeValueAsBytes(progress));
+            out.write('\n');
+            out.flush();
+        });
+    }
+    
     @PutMapping("/{id}")
     @Operation(summary = "Update gallery", description = "Update an existing gallery")
     @ApiResponses(value = {
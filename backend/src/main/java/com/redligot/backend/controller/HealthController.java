@@ -1,5 +1,10 @@
 package com.redligot.backend.controller;
 
+import com.redligot.backend.service.BufferPool;
+import com.redligot.backend.service.ImageCache;
+import com.redligot.backend.service.ImageDecodeService;
+import com.redligot.backend.service.IngestOptimizer;
+import com.redligot.backend.service.OffHeapImageCache;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -22,7 +27,8 @@ import java.util.Map;
  * Lightweight health endpoint for basic readiness checks.
  *
  * <p>When profile <code>db2</code> is active, it runs a simple
- * "SELECT 1 FROM SYSIBM.SYSDUMMY1" to verify connectivity.</p>
+ * "SELECT 1 FROM SYSIBM.SYSDUMMY1" to verify connectivity. Hot-image cache
+ * counters are included for capacity tuning.</p>
  */
 @RestController
 @RequestMapping("/api/health")
@@ -30,9 +36,20 @@ import java.util.Map;
 public class HealthController {
 
 	private final DataSource dataSource;
+	private final ImageCache imageCache;
+	private final OffHeapImageCache offHeapImageCache;
+	private final BufferPool bufferPool;
+	private final ImageDecodeService imageDecodeService;
+	private final IngestOptimizer ingestOptimizer;
 
-	public HealthController(DataSource dataSource) {
+	public HealthController(DataSource dataSource, ImageCache imageCache, OffHeapImageCache offHeapImageCache,
+			BufferPool bufferPool, ImageDecodeService imageDecodeService, IngestOptimizer ingestOptimizer) {
 		this.dataSource = dataSource;
+		this.imageCache = imageCache;
+		this.offHeapImageCache = offHeapImageCache;
+		this.bufferPool = bufferPool;
+		this.imageDecodeService = imageDecodeService;
+		this.ingestOptimizer = ingestOptimizer;
 	}
 
 	@GetMapping
@@ -63,6 +80,64 @@ public class HealthController {
 			body.put("db2", db);
 		}
 
+		ImageCache.Stats cache = imageCache.stats();
+		Map<String, Object> images = new HashMap<>();
+		images.put("entries", cache.entries());
+		images.put("bytes", cache.bytes());
+		images.put("maxBytes", cache.maxBytes());
+		images.put("hits", cache.hits());
+		images.put("misses", cache.misses());
+		images.put("hitRate", cache.hitRate());
+		images.put("coalescedLoads", cache.coalescedLoads());
+		images.put("evictions", cache.evictions());
+		images.put("rejections", cache.rejections());
+		body.put("imageCache", images);
+
+		OffHeapImageCache.Stats offHeap = offHeapImageCache.stats();
+		Map<String, Object> direct = new HashMap<>();
+		direct.put("entries", offHeap.entries());
+		direct.put("usedBytes", offHeap.usedBytes());
+		direct.put("allocatedBytes", offHeap.allocatedBytes());
+		direct.put("maxBytes", offHeap.maxBytes());
+		direct.put("hits", offHeap.hits());
+		direct.put("misses", offHeap.misses());
+		direct.put("hitRate", offHeap.hitRate());
+		direct.put("loads", offHeap.loads());
+		direct.put("coalescedLoads", offHeap.coalescedLoads());
+		direct.put("evictions", offHeap.evictions());
+		direct.put("rejections", offHeap.rejections());
+		body.put("offHeapImageCache", direct);
+
+		BufferPool.Stats pool = bufferPool.stats();
+		Map<String, Object> buffers = new HashMap<>();
+		buffers.put("acquired", pool.acquired());
+		buffers.put("allocated", pool.allocated());
+		buffers.put("reuseRate", pool.reuseRate());
+		buffers.put("outstanding", pool.outstanding());
+		buffers.put("leaked", pool.leaked());
+		buffers.put("pooledBytes", pool.pooledBytes());
+		body.put("bufferPool", buffers);
+
+		ImageDecodeService.Stats decode = imageDecodeService.stats();
+		Map<String, Object> decoding = new HashMap<>();
+		decoding.put("budgetBytes", decode.budgetBytes());
+		decoding.put("reservedBytes", decode.reservedBytes());
+		decoding.put("waiting", decode.waiting());
+		decoding.put("decoded", decode.decoded());
+		decoding.put("rejected", decode.rejected());
+		body.put("imageDecode", decoding);
+
+		IngestOptimizer.Stats ingest = ingestOptimizer.stats();
+		Map<String, Object> optimization = new HashMap<>();
+		optimization.put("mode", ingest.mode());
+		optimization.put("processed", ingest.processed());
+		optimization.put("optimized", ingest.optimized());
+		optimization.put("reencoded", ingest.reencoded());
+		optimization.put("bytesIn", ingest.bytesIn());
+		optimization.put("bytesOut", ingest.bytesOut());
+		optimization.put("savedBytes", ingest.savedBytes());
+		body.put("ingestOptimization", optimization);
+
 		return ResponseEntity.ok(body);
 	}
 }
@@ -0,0 +1,179 @@
+package com.redligot.backend.controller;
+
+import com.redligot.backend.repository.PhotoContentStore.ImageInfo;
+import com.redligot.backend.repository.ThumbnailStore.Thumbnail;
+import com.redligot.backend.security.ImageUrlSigner;
+import com.redligot.backend.service.ImageCache.CachedImage;
+import com.redligot.backend.service.OffHeapImageCache;
+import com.redligot.backend.service.PhotoService;
+import com.redligot.backend.service.ThumbnailService;
+import com.redligot.backend.web.AccelRedirectResponder;
+import com.redligot.backend.web.AsyncImageResponder;
+import com.redligot.backend.web.SignedImageFilter;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Serves images through the signed URLs returned by the listing and metadata endpoints.
+ *
+ * <p>Requests only get here after {@link SignedImageFilter} has checked the signature,
+ * so there is no user to look up. A URL names one content version of one photo and
+ * changes when the image is replaced, so responses are marked public and immutable
+ * for the rest of the URL's lifetime and can be cached by the browser and by nginx.
+ * Behind nginx the bytes themselves are offloaded with {@link AccelRedirectResponder}.</p>
+ */
+@RestController
+@RequestMapping("/img")
+@Tag(name = "Images", description = "Cacheable image delivery through signed URLs")
+public class ImageController {
+
+	private final PhotoService photoService;
+	private final ThumbnailService thumbnailService;
+	private final AsyncImageResponder asyncImageResponder;
+	private final AccelRedirectResponder accelRedirectResponder;
+
+	public ImageController(PhotoService photoService, ThumbnailService thumbnailService,
+			AsyncImageResponder asyncImageResponder, AccelRedirectResponder accelRedirectResponder) {
+		this.photoService = photoService;
+		this.thumbnailService = thumbnailService;
+		this.asyncImageResponder = asyncImageResponder;
+		this.accelRedirectResponder = accelRedirectResponder;
+	}
+
+	/**
+	 * Serve an image variant.
+	 * Photos without a decodable thumbnail get the original for <code>thumb</code>.
+	 *
+	 * @param id photo identifier
+	 * @param variant <code>original</code> or <code>thumb</code>
+	 * @param version content version the URL was signed for
+	 * @param request current request
+	 * @param response current response
+	 * @throws IOException when the response cannot be written
+	 */
+	@GetMapping("/{id}/{variant}")
+	@Operation(summary = "Get image by signed URL",
+			description = "Serve an image through a URL returned in imageUrl or thumbnailUrl; no Authorization header needed")
+	@ApiResponses(value = {
+		@ApiResponse(responseCode = "200", description = "Image returned"),
+		@ApiResponse(responseCode = "304", description = "Cached copy is still current"),
+		@ApiResponse(responseCode = "403", description = "Missing, invalid or expired signature"),
+		@ApiResponse(responseCode = "404", description = "Photo not found")
+	})
+	public void get(
+			@Parameter(description = "Photo ID", example = "1") @PathVariable Long id,
+			@Parameter(description = "Image variant", example = "thumb") @PathVariable String variant,
+			@Parameter(description = "Content version") @RequestParam("v") int version,
+			HttpServletRequest request,
+			HttpServletResponse response) throws IOException {
+		Object expires = request.getAttribute(SignedImageFilter.VERIFIED_ATTRIBUTE);
+		if (!(expires instanceof Long exp)) {
+			// Only reachable if the filter is not registered; never serve unsigned requests
+			throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Image URL is not signed");
+		}
+		ImageUrlSigner.Variant requested = ImageUrlSigner.Variant.fromPath(variant);
+		if (requested == null) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown image variant: " + variant);
+		}
+
+		long maxAge = Math.max(0, exp - System.currentTimeMillis() / 1000);
+		response.setHeader(HttpHeaders.CACHE_CONTROL, "public, max-age=" + maxAge + ", immutable");
+		// The URL pins the content version, so the ETag needs no database lookup
+		String etag = "\"" + id + "-" + version + "-" + requested.path() + "\"";
+		if (new ServletWebRequest(request, response).checkNotModified(etag)) {
+			return;
+		}
+
+		if (accelRedirectResponder.supports(request)) {
+			offload(response, id, version, requested);
+			return;
+		}
+		// Keyed by the signed version, so a cache hit needs no database access at all
+		CachedImage image = requested == ImageUrlSigner.Variant.THUMB ? photoService.getThumbnail(id, version) : null;
+		if (image == null) {
+			OffHeapImageCache.Lease lease = photoService.leaseOriginal(id, version);
+			if (lease != null) {
+				write(request, response, lease);
+				return;
+			}
+			image = photoService.getOriginal(id, version);
+		}
+		write(request, response, image.contentType(), ByteBuffer.wrap(image.data()));
+	}
+
+	/**
+	 * Let nginx send the bytes from the blob store; the JVM only looks up the photo.
+	 * nginx caches the response under the signed version, so a URL for content that has
+	 * since been replaced gets a 404 rather than the current bytes.
+	 */
+	private void offload(HttpServletResponse response, Long id, int version, ImageUrlSigner.Variant requested) {
+		ImageInfo photo = photoService.getImageInfo(id);
+		if (photo.contentVersion() != version) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+					"Photo with ID " + id + " has no content version " + version);
+		}
+		response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "inline");
+		if (requested == ImageUrlSigner.Variant.THUMB && accelRedirectResponder.send(response, id,
+				version, requested.path(), ThumbnailService.THUMBNAIL_TYPE, out -> {
+					Thumbnail thumbnail = thumbnailService.getThumbnail(id, version);
+					if (thumbnail == null) {
+						return false;
+					}
+					out.write(thumbnail.data());
+					return true;
+				})) {
+			return;
+		}
+		String contentType = photo.contentType() != null ? photo.contentType() : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+		if (!accelRedirectResponder.send(response, id, version, ImageUrlSigner.Variant.ORIGINAL.path(),
+				contentType, out -> photoService.copyContent(id, version, out))) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Photo with ID " + id + " not found");
+		}
+	}
+
+	private void write(HttpServletRequest request, HttpServletResponse response, String contentType,
+			ByteBuffer content) throws IOException {
+		response.setContentType(contentType);
+		response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "inline");
+		if (asyncImageResponder.supports(request)) {
+			asyncImageResponder.send(request, response, content);
+			return;
+		}
+		response.setContentLength(content.remaining());
+		response.getOutputStream().write(content.array(), content.arrayOffset() + content.position(), content.remaining());
+	}
+
+	/**
+	 * Write an original from the off-heap tier without copying it onto the heap.
+	 */
+	private void write(HttpServletRequest request, HttpServletResponse response, OffHeapImageCache.Lease lease)
+			throws IOException {
+		response.setContentType(lease.contentType());
+		response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "inline");
+		if (asyncImageResponder.supports(request)) {
+			asyncImageResponder.send(request, response, lease.chunks(), lease::close);
+			return;
+		}
+		try (lease) {
+			asyncImageResponder.write(response, lease.chunks());
+		}
+	}
+}
@@ -1,11 +1,30 @@
 package com.redligot.backend.controller;
 
+import com.redligot.backend.dto.CreateFromExistingRequest;
+import com.redligot.backend.dto.ExportPhotosRequest;
 import com.redligot.backend.dto.PhotoDto;
+import com.redligot.backend.dto.UploadPreflightRequest;
 import com.redligot.backend.model.Photo;
 import com.redligot.backend.model.User;
 import com.redligot.backend.security.CustomUserDetails;
+import com.redligot.backend.security.ImageUrlSigner;
+import com.redligot.backend.repository.PhotoContentStore;
+import com.redligot.backend.repository.PhotoContentStore.ImageInfo;
+import com.redligot.backend.repository.PhotoOriginalStore;
+import com.redligot.backend.repository.ThumbnailStore;
+import com.redligot.backend.service.IdempotencyService;
+import com.redligot.backend.service.ImageCache.CachedImage;
+import com.redligot.backend.service.OffHeapImageCache;
+import com.redligot.backend.service.PhotoExportService;
 import com.redligot.backend.service.PhotoService;
+import com.redligot.backend.service.PerceptualHashService;
+import com.redligot.backend.service.ThumbnailService;
+import com.redligot.backend.service.TilePyramidService;
 import com.redligot.backend.service.UserService;
+import com.redligot.backend.service.VisualSimilarityService;
+import com.redligot.backend.web.AccelRedirectResponder;
+import com.redligot.backend.web.AsyncImageResponder;
+import com.redligot.backend.web.StreamingMultipartReader;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -13,20 +32,39 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 import java.util.stream.Collectors;
 
 /**
@@ -39,10 +77,40 @@ public class PhotoController {
 
 	private final PhotoService photoService;
 	private final UserService userService;
+	private final AsyncImageResponder asyncImageResponder;
+	private final AccelRedirectResponder accelRedirectResponder;
+	private final PhotoExportService photoExportService;
+	private final ThumbnailService thumbnailService;
+	private final ImageUrlSigner imageUrlSigner;
+	private final PerceptualHashService perceptualHashService;
+	private final VisualSimilarityService visualSimilarityService;
+	private final TilePyramidService tilePyramidService;
+	private final IdempotencyService idempotencyService;
+	private final int maxStreamedFiles;
 
-	public PhotoController(PhotoService photoService, UserService userService) {
+	/**
+	 * Largest form field value accepted by the streaming upload endpoints.
+	 */
+	private static final int MAX_STREAMED_FIELD_BYTES = 4096;
+
+	public PhotoController(PhotoService photoService, UserService userService, AsyncImageResponder asyncImageResponder,
+			AccelRedirectResponder accelRedirectResponder,
+			PhotoExportService photoExportService, ThumbnailService thumbnailService, ImageUrlSigner imageUrlSigner,
+			PerceptualHashService perceptualHashService, VisualSimilarityService visualSimilarityService,
+			TilePyramidService tilePyramidService, IdempotencyService idempotencyService,
+			@Value("${app.upload.streaming.max-files:100}") int maxStreamedFiles) {
 		this.photoService = photoService;
 		this.userService = userService;
+		this.asyncImageResponder = asyncImageResponder;
+		this.accelRedirectResponder = accelRedirectResponder;
+		this.photoExportService = photoExportService;
+		this.thumbnailService = thumbnailService;
+		this.imageUrlSigner = imageUrlSigner;
+		this.perceptualHashService = perceptualHashService;
+		this.visualSimilarityService = visualSimilarityService;
+		this.tilePyramidService = tilePyramidService;
+		this.idempotencyService = idempotencyService;
+		this.maxStreamedFiles = maxStreamedFiles;
 	}
 
 	/**
@@ -113,7 +181,9 @@ public class PhotoController {
 		Pageable pageable = PageRequest.of(page, size, sort);
 		
 		Page<Photo> photoPage = photoService.findByUserIdAndGalleryId(userDetails.getId(), galleryId, pageable);
-		return PaginatedPhotoResponse.fromPage(photoPage);
+		PaginatedPhotoResponse response = PaginatedPhotoResponse.fromPage(photoPage);
+		response.content().forEach(imageUrlSigner::applyTo);
+		return response;
 	}
 
 	/**
@@ -140,7 +210,198 @@ public class PhotoController {
 		if (!photo.getUser().getId().equals(userDetails.getId())) {
 			return ResponseEntity.status(403).build();
 		}
-		return ResponseEntity.ok(new PhotoDto(photo));
+		return ResponseEntity.ok(imageUrlSigner.applyTo(new PhotoDto(photo)));
+	}
+
+	/**
+	 * Find the user's photos that look like a given photo: re-exports, resized copies
+	 * and burst shots, by Hamming distance between perceptual hashes.
+	 *
+	 * @param id          photo identifier
+	 * @param maxDistance largest distance to include, out of 64 bits (0 to 16)
+	 * @param limit       most photos to return
+	 * @param userDetails authenticated user details
+	 * @return similar photos, closest first
+	 */
+	@GetMapping("/{id}/similar")
+	@Operation(summary = "Find similar photos", description = "Find near-duplicates of a photo by perceptual hash")
+	@ApiResponses(value = {
+		@ApiResponse(responseCode = "200", description = "Similar photos, closest first"),
+		@ApiResponse(responseCode = "400", description = "Distance out of range"),
+		@ApiResponse(responseCode = "401", description = "Not authenticated"),
+		@ApiResponse(responseCode = "404", description = "Photo not found"),
+		@ApiResponse(responseCode = "409", description = "Photo has not been analyzed yet"),
+		@ApiResponse(responseCode = "422", description = "Photo cannot be decoded")
+	})
+	public List<PerceptualHashService.SimilarPhoto> similar(
+			@Parameter(description = "Photo ID", example = "1") @PathVariable Long id,
+			@Parameter(description = "Largest Hamming distance (0-16)", example = "10") @RequestParam(defaultValue = "10") int maxDistance,
+			@Parameter(description = "Most photos to return", example = "50") @RequestParam(defaultValue = "50") int limit,
+			@AuthenticationPrincipal CustomUserDetails userDetails) {
+		return perceptualHashService.findSimilar(id, userDetails.getId(), maxDistance, Math.max(1, Math.min(limit, 500)));
+	}
+
+	/**
+	 * Find the user's photos that look most like a given photo by colour and texture,
+	 * beyond near-duplicates.
+	 *
+	 * @param id          photo identifier
+	 * @param limit       most photos to return
+	 * @param userDetails authenticated user details
+	 * @return related photos, most similar first
+	 */
+	@GetMapping("/{id}/more-like-this")
+	@Operation(summary = "Find related photos", description = "Find the photos most similar in colour and texture to a photo")
+	@ApiResponses(value = {
+		@ApiResponse(responseCode = "200", description = "Related photos, most similar first"),
+		@ApiResponse(responseCode = "401", description = "Not authenticated"),
+		@ApiResponse(responseCode = "404", description = "Photo not found"),
+		@ApiResponse(responseCode = "409", description = "Photo has not been analyzed yet"),
+		@ApiResponse(responseCode = "422", description = "Photo cannot be decoded")
+	})
+	public List<VisualSimilarityService.RelatedPhoto> moreLikeThis(
+			@Parameter(description = "Photo ID", example = "1") @PathVariable Long id,
+			@Parameter(description = "Most photos to return", example = "20") @RequestParam(defaultValue = "20") int limit,
+			@AuthenticationPrincipal CustomUserDetails userDetails) {
+		return visualSimilarityService.findRelated(id, userDetails.getId(), Math.max(1, Math.min(limit, 500)));
+	}
+
+	/**
+	 * Describe the deep-zoom tile pyramid of a large photo, starting to build it if it
+	 * does not exist yet.
+	 *
+	 * @param id          photo identifier
+	 * @param userDetails authenticated user details
+	 * @return the pyramid; 202 while it is being built
+	 */
+	@GetMapping("/{id}/tiles")
+	@Operation(summary = "Get tile pyramid", description = "Describe the Deep Zoom tiles of a large photo, "
+			+ "served from /api/photos/{id}/tiles/{level}/{x}_{y}.jpg?v={contentVersion}")
+	@ApiResponses(value = {
+		@ApiResponse(responseCode = "200", description = "Tiles are ready"),
+		@ApiResponse(responseCode = "202", description = "Tiles are being built; ask again shortly"),
+		@ApiResponse(responseCode = "401", description = "Not authenticated"),
+		@ApiResponse(responseCode = "404", description = "Photo not found or too small to be tiled")
+	})
+	public ResponseEntity<TilePyramidService.TilePyramid> tiles(
+			@Parameter(description = "Photo ID", example = "1") @PathVariable Long id,
+			@AuthenticationPrincipal CustomUserDetails userDetails) {
+		TilePyramidService.TilePyramid pyramid = tilePyramidService.getPyramid(id, userDetails.getId());
+		if (!pyramid.ready()) {
+			tilePyramidService.buildLater(id);
+			return ResponseEntity.status(HttpStatus.ACCEPTED).body(pyramid);
+		}
+		return ResponseEntity.ok(pyramid);
+	}
+
+	/**
+	 * Get one tile of a photo's tile pyramid.
+	 * The URL names the content version, so the tile is cached for good.
+	 *
+	 * @param id          photo identifier
+	 * @param level       pyramid level
+	 * @param x           tile column
+	 * @param y           tile row
+	 * @param version     content version from the pyramid description
+	 * @param userDetails authenticated user details
+	 * @param request     current request
+	 * @param response    current response
+	 * @throws IOException when the tile cannot be written
+	 */
+	@GetMapping("/{id}/tiles/{level}/{x:\\d+}_{y:\\d+}.jpg")
+	@Operation(summary = "Get tile", description = "Get one 256-pixel JPEG tile of a photo's tile pyramid")
+	@ApiResponses(value = {
+		@ApiResponse(responseCode = "200", description = "Tile returned"),
+		@ApiResponse(responseCode = "401", description = "Not authenticated"),
+		@ApiResponse(responseCode = "404", description = "Photo, version or tile not found")
+	})
+	public void tile(
+			@Parameter(description = "Photo ID", example = "1") @PathVariable Long id,
+			@Parameter(description = "Pyramid level", example = "12") @PathVariable int level,
+			@Parameter(description = "Tile column", example = "0") @PathVariable int x,
+			@Parameter(description = "Tile row", example = "0") @PathVariable int y,
+			@Parameter(description = "Content version") @RequestParam("v") int version,
+			@AuthenticationPrincipal CustomUserDetails userDetails,
+			HttpServletRequest request,
+			HttpServletResponse response) throws IOException {
+		TilePyramidService.Tile tile = tilePyramidService.getTile(id, userDetails.getId(), version, level, x, y);
+		response.setHeader(HttpHeaders.CACHE_CONTROL, "private, max-age=31536000, immutable");
+		if (accelRedirectResponder.supports(request)) {
+			accelRedirectResponder.send(response, tile.blobPath(), TilePyramidService.TILE_TYPE);
+			return;
+		}
+		long size;
+		try {
+			size = Files.size(tile.file());
+		} catch (NoSuchFileException e) {
+			// Evicted since it was looked up: the image was just replaced or deleted
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Tile of photo " + id + " not found");
+		}
+		response.setContentType(TilePyramidService.TILE_TYPE);
+		response.setContentLengthLong(size);
+		Files.copy(tile.file(), response.getOutputStream());
+	}
+
+	/**
+	 * Group the user's whole library into clusters of near-duplicates.
+	 *
+	 * @param maxDistance largest distance between linked photos, out of 64 bits (0 to 10)
+	 * @param limit       most clusters to return with their photos
+	 * @param userDetails authenticated user details
+	 * @return cluster totals and the largest clusters
+	 */
+	@GetMapping("/duplicates")
+	@Operation(summary = "Find duplicate clusters", description = "Group the library into clusters of near-duplicate photos")
+	@ApiResponses(value = {
+		@ApiResponse(responseCode = "200", description = "Clusters, largest first"),
+		@ApiResponse(responseCode = "400", description = "Distance out of range"),
+		@ApiResponse(responseCode = "401", description = "Not authenticated")
+	})
+	public PerceptualHashService.DuplicateReport duplicates(
+			@Parameter(description = "Largest Hamming distance (0-10)", example = "6") @RequestParam(defaultValue = "6") int maxDistance,
+			@Parameter(description = "Most clusters to return", example = "50") @RequestParam(defaultValue = "50") int limit,
+			@AuthenticationPrincipal CustomUserDetails userDetails) {
+		return perceptualHashService.findDuplicates(userDetails.getId(), maxDistance, Math.max(1, Math.min(limit, 500)));
+	}
+
+	/**
+	 * Get thumbnails for a page of photos in a single <code>multipart/mixed</code> response.
+	 * Each part carries <code>Content-Type</code>, <code>Content-Length</code> and
+	 * <code>X-Photo-Id</code> headers. Photos that do not belong to the user or have
+	 * no thumbnail are omitted.
+	 *
+	 * @param ids         photo IDs, comma-separated
+	 * @param userDetails authenticated user details
+	 * @param response    response the parts are written to
+	 * @throws IOException when writing the response fails
+	 */
+	@GetMapping("/thumbnails")
+	@Operation(summary = "Get thumbnails in batch", description = "Get thumbnails for many photos as one multipart/mixed response")
+	@ApiResponses(value = {
+		@ApiResponse(responseCode = "200", description = "Thumbnails returned as multipart/mixed parts"),
+		@ApiResponse(responseCode = "400", description = "Too many IDs"),
+		@ApiResponse(responseCode = "401", description = "Not authenticated")
+	})
+	public void getThumbnails(
+			@Parameter(description = "Photo IDs") @RequestParam("ids") List<Long> ids,
+			@AuthenticationPrincipal CustomUserDetails userDetails,
+			HttpServletResponse response) throws IOException {
+		List<ThumbnailStore.Thumbnail> thumbnails = thumbnailService.getThumbnails(ids, userDetails.getId());
+
+		String boundary = UUID.randomUUID().toString();
+		response.setContentType("multipart/mixed; boundary=" + boundary);
+		response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+		ServletOutputStream out = response.getOutputStream();
+		for (ThumbnailStore.Thumbnail thumbnail : thumbnails) {
+			out.print("--" + boundary + "\r\n");
+			out.print("Content-Type: " + thumbnail.contentType() + "\r\n");
+			out.print("Content-Length: " + thumbnail.data().length + "\r\n");
+			out.print("X-Photo-Id: " + thumbnail.photoId() + "\r\n");
+			out.print("X-Image-Size: " + thumbnail.width() + "x" + thumbnail.height() + "\r\n\r\n");
+			out.write(thumbnail.data());
+			out.print("\r\n");
+		}
+		out.print("--" + boundary + "--\r\n");
 	}
 
 	/**
@@ -156,6 +417,7 @@ public class PhotoController {
 	 * @param description optional description
 	 * @param file        uploaded image file
 	 * @param userDetails authenticated user details
+	 * @param idempotencyKey optional key; a retry with the same key gets the first response
 	 * @return created {@link Photo} associated with the authenticated user
 	 * @throws IOException when reading the uploaded file fails
 	 */
@@ -165,17 +427,25 @@ public class PhotoController {
 		@ApiResponse(responseCode = "200", description = "Photo uploaded successfully", 
 					content = @Content(schema = @Schema(implementation = Photo.class))),
 		@ApiResponse(responseCode = "401", description = "Not authenticated"),
-		@ApiResponse(responseCode = "400", description = "Invalid file or metadata")
+		@ApiResponse(responseCode = "400", description = "Invalid file or metadata"),
+		@ApiResponse(responseCode = "409", description = "A request with the same Idempotency-Key is still in progress"),
+		@ApiResponse(responseCode = "422", description = "Idempotency-Key was used for a different request")
 	})
 	public ResponseEntity<Photo> create(
 			@Parameter(description = "Photo title") @RequestPart("title") String title,
 			@Parameter(description = "Photo description (optional)") @RequestPart(value = "description", required = false) String description,
 			@Parameter(description = "Image file") @RequestPart("file") MultipartFile file,
 			@Parameter(description = "Gallery ID (optional)") @RequestParam(value = "galleryId", required = false) Long galleryId,
-			@AuthenticationPrincipal CustomUserDetails userDetails) throws IOException {
-		User user = userService.getCurrentUser(userDetails.getId());
-		Photo saved = photoService.create(title, description, file, user, galleryId);
-		return ResponseEntity.ok(saved);
+			@AuthenticationPrincipal CustomUserDetails userDetails,
+			@Parameter(description = "Key identifying this upload across retries (optional)") @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+			HttpServletRequest request,
+			HttpServletResponse response) throws IOException {
+		Object[] content = {title, description, file, galleryId};
+		return idempotencyService.execute(userDetails.getId(), idempotencyKey, request, content, response, () -> {
+			User user = userService.getCurrentUser(userDetails.getId());
+			Photo saved = photoService.create(title, description, file, user, galleryId);
+			return ResponseEntity.ok(saved);
+		});
 	}
 
 	/**
@@ -190,6 +460,7 @@ public class PhotoController {
 	 * @param files       array of uploaded image files
 	 * @param titles      array of titles (optional)
 	 * @param descriptions array of descriptions (optional)
+	 * @param idempotencyKey optional key; a retry with the same key gets the first response
 	 * @return list of created {@link Photo} objects associated with the authenticated user
 	 * @throws IOException when reading the uploaded files fails
 	 */
@@ -199,14 +470,19 @@ public class PhotoController {
 		@ApiResponse(responseCode = "200", description = "Photos uploaded successfully", 
 					content = @Content(schema = @Schema(implementation = Photo.class))),
 		@ApiResponse(responseCode = "401", description = "Not authenticated"),
-		@ApiResponse(responseCode = "400", description = "Invalid files or metadata")
+		@ApiResponse(responseCode = "400", description = "Invalid files or metadata"),
+		@ApiResponse(responseCode = "409", description = "A request with the same Idempotency-Key is still in progress"),
+		@ApiResponse(responseCode = "422", description = "Idempotency-Key was used for a different request")
 	})
 	public ResponseEntity<List<Photo>> bulkCreate(
 			@Parameter(description = "Array of image files") @RequestPart("files") MultipartFile[] files,
 			@Parameter(description = "Array of titles (optional)") @RequestParam(value = "titles", required = false) String[] titles,
 			@Parameter(description = "Array of descriptions (optional)") @RequestParam(value = "descriptions", required = false) String[] descriptions,
 			@Parameter(description = "Gallery ID (optional)") @RequestParam(value = "galleryId", required = false) Long galleryId,
-			@AuthenticationPrincipal CustomUserDetails userDetails) throws IOException {
+			@AuthenticationPrincipal CustomUserDetails userDetails,
+			@Parameter(description = "Key identifying this upload across retries (optional)") @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+			HttpServletRequest request,
+			HttpServletResponse response) throws IOException {
 		
 		// Debug: Log what we received
 		System.out.println("Bulk upload received:");
@@ -221,9 +497,240 @@ public class PhotoController {
 			}
 		}
 		
-		User user = userService.getCurrentUser(userDetails.getId());
-		List<Photo> savedPhotos = photoService.bulkCreate(files, titles, descriptions, user, galleryId);
-		return ResponseEntity.ok(savedPhotos);
+		Object[] content = {files, titles, descriptions, galleryId};
+		return idempotencyService.execute(userDetails.getId(), idempotencyKey, request, content, response, () -> {
+			User user = userService.getCurrentUser(userDetails.getId());
+			List<Photo> savedPhotos = photoService.bulkCreate(files, titles, descriptions, user, galleryId);
+			return ResponseEntity.ok(savedPhotos);
+		});
+	}
+
+	/**
+	 * Streaming variant of {@link #create}: same parts and response, but the file is
+	 * written to the database while it is still arriving, without temp files.
+	 *
+	 * Form fields (title, description, galleryId) must precede the file part or be
+	 * sent as query parameters, since parts are processed in arrival order.
+	 *
+	 * @param request     raw multipart request
+	 * @param userDetails authenticated user details
+	 * @return created {@link Photo} associated with the authenticated user
+	 * @throws IOException when reading the request body fails
+	 */
+	@PostMapping(path = "/stream", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+	@Operation(summary = "Upload photo (streaming)", description = "Upload a single photo, streaming it to storage as it arrives")
+	@ApiResponses(value = {
+		@ApiResponse(responseCode = "200", description = "Photo uploaded successfully", 
+					content = @Content(schema = @Schema(implementation = Photo.class))),
+		@ApiResponse(responseCode = "401", description = "Not authenticated"),
+		@ApiResponse(responseCode = "400", description = "Invalid file or metadata"),
+		@ApiResponse(responseCode = "409", description = "A request with the same Idempotency-Key is still in progress"),
+		@ApiResponse(responseCode = "422", description = "Idempotency-Key was used for a different request")
+	})
+	public ResponseEntity<Photo> createStreaming(
+			HttpServletRequest request,
+			HttpServletResponse response,
+			@AuthenticationPrincipal CustomUserDetails userDetails,
+			@Parameter(description = "Key identifying this upload across retries (optional)") @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) throws IOException {
+		return idempotencyService.execute(userDetails.getId(), idempotencyKey, request, response, () -> {
+			User user = userService.getCurrentUser(userDetails.getId());
+			List<Photo> saved = storeStreamedParts(request, user, "file", "title", "description", 1);
+			if (saved.isEmpty()) {
+				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Required part 'file' is not present");
+			}
+			return ResponseEntity.ok(saved.get(0));
+		});
+	}
+
+	/**
+	 * Streaming variant of {@link #bulkCreate}: same parts and response, but each file
+	 * is written to the database as it arrives instead of after the whole request has
+	 * been spooled to disk.
+	 *
+	 * Titles and descriptions are matched to files by position; they must be sent as
+	 * query parameters or as form fields ahead of the file they describe.
+	 *
+	 * @param request     raw multipart request
+	 * @param userDetails authenticated user details
+	 * @return list of created {@link Photo} objects associated with the authenticated user
+	 * @throws IOException when reading the request body fails
+	 */
+	@PostMapping(path = "/bulk/stream", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+	@Operation(summary = "Bulk upload photos (streaming)", description = "Upload multiple photos, streaming each to storage as it arrives")
+	@ApiResponses(value = {
+		@ApiResponse(responseCode = "200", description = "Photos uploaded successfully", 
+					content = @Content(schema = @Schema(implementation = Photo.class))),
+		@ApiResponse(responseCode = "401", description = "Not authenticated"),
+		@ApiResponse(responseCode = "400", description = "Invalid files or metadata"),
+		@ApiResponse(responseCode = "409", description = "A request with the same Idempotency-Key is still in progress"),
+		@ApiResponse(responseCode = "422", description = "Idempotency-Key was used for a different request")
+	})
+	public ResponseEntity<List<Photo>> bulkCreateStreaming(
+			HttpServletRequest request,
+			HttpServletResponse response,
+			@AuthenticationPrincipal CustomUserDetails userDetails,
+			@Parameter(description = "Key identifying this upload across retries (optional)") @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) throws IOException {
+		return idempotencyService.execute(userDetails.getId(), idempotencyKey, request, response, () -> {
+			User user = userService.getCurrentUser(userDetails.getId());
+			List<Photo> saved = storeStreamedParts(request, user, "files", "titles", "descriptions", maxStreamedFiles);
+			if (saved.isEmpty()) {
+				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At least one file must be provided");
+			}
+			return ResponseEntity.ok(saved);
+		});
+	}
+
+	/**
+	 * Report which files of an upload the authenticated user already has, by the
+	 * SHA-256 of their bytes as uploaded, so the client can skip sending them.
+	 *
+	 * @param request     digests and sizes of the files about to be uploaded
+	 * @param userDetails authenticated user details
+	 * @return one result per file, in request order, with the ID of a photo holding the
+	 *         same content or null
+	 */
+	@PostMapping("/preflight")
+	@Operation(summary = "Upload preflight", description = "Find which files, by SHA-256, the user has already uploaded")
+	@ApiResponses(value = {
+		@ApiResponse(responseCode = "200", description = "Preflight results returned"),
+		@ApiResponse(responseCode = "400", description = "Invalid digests"),
+		@ApiResponse(responseCode = "401", description = "Not authenticated")
+	})
+	public ResponseEntity<List<PhotoService.PreflightResult>> preflight(
+			@Valid @RequestBody UploadPreflightRequest request,
+			@AuthenticationPrincipal CustomUserDetails userDetails) {
+		return ResponseEntity.ok(photoService.preflight(request.getFiles(), userDetails.getId()));
+	}
+
+	/**
+	 * Create photos from content the authenticated user already has, named by the
+	 * digests a preflight matched. The content is copied in the database; no file is sent.
+	 *
+	 * @param body           digests, titles and target gallery of the new photos
+	 * @param userDetails    authenticated user details
+	 * @param idempotencyKey optional key; a retry with the same key gets the first response
+	 * @return created photos, in request order
+	 * @throws IOException when writing a replayed response fails
+	 */
+	@PostMapping("/from-existing")
+	@Operation(summary = "Create photos from existing content", description = "Create photos from content the user already uploaded, identified by SHA-256")
+	@ApiResponses(value = {
+		@ApiResponse(responseCode = "200", description = "Photos created"),
+		@ApiResponse(responseCode = "400", description = "Invalid digests or metadata"),
+		@ApiResponse(responseCode = "401", description = "Not authenticated"),
+		@ApiResponse(responseCode = "404", description = "A digest or the gallery was not found"),
+		@ApiResponse(responseCode = "409", description = "Content was deleted meanwhile, or a request with the same Idempotency-Key is still in progress"),
+		@ApiResponse(responseCode = "422", description = "Idempotency-Key was used for a different request")
+	})
+	public ResponseEntity<List<Photo>> createFromExisting(
+			@Valid @RequestBody CreateFromExistingRequest body,
+			@AuthenticationPrincipal CustomUserDetails userDetails,
+			@Parameter(description = "Key identifying this request across retries (optional)") @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+			HttpServletRequest request,
+			HttpServletResponse response) throws IOException {
+		Object[] content = {body};
+		return idempotencyService.execute(userDetails.getId(), idempotencyKey, request, content, response, () -> {
+			User user = userService.getCurrentUser(userDetails.getId());
+			return ResponseEntity.ok(photoService.createFromExisting(body.getFiles(), user, body.getGalleryId()));
+		});
+	}
+
+	/**
+	 * Download a selection of photos as a ZIP archive built while it is sent.
+	 * IDs that do not belong to the authenticated user are skipped.
+	 *
+	 * @param request     IDs of the photos to export
+	 * @param userDetails authenticated user details
+	 * @return streamed <code>application/zip</code> body
+	 */
+	@PostMapping(path = "/export.zip", produces = "application/zip")
+	@Operation(summary = "Export photos as ZIP", description = "Download selected photos as a ZIP archive streamed as it is built")
+	@ApiResponses(value = {
+		@ApiResponse(responseCode = "200", description = "ZIP archive streamed"),
+		@ApiResponse(responseCode = "400", description = "Selection empty or too large"),
+		@ApiResponse(responseCode = "401", description = "Not authenticated"),
+		@ApiResponse(responseCode = "404", description = "None of the photos were found")
+	})
+	public ResponseEntity<StreamingResponseBody> exportSelection(
+			@Valid @RequestBody ExportPhotosRequest request,
+			@AuthenticationPrincipal CustomUserDetails userDetails) {
+		List<PhotoContentStore.PhotoSummary> photos = photoExportService.resolveSelection(request.getPhotoIds(), userDetails.getId());
+		StreamingResponseBody body = out -> photoExportService.writeSelection(photos, out);
+		return ResponseEntity.ok()
+				.contentType(MediaType.parseMediaType("application/zip"))
+				.header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename("photos.zip").build().toString())
+				.body(body);
+	}
+
+	/**
+	 * Walk the multipart body part by part, storing each file part as soon as it starts.
+	 * Request parameters are read from the query string directly: calling
+	 * <code>getParameter</code> on a multipart request makes the container parse (and
+	 * spool) the whole body first.
+	 */
+	private List<Photo> storeStreamedParts(HttpServletRequest request, User user, String fileField,
+			String titleField, String descriptionField, int maxFiles) throws IOException {
+		String boundary = StreamingMultipartReader.boundaryOf(request.getContentType());
+		if (boundary == null) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Missing multipart boundary");
+		}
+		MultiValueMap<String, String> query = queryParams(request.getQueryString());
+		List<String> titles = new ArrayList<>(query.getOrDefault(titleField, List.of()));
+		List<String> descriptions = new ArrayList<>(query.getOrDefault(descriptionField, List.of()));
+		Long galleryId = parseGalleryId(query.getFirst("galleryId"));
+
+		List<Photo> saved = new ArrayList<>();
+		StreamingMultipartReader reader = new StreamingMultipartReader(request.getInputStream(), boundary);
+		try {
+			StreamingMultipartReader.Part part;
+			while (saved.size() < maxFiles && (part = reader.next()) != null) {
+				if (part.isFile()) {
+					if (!fileField.equals(part.getName())) {
+						continue;
+					}
+					int index = saved.size();
+					String title = index < titles.size() ? titles.get(index) : null;
+					String description = index < descriptions.size() ? descriptions.get(index) : null;
+					saved.add(photoService.createFromStream(title, description, part.getFilename(),
+							part.getContentType(), part.getInputStream(), user, galleryId));
+				} else if (titleField.equals(part.getName())) {
+					titles.add(part.readString(MAX_STREAMED_FIELD_BYTES));
+				} else if (descriptionField.equals(part.getName())) {
+					descriptions.add(part.readString(MAX_STREAMED_FIELD_BYTES));
+				} else if ("galleryId".equals(part.getName())) {
+					galleryId = parseGalleryId(part.readString(MAX_STREAMED_FIELD_BYTES));
+				}
+			}
+		} catch (IOException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
+					"Failed to read multipart request: " + e.getMessage());
+		}
+		return saved;
+	}
+
+	private static MultiValueMap<String, String> queryParams(String queryString) {
+		MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+		if (queryString == null || queryString.isEmpty()) {
+			return params;
+		}
+		for (String pair : queryString.split("&")) {
+			int eq = pair.indexOf('=');
+			String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+			String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+			params.add(name, value);
+		}
+		return params;
+	}
+
+	private static Long parseGalleryId(String value) {
+		if (value == null || value.isBlank()) {
+			return null;
+		}
+		try {
+			return Long.valueOf(value.trim());
+		} catch (NumberFormatException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid galleryId: " + value);
+		}
 	}
 
 	/**
@@ -234,6 +741,7 @@ public class PhotoController {
 	 * @param title       new title
 	 * @param description new description (optional)
 	 * @param file        new image file (optional)
+	 * @param idempotencyKey optional key; a retry with the same key gets the first response
 	 * @return updated {@link Photo} if owned by authenticated user
 	 * @throws IOException when reading the uploaded file fails
 	 */
@@ -245,7 +753,9 @@ public class PhotoController {
 		@ApiResponse(responseCode = "401", description = "Not authenticated"),
 		@ApiResponse(responseCode = "403", description = "Photo does not belong to user"),
 		@ApiResponse(responseCode = "404", description = "Photo not found"),
-		@ApiResponse(responseCode = "400", description = "Invalid data")
+		@ApiResponse(responseCode = "400", description = "Invalid data"),
+		@ApiResponse(responseCode = "409", description = "A request with the same Idempotency-Key is still in progress"),
+		@ApiResponse(responseCode = "422", description = "Idempotency-Key was used for a different request")
 	})
 	public ResponseEntity<Photo> update(
 			@Parameter(description = "Photo ID", example = "1") @PathVariable Long id,
@@ -253,25 +763,32 @@ public class PhotoController {
 			@Parameter(description = "New photo description (optional)") @RequestPart(value = "description", required = false) String description,
 			@Parameter(description = "New image file (optional)") @RequestPart(value = "file", required = false) MultipartFile file,
 			@Parameter(description = "Gallery ID (optional)") @RequestParam(value = "galleryId", required = false) Long galleryId,
-			@AuthenticationPrincipal CustomUserDetails userDetails) throws IOException {
-		Photo photo = photoService.findById(id);
-		// Check if the photo belongs to the authenticated user
-		if (!photo.getUser().getId().equals(userDetails.getId())) {
-			return ResponseEntity.status(403).build();
-		}
-		Photo updated = photoService.update(id, title, description, file, galleryId);
-		return ResponseEntity.ok(updated);
+			@AuthenticationPrincipal CustomUserDetails userDetails,
+			@Parameter(description = "Key identifying this update across retries (optional)") @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+			HttpServletRequest request,
+			HttpServletResponse response) throws IOException {
+		Object[] content = {title, description, file, galleryId};
+		return idempotencyService.execute(userDetails.getId(), idempotencyKey, request, content, response, () -> {
+			Photo photo = photoService.findById(id);
+			// Check if the photo belongs to the authenticated user
+			if (!photo.getUser().getId().equals(userDetails.getId())) {
+				return ResponseEntity.status(403).<Photo>build();
+			}
+			Photo updated = photoService.update(id, title, description, file, galleryId);
+			return ResponseEntity.ok(updated);
+		});
 	}
 
 	/**
 	 * Delete a photo by id.
-	 * Users can only delete their own photos.
+	 * Users can only delete their own photos. The photo can be restored with
+	 * {@link #restore} until the undo window passes.
 	 *
 	 * @param id photo identifier
 	 * @return 204 if deleted and owned by authenticated user, 404 if not found
 	 */
 	@DeleteMapping("/{id}")
-	@Operation(summary = "Delete photo", description = "Delete a photo by its ID")
+	@Operation(summary = "Delete photo", description = "Delete a photo by its ID; it can be restored during the undo window")
 	@ApiResponses(value = {
 		@ApiResponse(responseCode = "204", description = "Photo deleted successfully"),
 		@ApiResponse(responseCode = "401", description = "Not authenticated"),
@@ -286,7 +803,7 @@ public class PhotoController {
 		if (!photo.getUser().getId().equals(userDetails.getId())) {
 			return ResponseEntity.status(403).build();
 		}
-		photoService.deleteById(id);
+		photoService.deleteById(id, userDetails.getId());
 		return ResponseEntity.noContent().build();
 	}
 
@@ -318,10 +835,34 @@ public class PhotoController {
 		}
 		
 		// Delete all photos
-		photoService.bulkDeleteByIds(ids);
+		photoService.bulkDeleteByIds(ids, userDetails.getId());
 		return ResponseEntity.noContent().build();
 	}
 
+	/**
+	 * Restore deleted photos whose undo window has not passed.
+	 * IDs that cannot be restored, or belong to other users, are skipped.
+	 *
+	 * @param ids list of deleted photo identifiers
+	 * @param userDetails authenticated user details
+	 * @return the restored photos
+	 */
+	@PostMapping("/restore")
+	@Operation(summary = "Restore photos", description = "Undo the deletion of photos within the undo window")
+	@ApiResponses(value = {
+		@ApiResponse(responseCode = "200", description = "Photos restored"),
+		@ApiResponse(responseCode = "401", description = "Not authenticated"),
+		@ApiResponse(responseCode = "404", description = "None of the photos can be restored")
+	})
+	public ResponseEntity<List<Photo>> restore(
+			@Parameter(description = "List of deleted photo IDs") @RequestBody List<Long> ids,
+			@AuthenticationPrincipal CustomUserDetails userDetails) {
+		if (ids == null || ids.isEmpty()) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At least one photo ID must be provided");
+		}
+		return ResponseEntity.ok(photoService.restore(ids, userDetails.getId()));
+	}
+
 	/**
 	 * Fetch only the photo metadata (no image bytes) by id.
 	 * Users can only access their own photos.
@@ -352,9 +893,15 @@ public class PhotoController {
 	/**
 	 * Download the raw image bytes for a photo.
 	 * Users can only download their own photos.
+	 * 
+	 * When async downloads are enabled the bytes are drained by a non-blocking
+	 * writer and the request thread is released immediately, so slow clients
+	 * do not hold a Tomcat worker for the duration of the transfer.
 	 *
 	 * @param id photo identifier
-	 * @return image stream with content type and filename if owned by authenticated user
+	 * @return image stream with content type and filename if owned by authenticated user,
+	 *         or {@code null} once the response has been handed to the async writer
+	 * @throws IOException when the async response cannot be started
 	 */
 	@GetMapping("/{id}/file")
 	@Operation(summary = "Download photo file", description = "Download the raw image file for a photo")
@@ -362,24 +909,54 @@ public class PhotoController {
 		@ApiResponse(responseCode = "200", description = "Image file downloaded successfully"),
 		@ApiResponse(responseCode = "401", description = "Not authenticated"),
 		@ApiResponse(responseCode = "403", description = "Photo does not belong to user"),
-		@ApiResponse(responseCode = "404", description = "Photo not found")
+		@ApiResponse(responseCode = "404", description = "Photo not found"),
+		@ApiResponse(responseCode = "503", description = "Too many downloads in progress")
 	})
 	public ResponseEntity<Resource> download(
 			@Parameter(description = "Photo ID", example = "1") @PathVariable Long id, 
-			@AuthenticationPrincipal CustomUserDetails userDetails) {
-		Photo photo = photoService.findById(id);
+			@AuthenticationPrincipal CustomUserDetails userDetails,
+			HttpServletRequest request,
+			HttpServletResponse response) throws IOException {
+		if (accelRedirectResponder.supports(request)) {
+			return offloadDownload(id, userDetails, response);
+		}
+		// Metadata only: the bytes come from the hot-image cache
+		ImageInfo photo = photoService.getImageInfo(id);
 		// Check if the photo belongs to the authenticated user
-		if (!photo.getUser().getId().equals(userDetails.getId())) {
+		if (!userDetails.getId().equals(photo.userId())) {
 			return ResponseEntity.status(403).build();
 		}
-		Resource resource = photoService.getImageResource(id);
-		String filename = photo.getOriginalFilename() != null ? photo.getOriginalFilename() : ("photo-" + photo.getId());
-		MediaType type = photo.getContentType() != null ? MediaType.parseMediaType(photo.getContentType()) : MediaType.APPLICATION_OCTET_STREAM;
+		String filename = photo.originalFilename() != null ? photo.originalFilename() : ("photo-" + photo.id());
+		OffHeapImageCache.Lease lease = photoService.leaseOriginal(id, photo.contentVersion());
+		if (lease != null) {
+			// Written straight from direct memory; the lease keeps the entry in place until then
+			response.setContentType(lease.contentType());
+			response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + filename + "\"");
+			if (asyncImageResponder.supports(request)) {
+				asyncImageResponder.send(request, response, lease.chunks(), lease::close);
+			} else {
+				try (lease) {
+					asyncImageResponder.write(response, lease.chunks());
+				}
+			}
+			return null;
+		}
+		CachedImage image = photoService.getOriginal(id, photo.contentVersion());
+		MediaType type = MediaType.parseMediaType(image.contentType());
+		
+		if (asyncImageResponder.supports(request)) {
+			response.setContentType(type.toString());
+			response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + filename + "\"");
+			asyncImageResponder.send(request, response, ByteBuffer.wrap(image.data()));
+			return null;
+		}
+		
+		Resource resource = new ByteArrayResource(image.data());
 		
 		// Create HttpHeaders object to avoid any potential duplicate header issues
 		HttpHeaders headers = new HttpHeaders();
 		headers.setContentType(type);
-		headers.setContentLength(photo.getSize() != null ? photo.getSize() : photo.getData().length);
+		headers.setContentLength(image.data().length);
 		
 		// Set Content-Disposition header for inline display
 		headers.set(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + filename + "\"");
@@ -389,6 +966,57 @@ public class PhotoController {
 				.body(resource);
 	}
 	
+	/**
+	 * Download the bytes as uploaded, for photos whose stored content was optimized at
+	 * ingest while <code>app.images.ingest.keep-original</code> was set.
+	 *
+	 * @param id photo identifier
+	 * @return the uploaded image bytes
+	 */
+	@GetMapping("/{id}/file/original")
+	@Operation(summary = "Download uploaded original", description = "Download the image as uploaded, when it was optimized on upload and the original was kept")
+	@ApiResponses(value = {
+		@ApiResponse(responseCode = "200", description = "Original downloaded successfully"),
+		@ApiResponse(responseCode = "401", description = "Not authenticated"),
+		@ApiResponse(responseCode = "403", description = "Photo does not belong to user"),
+		@ApiResponse(responseCode = "404", description = "Photo not found, or stored as uploaded")
+	})
+	public ResponseEntity<Resource> downloadKeptOriginal(
+			@Parameter(description = "Photo ID", example = "1") @PathVariable Long id,
+			@AuthenticationPrincipal CustomUserDetails userDetails) {
+		ImageInfo photo = photoService.getImageInfo(id);
+		if (!userDetails.getId().equals(photo.userId())) {
+			return ResponseEntity.status(403).build();
+		}
+		PhotoOriginalStore.Original original = photoService.getKeptOriginal(id);
+		String filename = photo.originalFilename();
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.parseMediaType(original.contentType()));
+		headers.setContentLength(original.data().length);
+		headers.set(HttpHeaders.CONTENT_DISPOSITION,
+				"attachment; filename=\"" + (filename != null ? filename : "photo-" + id) + "\"");
+		return ResponseEntity.ok().headers(headers).body(new ByteArrayResource(original.data()));
+	}
+
+	/**
+	 * Authorize a download from metadata alone and let nginx send the bytes.
+	 */
+	private ResponseEntity<Resource> offloadDownload(Long id, CustomUserDetails userDetails,
+			HttpServletResponse response) {
+		ImageInfo photo = photoService.getImageInfo(id);
+		if (!userDetails.getId().equals(photo.userId())) {
+			return ResponseEntity.status(403).build();
+		}
+		String filename = photo.originalFilename() != null ? photo.originalFilename() : ("photo-" + photo.id());
+		String contentType = photo.contentType() != null ? photo.contentType() : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+		response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + filename + "\"");
+		if (!accelRedirectResponder.send(response, id, photo.contentVersion(), ImageUrlSigner.Variant.ORIGINAL.path(),
+				contentType, out -> photoService.copyContent(id, photo.contentVersion(), out))) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Photo with ID " + id + " not found");
+		}
+		return null;
+	}
+
 	/**
 	 * Validate if the sort field is allowed.
 	 * 
@@ -399,7 +1027,8 @@ public class PhotoController {
 		if (sortBy == null) return false;
 		
 		// Define allowed sort fields
-		String[] allowedFields = {"id", "title", "description", "createdAt", "size"};
+		String[] allowedFields = {"id", "title", "description", "createdAt", "size",
+				"takenAt", "cameraModel", "width", "height"};
 		
 		for (String field : allowedFields) {
 			if (field.equals(sortBy)) {
@@ -0,0 +1,207 @@
+package com.redligot.backend.controller;
+
+import com.redligot.backend.dto.CreateUploadSessionRequest;
+import com.redligot.backend.dto.PhotoDto;
+import com.redligot.backend.dto.UploadSessionDto;
+import com.redligot.backend.model.Photo;
+import com.redligot.backend.model.UploadSession;
+import com.redligot.backend.model.User;
+import com.redligot.backend.security.CustomUserDetails;
+import com.redligot.backend.security.ImageUrlSigner;
+import com.redligot.backend.service.ResumableUploadService;
+import com.redligot.backend.service.UserService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * REST controller for resumable (tus-style) uploads.
+ * 
+ * Protocol: POST creates a session, PATCH appends a chunk at the offset given in
+ * the <code>Upload-Offset</code> header, HEAD reports the committed offset so an
+ * interrupted client can resume, and POST <code>/finalize</code> creates the photo.
+ */
+@RestController
+@RequestMapping("/api/uploads/sessions")
+@Tag(name = "Uploads", description = "Asynchronous upload job APIs")
+public class ResumableUploadController {
+
+	public static final String UPLOAD_OFFSET = "Upload-Offset";
+	public static final String UPLOAD_LENGTH = "Upload-Length";
+	public static final String OFFSET_OCTET_STREAM = "application/offset+octet-stream";
+
+	private final ResumableUploadService resumableUploadService;
+	private final UserService userService;
+	private final ImageUrlSigner imageUrlSigner;
+
+	public ResumableUploadController(ResumableUploadService resumableUploadService, UserService userService,
+			ImageUrlSigner imageUrlSigner) {
+		this.resumableUploadService = resumableUploadService;
+		this.userService = userService;
+		this.imageUrlSigner = imageUrlSigner;
+	}
+
+	/**
+	 * Open an upload session.
+	 *
+	 * @param request     file name, type, total length and photo metadata
+	 * @param userDetails authenticated user details
+	 * @return 201 with the session and a Location header for subsequent requests
+	 */
+	@PostMapping
+	@Operation(summary = "Create resumable upload session", description = "Declare a file and receive a session to upload chunks into")
+	@ApiResponses(value = {
+		@ApiResponse(responseCode = "201", description = "Session created", 
+					content = @Content(schema = @Schema(implementation = UploadSessionDto.class))),
+		@ApiResponse(responseCode = "400", description = "Invalid file type or size"),
+		@ApiResponse(responseCode = "401", description = "Not authenticated"),
+		@ApiResponse(responseCode = "404", description = "Gallery not found")
+	})
+	public ResponseEntity<UploadSessionDto> create(
+			@Valid @RequestBody CreateUploadSessionRequest request,
+			@AuthenticationPrincipal CustomUserDetails userDetails) {
+		UploadSession session = resumableUploadService.create(request, userDetails.getId());
+		return ResponseEntity.created(URI.create("/api/uploads/sessions/" + session.getId()))
+				.header(UPLOAD_OFFSET, String.valueOf(session.getUploadOffset()))
+				.header(UPLOAD_LENGTH, String.valueOf(session.getUploadLength()))
+				.body(toDto(session));
+	}
+
+	/**
+	 * Report how many bytes the server has committed.
+	 *
+	 * @param sessionId   session identifier
+	 * @param userDetails authenticated user details
+	 * @return empty response with <code>Upload-Offset</code> and <code>Upload-Length</code>
+	 */
+	@RequestMapping(path = "/{sessionId}", method = RequestMethod.HEAD)
+	@Operation(summary = "Get upload offset", description = "Get the committed offset to resume an interrupted upload")
+	@ApiResponses(value = {
+		@ApiResponse(responseCode = "200", description = "Offset reported in headers"),
+		@ApiResponse(responseCode = "401", description = "Not authenticated"),
+		@ApiResponse(responseCode = "404", description = "Session not found or expired")
+	})
+	public ResponseEntity<Void> head(
+			@Parameter(description = "Upload session ID") @PathVariable String sessionId,
+			@AuthenticationPrincipal CustomUserDetails userDetails) {
+		UploadSession session = resumableUploadService.get(sessionId, userDetails.getId());
+		return ResponseEntity.ok()
+				.cacheControl(CacheControl.noStore())
+				.header(UPLOAD_OFFSET, String.valueOf(session.getUploadOffset()))
+				.header(UPLOAD_LENGTH, String.valueOf(session.getUploadLength()))
+				.build();
+	}
+
+	/**
+	 * Get the full session state.
+	 *
+	 * @param sessionId   session identifier
+	 * @param userDetails authenticated user details
+	 * @return session status and offset
+	 */
+	@GetMapping("/{sessionId}")
+	@Operation(summary = "Get upload session", description = "Get the status and offset of an upload session")
+	@ApiResponses(value = {
+		@ApiResponse(responseCode = "200", description = "Session retrieved", 
+					content = @Content(schema = @Schema(implementation = UploadSessionDto.class))),
+		@ApiResponse(responseCode = "401", description = "Not authenticated"),
+		@ApiResponse(responseCode = "404", description = "Session not found or expired")
+	})
+	public ResponseEntity<UploadSessionDto> get(
+			@Parameter(description = "Upload session ID") @PathVariable String sessionId,
+			@AuthenticationPrincipal CustomUserDetails userDetails) {
+		return ResponseEntity.ok(toDto(resumableUploadService.get(sessionId, userDetails.getId())));
+	}
+
+	/**
+	 * Append a chunk. The body is the raw bytes starting at <code>Upload-Offset</code>.
+	 *
+	 * @param sessionId   session identifier
+	 * @param offset      offset the chunk starts at
+	 * @param request     raw request supplying the chunk bytes
+	 * @param userDetails authenticated user details
+	 * @return 204 with the new <code>Upload-Offset</code>
+	 * @throws IOException if the request body cannot be read
+	 */
+	@PatchMapping(path = "/{sessionId}", consumes = OFFSET_OCTET_STREAM)
+	@Operation(summary = "Upload chunk", description = "Append bytes to an upload session at the given offset")
+	@ApiResponses(value = {
+		@ApiResponse(responseCode = "204", description = "Chunk stored"),
+		@ApiResponse(responseCode = "401", description = "Not authenticated"),
+		@ApiResponse(responseCode = "404", description = "Session not found or expired"),
+		@ApiResponse(responseCode = "409", description = "Offset does not match the committed offset"),
+		@ApiResponse(responseCode = "413", description = "Chunk too large")
+	})
+	public ResponseEntity<Void> patch(
+			@Parameter(description = "Upload session ID") @PathVariable String sessionId,
+			@Parameter(description = "Offset of the first byte in the body") @RequestHeader(UPLOAD_OFFSET) long offset,
+			HttpServletRequest request,
+			@AuthenticationPrincipal CustomUserDetails userDetails) throws IOException {
+		UploadSession session = resumableUploadService.appendChunk(sessionId, userDetails.getId(), offset, request.getInputStream());
+		return ResponseEntity.noContent()
+				.header(UPLOAD_OFFSET, String.valueOf(session.getUploadOffset()))
+				.build();
+	}
+
+	/**
+	 * Create the photo from a fully uploaded session.
+	 *
+	 * @param sessionId   session identifier
+	 * @param userDetails authenticated user details
+	 * @return the created photo
+	 */
+	@PostMapping("/{sessionId}/finalize")
+	@Operation(summary = "Finalize upload", description = "Create the photo once all bytes have been uploaded")
+	@ApiResponses(value = {
+		@ApiResponse(responseCode = "200", description = "Photo created", 
+					content = @Content(schema = @Schema(implementation = PhotoDto.class))),
+		@ApiResponse(responseCode = "401", description = "Not authenticated"),
+		@ApiResponse(responseCode = "404", description = "Session not found or expired"),
+		@ApiResponse(responseCode = "409", description = "Upload incomplete")
+	})
+	public ResponseEntity<PhotoDto> finalizeUpload(
+			@Parameter(description = "Upload session ID") @PathVariable String sessionId,
+			@AuthenticationPrincipal CustomUserDetails userDetails) {
+		User user = userService.getCurrentUser(userDetails.getId());
+		Photo photo = resumableUploadService.complete(sessionId, user);
+		return ResponseEntity.ok(imageUrlSigner.applyTo(new PhotoDto(photo)));
+	}
+
+	/**
+	 * Abort an upload and discard its bytes.
+	 *
+	 * @param sessionId   session identifier
+	 * @param userDetails authenticated user details
+	 * @return 204
+	 */
+	@DeleteMapping("/{sessionId}")
+	@Operation(summary = "Cancel upload", description = "Abort an upload session and discard staged bytes")
+	@ApiResponses(value = {
+		@ApiResponse(responseCode = "204", description = "Session cancelled"),
+		@ApiResponse(responseCode = "401", description = "Not authenticated"),
+		@ApiResponse(responseCode = "404", description = "Session not found or expired")
+	})
+	public ResponseEntity<Void> cancel(
+			@Parameter(description = "Upload session ID") @PathVariable String sessionId,
+			@AuthenticationPrincipal CustomUserDetails userDetails) {
+		resumableUploadService.cancel(sessionId, userDetails.getId());
+		return ResponseEntity.noContent().build();
+	}
+
+	private UploadSessionDto toDto(UploadSession session) {
+		return new UploadSessionDto(session, resumableUploadService.getMaxChunkSize());
+	}
+}
@@ -0,0 +1,93 @@
+package com.redligot.backend.controller;
+
+import com.redligot.backend.dto.UploadJobDto;
+import com.redligot.backend.model.UploadJob;
+import com.redligot.backend.security.CustomUserDetails;
+import com.redligot.backend.service.UploadJobService;
+import com.redligot.backend.service.UploadJobWorker;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.net.URI;
+
+/**
+ * REST controller for asynchronous bulk uploads.
+ */
+@RestController
+@RequestMapping("/api/uploads")
+@Tag(name = "Uploads", description = "Asynchronous upload job APIs")
+public class UploadController {
+
+	private final UploadJobService uploadJobService;
+	private final UploadJobWorker uploadJobWorker;
+
+	public UploadController(UploadJobService uploadJobService, UploadJobWorker uploadJobWorker) {
+		this.uploadJobService = uploadJobService;
+		this.uploadJobWorker = uploadJobWorker;
+	}
+
+	/**
+	 * Stage multiple photos and persist them in the background.
+	 * Accepts the same parts as <code>POST /api/photos/bulk</code> but returns as soon
+	 * as the files are spooled to disk.
+	 *
+	 * @param files       array of uploaded image files
+	 * @param titles      array of titles (optional)
+	 * @param descriptions array of descriptions (optional)
+	 * @param galleryId   gallery ID (optional)
+	 * @param userDetails authenticated user details
+	 * @return 202 with the job status and a Location header to poll
+	 */
+	@PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+	@Operation(summary = "Start async bulk upload", description = "Stage photos and persist them in a background job")
+	@ApiResponses(value = {
+		@ApiResponse(responseCode = "202", description = "Upload job accepted", 
+					content = @Content(schema = @Schema(implementation = UploadJobDto.class))),
+		@ApiResponse(responseCode = "401", description = "Not authenticated"),
+		@ApiResponse(responseCode = "400", description = "No files provided"),
+		@ApiResponse(responseCode = "404", description = "Gallery not found")
+	})
+	public ResponseEntity<UploadJobDto> submit(
+			@Parameter(description = "Array of image files") @RequestPart("files") MultipartFile[] files,
+			@Parameter(description = "Array of titles (optional)") @RequestParam(value = "titles", required = false) String[] titles,
+			@Parameter(description = "Array of descriptions (optional)") @RequestParam(value = "descriptions", required = false) String[] descriptions,
+			@Parameter(description = "Gallery ID (optional)") @RequestParam(value = "galleryId", required = false) Long galleryId,
+			@AuthenticationPrincipal CustomUserDetails userDetails) {
+		UploadJob job = uploadJobService.submit(files, titles, descriptions, userDetails.getId(), galleryId);
+		uploadJobWorker.run(job.getId());
+		return ResponseEntity.accepted()
+				.location(URI.create("/api/uploads/" + job.getId()))
+				.body(new UploadJobDto(job));
+	}
+
+	/**
+	 * Poll the progress of an upload job.
+	 *
+	 * @param jobId       job identifier
+	 * @param userDetails authenticated user details
+	 * @return job status with per-file progress and results
+	 */
+	@GetMapping("/{jobId}")
+	@Operation(summary = "Get upload job status", description = "Get per-file progress and results of an upload job")
+	@ApiResponses(value = {
+		@ApiResponse(responseCode = "200", description = "Job status retrieved", 
+					content = @Content(schema = @Schema(implementation = UploadJobDto.class))),
+		@ApiResponse(responseCode = "401", description = "Not authenticated"),
+		@ApiResponse(responseCode = "404", description = "Job not found")
+	})
+	public ResponseEntity<UploadJobDto> get(
+			@Parameter(description = "Upload job ID") @PathVariable String jobId,
+			@AuthenticationPrincipal CustomUserDetails userDetails) {
+		return ResponseEntity.ok(uploadJobService.getJob(jobId, userDetails.getId()));
+	}
+}
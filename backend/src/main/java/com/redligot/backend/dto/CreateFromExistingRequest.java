@@ -0,0 +1,89 @@
+package com.redligot.backend.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
+import java.util.List;
+
+/**
+ * Request body for creating photos from content the user already has, identified by
+ * the SHA-256 digests returned by the upload preflight.
+ */
+public class CreateFromExistingRequest {
+
+    @NotEmpty(message = "Files list cannot be empty")
+    @Size(max = UploadPreflightRequest.MAX_FILES)
+    @Valid
+    private List<ExistingFile> files;
+
+    private Long galleryId;
+
+    public List<ExistingFile> getFiles() {
+        return files;
+    }
+
+    public void setFiles(List<ExistingFile> files) {
+        this.files = files;
+    }
+
+    public Long getGalleryId() {
+        return galleryId;
+    }
+
+    public void setGalleryId(Long galleryId) {
+        this.galleryId = galleryId;
+    }
+
+    /**
+     * A new photo and the digest of its content.
+     */
+    public static class ExistingFile {
+
+        @NotNull(message = "SHA-256 is required")
+        @Pattern(regexp = "[0-9a-fA-F]{64}", message = "SHA-256 must be 64 hex digits")
+        private String sha256;
+
+        @Size(max = 255)
+        private String title;
+
+        @Size(max = 500)
+        private String description;
+
+        @Size(max = 255)
+        private String originalFilename;
+
+        public String getSha256() {
+            return sha256;
+        }
+
+        public void setSha256(String sha256) {
+            this.sha256 = sha256;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public void setTitle(String title) {
+            this.title = title;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public void setDescription(String description) {
+            this.description = description;
+        }
+
+        public String getOriginalFilename() {
+            return originalFilename;
+        }
+
+        public void setOriginalFilename(String originalFilename) {
+            this.originalFilename = originalFilename;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.redligot.backend.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
+
+/**
+ * Request body for opening a resumable upload session.
+ */
+public class CreateUploadSessionRequest {
+
+    @NotBlank(message = "Filename is required")
+    @Size(max = 255)
+    private String filename;
+
+    @NotBlank(message = "Content type is required")
+    @Size(max = 100)
+    private String contentType;
+
+    @NotNull(message = "Upload length is required")
+    @Positive
+    private Long length;
+
+    @Size(max = 255)
+    private String title;
+
+    @Size(max = 500)
+    private String description;
+
+    private Long galleryId;
+
+    // Getters and Setters
+    public String getFilename() {
+        return filename;
+    }
+
+    public void setFilename(String filename) {
+        this.filename = filename;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public Long getLength() {
+        return length;
+    }
+
+    public void setLength(Long length) {
+        this.length = length;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public Long getGalleryId() {
+        return galleryId;
+    }
+
+    public void setGalleryId(Long galleryId) {
+        this.galleryId = galleryId;
+    }
+}
@@ -0,0 +1,27 @@
+package com.redligot.backend.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import java.util.List;
+
+/**
+ * Request body for exporting a selection of photos as a ZIP archive.
+ */
+public class ExportPhotosRequest {
+
+    @NotEmpty(message = "Photo IDs list cannot be empty")
+    private List<Long> photoIds;
+
+    public ExportPhotosRequest() {}
+
+    public ExportPhotosRequest(List<Long> photoIds) {
+        this.photoIds = photoIds;
+    }
+
+    public List<Long> getPhotoIds() {
+        return photoIds;
+    }
+
+    public void setPhotoIds(List<Long> photoIds) {
+        this.photoIds = photoIds;
+    }
+}
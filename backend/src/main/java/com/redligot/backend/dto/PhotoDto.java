@@ -1,6 +1,7 @@
 package com.redligot.backend.dto;
 
 import com.redligot.backend.model.Photo;
+import com.redligot.backend.repository.PhotoContentStore;
 import java.time.LocalDateTime;
 
 /**
@@ -17,6 +18,15 @@ public class PhotoDto {
     private LocalDateTime createdAt;
     private Long userId;
     private Long galleryId;
+    private Integer contentVersion;
+    private Integer width;
+    private Integer height;
+    private Integer orientation;
+    private LocalDateTime takenAt;
+    private String cameraModel;
+    private String blurHash;
+    private String imageUrl;
+    private String thumbnailUrl;
 
     public PhotoDto() {}
 
@@ -30,6 +40,32 @@ public class PhotoDto {
         this.createdAt = photo.getCreatedAt();
         this.userId = photo.getUser().getId();
         this.galleryId = photo.getGallery() != null ? photo.getGallery().getId() : null;
+        this.contentVersion = photo.getContentVersion();
+        this.width = photo.getWidth();
+        this.height = photo.getHeight();
+        this.orientation = photo.getOrientation();
+        this.takenAt = photo.getTakenAt();
+        this.cameraModel = photo.getCameraModel();
+        this.blurHash = photo.getBlurHash();
+    }
+
+    public PhotoDto(PhotoContentStore.PhotoDetails details) {
+        this.id = details.id();
+        this.title = details.title();
+        this.description = details.description();
+        this.originalFilename = details.originalFilename();
+        this.contentType = details.contentType();
+        this.size = details.size();
+        this.createdAt = details.createdAt();
+        this.userId = details.userId();
+        this.galleryId = details.galleryId();
+        this.contentVersion = details.contentVersion();
+        this.width = details.width();
+        this.height = details.height();
+        this.orientation = details.orientation();
+        this.takenAt = details.takenAt();
+        this.cameraModel = details.cameraModel();
+        this.blurHash = details.blurHash();
     }
 
     // Getters and Setters
@@ -104,4 +140,82 @@ public class PhotoDto {
     public void setGalleryId(Long galleryId) {
         this.galleryId = galleryId;
     }
+
+    public Integer getContentVersion() {
+        return contentVersion;
+    }
+    
+    public void setContentVersion(Integer contentVersion) {
+        this.contentVersion = contentVersion;
+    }
+
+    public Integer getWidth() {
+        return width;
+    }
+
+    public void setWidth(Integer width) {
+        this.width = width;
+    }
+
+    public Integer getHeight() {
+        return height;
+    }
+
+    public void setHeight(Integer height) {
+        this.height = height;
+    }
+
+    public Integer getOrientation() {
+        return orientation;
+    }
+
+    public void setOrientation(Integer orientation) {
+        this.orientation = orientation;
+    }
+
+    public LocalDateTime getTakenAt() {
+        return takenAt;
+    }
+
+    public void setTakenAt(LocalDateTime takenAt) {
+        this.takenAt = takenAt;
+    }
+
+    public String getCameraModel() {
+        return cameraModel;
+    }
+
+    public void setCameraModel(String cameraModel) {
+        this.cameraModel = cameraModel;
+    }
+
+    public String getBlurHash() {
+        return blurHash;
+    }
+
+    public void setBlurHash(String blurHash) {
+        this.blurHash = blurHash;
+    }
+    
+    /**
+     * Signed, cacheable URL of the original image, usable directly in {@code <img src>}.
+     */
+    public String getImageUrl() {
+        return imageUrl;
+    }
+    
+    public void setImageUrl(String imageUrl) {
+        this.imageUrl = imageUrl;
+    }
+    
+    /**
+     * Signed, cacheable URL of the listing thumbnail.
+     */
+    public String getThumbnailUrl() {
+        return thumbnailUrl;
+    }
+    
+    public void setThumbnailUrl(String thumbnailUrl) {
+        this.thumbnailUrl = thumbnailUrl;
+    }
 }
@@ -0,0 +1,182 @@
+package com.redligot.backend.dto;
+
+import com.redligot.backend.model.UploadJob;
+import com.redligot.backend.model.UploadJobItem;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * DTO describing the progress of a background upload job.
+ */
+public class UploadJobDto {
+    private String jobId;
+    private String status;
+    private Long galleryId;
+    private int totalFiles;
+    private int processedFiles;
+    private int failedFiles;
+    private LocalDateTime createdAt;
+    private LocalDateTime completedAt;
+    private List<ItemDto> items;
+
+    public UploadJobDto() {}
+
+    public UploadJobDto(UploadJob job) {
+        this.jobId = job.getId();
+        this.status = job.getStatus().name();
+        this.galleryId = job.getGalleryId();
+        this.totalFiles = job.getTotalFiles();
+        this.processedFiles = job.getProcessedFiles();
+        this.failedFiles = job.getFailedFiles();
+        this.createdAt = job.getCreatedAt();
+        this.completedAt = job.getCompletedAt();
+        this.items = job.getItems().stream()
+                .map(ItemDto::new)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Per-file progress and result.
+     */
+    public static class ItemDto {
+        private int index;
+        private String originalFilename;
+        private Long size;
+        private String status;
+        private Long photoId;
+        private String error;
+
+        public ItemDto() {}
+
+        public ItemDto(UploadJobItem item) {
+            this.index = item.getItemIndex();
+            this.originalFilename = item.getOriginalFilename();
+            this.size = item.getSize();
+            this.status = item.getStatus().name();
+            this.photoId = item.getPhotoId();
+            this.error = item.getErrorMessage();
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public void setIndex(int index) {
+            this.index = index;
+        }
+
+        public String getOriginalFilename() {
+            return originalFilename;
+        }
+
+        public void setOriginalFilename(String originalFilename) {
+            this.originalFilename = originalFilename;
+        }
+
+        public Long getSize() {
+            return size;
+        }
+
+        public void setSize(Long size) {
+            this.size = size;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public void setStatus(String status) {
+            this.status = status;
+        }
+
+        public Long getPhotoId() {
+            return photoId;
+        }
+
+        public void setPhotoId(Long photoId) {
+            this.photoId = photoId;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public void setError(String error) {
+            this.error = error;
+        }
+    }
+
+    // Getters and Setters
+    public String getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public Long getGalleryId() {
+        return galleryId;
+    }
+
+    public void setGalleryId(Long galleryId) {
+        this.galleryId = galleryId;
+    }
+
+    public int getTotalFiles() {
+        return totalFiles;
+    }
+
+    public void setTotalFiles(int totalFiles) {
+        this.totalFiles = totalFiles;
+    }
+
+    public int getProcessedFiles() {
+        return processedFiles;
+    }
+
+    public void setProcessedFiles(int processedFiles) {
+        this.processedFiles = processedFiles;
+    }
+
+    public int getFailedFiles() {
+        return failedFiles;
+    }
+
+    public void setFailedFiles(int failedFiles) {
+        this.failedFiles = failedFiles;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getCompletedAt() {
+        return completedAt;
+    }
+
+    public void setCompletedAt(LocalDateTime completedAt) {
+        this.completedAt = completedAt;
+    }
+
+    public List<ItemDto> getItems() {
+        return items;
+    }
+
+    public void setItems(List<ItemDto> items) {
+        this.items = items;
+    }
+}
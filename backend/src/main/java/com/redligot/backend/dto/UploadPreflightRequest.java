@@ -0,0 +1,63 @@
+package com.redligot.backend.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.PositiveOrZero;
+import jakarta.validation.constraints.Size;
+import java.util.List;
+
+/**
+ * Request body for asking which files of an upload the user already has.
+ */
+public class UploadPreflightRequest {
+
+    /**
+     * Most files accepted in one request.
+     */
+    public static final int MAX_FILES = 1000;
+
+    @NotEmpty(message = "Files list cannot be empty")
+    @Size(max = MAX_FILES)
+    @Valid
+    private List<FileDigest> files;
+
+    public List<FileDigest> getFiles() {
+        return files;
+    }
+
+    public void setFiles(List<FileDigest> files) {
+        this.files = files;
+    }
+
+    /**
+     * A file about to be uploaded.
+     */
+    public static class FileDigest {
+
+        @NotNull(message = "SHA-256 is required")
+        @Pattern(regexp = "[0-9a-fA-F]{64}", message = "SHA-256 must be 64 hex digits")
+        private String sha256;
+
+        @NotNull(message = "Size is required")
+        @PositiveOrZero
+        private Long size;
+
+        public String getSha256() {
+            return sha256;
+        }
+
+        public void setSha256(String sha256) {
+            this.sha256 = sha256;
+        }
+
+        public Long getSize() {
+            return size;
+        }
+
+        public void setSize(Long size) {
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.redligot.backend.dto;
+
+import com.redligot.backend.model.UploadSession;
+import java.time.LocalDateTime;
+
+/**
+ * DTO describing a resumable upload session.
+ */
+public class UploadSessionDto {
+    private String sessionId;
+    private String status;
+    private long offset;
+    private long length;
+    private int maxChunkSize;
+    private Long photoId;
+    private LocalDateTime expiresAt;
+
+    public UploadSessionDto() {}
+
+    public UploadSessionDto(UploadSession session, int maxChunkSize) {
+        this.sessionId = session.getId();
+        this.status = session.getStatus().name();
+        this.offset = session.getUploadOffset();
+        this.length = session.getUploadLength();
+        this.maxChunkSize = maxChunkSize;
+        this.photoId = session.getPhotoId();
+        this.expiresAt = session.getExpiresAt();
+    }
+
+    // Getters and Setters
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(String sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public void setOffset(long offset) {
+        this.offset = offset;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public void setLength(long length) {
+        this.length = length;
+    }
+
+    public int getMaxChunkSize() {
+        return maxChunkSize;
+    }
+
+    public void setMaxChunkSize(int maxChunkSize) {
+        this.maxChunkSize = maxChunkSize;
+    }
+
+    public Long getPhotoId() {
+        return photoId;
+    }
+
+    public void setPhotoId(Long photoId) {
+        this.photoId = photoId;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
@@ -4,14 +4,17 @@ import jakarta.persistence.*;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.hibernate.annotations.SQLRestriction;
 import java.time.LocalDateTime;
 
 /**
  * Photo entity representing an uploaded image with metadata.
  * Each photo is associated with a user for ownership and security purposes.
+ * Deleted photos stay in the table until purged and are never loaded.
  */
 @Entity
 @Table(name = "photos")
+@SQLRestriction("deleted_at IS NULL")
 public class Photo {
 
 	@Id
@@ -73,6 +76,61 @@ public class Photo {
 	@Temporal(TemporalType.TIMESTAMP)
 	private LocalDateTime createdAt;
 
+	/**
+	 * Incremented whenever the image bytes are replaced; part of the signed image URLs.
+	 */
+	@Column(name = "content_version", nullable = false)
+	private Integer contentVersion = 1;
+
+	/**
+	 * Pixel dimensions as stored, read from the image header; null if unknown.
+	 */
+	private Integer width;
+
+	private Integer height;
+
+	/**
+	 * EXIF orientation (1 to 8) the image should be displayed with.
+	 */
+	private Integer orientation;
+
+	/**
+	 * Capture time recorded by the camera, in the camera's local time.
+	 */
+	@Column(name = "taken_at")
+	private LocalDateTime takenAt;
+
+	@Column(name = "camera_model", length = 100)
+	private String cameraModel;
+
+	/**
+	 * Version of the metadata extractor that last read this photo; 0 if it never has.
+	 */
+	@JsonIgnore
+	@Column(name = "metadata_version", nullable = false)
+	private Integer metadataVersion = 0;
+
+	/**
+	 * Placeholder shown until the thumbnail loads; written only by {@code BlurHashService}.
+	 */
+	@Column(name = "blurhash", length = 40, insertable = false, updatable = false)
+	private String blurHash;
+
+	/**
+	 * SHA-256 of the bytes as uploaded, in hex; identifies files the user already has
+	 * even when the stored content was optimized.
+	 */
+	@JsonIgnore
+	@Column(name = "content_sha256", length = 64)
+	private String contentSha256;
+
+	/**
+	 * When the photo was deleted; written only by {@code PhotoContentStore}.
+	 */
+	@JsonIgnore
+	@Column(name = "deleted_at", insertable = false, updatable = false)
+	private LocalDateTime deletedAt;
+
 	public Long getId() {
 		return id;
 	}
@@ -152,4 +210,80 @@ public class Photo {
 	public void setCreatedAt(LocalDateTime createdAt) {
 		this.createdAt = createdAt;
 	}
+
+	public Integer getContentVersion() {
+		return contentVersion;
+	}
+
+	public void setContentVersion(Integer contentVersion) {
+		this.contentVersion = contentVersion;
+	}
+
+	public Integer getWidth() {
+		return width;
+	}
+
+	public void setWidth(Integer width) {
+		this.width = width;
+	}
+
+	public Integer getHeight() {
+		return height;
+	}
+
+	public void setHeight(Integer height) {
+		this.height = height;
+	}
+
+	public Integer getOrientation() {
+		return orientation;
+	}
+
+	public void setOrientation(Integer orientation) {
+		this.orientation = orientation;
+	}
+
+	public LocalDateTime getTakenAt() {
+		return takenAt;
+	}
+
+	public void setTakenAt(LocalDateTime takenAt) {
+		this.takenAt = takenAt;
+	}
+
+	public String getCameraModel() {
+		return cameraModel;
+	}
+
+	public void setCameraModel(String cameraModel) {
+		this.cameraModel = cameraModel;
+	}
+
+	public Integer getMetadataVersion() {
+		return metadataVersion;
+	}
+
+	public void setMetadataVersion(Integer metadataVersion) {
+		this.metadataVersion = metadataVersion;
+	}
+
+	public String getBlurHash() {
+		return blurHash;
+	}
+
+	public void setBlurHash(String blurHash) {
+		this.blurHash = blurHash;
+	}
+
+	public String getContentSha256() {
+		return contentSha256;
+	}
+
+	public void setContentSha256(String contentSha256) {
+		this.contentSha256 = contentSha256;
+	}
+
+	public LocalDateTime getDeletedAt() {
+		return deletedAt;
+	}
 }
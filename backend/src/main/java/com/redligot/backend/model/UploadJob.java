@@ -0,0 +1,165 @@
+package com.redligot.backend.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Background upload job created by an asynchronous bulk upload.
+ * Files are staged on local disk; the job and its items track which of them
+ * have been persisted as photos so that work can resume after a restart.
+ */
+@Entity
+@Table(name = "upload_jobs")
+public class UploadJob {
+
+	/**
+	 * Lifecycle of a job.
+	 */
+	public enum Status {
+		PENDING,
+		RUNNING,
+		COMPLETED,
+		COMPLETED_WITH_ERRORS
+	}
+
+	/**
+	 * Public job identifier (UUID) returned to the client.
+	 */
+	@Id
+	@Column(length = 36)
+	private String id;
+
+	@Column(name = "user_id", nullable = false)
+	private Long userId;
+
+	@Column(name = "gallery_id")
+	private Long galleryId;
+
+	@Enumerated(EnumType.STRING)
+	@Column(length = 30, nullable = false)
+	private Status status;
+
+	@Column(name = "total_files", nullable = false)
+	private int totalFiles;
+
+	@Column(name = "processed_files", nullable = false)
+	private int processedFiles;
+
+	@Column(name = "failed_files", nullable = false)
+	private int failedFiles;
+
+	@Column(name = "created_at", nullable = false, updatable = false)
+	private LocalDateTime createdAt;
+
+	@Column(name = "updated_at", nullable = false)
+	private LocalDateTime updatedAt;
+
+	@Column(name = "completed_at")
+	private LocalDateTime completedAt;
+
+	@OneToMany(mappedBy = "job", cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.LAZY)
+	@OrderBy("itemIndex ASC")
+	private List<UploadJobItem> items = new ArrayList<>();
+
+	public UploadJob() {
+		this.createdAt = LocalDateTime.now();
+		this.updatedAt = this.createdAt;
+	}
+
+	public void addItem(UploadJobItem item) {
+		items.add(item);
+		item.setJob(this);
+		totalFiles = items.size();
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public Long getUserId() {
+		return userId;
+	}
+
+	public void setUserId(Long userId) {
+		this.userId = userId;
+	}
+
+	public Long getGalleryId() {
+		return galleryId;
+	}
+
+	public void setGalleryId(Long galleryId) {
+		this.galleryId = galleryId;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public void setStatus(Status status) {
+		this.status = status;
+		this.updatedAt = LocalDateTime.now();
+	}
+
+	public int getTotalFiles() {
+		return totalFiles;
+	}
+
+	public void setTotalFiles(int totalFiles) {
+		this.totalFiles = totalFiles;
+	}
+
+	public int getProcessedFiles() {
+		return processedFiles;
+	}
+
+	public void setProcessedFiles(int processedFiles) {
+		this.processedFiles = processedFiles;
+	}
+
+	public int getFailedFiles() {
+		return failedFiles;
+	}
+
+	public void setFailedFiles(int failedFiles) {
+		this.failedFiles = failedFiles;
+	}
+
+	public LocalDateTime getCreatedAt() {
+		return createdAt;
+	}
+
+	public void setCreatedAt(LocalDateTime createdAt) {
+		this.createdAt = createdAt;
+	}
+
+	public LocalDateTime getUpdatedAt() {
+		return updatedAt;
+	}
+
+	public void setUpdatedAt(LocalDateTime updatedAt) {
+		this.updatedAt = updatedAt;
+	}
+
+	public LocalDateTime getCompletedAt() {
+		return completedAt;
+	}
+
+	public void setCompletedAt(LocalDateTime completedAt) {
+		this.completedAt = completedAt;
+	}
+
+	public List<UploadJobItem> getItems() {
+		return items;
+	}
+
+	public void setItems(List<UploadJobItem> items) {
+		this.items = items;
+	}
+}
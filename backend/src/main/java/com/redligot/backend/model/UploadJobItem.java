@@ -0,0 +1,157 @@
+package com.redligot.backend.model;
+
+import jakarta.persistence.*;
+
+/**
+ * A single staged file within an {@link UploadJob}.
+ */
+@Entity
+@Table(name = "upload_job_items")
+public class UploadJobItem {
+
+	/**
+	 * Processing state of a staged file.
+	 */
+	public enum Status {
+		PENDING,
+		COMPLETED,
+		FAILED
+	}
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	private Long id;
+
+	@ManyToOne(fetch = FetchType.LAZY)
+	@JoinColumn(name = "job_id", nullable = false)
+	private UploadJob job;
+
+	@Column(name = "item_index", nullable = false)
+	private int itemIndex;
+
+	@Column(length = 255)
+	private String title;
+
+	@Column(length = 500)
+	private String description;
+
+	@Column(length = 255)
+	private String originalFilename;
+
+	@Column(length = 100)
+	private String contentType;
+
+	private Long size;
+
+	/**
+	 * Absolute path of the staged file; cleared once the file has been removed.
+	 */
+	@Column(length = 1000)
+	private String stagedPath;
+
+	@Enumerated(EnumType.STRING)
+	@Column(length = 30, nullable = false)
+	private Status status = Status.PENDING;
+
+	@Column(name = "photo_id")
+	private Long photoId;
+
+	@Column(length = 500)
+	private String errorMessage;
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public UploadJob getJob() {
+		return job;
+	}
+
+	public void setJob(UploadJob job) {
+		this.job = job;
+	}
+
+	public int getItemIndex() {
+		return itemIndex;
+	}
+
+	public void setItemIndex(int itemIndex) {
+		this.itemIndex = itemIndex;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public void setTitle(String title) {
+		this.title = title;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public void setDescription(String description) {
+		this.description = description;
+	}
+
+	public String getOriginalFilename() {
+		return originalFilename;
+	}
+
+	public void setOriginalFilename(String originalFilename) {
+		this.originalFilename = originalFilename;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	public void setContentType(String contentType) {
+		this.contentType = contentType;
+	}
+
+	public Long getSize() {
+		return size;
+	}
+
+	public void setSize(Long size) {
+		this.size = size;
+	}
+
+	public String getStagedPath() {
+		return stagedPath;
+	}
+
+	public void setStagedPath(String stagedPath) {
+		this.stagedPath = stagedPath;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public void setStatus(Status status) {
+		this.status = status;
+	}
+
+	public Long getPhotoId() {
+		return photoId;
+	}
+
+	public void setPhotoId(Long photoId) {
+		this.photoId = photoId;
+	}
+
+	public String getErrorMessage() {
+		return errorMessage;
+	}
+
+	public void setErrorMessage(String errorMessage) {
+		this.errorMessage = errorMessage;
+	}
+}
@@ -0,0 +1,202 @@
+package com.redligot.backend.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Resumable upload of a single photo.
+ * Chunks are appended to a staging file at {@link #uploadOffset}; once the offset
+ * reaches {@link #uploadLength} the session can be finalized into a {@link Photo}.
+ */
+@Entity
+@Table(name = "upload_sessions")
+public class UploadSession {
+
+	/**
+	 * Lifecycle of a session.
+	 */
+	public enum Status {
+		ACTIVE,
+		COMPLETED
+	}
+
+	@Id
+	@Column(length = 36)
+	private String id;
+
+	@Column(name = "user_id", nullable = false)
+	private Long userId;
+
+	@Column(name = "gallery_id")
+	private Long galleryId;
+
+	@Column(length = 255)
+	private String title;
+
+	@Column(length = 500)
+	private String description;
+
+	@Column(length = 255)
+	private String originalFilename;
+
+	@Column(length = 100)
+	private String contentType;
+
+	/**
+	 * Total number of bytes the client declared it will send.
+	 */
+	@Column(name = "upload_length", nullable = false)
+	private long uploadLength;
+
+	/**
+	 * Number of bytes durably written to the staging file.
+	 */
+	@Column(name = "upload_offset", nullable = false)
+	private long uploadOffset;
+
+	@Column(length = 1000)
+	private String stagedPath;
+
+	@Enumerated(EnumType.STRING)
+	@Column(length = 30, nullable = false)
+	private Status status = Status.ACTIVE;
+
+	@Column(name = "photo_id")
+	private Long photoId;
+
+	@Column(name = "created_at", nullable = false, updatable = false)
+	private LocalDateTime createdAt;
+
+	@Column(name = "updated_at", nullable = false)
+	private LocalDateTime updatedAt;
+
+	@Column(name = "expires_at", nullable = false)
+	private LocalDateTime expiresAt;
+
+	public UploadSession() {
+		this.createdAt = LocalDateTime.now();
+		this.updatedAt = this.createdAt;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public Long getUserId() {
+		return userId;
+	}
+
+	public void setUserId(Long userId) {
+		this.userId = userId;
+	}
+
+	public Long getGalleryId() {
+		return galleryId;
+	}
+
+	public void setGalleryId(Long galleryId) {
+		this.galleryId = galleryId;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public void setTitle(String title) {
+		this.title = title;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public void setDescription(String description) {
+		this.description = description;
+	}
+
+	public String getOriginalFilename() {
+		return originalFilename;
+	}
+
+	public void setOriginalFilename(String originalFilename) {
+		this.originalFilename = originalFilename;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	public void setContentType(String contentType) {
+		this.contentType = contentType;
+	}
+
+	public long getUploadLength() {
+		return uploadLength;
+	}
+
+	public void setUploadLength(long uploadLength) {
+		this.uploadLength = uploadLength;
+	}
+
+	public long getUploadOffset() {
+		return uploadOffset;
+	}
+
+	public void setUploadOffset(long uploadOffset) {
+		this.uploadOffset = uploadOffset;
+		this.updatedAt = LocalDateTime.now();
+	}
+
+	public String getStagedPath() {
+		return stagedPath;
+	}
+
+	public void setStagedPath(String stagedPath) {
+		this.stagedPath = stagedPath;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public void setStatus(Status status) {
+		this.status = status;
+		this.updatedAt = LocalDateTime.now();
+	}
+
+	public Long getPhotoId() {
+		return photoId;
+	}
+
+	public void setPhotoId(Long photoId) {
+		this.photoId = photoId;
+	}
+
+	public LocalDateTime getCreatedAt() {
+		return createdAt;
+	}
+
+	public void setCreatedAt(LocalDateTime createdAt) {
+		this.createdAt = createdAt;
+	}
+
+	public LocalDateTime getUpdatedAt() {
+		return updatedAt;
+	}
+
+	public void setUpdatedAt(LocalDateTime updatedAt) {
+		this.updatedAt = updatedAt;
+	}
+
+	public LocalDateTime getExpiresAt() {
+		return expiresAt;
+	}
+
+	public void setExpiresAt(LocalDateTime expiresAt) {
+		this.expiresAt = expiresAt;
+	}
+}
@@ -0,0 +1,124 @@
+package com.redligot.backend.repository;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * JDBC access to the <code>gallery_covers</code> cache table and the photos covers are drawn from.
+ */
+@Repository
+public class GalleryCoverStore {
+
+    private static final String SOURCES =
+            "SELECT p.id, p.content_version, p.orientation FROM photos p WHERE p.gallery_id = ? AND p.deleted_at IS NULL ";
+
+    private static final String UPDATE_COVER =
+            "UPDATE gallery_covers SET cover_version = ?, size = ?, data = ?, created_at = CURRENT TIMESTAMP "
+            + "WHERE gallery_id = ?";
+
+    private static final String INSERT_COVER =
+            "INSERT INTO gallery_covers (gallery_id, cover_version, size, data) VALUES (?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public GalleryCoverStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * A photo shown on a gallery cover.
+     *
+     * @param orientation EXIF orientation, or null if unknown
+     */
+    public record CoverSource(long photoId, int contentVersion, Integer orientation) {}
+
+    /**
+     * An encoded cover mosaic.
+     */
+    public record Cover(long galleryId, String version, byte[] data) {}
+
+    /**
+     * Load the first photos of a gallery the user owns.
+     *
+     * @param galleryId Gallery ID
+     * @param userId Owner user ID, or null to skip the ownership check
+     * @param limit Most photos to return
+     * @return the photos in ID order; empty if the gallery has none or belongs to another user
+     */
+    public List<CoverSource> findSources(long galleryId, Long userId, int limit) {
+        String sql = SOURCES + (userId != null ? "AND p.user_id = ? " : "") + "ORDER BY p.id FETCH FIRST " + limit + " ROWS ONLY";
+        Object[] args = userId != null ? new Object[] {galleryId, userId} : new Object[] {galleryId};
+        return jdbcTemplate.query(sql, (rs, rowNum) -> {
+            int orientation = rs.getInt(3);
+            return new CoverSource(rs.getLong(1), rs.getInt(2), rs.wasNull() ? null : orientation);
+        }, args);
+    }
+
+    /**
+     * Find the galleries a set of photos is in, e.g. before deleting them.
+     *
+     * @param photoIds Photo IDs
+     * @return distinct gallery IDs
+     */
+    public List<Long> findGalleryIds(Collection<Long> photoIds) {
+        if (photoIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Long> ids = List.copyOf(photoIds);
+        return jdbcTemplate.queryForList("SELECT DISTINCT gallery_id FROM photos WHERE gallery_id IS NOT NULL AND id IN ("
+                + PhotoContentStore.placeholders(ids) + ")", Long.class, ids.toArray());
+    }
+
+    /**
+     * Load the cached cover of a gallery, without an ownership check.
+     *
+     * @param galleryId Gallery ID
+     * @return the cover, or null if none is cached
+     */
+    public Cover find(long galleryId) {
+        List<Cover> found = jdbcTemplate.query("SELECT gallery_id, cover_version, data FROM gallery_covers WHERE gallery_id = ?",
+                (rs, rowNum) -> new Cover(rs.getLong(1), rs.getString(2), rs.getBytes(3)), galleryId);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /**
+     * Load the version of a gallery's cached cover without its data.
+     *
+     * @param galleryId Gallery ID
+     * @return the version, or null if no cover is cached
+     */
+    public String findVersion(long galleryId) {
+        List<String> found = jdbcTemplate.queryForList("SELECT cover_version FROM gallery_covers WHERE gallery_id = ?",
+                String.class, galleryId);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /**
+     * Cache a cover, replacing any earlier one of the gallery.
+     *
+     * @param cover Cover to store
+     */
+    public void save(Cover cover) {
+        if (jdbcTemplate.update(UPDATE_COVER, cover.version(), cover.data().length, cover.data(), cover.galleryId()) == 0) {
+            try {
+                jdbcTemplate.update(INSERT_COVER, cover.galleryId(), cover.version(), cover.data().length, cover.data());
+            } catch (DuplicateKeyException e) {
+                // Drawn concurrently by another request; both copies are current
+            }
+        }
+    }
+
+    /**
+     * Drop the cached cover of a gallery that no longer has photos.
+     *
+     * @param galleryId Gallery ID
+     */
+    public void delete(long galleryId) {
+        jdbcTemplate.update("DELETE FROM gallery_covers WHERE gallery_id = ?", galleryId);
+    }
+}
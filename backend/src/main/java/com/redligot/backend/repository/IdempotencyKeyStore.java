@@ -0,0 +1,124 @@
+package com.redligot.backend.repository;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * JDBC access to the <code>idempotency_keys</code> table.
+ *
+ * <p>Each statement commits on its own, so a claimed key is visible to concurrent
+ * requests on every instance while the first one is still running.</p>
+ */
+@Repository
+public class IdempotencyKeyStore {
+
+    public static final String IN_PROGRESS = "IN_PROGRESS";
+    public static final String COMPLETED = "COMPLETED";
+
+    private static final String INSERT_KEY =
+            "INSERT INTO idempotency_keys (user_id, idempotency_key, request_fingerprint, status, expires_at) "
+            + "VALUES (?, ?, ?, '" + IN_PROGRESS + "', ?)";
+
+    private static final String COMPLETE_KEY =
+            "UPDATE idempotency_keys SET status = '" + COMPLETED + "', response_status = ?, response_body = ?, expires_at = ? "
+            + "WHERE user_id = ? AND idempotency_key = ?";
+
+    private static final String DELETE_KEY = "DELETE FROM idempotency_keys WHERE user_id = ? AND idempotency_key = ?";
+
+    private static final String DELETE_EXPIRED_KEY =
+            "DELETE FROM idempotency_keys WHERE user_id = ? AND idempotency_key = ? AND expires_at < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public IdempotencyKeyStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * A claimed key and, once completed, the response to replay.
+     *
+     * @param fingerprint Method and path of the request that claimed the key
+     * @param status {@link #IN_PROGRESS} or {@link #COMPLETED}
+     * @param responseStatus HTTP status of the stored response, or null while in progress
+     * @param responseBody JSON body of the stored response, or null
+     */
+    public record IdempotencyKey(String fingerprint, String status, Integer responseStatus, String responseBody,
+                                 LocalDateTime expiresAt) {}
+
+    /**
+     * Claim a key for a request about to run.
+     *
+     * @param userId Owner user ID
+     * @param key Idempotency-Key header value
+     * @param fingerprint Method and path of the request
+     * @param expiresAt When the claim lapses if the request never completes
+     * @return false if the key is already claimed
+     */
+    public boolean claim(long userId, String key, String fingerprint, LocalDateTime expiresAt) {
+        try {
+            jdbcTemplate.update(INSERT_KEY, userId, key, fingerprint, Timestamp.valueOf(expiresAt));
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Load a claimed key.
+     *
+     * @param userId Owner user ID
+     * @param key Idempotency-Key header value
+     * @return the key, or null if it is not claimed
+     */
+    public IdempotencyKey find(long userId, String key) {
+        List<IdempotencyKey> found = jdbcTemplate.query(
+                "SELECT request_fingerprint, status, response_status, response_body, expires_at FROM idempotency_keys "
+                + "WHERE user_id = ? AND idempotency_key = ?",
+                (rs, rowNum) -> {
+                    int responseStatus = rs.getInt(3);
+                    return new IdempotencyKey(rs.getString(1), rs.getString(2), rs.wasNull() ? null : responseStatus,
+                            rs.getString(4), rs.getTimestamp(5).toLocalDateTime());
+                },
+                userId, key);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /**
+     * Store the response of the request that claimed a key.
+     *
+     * @param expiresAt Until when the response is replayed
+     */
+    public void complete(long userId, String key, int responseStatus, String responseBody, LocalDateTime expiresAt) {
+        jdbcTemplate.update(COMPLETE_KEY, responseStatus, responseBody, Timestamp.valueOf(expiresAt), userId, key);
+    }
+
+    /**
+     * Release a key, e.g. after its request failed, so a retry runs again.
+     */
+    public void release(long userId, String key) {
+        jdbcTemplate.update(DELETE_KEY, userId, key);
+    }
+
+    /**
+     * Release a key only if it has expired.
+     *
+     * @return true if an expired claim was removed
+     */
+    public boolean releaseIfExpired(long userId, String key, LocalDateTime now) {
+        return jdbcTemplate.update(DELETE_EXPIRED_KEY, userId, key, Timestamp.valueOf(now)) > 0;
+    }
+
+    /**
+     * Delete every expired key.
+     *
+     * @return number of keys deleted
+     */
+    public int deleteExpired(LocalDateTime now) {
+        return jdbcTemplate.update("DELETE FROM idempotency_keys WHERE expires_at < ?", Timestamp.valueOf(now));
+    }
+}
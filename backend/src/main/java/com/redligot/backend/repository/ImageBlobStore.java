@@ -0,0 +1,182 @@
+package com.redligot.backend.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Filesystem copies of image content, written on first request so a front proxy can
+ * serve the bytes itself (see <code>X-Accel-Redirect</code> in nginx.conf).
+ *
+ * <p>DB2 stays the source of truth; files here are derived and can be deleted at any
+ * time. A file name carries the photo ID, content version and variant
+ * (<code>2a/42-3-original.jpg</code>), so a replaced image is written to a new name
+ * and a half-written file is never visible: content goes to a temporary file that is
+ * moved into place.</p>
+ */
+@Repository
+public class ImageBlobStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageBlobStore.class);
+
+    private static final Map<String, String> EXTENSIONS = Map.of(
+            "image/jpeg", "jpg",
+            "image/jpg", "jpg",
+            "image/png", "png",
+            "image/gif", "gif",
+            "image/webp", "webp",
+            "image/bmp", "bmp",
+            "image/avif", "avif",
+            "image/svg+xml", "svg",
+            "application/xml", "xml");
+
+    /**
+     * Writes a blob's content.
+     */
+    @FunctionalInterface
+    public interface BlobWriter {
+        /**
+         * @return false if there is no content (e.g. the photo was deleted meanwhile)
+         */
+        boolean writeTo(OutputStream out) throws IOException;
+    }
+
+    private final Path root;
+
+    public ImageBlobStore(@Value("${app.images.blob-store.dir:${java.io.tmpdir}/photo-blobs}") String root) {
+        this.root = Paths.get(root).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Return the blob for a photo variant, writing it first if it does not exist yet.
+     *
+     * @param photoId Photo ID
+     * @param version Content version
+     * @param variant Variant name, e.g. <code>original</code>
+     * @param contentType MIME type; picks the file extension the proxy derives the type from
+     * @param writer Produces the content when the file is missing
+     * @return path relative to the store root, using <code>/</code>, or null if the writer had no content
+     * @throws UncheckedIOException if the file cannot be written
+     */
+    public String ensure(long photoId, int version, String variant, String contentType, BlobWriter writer) {
+        String relative = relativePath(photoId, version, variant, contentType);
+        Path target = root.resolve(relative);
+        if (Files.isRegularFile(target)) {
+            return relative;
+        }
+        Path temp = null;
+        try {
+            Files.createDirectories(target.getParent());
+            temp = Files.createTempFile(target.getParent(), ".blob-", ".tmp");
+            boolean written;
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                written = writer.writeTo(out);
+            }
+            if (!written) {
+                return null;
+            }
+            move(temp, target);
+            temp = null;
+            return relative;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write blob " + relative, e);
+        } finally {
+            if (temp != null) {
+                deleteQuietly(temp);
+            }
+        }
+    }
+
+    /**
+     * Look up a blob that has already been written, without writing it.
+     *
+     * @param photoId Photo ID
+     * @param version Content version
+     * @param variant Variant name
+     * @param contentType MIME type the blob was written with
+     * @return path relative to the store root, or null if there is no such blob
+     */
+    public String find(long photoId, int version, String variant, String contentType) {
+        String relative = relativePath(photoId, version, variant, contentType);
+        return Files.isRegularFile(root.resolve(relative)) ? relative : null;
+    }
+
+    /**
+     * @param relative Path returned by {@link #ensure} or {@link #find}
+     * @return the blob's file
+     */
+    public Path resolve(String relative) {
+        return root.resolve(relative);
+    }
+
+    /**
+     * Delete every stored variant and version of a photo.
+     *
+     * @param photoId Photo ID
+     */
+    public void evict(long photoId) {
+        Path dir = root.resolve(shard(photoId));
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, photoId + "-*")) {
+            for (Path file : files) {
+                deleteQuietly(file);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to evict blobs of photo {}: {}", photoId, e.getMessage());
+        }
+    }
+
+    private static void move(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Failed to delete blob file {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static String relativePath(long photoId, int version, String variant, String contentType) {
+        return shard(photoId) + "/" + photoId + "-" + version + "-" + variant + "." + extensionOf(contentType);
+    }
+
+    /**
+     * Spread files over 256 directories so none grows too large.
+     */
+    private static String shard(long photoId) {
+        return String.format("%02x", photoId & 0xff);
+    }
+
+    private static String extensionOf(String contentType) {
+        if (contentType == null) {
+            return "bin";
+        }
+        String type = contentType.toLowerCase(Locale.ROOT);
+        int semicolon = type.indexOf(';');
+        if (semicolon >= 0) {
+            type = type.substring(0, semicolon).trim();
+        }
+        return EXTENSIONS.getOrDefault(type, "bin");
+    }
+}
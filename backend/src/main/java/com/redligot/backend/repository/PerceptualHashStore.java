@@ -0,0 +1,85 @@
+package com.redligot.backend.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * JDBC access to the perceptual hash columns of <code>photos</code>.
+ */
+@Repository
+public class PerceptualHashStore {
+
+    private static final String UPDATE_HASH = "UPDATE photos SET dhash = ?, dhash_version = ? "
+            + "WHERE id = ? AND deleted_at IS NULL";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public PerceptualHashStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Hash state of one photo.
+     *
+     * @param hash dHash, or null if the photo has none
+     * @param version Hash version that processed the photo; 0 if none has yet
+     */
+    public record PhotoHash(long photoId, long userId, Long hash, int version) {}
+
+    /**
+     * Receives the hashed photos of a user.
+     */
+    @FunctionalInterface
+    public interface HashConsumer {
+        void accept(long photoId, long hash);
+    }
+
+    /**
+     * Store a photo's hash.
+     *
+     * @param photoId Photo ID
+     * @param hash dHash, or null if the image could not be hashed
+     * @param version Hash version
+     * @return the owner's user ID, or null if the photo no longer exists
+     */
+    public Long save(long photoId, Long hash, int version) {
+        if (jdbcTemplate.update(UPDATE_HASH, hash, version, photoId) == 0) {
+            return null;
+        }
+        List<Long> owner = jdbcTemplate.queryForList("SELECT user_id FROM photos WHERE id = ? AND deleted_at IS NULL",
+                Long.class, photoId);
+        return owner.isEmpty() ? null : owner.get(0);
+    }
+
+    /**
+     * Load the hash state of one photo, without an ownership check.
+     *
+     * @param photoId Photo ID
+     * @return the hash state, or null if the photo does not exist
+     */
+    public PhotoHash find(long photoId) {
+        List<PhotoHash> found = jdbcTemplate.query(
+                "SELECT id, user_id, dhash, dhash_version FROM photos WHERE id = ? AND deleted_at IS NULL",
+                (rs, rowNum) -> {
+                    long hash = rs.getLong(3);
+                    return new PhotoHash(rs.getLong(1), rs.getLong(2), rs.wasNull() ? null : hash, rs.getInt(4));
+                }, photoId);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /**
+     * Stream every hashed photo of a user, in ID order.
+     *
+     * @param userId Owner user ID
+     * @param consumer Receives each photo ID and hash
+     */
+    public void forEachHash(long userId, HashConsumer consumer) {
+        jdbcTemplate.query("SELECT id, dhash FROM photos WHERE user_id = ? AND dhash IS NOT NULL "
+                + "AND deleted_at IS NULL ORDER BY id",
+                rs -> {
+                    consumer.accept(rs.getLong(1), rs.getLong(2));
+                }, userId);
+    }
+}
@@ -0,0 +1,762 @@
+package com.redligot.backend.repository;
+
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * JDBC access to photo content that bypasses the entity's in-memory <code>byte[]</code>.
+ *
+ * <p>{@link #insert} binds the image as a stream, so the driver pulls bytes from the
+ * request body as it sends them to DB2 instead of materializing the whole file.
+ * The listing queries select metadata columns only, and {@link #readContent} reads
+ * one BLOB at a time through the driver's stream.</p>
+ */
+@Repository
+public class PhotoContentStore {
+
+    private static final String INSERT_PHOTO =
+            "INSERT INTO photos (title, description, original_filename, content_type, size, data, user_id, gallery_id, created_at) "
+            + "VALUES (?, ?, ?, ?, 0, ?, ?, ?, ?)";
+
+    private static final String INSERT_PHOTO_WITH_SIZE =
+            "INSERT INTO photos (title, description, original_filename, content_type, size, data, user_id, gallery_id, created_at, "
+            + "width, height, orientation, taken_at, camera_model, metadata_version, content_sha256) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // Copies content and header metadata within the database; derived values are recomputed
+    private static final String COPY_PHOTO =
+            "INSERT INTO photos (title, description, original_filename, content_type, size, data, user_id, gallery_id, created_at, "
+            + "width, height, orientation, taken_at, camera_model, metadata_version, content_sha256) "
+            + "SELECT ?, ?, ?, content_type, size, data, user_id, ?, ?, "
+            + "width, height, orientation, taken_at, camera_model, metadata_version, content_sha256 "
+            + "FROM photos WHERE id = ? AND user_id = ? AND deleted_at IS NULL";
+
+    private static final String UPDATE_SIZE = "UPDATE photos SET size = ? WHERE id = ?";
+
+    private static final String UPDATE_SIZE_AND_HASH = "UPDATE photos SET size = ?, content_sha256 = ? WHERE id = ?";
+
+    private static final String UPDATE_METADATA =
+            "UPDATE photos SET width = ?, height = ?, orientation = ?, taken_at = ?, camera_model = ?, metadata_version = ? "
+            + "WHERE id = ?";
+
+    private static final String UPDATE_CONTENT_HASH = "UPDATE photos SET content_sha256 = ? WHERE id = ?";
+
+    private static final String UPDATE_BLUR_HASH = "UPDATE photos SET blurhash = ?, blurhash_version = ? WHERE id = ?";
+
+    private static final String SELECT_SUMMARY =
+            "SELECT id, title, original_filename, content_type, size, created_at FROM photos ";
+
+    private static final String SELECT_DETAILS =
+            "SELECT id, title, description, original_filename, content_type, size, created_at, user_id, gallery_id, "
+            + "content_version, width, height, orientation, taken_at, camera_model, blurhash FROM photos ";
+
+    // Keeps IN lists well below DB2's limit on parameter markers
+    private static final int MAX_IDS_PER_QUERY = 1000;
+
+    private static final String SELECT_CONTENT = "SELECT data FROM photos WHERE id = ? AND deleted_at IS NULL";
+
+    private static final String SELECT_CONTENT_OF_VERSION =
+            "SELECT data FROM photos WHERE id = ? AND content_version = ? AND deleted_at IS NULL";
+
+    private static final String SELECT_VERSIONED_CONTENT =
+            "SELECT id, content_version, data FROM photos WHERE id = ? AND deleted_at IS NULL";
+
+    private static final String SELECT_IMAGE_INFO =
+            "SELECT id, user_id, original_filename, content_type, size, content_version FROM photos "
+            + "WHERE id = ? AND deleted_at IS NULL";
+
+    private static final String SELECT_IMAGE_GEOMETRY =
+            "SELECT id, user_id, content_type, content_version, width, height, orientation FROM photos "
+            + "WHERE id = ? AND deleted_at IS NULL";
+
+    // Rechecks the cutoff so a photo restored since it was selected is kept
+    private static final String PURGE_PHOTO = "DELETE FROM photos WHERE id = ? AND deleted_at < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public PhotoContentStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Thrown from the content stream when it grows past the allowed size.
+     */
+    public static class ContentTooLargeException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        public ContentTooLargeException(long maxBytes) {
+            super("Content exceeds " + maxBytes + " bytes");
+        }
+    }
+
+    /**
+     * Result of a streamed insert.
+     */
+    public record StoredContent(long id, long size) {}
+
+    /**
+     * A photo to insert with its content already in memory.
+     *
+     * @param contentSha256 SHA-256 of the content as uploaded, in hex
+     */
+    public record NewPhoto(String title, String originalFilename, String contentType, byte[] data,
+                           ImageMetadata metadata, String contentSha256) {}
+
+    /**
+     * A photo to insert with the content of another photo.
+     *
+     * @param sourceId Photo whose content is copied
+     */
+    public record ContentCopy(long sourceId, String title, String description, String originalFilename) {}
+
+    /**
+     * Header metadata of an image; any field may be null when the file does not carry it.
+     *
+     * @param width Pixel width as stored, before applying the orientation
+     * @param height Pixel height as stored, before applying the orientation
+     * @param orientation EXIF orientation, 1 to 8
+     * @param takenAt Capture time as recorded by the camera (local time, no zone)
+     * @param cameraModel Camera model name
+     * @param version Version of the extractor that produced it
+     */
+    public record ImageMetadata(Integer width, Integer height, Integer orientation, LocalDateTime takenAt,
+                                String cameraModel, int version) {}
+
+    /**
+     * Photo metadata without content.
+     */
+    public record PhotoSummary(long id, String title, String originalFilename, String contentType,
+                               long size, LocalDateTime createdAt) {}
+
+    /**
+     * Everything a photo response shows, without the content.
+     */
+    public record PhotoDetails(long id, String title, String description, String originalFilename,
+                               String contentType, long size, LocalDateTime createdAt, long userId, Long galleryId,
+                               int contentVersion, Integer width, Integer height, Integer orientation,
+                               LocalDateTime takenAt, String cameraModel, String blurHash) {}
+
+    /**
+     * A deleted photo waiting to be purged.
+     *
+     * @param size Content size in bytes
+     */
+    public record DeletedPhoto(long id, long size) {}
+
+    /**
+     * What is needed to authorize and describe an image response, without its content.
+     */
+    public record ImageInfo(long id, long userId, String originalFilename, String contentType,
+                            long size, int contentVersion) {}
+
+    /**
+     * Size and orientation of a photo as read from its headers, without its content.
+     *
+     * @param width Stored width before orientation is applied, or null if unknown
+     * @param height Stored height before orientation is applied, or null if unknown
+     * @param orientation EXIF orientation (1-8), or null if none
+     */
+    public record ImageGeometry(long id, long userId, String contentType, int contentVersion,
+                                Integer width, Integer height, Integer orientation) {}
+
+    /**
+     * Consumes the content of each row of a multi-photo query, with the version it belongs to.
+     */
+    @FunctionalInterface
+    public interface ContentVisitor {
+        void visit(long id, int contentVersion, InputStream content) throws IOException;
+    }
+
+    /**
+     * Consumes a photo's content while its result set is open.
+     */
+    @FunctionalInterface
+    public interface ContentReader<T> {
+        T read(InputStream content) throws IOException;
+    }
+
+    /**
+     * Insert a photo row whose content is read from {@code content}.
+     * The size is only known once the stream is exhausted, so it is written in a
+     * second statement within the same transaction.
+     *
+     * @param title Photo title
+     * @param description Photo description (optional)
+     * @param originalFilename Filename provided by the client
+     * @param contentType MIME type
+     * @param content Image bytes; consumed but not closed
+     * @param maxBytes Largest content accepted
+     * @param userId Owner user ID
+     * @param galleryId Gallery ID (optional)
+     * @param createdAt Creation timestamp
+     * @return generated ID and content size
+     * @throws org.springframework.dao.DataAccessException if the insert fails; when the limit
+     *         was exceeded the cause chain contains a {@link ContentTooLargeException}
+     */
+    @Transactional
+    public StoredContent insert(String title, String description, String originalFilename, String contentType,
+                                InputStream content, long maxBytes, Long userId, Long galleryId, LocalDateTime createdAt) {
+        return insert(title, description, originalFilename, contentType, content, maxBytes, userId, galleryId, createdAt,
+                null, null);
+    }
+
+    /**
+     * Insert a photo row whose content is read from {@code content}, then store the
+     * metadata and content digest that were gathered while the content streamed past,
+     * in the same transaction, so a stored photo never lacks its digest.
+     *
+     * @param metadata Called once the content has been read; may be null, or return null
+     * @param contentSha256 Called once the content has been read, for the hex SHA-256 of
+     *        the content as uploaded; may be null
+     * @see #insert(String, String, String, String, InputStream, long, Long, Long, LocalDateTime)
+     */
+    @Transactional
+    public StoredContent insert(String title, String description, String originalFilename, String contentType,
+                                InputStream content, long maxBytes, Long userId, Long galleryId, LocalDateTime createdAt,
+                                Supplier<ImageMetadata> metadata, Supplier<String> contentSha256) {
+        CountingInputStream counted = new CountingInputStream(content, maxBytes);
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement(INSERT_PHOTO, new String[] {"id"});
+            ps.setString(1, title);
+            ps.setString(2, description);
+            ps.setString(3, originalFilename);
+            ps.setString(4, contentType);
+            ps.setBinaryStream(5, counted);
+            ps.setLong(6, userId);
+            if (galleryId != null) {
+                ps.setLong(7, galleryId);
+            } else {
+                ps.setNull(7, Types.BIGINT);
+            }
+            ps.setTimestamp(8, Timestamp.valueOf(createdAt));
+            return ps;
+        }, keyHolder);
+
+        long id = keyHolder.getKey().longValue();
+        if (contentSha256 != null) {
+            jdbcTemplate.update(UPDATE_SIZE_AND_HASH, counted.count, contentSha256.get(), id);
+        } else {
+            jdbcTemplate.update(UPDATE_SIZE, counted.count, id);
+        }
+        ImageMetadata found = metadata != null ? metadata.get() : null;
+        if (found != null) {
+            updateMetadata(id, found);
+        }
+        return new StoredContent(id, counted.count);
+    }
+
+    /**
+     * Store the SHA-256 of a photo's content as uploaded.
+     *
+     * @param id Photo ID
+     * @param contentSha256 Hex digest
+     */
+    public void updateContentHash(long id, String contentSha256) {
+        jdbcTemplate.update(UPDATE_CONTENT_HASH, contentSha256, id);
+    }
+
+    /**
+     * Find the user's photos whose content as uploaded has one of the given digests.
+     *
+     * @param userId Owner user ID
+     * @param contentSha256s Hex digests
+     * @return the lowest photo ID for each digest the user has; absent digests are not in the map
+     */
+    public Map<String, Long> findByContentHash(Long userId, List<String> contentSha256s) {
+        if (contentSha256s.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Long> found = new HashMap<>();
+        jdbcTemplate.query("SELECT content_sha256, MIN(id) FROM photos WHERE user_id = ? AND content_sha256 IN ("
+                + placeholders(contentSha256s) + ") AND deleted_at IS NULL GROUP BY content_sha256",
+                (RowCallbackHandler) rs -> found.put(rs.getString(1), rs.getLong(2)),
+                userAndIds(userId, contentSha256s));
+        return found;
+    }
+
+    /**
+     * Insert photos whose content and header metadata are copied from other photos of
+     * the same user, without the bytes leaving the database. All or none are inserted.
+     *
+     * @param copies New photos and the photos to copy their content from
+     * @param userId Owner of all photos
+     * @param galleryId Gallery of the new photos (optional)
+     * @param createdAt Creation timestamp shared by the new photos
+     * @return generated IDs, in the order of {@code copies}
+     * @throws org.springframework.dao.EmptyResultDataAccessException if a source photo no
+     *         longer exists or belongs to another user
+     */
+    @Transactional
+    public List<Long> copyContents(List<ContentCopy> copies, Long userId, Long galleryId, LocalDateTime createdAt) {
+        Timestamp created = Timestamp.valueOf(createdAt);
+        List<Long> ids = new ArrayList<>(copies.size());
+        for (ContentCopy copy : copies) {
+            KeyHolder keyHolder = new GeneratedKeyHolder();
+            int inserted = jdbcTemplate.update(connection -> {
+                PreparedStatement ps = connection.prepareStatement(COPY_PHOTO, new String[] {"id"});
+                ps.setString(1, copy.title());
+                ps.setString(2, copy.description());
+                ps.setString(3, copy.originalFilename());
+                if (galleryId != null) {
+                    ps.setLong(4, galleryId);
+                } else {
+                    ps.setNull(4, Types.BIGINT);
+                }
+                ps.setTimestamp(5, created);
+                ps.setLong(6, copy.sourceId());
+                ps.setLong(7, userId);
+                return ps;
+            }, keyHolder);
+            if (inserted == 0) {
+                throw new EmptyResultDataAccessException("Photo " + copy.sourceId() + " no longer exists", 1);
+            }
+            ids.add(keyHolder.getKey().longValue());
+        }
+        return ids;
+    }
+
+    /**
+     * Store a photo's header metadata and the version of the extractor that read it.
+     *
+     * @param id Photo ID
+     * @param metadata Extracted metadata
+     */
+    public void updateMetadata(long id, ImageMetadata metadata) {
+        jdbcTemplate.update(UPDATE_METADATA, metadata.width(), metadata.height(), metadata.orientation(),
+                metadata.takenAt() != null ? Timestamp.valueOf(metadata.takenAt()) : null, metadata.cameraModel(),
+                metadata.version(), id);
+    }
+
+    /**
+     * Store a photo's BlurHash placeholder and the version of the encoder that made it.
+     *
+     * @param id Photo ID
+     * @param blurHash Encoded placeholder, or null if the image could not be decoded
+     * @param version Encoder version
+     */
+    public void updateBlurHash(long id, String blurHash, int version) {
+        jdbcTemplate.update(UPDATE_BLUR_HASH, blurHash, version, id);
+    }
+
+    /**
+     * Find photos a background job still has to process, in ID order.
+     *
+     * @param pendingCondition SQL condition over <code>photos</code> columns selecting
+     *        unprocessed rows; must be a constant, never user input
+     * @param afterId Only return photos with a larger ID
+     * @param limit Batch size
+     * @return photo IDs
+     */
+    public List<Long> findIdsWhere(String pendingCondition, long afterId, int limit) {
+        return jdbcTemplate.queryForList("SELECT id FROM photos WHERE (" + pendingCondition + ") AND id > ? "
+                + "AND deleted_at IS NULL ORDER BY id FETCH FIRST " + limit + " ROWS ONLY", Long.class, afterId);
+    }
+
+    /**
+     * Insert several photos with one JDBC batch in a single transaction.
+     *
+     * @param photos Photos to insert
+     * @param userId Owner user ID
+     * @param galleryId Gallery ID (optional)
+     * @param createdAt Creation timestamp shared by the batch
+     */
+    @Transactional
+    public void insertBatch(List<NewPhoto> photos, Long userId, Long galleryId, LocalDateTime createdAt) {
+        Timestamp created = Timestamp.valueOf(createdAt);
+        jdbcTemplate.batchUpdate(INSERT_PHOTO_WITH_SIZE, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                NewPhoto photo = photos.get(i);
+                ps.setString(1, photo.title());
+                ps.setNull(2, Types.VARCHAR);
+                ps.setString(3, photo.originalFilename());
+                ps.setString(4, photo.contentType());
+                ps.setLong(5, photo.data().length);
+                ps.setBytes(6, photo.data());
+                ps.setLong(7, userId);
+                if (galleryId != null) {
+                    ps.setLong(8, galleryId);
+                } else {
+                    ps.setNull(8, Types.BIGINT);
+                }
+                ps.setTimestamp(9, created);
+                ImageMetadata metadata = photo.metadata();
+                setInt(ps, 10, metadata != null ? metadata.width() : null);
+                setInt(ps, 11, metadata != null ? metadata.height() : null);
+                setInt(ps, 12, metadata != null ? metadata.orientation() : null);
+                if (metadata != null && metadata.takenAt() != null) {
+                    ps.setTimestamp(13, Timestamp.valueOf(metadata.takenAt()));
+                } else {
+                    ps.setNull(13, Types.TIMESTAMP);
+                }
+                if (metadata != null && metadata.cameraModel() != null) {
+                    ps.setString(14, metadata.cameraModel());
+                } else {
+                    ps.setNull(14, Types.VARCHAR);
+                }
+                ps.setInt(15, metadata != null ? metadata.version() : 0);
+                ps.setString(16, photo.contentSha256());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return photos.size();
+            }
+        });
+    }
+
+    /**
+     * List photos of a gallery in ID order, one page at a time (keyset pagination).
+     *
+     * @param galleryId Gallery ID
+     * @param userId Owner user ID
+     * @param afterId Only return photos with a larger ID; 0 for the first page
+     * @param limit Page size
+     * @return up to {@code limit} summaries
+     */
+    public List<PhotoSummary> findGalleryPage(Long galleryId, Long userId, long afterId, int limit) {
+        return jdbcTemplate.query(SELECT_SUMMARY
+                + "WHERE gallery_id = ? AND user_id = ? AND id > ? AND deleted_at IS NULL "
+                + "ORDER BY id FETCH FIRST " + limit + " ROWS ONLY",
+                PhotoContentStore::mapSummary, galleryId, userId, afterId);
+    }
+
+    /**
+     * Look up photos by ID, ignoring IDs that belong to other users.
+     *
+     * @param ids Photo IDs
+     * @param userId Owner user ID
+     * @return summaries in ID order
+     */
+    public List<PhotoSummary> findOwned(List<Long> ids, Long userId) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return jdbcTemplate.query(SELECT_SUMMARY + "WHERE user_id = ? AND id IN (" + placeholders(ids) + ") "
+                + "AND deleted_at IS NULL ORDER BY id",
+                PhotoContentStore::mapSummary, userAndIds(userId, ids));
+    }
+
+    /**
+     * Look up the response metadata of photos by ID, ignoring IDs that belong to other
+     * users or are deleted. Unlike loading the entities, this never reads the BLOBs.
+     *
+     * @param ids Photo IDs, in any number
+     * @param userId Owner user ID
+     * @return details in no particular order
+     */
+    public List<PhotoDetails> findDetails(List<Long> ids, Long userId) {
+        List<PhotoDetails> details = new ArrayList<>(ids.size());
+        for (int from = 0; from < ids.size(); from += MAX_IDS_PER_QUERY) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + MAX_IDS_PER_QUERY));
+            details.addAll(jdbcTemplate.query(SELECT_DETAILS + "WHERE user_id = ? AND id IN (" + placeholders(chunk)
+                    + ") AND deleted_at IS NULL", PhotoContentStore::mapDetails, userAndIds(userId, chunk)));
+        }
+        return details;
+    }
+
+    /**
+     * Look up the owner, type and content version of a photo without reading its content.
+     *
+     * @param id Photo ID
+     * @return image info, or null if the photo does not exist
+     */
+    public ImageInfo findImageInfo(long id) {
+        List<ImageInfo> found = jdbcTemplate.query(SELECT_IMAGE_INFO, (rs, rowNum) -> new ImageInfo(
+                rs.getLong("id"), rs.getLong("user_id"), rs.getString("original_filename"),
+                rs.getString("content_type"), rs.getLong("size"), rs.getInt("content_version")), id);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /**
+     * Look up the size and orientation of a photo without reading its content.
+     *
+     * @param id Photo ID
+     * @return geometry, or null if the photo does not exist
+     */
+    public ImageGeometry findImageGeometry(long id) {
+        List<ImageGeometry> found = jdbcTemplate.query(SELECT_IMAGE_GEOMETRY, (rs, rowNum) -> new ImageGeometry(
+                rs.getLong("id"), rs.getLong("user_id"), rs.getString("content_type"), rs.getInt("content_version"),
+                rs.getObject("width", Integer.class), rs.getObject("height", Integer.class),
+                rs.getObject("orientation", Integer.class)), id);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /**
+     * Read a photo's content. The connection is held only while {@code reader} runs.
+     *
+     * @param id Photo ID
+     * @param reader Consumer of the content stream
+     * @return the reader's result, or null if the photo does not exist
+     * @throws UncheckedIOException if the reader fails
+     */
+    public <T> T readContent(long id, ContentReader<T> reader) {
+        return jdbcTemplate.query(SELECT_CONTENT, firstContent(reader), id);
+    }
+
+    /**
+     * Read one content version of a photo, for callers that cache what they read under
+     * that version. The connection is held only while {@code reader} runs.
+     *
+     * @param id Photo ID
+     * @param contentVersion Content version wanted
+     * @param reader Consumer of the content stream
+     * @return the reader's result, or null if the photo does not exist or its content
+     *         has been replaced since
+     * @throws UncheckedIOException if the reader fails
+     */
+    public <T> T readContent(long id, int contentVersion, ContentReader<T> reader) {
+        return jdbcTemplate.query(SELECT_CONTENT_OF_VERSION, firstContent(reader), id, contentVersion);
+    }
+
+    private static <T> ResultSetExtractor<T> firstContent(ContentReader<T> reader) {
+        return rs -> {
+            if (!rs.next()) {
+                return null;
+            }
+            try (InputStream content = rs.getBinaryStream(1)) {
+                return reader.read(content);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    /**
+     * Read the content of several photos with one query, one row at a time.
+     * IDs that belong to other users are skipped.
+     *
+     * @param ids Photo IDs
+     * @param userId Owner user ID
+     * @param visitor Called once per photo while its row is current
+     * @throws UncheckedIOException if the visitor fails
+     */
+    public void forEachOwnedContent(List<Long> ids, Long userId, ContentVisitor visitor) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.query("SELECT id, content_version, data FROM photos WHERE user_id = ? AND id IN (" + placeholders(ids) + ") "
+                + "AND deleted_at IS NULL", rs -> {
+            try (InputStream content = rs.getBinaryStream(3)) {
+                visitor.visit(rs.getLong(1), rs.getInt(2), content);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, userAndIds(userId, ids));
+    }
+
+    /**
+     * Read a photo's content together with its content version, so that anything derived
+     * from it can be stored under the version it was made from.
+     *
+     * @param id Photo ID
+     * @param visitor Called once if the photo exists
+     * @throws UncheckedIOException if the visitor fails
+     */
+    public void visitContent(long id, ContentVisitor visitor) {
+        jdbcTemplate.query(SELECT_VERSIONED_CONTENT, rs -> {
+            try (InputStream content = rs.getBinaryStream(3)) {
+                visitor.visit(rs.getLong(1), rs.getInt(2), content);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, id);
+    }
+
+    /**
+     * Count the user's photos among the given IDs that are not deleted, in one query.
+     *
+     * @param ids Photo IDs, without duplicates
+     * @param userId Owner user ID; other users' photos are not counted
+     * @return number of photos found
+     */
+    public int countLive(List<Long> ids, Long userId) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM photos WHERE user_id = ? AND id IN ("
+                + placeholders(ids) + ") AND deleted_at IS NULL", Integer.class, userAndIds(userId, ids));
+        return count != null ? count : 0;
+    }
+
+    /**
+     * Mark photos deleted. Their rows stay until {@link #purge} removes them, but no
+     * query returns them any more.
+     *
+     * @param ids Photo IDs
+     * @param userId Owner user ID; other users' photos are left alone
+     * @param deletedAt Deletion timestamp, from which the undo window runs
+     * @return number of photos marked; photos already deleted are not counted
+     */
+    public int markDeleted(List<Long> ids, Long userId, LocalDateTime deletedAt) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        Object[] args = new Object[ids.size() + 2];
+        args[0] = Timestamp.valueOf(deletedAt);
+        args[1] = userId;
+        for (int i = 0; i < ids.size(); i++) {
+            args[i + 2] = ids.get(i);
+        }
+        return jdbcTemplate.update("UPDATE photos SET deleted_at = ? WHERE user_id = ? "
+                + "AND id IN (" + placeholders(ids) + ") AND deleted_at IS NULL", args);
+    }
+
+    /**
+     * Undo the deletion of photos deleted since {@code deletedSince}.
+     *
+     * @param ids Photo IDs
+     * @param userId Owner user ID; other users' photos are skipped
+     * @param deletedSince Start of the undo window
+     * @return IDs of the restored photos, in ID order
+     */
+    @Transactional
+    public List<Long> restore(List<Long> ids, Long userId, LocalDateTime deletedSince) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Object[] args = new Object[ids.size() + 2];
+        System.arraycopy(userAndIds(userId, ids), 0, args, 0, ids.size() + 1);
+        args[ids.size() + 1] = Timestamp.valueOf(deletedSince);
+        String where = "WHERE user_id = ? AND id IN (" + placeholders(ids) + ") AND deleted_at >= ?";
+        List<Long> restored = jdbcTemplate.queryForList("SELECT id FROM photos " + where + " ORDER BY id",
+                Long.class, args);
+        if (!restored.isEmpty()) {
+            jdbcTemplate.update("UPDATE photos SET deleted_at = NULL " + where, args);
+        }
+        return restored;
+    }
+
+    /**
+     * Find deleted photos whose undo window has passed, longest deleted first.
+     *
+     * @param deletedBefore End of the undo window
+     * @param limit Batch size
+     * @return photos to purge
+     */
+    public List<DeletedPhoto> findPurgeable(LocalDateTime deletedBefore, int limit) {
+        return jdbcTemplate.query("SELECT id, size FROM photos WHERE deleted_at < ? ORDER BY deleted_at, id "
+                + "FETCH FIRST " + limit + " ROWS ONLY",
+                (rs, rowNum) -> new DeletedPhoto(rs.getLong(1), rs.getLong(2)), Timestamp.valueOf(deletedBefore));
+    }
+
+    /**
+     * Remove a deleted photo with its content. Thumbnails and kept originals go with it
+     * through their foreign keys. Each call commits on its own, so locks and log space
+     * are held for one photo at a time.
+     *
+     * @param id Photo ID
+     * @param deletedBefore End of the undo window; a photo restored meanwhile is kept
+     * @return false if the photo was restored or already purged
+     */
+    public boolean purge(long id, LocalDateTime deletedBefore) {
+        return jdbcTemplate.update(PURGE_PHOTO, id, Timestamp.valueOf(deletedBefore)) > 0;
+    }
+
+    static String placeholders(List<?> ids) {
+        return String.join(", ", Collections.nCopies(ids.size(), "?"));
+    }
+
+    static Object[] userAndIds(Long userId, List<?> ids) {
+        Object[] args = new Object[ids.size() + 1];
+        args[0] = userId;
+        for (int i = 0; i < ids.size(); i++) {
+            args[i + 1] = ids.get(i);
+        }
+        return args;
+    }
+
+    private static void setInt(PreparedStatement ps, int index, Integer value) throws SQLException {
+        if (value != null) {
+            ps.setInt(index, value);
+        } else {
+            ps.setNull(index, Types.INTEGER);
+        }
+    }
+
+    private static PhotoSummary mapSummary(ResultSet rs, int rowNum) throws SQLException {
+        return new PhotoSummary(rs.getLong("id"), rs.getString("title"), rs.getString("original_filename"),
+                rs.getString("content_type"), rs.getLong("size"), rs.getTimestamp("created_at").toLocalDateTime());
+    }
+
+    private static PhotoDetails mapDetails(ResultSet rs, int rowNum) throws SQLException {
+        Timestamp takenAt = rs.getTimestamp("taken_at");
+        return new PhotoDetails(rs.getLong("id"), rs.getString("title"), rs.getString("description"),
+                rs.getString("original_filename"), rs.getString("content_type"), rs.getLong("size"),
+                rs.getTimestamp("created_at").toLocalDateTime(), rs.getLong("user_id"),
+                rs.getObject("gallery_id", Long.class), rs.getInt("content_version"),
+                rs.getObject("width", Integer.class), rs.getObject("height", Integer.class),
+                rs.getObject("orientation", Integer.class), takenAt != null ? takenAt.toLocalDateTime() : null,
+                rs.getString("camera_model"), rs.getString("blurhash"));
+    }
+
+    /**
+     * Counts bytes as the driver reads them and fails once the limit is passed.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private final long maxBytes;
+        private long count;
+
+        CountingInputStream(InputStream in, long maxBytes) {
+            super(in);
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                advance(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                advance(read);
+            }
+            return read;
+        }
+
+        @Override
+        public void close() {
+            // The caller owns the underlying stream
+        }
+
+        private void advance(int read) throws ContentTooLargeException {
+            count += read;
+            if (count > maxBytes) {
+                throw new ContentTooLargeException(maxBytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.redligot.backend.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * JDBC access to the <code>photo_originals</code> table, which holds the uploaded bytes
+ * of photos whose stored content was optimized at ingest.
+ */
+@Repository
+public class PhotoOriginalStore {
+
+    private static final String INSERT_ORIGINAL =
+            "INSERT INTO photo_originals (photo_id, content_type, size, data) VALUES (?, ?, ?, ?)";
+
+    private static final String DELETE_ORIGINAL = "DELETE FROM photo_originals WHERE photo_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public PhotoOriginalStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Uploaded bytes of a photo.
+     */
+    public record Original(long photoId, String contentType, byte[] data) {}
+
+    /**
+     * Load the kept original of a photo, without an ownership check.
+     *
+     * @param photoId Photo ID
+     * @return the original, or null if the photo is stored as uploaded or it was not kept
+     */
+    public Original find(long photoId) {
+        List<Original> found = jdbcTemplate.query(
+                "SELECT photo_id, content_type, data FROM photo_originals WHERE photo_id = ?",
+                (rs, rowNum) -> new Original(rs.getLong(1), rs.getString(2), rs.getBytes(3)),
+                photoId);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /**
+     * Keep the uploaded bytes of a photo, replacing those of an earlier upload.
+     *
+     * @param original Uploaded bytes
+     */
+    public void save(Original original) {
+        jdbcTemplate.update(DELETE_ORIGINAL, original.photoId());
+        jdbcTemplate.update(INSERT_ORIGINAL, original.photoId(), original.contentType(),
+                original.data().length, original.data());
+    }
+
+    /**
+     * Drop the kept original, e.g. after the photo's content was replaced by one stored as uploaded.
+     *
+     * @param photoId Photo ID
+     */
+    public void delete(long photoId) {
+        jdbcTemplate.update(DELETE_ORIGINAL, photoId);
+    }
+}
@@ -0,0 +1,119 @@
+package com.redligot.backend.repository;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * JDBC access to the <code>photo_thumbnails</code> cache table.
+ */
+@Repository
+public class ThumbnailStore {
+
+    private static final String INSERT_THUMBNAIL =
+            "INSERT INTO photo_thumbnails (photo_id, content_type, width, height, size, data, content_version) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    // Only ever moves forward, so a thumbnail of older content cannot overwrite a newer one
+    private static final String REPLACE_STALE_THUMBNAIL =
+            "UPDATE photo_thumbnails SET content_type = ?, width = ?, height = ?, size = ?, data = ?, content_version = ? "
+            + "WHERE photo_id = ? AND content_version < ?";
+
+    private static final String DELETE_THUMBNAIL = "DELETE FROM photo_thumbnails WHERE photo_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ThumbnailStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * An encoded thumbnail.
+     */
+    public record Thumbnail(long photoId, String contentType, int width, int height, byte[] data) {}
+
+    /**
+     * Load cached thumbnails for the photos the user owns, in one query.
+     * IDs of other users' photos and photos without a thumbnail of their current content
+     * are absent from the result.
+     *
+     * @param photoIds Photo IDs
+     * @param userId Owner user ID
+     * @return cached thumbnails
+     */
+    public List<Thumbnail> findOwned(List<Long> photoIds, Long userId) {
+        if (photoIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return jdbcTemplate.query(
+                "SELECT t.photo_id, t.content_type, t.width, t.height, t.data FROM photo_thumbnails t "
+                + "JOIN photos p ON p.id = t.photo_id WHERE p.user_id = ? AND t.photo_id IN (" + PhotoContentStore.placeholders(photoIds) + ") "
+                + "AND t.content_version = p.content_version AND p.deleted_at IS NULL",
+                (rs, rowNum) -> new Thumbnail(rs.getLong(1), rs.getString(2), rs.getInt(3), rs.getInt(4), rs.getBytes(5)),
+                PhotoContentStore.userAndIds(userId, photoIds));
+    }
+
+    /**
+     * Load the cached thumbnail of one photo, without an ownership check.
+     *
+     * @param photoId Photo ID
+     * @return the thumbnail, or null if none of the current content is cached or the photo is deleted
+     */
+    public Thumbnail find(Long photoId) {
+        List<Thumbnail> found = jdbcTemplate.query(
+                "SELECT t.photo_id, t.content_type, t.width, t.height, t.data FROM photo_thumbnails t "
+                + "JOIN photos p ON p.id = t.photo_id WHERE t.photo_id = ? AND t.content_version = p.content_version "
+                + "AND p.deleted_at IS NULL",
+                (rs, rowNum) -> new Thumbnail(rs.getLong(1), rs.getString(2), rs.getInt(3), rs.getInt(4), rs.getBytes(5)),
+                photoId);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /**
+     * Load the cached thumbnail of one content version of a photo, without an ownership check.
+     *
+     * @param photoId Photo ID
+     * @param contentVersion Content version wanted
+     * @return the thumbnail, or null if none is cached or the photo is deleted or its
+     *         content has been replaced since
+     */
+    public Thumbnail find(Long photoId, int contentVersion) {
+        List<Thumbnail> found = jdbcTemplate.query(
+                "SELECT t.photo_id, t.content_type, t.width, t.height, t.data FROM photo_thumbnails t "
+                + "JOIN photos p ON p.id = t.photo_id WHERE t.photo_id = ? AND t.content_version = ? "
+                + "AND p.content_version = t.content_version AND p.deleted_at IS NULL",
+                (rs, rowNum) -> new Thumbnail(rs.getLong(1), rs.getString(2), rs.getInt(3), rs.getInt(4), rs.getBytes(5)),
+                photoId, contentVersion);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /**
+     * Cache a thumbnail generated from the given content version.
+     * A thumbnail of the same version stored concurrently by another request wins; one of
+     * an older version, left by a generation that raced a content update, is replaced.
+     *
+     * @param thumbnail Thumbnail to store
+     * @param contentVersion Version of the content the thumbnail was generated from
+     */
+    public void save(Thumbnail thumbnail, int contentVersion) {
+        try {
+            jdbcTemplate.update(INSERT_THUMBNAIL, thumbnail.photoId(), thumbnail.contentType(),
+                    thumbnail.width(), thumbnail.height(), thumbnail.data().length, thumbnail.data(), contentVersion);
+        } catch (DuplicateKeyException e) {
+            jdbcTemplate.update(REPLACE_STALE_THUMBNAIL, thumbnail.contentType(), thumbnail.width(), thumbnail.height(),
+                    thumbnail.data().length, thumbnail.data(), contentVersion, thumbnail.photoId(), contentVersion);
+        }
+    }
+
+    /**
+     * Drop the cached thumbnail, e.g. after the photo's content changed.
+     *
+     * @param photoId Photo ID
+     */
+    public void delete(Long photoId) {
+        jdbcTemplate.update(DELETE_THUMBNAIL, photoId);
+    }
+}
@@ -0,0 +1,23 @@
+package com.redligot.backend.repository;
+
+import com.redligot.backend.model.UploadJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository for {@link UploadJob} entities.
+ */
+public interface UploadJobRepository extends JpaRepository<UploadJob, String> {
+    Optional<UploadJob> findByIdAndUserId(String id, Long userId);
+
+    @Query("SELECT DISTINCT j FROM UploadJob j LEFT JOIN FETCH j.items WHERE j.id = :id")
+    Optional<UploadJob> findWithItemsById(@Param("id") String id);
+
+    @Query("SELECT j.id FROM UploadJob j WHERE j.status IN :statuses ORDER BY j.createdAt ASC")
+    List<String> findIdsByStatusIn(@Param("statuses") Collection<UploadJob.Status> statuses);
+}
@@ -0,0 +1,17 @@
+package com.redligot.backend.repository;
+
+import com.redligot.backend.model.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository for {@link UploadSession} entities.
+ */
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+    Optional<UploadSession> findByIdAndUserId(String id, Long userId);
+
+    List<UploadSession> findByExpiresAtBefore(LocalDateTime cutoff);
+}
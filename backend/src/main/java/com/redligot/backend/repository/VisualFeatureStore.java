@@ -0,0 +1,83 @@
+package com.redligot.backend.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * JDBC access to the visual feature columns of <code>photos</code>.
+ */
+@Repository
+public class VisualFeatureStore {
+
+    private static final String UPDATE_FEATURES = "UPDATE photos SET features = ?, features_version = ? "
+            + "WHERE id = ? AND deleted_at IS NULL";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public VisualFeatureStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Feature state of one photo.
+     *
+     * @param features Feature vector, or null if the photo has none
+     * @param version Feature version that processed the photo; 0 if none has yet
+     */
+    public record PhotoFeatures(long photoId, long userId, byte[] features, int version) {}
+
+    /**
+     * Receives the analyzed photos of a user.
+     */
+    @FunctionalInterface
+    public interface FeatureConsumer {
+        void accept(long photoId, byte[] features);
+    }
+
+    /**
+     * Store a photo's feature vector.
+     *
+     * @param photoId Photo ID
+     * @param features Feature vector, or null if the image could not be analyzed
+     * @param version Feature version
+     * @return the owner's user ID, or null if the photo no longer exists
+     */
+    public Long save(long photoId, byte[] features, int version) {
+        if (jdbcTemplate.update(UPDATE_FEATURES, features, version, photoId) == 0) {
+            return null;
+        }
+        List<Long> owner = jdbcTemplate.queryForList("SELECT user_id FROM photos WHERE id = ? AND deleted_at IS NULL",
+                Long.class, photoId);
+        return owner.isEmpty() ? null : owner.get(0);
+    }
+
+    /**
+     * Load the feature state of one photo, without an ownership check.
+     *
+     * @param photoId Photo ID
+     * @return the feature state, or null if the photo does not exist
+     */
+    public PhotoFeatures find(long photoId) {
+        List<PhotoFeatures> found = jdbcTemplate.query(
+                "SELECT id, user_id, features, features_version FROM photos WHERE id = ? AND deleted_at IS NULL",
+                (rs, rowNum) -> new PhotoFeatures(rs.getLong(1), rs.getLong(2), rs.getBytes(3), rs.getInt(4)),
+                photoId);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /**
+     * Stream every analyzed photo of a user, in ID order.
+     *
+     * @param userId Owner user ID
+     * @param consumer Receives each photo ID and feature vector
+     */
+    public void forEachFeatures(long userId, FeatureConsumer consumer) {
+        jdbcTemplate.query("SELECT id, features FROM photos WHERE user_id = ? AND features IS NOT NULL "
+                + "AND deleted_at IS NULL ORDER BY id",
+                rs -> {
+                    consumer.accept(rs.getLong(1), rs.getBytes(2));
+                }, userId);
+    }
+}
@@ -0,0 +1,139 @@
+package com.redligot.backend.security;
+
+import com.redligot.backend.dto.PhotoDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * Signs and verifies the short-lived image URLs handed to the browser.
+ *
+ * <p>A URL has the form <code>/img/{id}/{variant}?v=&amp;exp=&amp;sig=</code>, where
+ * <code>v</code> is the photo's content version, <code>exp</code> the expiry in epoch
+ * seconds and <code>sig</code> an HMAC-SHA256 over the rest. Checking one needs no
+ * token parsing or user lookup, so it is done before the request reaches Spring
+ * Security. Expiry times are rounded up to a fixed bucket: a photo keeps the same URL
+ * for the length of the bucket, which lets browser and proxy caches hit across page
+ * loads.</p>
+ */
+@Component
+public class ImageUrlSigner {
+
+    public static final String PATH_PREFIX = "/img/";
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    /**
+     * Image representations that can be requested through a signed URL.
+     */
+    public enum Variant {
+        ORIGINAL("original"),
+        THUMB("thumb");
+
+        private final String path;
+
+        Variant(String path) {
+            this.path = path;
+        }
+
+        public String path() {
+            return path;
+        }
+
+        /**
+         * @param path last path segment of an image URL
+         * @return the variant, or null if there is none with that name
+         */
+        public static Variant fromPath(String path) {
+            for (Variant variant : values()) {
+                if (variant.path.equals(path)) {
+                    return variant;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final SecretKeySpec key;
+    private final long ttlSeconds;
+    private final long bucketSeconds;
+
+    public ImageUrlSigner(@Value("${app.images.signing-secret}") String secret,
+                          @Value("${app.images.url-ttl-seconds:3600}") long ttlSeconds,
+                          @Value("${app.images.url-bucket-seconds:900}") long bucketSeconds) {
+        if (secret == null || secret.isBlank()) {
+            throw new IllegalStateException("Image URL signing secret is not configured. "
+                    + "Please set IMAGE_URL_SECRET or JWT_SECRET environment variable.");
+        }
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.ttlSeconds = ttlSeconds;
+        this.bucketSeconds = Math.max(1, bucketSeconds);
+    }
+
+    /**
+     * Build a signed URL valid for at least the configured TTL.
+     *
+     * @param photoId Photo ID
+     * @param version Content version of the photo
+     * @param variant Requested representation
+     * @return server-relative URL, e.g. <code>/img/42/thumb?v=1&amp;exp=...&amp;sig=...</code>
+     */
+    public String sign(long photoId, int version, Variant variant) {
+        long now = System.currentTimeMillis() / 1000;
+        // Round up so every URL signed within one bucket is identical
+        long exp = ((now + ttlSeconds) / bucketSeconds + 1) * bucketSeconds;
+        return PATH_PREFIX + photoId + "/" + variant.path() + "?v=" + version + "&exp=" + exp
+                + "&sig=" + signature(photoId, variant.path(), version, exp);
+    }
+
+    /**
+     * Fill in the image URLs of a photo DTO.
+     *
+     * @param dto DTO with ID and content version set
+     * @return the same DTO
+     */
+    public PhotoDto applyTo(PhotoDto dto) {
+        int version = dto.getContentVersion() != null ? dto.getContentVersion() : 1;
+        dto.setImageUrl(sign(dto.getId(), version, Variant.ORIGINAL));
+        dto.setThumbnailUrl(sign(dto.getId(), version, Variant.THUMB));
+        return dto;
+    }
+
+    /**
+     * Check a signature in constant time.
+     *
+     * @param photoId Photo ID from the path
+     * @param variant Variant segment from the path
+     * @param version <code>v</code> query parameter
+     * @param exp <code>exp</code> query parameter
+     * @param signature <code>sig</code> query parameter
+     * @return true if the signature matches; expiry is checked separately
+     */
+    public boolean verify(long photoId, String variant, int version, long exp, String signature) {
+        if (signature == null) {
+            return false;
+        }
+        byte[] expected = signature(photoId, variant, version, exp).getBytes(StandardCharsets.US_ASCII);
+        return MessageDigest.isEqual(expected, signature.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private String signature(long photoId, String variant, int version, long exp) {
+        try {
+            // Mac instances are not thread-safe; creating one per call is cheap next to serving an image
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            // The prefix keeps these MACs distinct from anything else signed with a shared secret
+            byte[] digest = mac.doFinal(("img\n" + photoId + "\n" + variant + "\n" + version + "\n" + exp)
+                    .getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.redligot.backend.service;
+
+import com.redligot.backend.repository.PhotoContentStore;
+import org.springframework.stereotype.Service;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * BlurHash placeholders for photos.
+ *
+ * <p>A BlurHash is the first few cosine components of the image packed into about 30
+ * characters of base 83; it is returned with every {@code PhotoDto} so the frontend can
+ * paint a blurred preview of each card from the listing response alone, before any
+ * thumbnail has loaded. It is computed by {@link ImageAnalysisService} and kept in
+ * <code>photos.blurhash</code>. See <a href="https://blurha.sh">blurha.sh</a> for the
+ * format.</p>
+ */
+@Service
+public class BlurHashService implements ImageAnalyzer {
+
+	/**
+	 * Stored in <code>photos.blurhash_version</code>; raise it when the encoding changes so
+	 * the backfill job recomputes existing photos.
+	 */
+	public static final int VERSION = 1;
+
+	private static final String BASE83 =
+			"0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz#$%*+,-.:;=?@[]^_{|}~";
+
+	private static final double[] SRGB_TO_LINEAR = new double[256];
+
+	static {
+		for (int i = 0; i < 256; i++) {
+			double v = i / 255.0;
+			SRGB_TO_LINEAR[i] = v <= 0.04045 ? v / 12.92 : Math.pow((v + 0.055) / 1.055, 2.4);
+		}
+	}
+
+	private final PhotoContentStore photoContentStore;
+
+	public BlurHashService(PhotoContentStore photoContentStore) {
+		this.photoContentStore = photoContentStore;
+	}
+
+	@Override
+	public String name() {
+		return "blurhash";
+	}
+
+	@Override
+	public int sourceDimension() {
+		return 32;
+	}
+
+	@Override
+	public String pendingCondition() {
+		return "blurhash_version < " + VERSION;
+	}
+
+	@Override
+	public void analyze(long photoId, BufferedImage image) {
+		photoContentStore.updateBlurHash(photoId, image != null ? encode(image) : null, VERSION);
+	}
+
+	/**
+	 * Encode an image as a BlurHash with 4x3 components, or 3x4 for portrait images;
+	 * 28 characters.
+	 *
+	 * @param image <code>TYPE_INT_RGB</code> image
+	 * @return the BlurHash
+	 */
+	static String encode(BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int componentsX = width >= height ? 4 : 3;
+		int componentsY = width >= height ? 3 : 4;
+		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+		double[][] cosX = cosines(componentsX, width);
+		double[][] cosY = cosines(componentsY, height);
+		double[][] factors = new double[componentsX * componentsY][3];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int rgb = pixels[y * width + x];
+				double r = SRGB_TO_LINEAR[(rgb >> 16) & 0xff];
+				double g = SRGB_TO_LINEAR[(rgb >> 8) & 0xff];
+				double b = SRGB_TO_LINEAR[rgb & 0xff];
+				for (int j = 0; j < componentsY; j++) {
+					for (int i = 0; i < componentsX; i++) {
+						double basis = cosX[i][x] * cosY[j][y];
+						double[] factor = factors[j * componentsX + i];
+						factor[0] += basis * r;
+						factor[1] += basis * g;
+						factor[2] += basis * b;
+					}
+				}
+			}
+		}
+		for (int k = 0; k < factors.length; k++) {
+			double scale = (k == 0 ? 1.0 : 2.0) / (width * height);
+			for (int c = 0; c < 3; c++) {
+				factors[k][c] *= scale;
+			}
+		}
+
+		StringBuilder hash = new StringBuilder(4 + 2 * factors.length);
+		encode83(hash, (componentsX - 1) + (componentsY - 1) * 9, 1);
+		double maxAc = 0;
+		for (int k = 1; k < factors.length; k++) {
+			for (int c = 0; c < 3; c++) {
+				maxAc = Math.max(maxAc, Math.abs(factors[k][c]));
+			}
+		}
+		int quantisedMax = (int) Math.max(0, Math.min(82, Math.floor(maxAc * 166 - 0.5)));
+		double maxValue = (quantisedMax + 1) / 166.0;
+		encode83(hash, quantisedMax, 1);
+
+		double[] dc = factors[0];
+		encode83(hash, (linearToSrgb(dc[0]) << 16) | (linearToSrgb(dc[1]) << 8) | linearToSrgb(dc[2]), 4);
+		for (int k = 1; k < factors.length; k++) {
+			double[] ac = factors[k];
+			encode83(hash, quantiseAc(ac[0], maxValue) * 19 * 19 + quantiseAc(ac[1], maxValue) * 19
+					+ quantiseAc(ac[2], maxValue), 2);
+		}
+		return hash.toString();
+	}
+
+	private static double[][] cosines(int components, int size) {
+		double[][] table = new double[components][size];
+		for (int i = 0; i < components; i++) {
+			for (int p = 0; p < size; p++) {
+				table[i][p] = Math.cos(Math.PI * i * p / size);
+			}
+		}
+		return table;
+	}
+
+	private static int quantiseAc(double value, double maxValue) {
+		double v = value / maxValue;
+		double signedRoot = Math.copySign(Math.sqrt(Math.abs(v)), v);
+		return (int) Math.max(0, Math.min(18, Math.floor(signedRoot * 9 + 9.5)));
+	}
+
+	private static int linearToSrgb(double value) {
+		double v = Math.max(0, Math.min(1, value));
+		return v <= 0.0031308
+				? (int) (v * 12.92 * 255 + 0.5)
+				: (int) ((1.055 * Math.pow(v, 1 / 2.4) - 0.055) * 255 + 0.5);
+	}
+
+	private static void encode83(StringBuilder out, int value, int length) {
+		for (int i = 1; i <= length; i++) {
+			int digit = (value / pow83(length - i)) % 83;
+			out.append(BASE83.charAt(digit));
+		}
+	}
+
+	private static int pow83(int exponent) {
+		int result = 1;
+		for (int i = 0; i < exponent; i++) {
+			result *= 83;
+		}
+		return result;
+	}
+}
@@ -0,0 +1,228 @@
+package com.redligot.backend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.Cleaner;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared pool of reusable heap buffers for the image I/O paths.
+ *
+ * <p>Buffers come in power-of-two size classes from 4 KB up to a maximum that stays
+ * below G1's humongous threshold (half a region, 512 KB with the smallest regions), so
+ * no buffer ever needs a humongous region of its own; content larger than that is
+ * streamed or held as a list of buffers. Released buffers are kept per class up to a
+ * byte budget and handed out again, most recently used first.</p>
+ *
+ * <p>A buffer that becomes unreachable without being released is reported as a leak
+ * when the garbage collector finds it. In <code>paranoid</code> mode the stack of the
+ * acquiring call is recorded and logged with it, which is what the tests use.</p>
+ */
+@Component
+public class BufferPool {
+
+	private static final Logger logger = LoggerFactory.getLogger(BufferPool.class);
+
+	private static final int MIN_BUFFER_BYTES = 4 * 1024;
+	private static final Cleaner CLEANER = Cleaner.create();
+
+	/**
+	 * How unreleased buffers are tracked.
+	 */
+	public enum LeakDetection {
+		/** Not tracked */
+		OFF,
+		/** Counted and logged */
+		SIMPLE,
+		/** Counted and logged with the stack of the acquiring call */
+		PARANOID
+	}
+
+	/**
+	 * Snapshot of the pool counters.
+	 */
+	public record Stats(long acquired, long allocated, long outstanding, long leaked, long pooledBytes) {
+
+		public double reuseRate() {
+			return acquired == 0 ? 0.0 : (double) (acquired - allocated) / acquired;
+		}
+	}
+
+	private final int maxBufferBytes;
+	private final long maxPooledBytesPerClass;
+	private final LeakDetection leakDetection;
+	private final ConcurrentLinkedDeque<byte[]>[] free;
+	private final AtomicLong[] pooledBytes;
+
+	private final AtomicLong acquired = new AtomicLong();
+	private final AtomicLong allocated = new AtomicLong();
+	private final AtomicInteger outstanding = new AtomicInteger();
+	private final AtomicLong leaked = new AtomicLong();
+
+	@SuppressWarnings("unchecked") // Generic arrays cannot be created; every element is set below
+	public BufferPool(@Value("${app.buffers.max-buffer-bytes:262144}") int maxBufferBytes,
+			@Value("${app.buffers.max-pooled-bytes:16777216}") long maxPooledBytes,
+			@Value("${app.buffers.leak-detection:simple}") String leakDetection) {
+		this.maxBufferBytes = Integer.highestOneBit(Math.max(MIN_BUFFER_BYTES, maxBufferBytes));
+		int classes = Integer.numberOfTrailingZeros(this.maxBufferBytes / MIN_BUFFER_BYTES) + 1;
+		this.maxPooledBytesPerClass = maxPooledBytes / classes;
+		this.leakDetection = LeakDetection.valueOf(leakDetection.trim().toUpperCase(Locale.ROOT));
+		this.free = (ConcurrentLinkedDeque<byte[]>[]) new ConcurrentLinkedDeque<?>[classes];
+		this.pooledBytes = new AtomicLong[classes];
+		for (int i = 0; i < classes; i++) {
+			free[i] = new ConcurrentLinkedDeque<>();
+			pooledBytes[i] = new AtomicLong();
+		}
+	}
+
+	/**
+	 * @return size of the largest buffer handed out
+	 */
+	public int getMaxBufferBytes() {
+		return maxBufferBytes;
+	}
+
+	/**
+	 * Take a buffer of at least {@code minimumBytes}, capped at {@link #getMaxBufferBytes}.
+	 * The array may hold data from its previous use.
+	 *
+	 * @param minimumBytes Size wanted
+	 * @return buffer to close when done; its array must not be used afterwards
+	 */
+	public Buffer acquire(int minimumBytes) {
+		int size = Math.max(MIN_BUFFER_BYTES, Math.min(maxBufferBytes, minimumBytes));
+		int sizeClass = 32 - Integer.numberOfLeadingZeros(size - 1) - Integer.numberOfTrailingZeros(MIN_BUFFER_BYTES);
+		acquired.incrementAndGet();
+		byte[] array = free[sizeClass].pollFirst();
+		if (array != null) {
+			pooledBytes[sizeClass].addAndGet(-array.length);
+		} else {
+			array = new byte[MIN_BUFFER_BYTES << sizeClass];
+			allocated.incrementAndGet();
+		}
+		outstanding.incrementAndGet();
+		return new Buffer(array, sizeClass);
+	}
+
+	/**
+	 * Copy a stream through a pooled buffer.
+	 *
+	 * @param in Source; read to the end but not closed
+	 * @param out Destination; not closed
+	 * @return bytes copied
+	 * @throws IOException if reading or writing fails
+	 */
+	public long copy(InputStream in, OutputStream out) throws IOException {
+		try (Buffer buffer = acquire(64 * 1024)) {
+			byte[] array = buffer.array();
+			long copied = 0;
+			int read;
+			while ((read = in.read(array)) >= 0) {
+				out.write(array, 0, read);
+				copied += read;
+			}
+			return copied;
+		}
+	}
+
+	/**
+	 * @return current counters
+	 */
+	public Stats stats() {
+		long pooled = 0;
+		for (AtomicLong bytes : pooledBytes) {
+			pooled += bytes.get();
+		}
+		return new Stats(acquired.get(), allocated.get(), outstanding.get(), leaked.get(), pooled);
+	}
+
+	private void release(byte[] array, int sizeClass) {
+		outstanding.decrementAndGet();
+		if (pooledBytes[sizeClass].addAndGet(array.length) <= maxPooledBytesPerClass) {
+			free[sizeClass].offerFirst(array);
+		} else {
+			pooledBytes[sizeClass].addAndGet(-array.length);
+		}
+	}
+
+	/**
+	 * A pooled array on loan. Closing returns it to the pool; closing twice is a no-op.
+	 */
+	public final class Buffer implements AutoCloseable {
+
+		private final byte[] array;
+		private final int sizeClass;
+		private final LeakCheck leakCheck;
+		private final Cleaner.Cleanable cleanable;
+
+		private Buffer(byte[] array, int sizeClass) {
+			this.array = array;
+			this.sizeClass = sizeClass;
+			if (leakDetection == LeakDetection.OFF) {
+				this.leakCheck = null;
+				this.cleanable = null;
+			} else {
+				this.leakCheck = new LeakCheck(BufferPool.this, array.length,
+						leakDetection == LeakDetection.PARANOID ? new Throwable("Buffer acquired here") : null);
+				this.cleanable = CLEANER.register(this, leakCheck);
+			}
+		}
+
+		public byte[] array() {
+			return array;
+		}
+
+		@Override
+		public void close() {
+			if (leakCheck != null) {
+				if (!leakCheck.released.compareAndSet(false, true)) {
+					return;
+				}
+				cleanable.clean();
+			}
+			release(array, sizeClass);
+		}
+	}
+
+	/**
+	 * Runs when a buffer is closed or, if it never was, once it has been collected.
+	 * Must not refer to the buffer itself, or it would never become unreachable.
+	 */
+	private static final class LeakCheck implements Runnable {
+
+		private final BufferPool pool;
+		private final int size;
+		private final Throwable acquiredAt;
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		LeakCheck(BufferPool pool, int size, Throwable acquiredAt) {
+			this.pool = pool;
+			this.size = size;
+			this.acquiredAt = acquiredAt;
+		}
+
+		@Override
+		public void run() {
+			if (released.compareAndSet(false, true)) {
+				pool.outstanding.decrementAndGet();
+				pool.leaked.incrementAndGet();
+				if (acquiredAt != null) {
+					logger.error("Pooled buffer of {} bytes was never released", size, acquiredAt);
+				} else {
+					logger.error("Pooled buffer of {} bytes was never released; "
+							+ "set app.buffers.leak-detection=paranoid to see where it was acquired", size);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package com.redligot.backend.service;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * SHA-256 digests of photo content, as stored in <code>photos.content_sha256</code>:
+ * always over the bytes as uploaded, in lowercase hex.
+ */
+final class ContentHash {
+
+	private ContentHash() {
+	}
+
+	static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// Every JRE is required to provide SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static String hex(MessageDigest digest) {
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	static String of(byte[] content) {
+		MessageDigest digest = newDigest();
+		digest.update(content);
+		return hex(digest);
+	}
+}
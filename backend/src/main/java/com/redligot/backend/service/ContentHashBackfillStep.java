@@ -0,0 +1,50 @@
+package com.redligot.backend.service;
+
+import com.redligot.backend.repository.PhotoContentStore;
+import com.redligot.backend.repository.PhotoOriginalStore;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+
+/**
+ * Hashes photos uploaded before their SHA-256 was recorded at upload time. Photos whose
+ * original was kept at ingest are hashed from the original, as a new upload would be.
+ */
+@Component
+public class ContentHashBackfillStep implements PhotoBackfillStep {
+
+	private final PhotoContentStore photoContentStore;
+	private final PhotoOriginalStore photoOriginalStore;
+
+	public ContentHashBackfillStep(PhotoContentStore photoContentStore, PhotoOriginalStore photoOriginalStore) {
+		this.photoContentStore = photoContentStore;
+		this.photoOriginalStore = photoOriginalStore;
+	}
+
+	@Override
+	public String name() {
+		return "content-hash";
+	}
+
+	@Override
+	public String pendingCondition() {
+		return "content_sha256 IS NULL";
+	}
+
+	@Override
+	public void apply(long photoId, InputStream content) throws IOException {
+		PhotoOriginalStore.Original original = photoOriginalStore.find(photoId);
+		if (original != null) {
+			photoContentStore.updateContentHash(photoId, ContentHash.of(original.data()));
+			return;
+		}
+		MessageDigest digest = ContentHash.newDigest();
+		// Not closed: the content stream belongs to the job
+		new DigestInputStream(content, digest).transferTo(OutputStream.nullOutputStream());
+		photoContentStore.updateContentHash(photoId, ContentHash.hex(digest));
+	}
+}
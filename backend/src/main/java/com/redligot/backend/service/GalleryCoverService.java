@@ -0,0 +1,247 @@
+package com.redligot.backend.service;
+
+import com.redligot.backend.repository.GalleryCoverStore;
+import com.redligot.backend.repository.GalleryCoverStore.Cover;
+import com.redligot.backend.repository.GalleryCoverStore.CoverSource;
+import com.redligot.backend.repository.ThumbnailStore.Thumbnail;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Gallery cover mosaics: the first four photos of a gallery, in ID order, drawn as one
+ * 2x2 JPEG the size of a listing card, so a gallery listing costs one small image per
+ * card instead of four.
+ *
+ * <p>Covers are drawn from the cached listing thumbnails and kept in
+ * <code>gallery_covers</code> under a cover version that fingerprints the photos and
+ * content versions they show. Changes that can touch the first four photos of a
+ * gallery (uploads, moves, replaced images, deletes) redraw its cover in the
+ * background; a request that still finds a stale cover redraws it on the spot, so the
+ * version served always matches the gallery.</p>
+ */
+@Service
+public class GalleryCoverService {
+
+	private static final Logger logger = LoggerFactory.getLogger(GalleryCoverService.class);
+
+	/**
+	 * Content type of every cover.
+	 */
+	public static final String COVER_TYPE = "image/jpeg";
+
+	private static final int TILES = 4;
+	private static final int GAP = 2;
+	// Matches the empty tiles of the gallery card
+	private static final Color EMPTY_TILE = new Color(0xe5, 0xe7, 0xeb);
+
+	/**
+	 * A gallery's current cover.
+	 *
+	 * @param version Cover version, usable as an entity tag
+	 */
+	public record GalleryCover(String version, byte[] data) {}
+
+	private final GalleryCoverStore galleryCoverStore;
+	private final ThumbnailService thumbnailService;
+	private final ImageDecodeService imageDecodeService;
+	private final int tileSize;
+	private final float quality;
+	// Galleries being refreshed, mapped to whether another refresh was requested meanwhile
+	private final ConcurrentHashMap<Long, Boolean> refreshing = new ConcurrentHashMap<>();
+
+	public GalleryCoverService(GalleryCoverStore galleryCoverStore, ThumbnailService thumbnailService,
+			ImageDecodeService imageDecodeService,
+			@Value("${app.galleries.cover.tile-size:200}") int tileSize,
+			@Value("${app.thumbnails.jpeg-quality:0.8}") float quality) {
+		this.galleryCoverStore = galleryCoverStore;
+		this.thumbnailService = thumbnailService;
+		this.imageDecodeService = imageDecodeService;
+		this.tileSize = tileSize;
+		this.quality = quality;
+	}
+
+	/**
+	 * Compute the current cover version of a gallery, without drawing anything.
+	 *
+	 * @param galleryId Gallery ID
+	 * @param userId Owner user ID
+	 * @return the version
+	 * @throws ResponseStatusException 404 if the gallery has no photos or belongs to another user
+	 */
+	public String getVersion(long galleryId, Long userId) {
+		return version(sources(galleryId, userId));
+	}
+
+	/**
+	 * Get a gallery's cover, drawing it if the cached one is missing or stale.
+	 *
+	 * @param galleryId Gallery ID
+	 * @param userId Owner user ID
+	 * @return the cover
+	 * @throws ResponseStatusException 404 if the gallery has no photos or belongs to another user
+	 */
+	public GalleryCover getCover(long galleryId, Long userId) {
+		List<CoverSource> sources = sources(galleryId, userId);
+		String version = version(sources);
+		Cover cached = galleryCoverStore.find(galleryId);
+		if (cached != null && cached.version().equals(version)) {
+			return new GalleryCover(version, cached.data());
+		}
+		Cover drawn = draw(galleryId, sources, version);
+		galleryCoverStore.save(drawn);
+		return new GalleryCover(version, drawn.data());
+	}
+
+	/**
+	 * Redraw the covers of galleries whose first photos may have changed, in the
+	 * background. Covers that are still current are left alone.
+	 *
+	 * <p>Refreshes of one gallery are coalesced: while one runs, further requests only
+	 * mark it to run once more when done, so a bulk upload costs at most two redraws
+	 * instead of one per photo.</p>
+	 *
+	 * @param galleryIds Gallery IDs
+	 */
+	@Async
+	public void refreshLater(Collection<Long> galleryIds) {
+		for (Long galleryId : galleryIds) {
+			boolean[] owner = new boolean[1];
+			refreshing.compute(galleryId, (id, rerun) -> {
+				owner[0] = rerun == null;
+				return owner[0] ? Boolean.FALSE : Boolean.TRUE;
+			});
+			if (!owner[0]) {
+				continue;
+			}
+			do {
+				// Requests until here are served by the sources read next
+				refreshing.put(galleryId, Boolean.FALSE);
+				refresh(galleryId);
+			} while (!refreshing.remove(galleryId, Boolean.FALSE));
+		}
+	}
+
+	/**
+	 * Find the galleries a set of photos is in, to refresh their covers after the photos
+	 * are deleted.
+	 *
+	 * @param photoIds Photo IDs
+	 * @return gallery IDs
+	 */
+	public List<Long> findGalleryIds(Collection<Long> photoIds) {
+		return galleryCoverStore.findGalleryIds(photoIds);
+	}
+
+	private void refresh(long galleryId) {
+		try {
+			List<CoverSource> sources = galleryCoverStore.findSources(galleryId, null, TILES);
+			if (sources.isEmpty()) {
+				galleryCoverStore.delete(galleryId);
+				return;
+			}
+			String version = version(sources);
+			if (!version.equals(galleryCoverStore.findVersion(galleryId))) {
+				galleryCoverStore.save(draw(galleryId, sources, version));
+			}
+		} catch (RuntimeException e) {
+			// The next request for the cover draws it instead
+			logger.warn("Could not refresh cover of gallery {}: {}", galleryId, e.getMessage());
+		}
+	}
+
+	private List<CoverSource> sources(long galleryId, Long userId) {
+		List<CoverSource> sources = galleryCoverStore.findSources(galleryId, userId, TILES);
+		if (sources.isEmpty()) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Gallery " + galleryId + " has no cover");
+		}
+		return sources;
+	}
+
+	/**
+	 * Fingerprint the photos a cover shows; changes when any of the first four photos is
+	 * added, removed, reordered or has its image replaced.
+	 */
+	static String version(List<CoverSource> sources) {
+		CRC32 crc = new CRC32();
+		for (CoverSource source : sources) {
+			crc.update((source.photoId() + ":" + source.contentVersion() + ":" + source.orientation() + ";").getBytes(StandardCharsets.UTF_8));
+		}
+		return Long.toHexString(crc.getValue());
+	}
+
+	private Cover draw(long galleryId, List<CoverSource> sources, String version) {
+		int size = 2 * tileSize + GAP;
+		BufferedImage mosaic = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = mosaic.createGraphics();
+		try {
+			g.setColor(Color.WHITE);
+			g.fillRect(0, 0, size, size);
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			for (int i = 0; i < TILES; i++) {
+				int x = (i % 2) * (tileSize + GAP);
+				int y = (i / 2) * (tileSize + GAP);
+				if (i >= sources.size() || !drawTile(g, sources.get(i), x, y)) {
+					g.setColor(EMPTY_TILE);
+					g.fillRect(x, y, tileSize, tileSize);
+				}
+			}
+		} finally {
+			g.dispose();
+		}
+		try {
+			return new Cover(galleryId, version, ThumbnailService.encodeJpeg(mosaic, quality));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Draw a photo's thumbnail, upright, into one tile of the mosaic.
+	 *
+	 * @return false if the photo has no thumbnail
+	 */
+	private boolean drawTile(Graphics2D g, CoverSource source, int x, int y) {
+		Thumbnail thumbnail = thumbnailService.getThumbnail(source.photoId());
+		if (thumbnail == null) {
+			return false;
+		}
+		try {
+			Boolean drawn = imageDecodeService.decode(new ByteArrayInputStream(thumbnail.data()), tileSize, image -> {
+				drawCropped(g, ImageAnalysisService.orient(image, source.orientation()), x, y);
+				return true;
+			});
+			return drawn != null;
+		} catch (IOException | ResponseStatusException e) {
+			logger.debug("No cover tile for photo {}: {}", source.photoId(), e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Scale to fill the tile and crop the overflow evenly from both sides.
+	 */
+	private void drawCropped(Graphics2D g, BufferedImage image, int x, int y) {
+		int side = Math.min(image.getWidth(), image.getHeight());
+		int sx = (image.getWidth() - side) / 2;
+		int sy = (image.getHeight() - side) / 2;
+		g.drawImage(image, x, y, x + tileSize, y + tileSize, sx, sy, sx + side, sy + side, null);
+	}
+}
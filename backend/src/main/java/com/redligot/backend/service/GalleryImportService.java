@@ -0,0 +1,290 @@
+package com.redligot.backend.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.redligot.backend.repository.GalleryRepository;
+import com.redligot.backend.repository.PhotoContentStore;
+import com.redligot.backend.repository.PhotoContentStore.NewPhoto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Imports the images of a ZIP archive into a gallery while the archive is uploaded.
+ *
+ * The request body is read through {@link ZipInputStream}, one entry at a time, so
+ * the archive is never written to disk or held whole in memory. Accepted images are
+ * collected into small batches (bounded by count and bytes) that are inserted with a
+ * single JDBC batch each; at most one batch plus one entry is in the heap.
+ */
+@Service
+public class GalleryImportService {
+
+	private static final Logger logger = LoggerFactory.getLogger(GalleryImportService.class);
+
+	private static final Map<String, String> IMAGE_TYPES = Map.of(
+			"jpg", "image/jpeg",
+			"jpeg", "image/jpeg",
+			"png", "image/png",
+			"gif", "image/gif",
+			"webp", "image/webp",
+			"bmp", "image/bmp");
+
+	/**
+	 * Outcome of a single archive entry.
+	 */
+	public enum EntryStatus {
+		IMPORTED,
+		SKIPPED,
+		FAILED
+	}
+
+	/**
+	 * Progress record emitted once per archive entry, and once more with totals at the end.
+	 */
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	public record ImportProgress(int entry, String name, EntryStatus status, Long size, String reason,
+			Integer imported, Integer skipped, Integer failed) {
+
+		static ImportProgress entry(int entry, String name, EntryStatus status, Long size, String reason) {
+			return new ImportProgress(entry, name, status, size, reason, null, null, null);
+		}
+
+		static ImportProgress summary(int entries, int imported, int skipped, int failed, String reason) {
+			return new ImportProgress(entries, null, null, null, reason, imported, skipped, failed);
+		}
+	}
+
+	/**
+	 * Receives progress as entries are committed or skipped.
+	 */
+	@FunctionalInterface
+	public interface ProgressListener {
+		void onProgress(ImportProgress progress) throws IOException;
+	}
+
+	private final GalleryRepository galleryRepository;
+	private final PhotoContentStore photoContentStore;
+	private final ImageMetadataExtractor imageMetadataExtractor;
+	private final GalleryCoverService galleryCoverService;
+	private final IngestOptimizer ingestOptimizer;
+	private final int batchSize;
+	private final long batchBytes;
+	private final int maxEntries;
+
+	public GalleryImportService(GalleryRepository galleryRepository, PhotoContentStore photoContentStore,
+			ImageMetadataExtractor imageMetadataExtractor, GalleryCoverService galleryCoverService,
+			IngestOptimizer ingestOptimizer,
+			@Value("${app.import.batch-size:20}") int batchSize,
+			@Value("${app.import.batch-bytes:33554432}") long batchBytes,
+			@Value("${app.import.max-entries:10000}") int maxEntries) {
+		this.galleryRepository = galleryRepository;
+		this.photoContentStore = photoContentStore;
+		this.imageMetadataExtractor = imageMetadataExtractor;
+		this.galleryCoverService = galleryCoverService;
+		this.ingestOptimizer = ingestOptimizer;
+		this.batchSize = batchSize;
+		this.batchBytes = batchBytes;
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * Check that the gallery exists and belongs to the user, before any progress is written.
+	 *
+	 * @param galleryId Gallery ID
+	 * @param userId Owner user ID
+	 * @throws ResponseStatusException if the gallery does not exist or belongs to another user
+	 */
+	public void checkGallery(Long galleryId, Long userId) {
+		if (galleryRepository.findByIdAndUserId(galleryId, userId).isEmpty()) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+					"Gallery not found or does not belong to user");
+		}
+	}
+
+	/**
+	 * Import every image in {@code archive} into the gallery.
+	 * Non-images, oversize and empty entries are skipped; a batch that fails to insert
+	 * is reported as failed and the import continues with the next entries.
+	 *
+	 * @param galleryId Gallery ID, already checked with {@link #checkGallery}
+	 * @param userId Owner user ID
+	 * @param archive ZIP bytes as they arrive
+	 * @param listener Receives one record per entry and a final summary
+	 * @throws IOException if the listener fails (typically the client went away)
+	 */
+	public void importArchive(Long galleryId, Long userId, InputStream archive, ProgressListener listener) throws IOException {
+		Batch batch = new Batch(galleryId, userId, listener);
+		int entries = 0;
+		String error = null;
+		ZipInputStream zip = new ZipInputStream(archive);
+		try {
+			ZipEntry entry;
+			while ((entry = zip.getNextEntry()) != null) {
+				if (entry.isDirectory() || isMetadataEntry(entry.getName())) {
+					continue;
+				}
+				if (entries == maxEntries) {
+					error = "Archive has more than " + maxEntries + " entries; the rest were not imported";
+					break;
+				}
+				entries++;
+				readEntry(entries, entry, zip, batch);
+			}
+		} catch (ZipException e) {
+			error = "Invalid ZIP archive: " + e.getMessage();
+		} catch (IOException e) {
+			if (batch.listenerFailed) {
+				throw e;
+			}
+			// Upload cut off; keep what was already committed
+			error = "Archive upload interrupted: " + e.getMessage();
+		}
+		batch.flush();
+		if (batch.imported > 0) {
+			galleryCoverService.refreshLater(List.of(galleryId));
+		}
+		if (error != null) {
+			logger.info("Import into gallery {} stopped after {} entries: {}", galleryId, entries, error);
+		}
+		listener.onProgress(ImportProgress.summary(entries, batch.imported, batch.skipped, batch.failed, error));
+	}
+
+	private void readEntry(int index, ZipEntry entry, ZipInputStream zip, Batch batch) throws IOException {
+		String name = baseName(entry.getName());
+		String contentType = contentTypeOf(name);
+		if (contentType == null) {
+			batch.skip(index, name, null, "Not an image");
+			return;
+		}
+		if (entry.getSize() > PhotoService.MAX_UPLOAD_BYTES) {
+			batch.skip(index, name, entry.getSize(), "Exceeds maximum size of 8MB");
+			return;
+		}
+		// Declared sizes are optional (data descriptors), so enforce the limit while reading
+		byte[] data = zip.readNBytes((int) PhotoService.MAX_UPLOAD_BYTES + 1);
+		if (data.length > PhotoService.MAX_UPLOAD_BYTES) {
+			batch.skip(index, name, null, "Exceeds maximum size of 8MB");
+			return;
+		}
+		if (data.length == 0) {
+			batch.skip(index, name, 0L, "Empty file");
+			return;
+		}
+		String sha256 = ContentHash.of(data);
+		// Batched inserts return no IDs to keep originals under, so only optimize when none are kept
+		if (!ingestOptimizer.keepsOriginals()) {
+			data = ingestOptimizer.optimize(data);
+		}
+		batch.add(index, new NewPhoto(titleOf(name), name, contentType, data,
+				imageMetadataExtractor.parse(data, 0, data.length), sha256));
+	}
+
+	private static boolean isMetadataEntry(String name) {
+		String base = baseName(name);
+		return name.startsWith("__MACOSX/") || base.startsWith(".") || base.equalsIgnoreCase("Thumbs.db");
+	}
+
+	private static String baseName(String name) {
+		return name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\')) + 1);
+	}
+
+	private static String contentTypeOf(String name) {
+		int dot = name.lastIndexOf('.');
+		return dot < 0 ? null : IMAGE_TYPES.get(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+	}
+
+	private static String titleOf(String name) {
+		int dot = name.lastIndexOf('.');
+		String title = dot > 0 ? name.substring(0, dot) : name;
+		return title.length() > 255 ? title.substring(0, 255) : title;
+	}
+
+	/**
+	 * Pending inserts for one import plus running totals.
+	 */
+	private final class Batch {
+
+		private final Long galleryId;
+		private final Long userId;
+		private final ProgressListener listener;
+		private final List<NewPhoto> photos = new ArrayList<>();
+		private final List<Integer> indexes = new ArrayList<>();
+		private long bytes;
+		private int imported;
+		private int skipped;
+		private int failed;
+		private boolean listenerFailed;
+
+		Batch(Long galleryId, Long userId, ProgressListener listener) {
+			this.galleryId = galleryId;
+			this.userId = userId;
+			this.listener = listener;
+		}
+
+		void add(int index, NewPhoto photo) throws IOException {
+			photos.add(photo);
+			indexes.add(index);
+			bytes += photo.data().length;
+			if (photos.size() >= batchSize || bytes >= batchBytes) {
+				flush();
+			}
+		}
+
+		void skip(int index, String name, Long size, String reason) throws IOException {
+			skipped++;
+			report(ImportProgress.entry(index, name, EntryStatus.SKIPPED, size, reason));
+		}
+
+		void flush() throws IOException {
+			if (photos.isEmpty()) {
+				return;
+			}
+			EntryStatus status;
+			String reason = null;
+			try {
+				photoContentStore.insertBatch(photos, userId, galleryId, LocalDateTime.now());
+				status = EntryStatus.IMPORTED;
+				imported += photos.size();
+			} catch (DataAccessException e) {
+				logger.warn("Import batch into gallery {} failed: {}", galleryId, e.getMostSpecificCause().getMessage());
+				status = EntryStatus.FAILED;
+				reason = "Failed to save: " + e.getMostSpecificCause().getMessage();
+				failed += photos.size();
+			}
+			List<NewPhoto> done = List.copyOf(photos);
+			List<Integer> doneIndexes = List.copyOf(indexes);
+			photos.clear();
+			indexes.clear();
+			bytes = 0;
+			for (int i = 0; i < done.size(); i++) {
+				NewPhoto photo = done.get(i);
+				report(ImportProgress.entry(doneIndexes.get(i), photo.originalFilename(), status,
+						(long) photo.data().length, reason));
+			}
+		}
+
+		private void report(ImportProgress progress) throws IOException {
+			try {
+				listener.onProgress(progress);
+			} catch (IOException e) {
+				listenerFailed = true;
+				throw e;
+			}
+		}
+	}
+}
@@ -10,13 +10,18 @@ import com.redligot.backend.model.User;
 import com.redligot.backend.repository.GalleryRepository;
 import com.redligot.backend.repository.PhotoRepository;
 import com.redligot.backend.repository.UserRepository;
+import com.redligot.backend.security.ImageUrlSigner;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -32,6 +37,15 @@ public class GalleryService {
     @Autowired
     private UserRepository userRepository;
     
+    @Autowired
+    private ImageUrlSigner imageUrlSigner;
+    
+    @Autowired
+    private GalleryCoverService galleryCoverService;
+    
+    @Autowired
+    private PhotoService photoService;
+    
     public GalleryDto createGallery(CreateGalleryRequest request, Long userId) {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("User not found"));
@@ -119,14 +133,19 @@ public class GalleryService {
                 .orElseThrow(() -> new RuntimeException("Gallery not found"));
         
         if (deletePhotos) {
-            // Delete all photos in the gallery
-            photoRepository.deleteAll(gallery.getPhotos());
+            // Delete all photos in the gallery; they are purged in the background
+            List<Long> photoIds = gallery.getPhotos().stream().map(Photo::getId).toList();
+            if (!photoIds.isEmpty()) {
+                photoService.bulkDeleteByIds(photoIds, userId);
+            }
         } else {
             // Move photos to unorganized (set gallery to null)
             gallery.getPhotos().forEach(photo -> photo.setGallery(null));
             photoRepository.saveAll(gallery.getPhotos());
         }
         
+        // Keep the cascade from removing the photos; the foreign key clears gallery_id of deleted ones
+        gallery.getPhotos().clear();
         galleryRepository.delete(gallery);
     }
     
@@ -148,9 +167,26 @@ public class GalleryService {
             targetGallery = null;
         }
         
+        // Galleries that lose or gain photos may get a different cover
+        Set<Long> changedGalleries = new HashSet<>();
+        photos.stream()
+                .filter(photo -> photo.getGallery() != null)
+                .forEach(photo -> changedGalleries.add(photo.getGallery().getId()));
+        if (targetGallery != null) {
+            changedGalleries.add(targetGallery.getId());
+        }
+        
         // Move photos
         photos.forEach(photo -> photo.setGallery(targetGallery));
         photoRepository.saveAll(photos);
+        
+        // Redraw once the move is visible to the background thread
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                galleryCoverService.refreshLater(changedGalleries);
+            }
+        });
     }
     
     public List<GalleryDto> getGalleriesForDropdown(Long userId) {
@@ -193,6 +229,13 @@ public class GalleryService {
         dto.setSize(photo.getSize());
         dto.setUserId(photo.getUser().getId());
         dto.setGalleryId(photo.getGallery() != null ? photo.getGallery().getId() : null);
-        return dto;
+        dto.setContentVersion(photo.getContentVersion());
+        dto.setWidth(photo.getWidth());
+        dto.setHeight(photo.getHeight());
+        dto.setOrientation(photo.getOrientation());
+        dto.setTakenAt(photo.getTakenAt());
+        dto.setCameraModel(photo.getCameraModel());
+        dto.setBlurHash(photo.getBlurHash());
+        return imageUrlSigner.applyTo(dto);
     }
 }
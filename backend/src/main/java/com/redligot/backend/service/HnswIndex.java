@@ -0,0 +1,621 @@
+package com.redligot.backend.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Approximate nearest-neighbour index (HNSW) over fixed-length byte vectors, compared
+ * by squared Euclidean distance.
+ *
+ * <p>Each vector is a node in a layered proximity graph: every node is on layer 0 and
+ * on each higher layer with exponentially falling probability. A search walks greedily
+ * down from the single top entry point and then runs a best-first search with a
+ * candidate list of {@code ef} on layer 0, so it touches a few thousand nodes whatever
+ * the size of the index. Neighbours are chosen with the diversity heuristic of the HNSW
+ * paper, keeping links to other clusters so searches do not get stuck in one.</p>
+ *
+ * <p>Vectors are added to a tail first and linked into the graph by
+ * {@link #buildStep(int)}, in small batches so searches are held up only briefly; until
+ * then searches scan the tail exactly. That lets a large index be loaded in one query
+ * and become fast in the background. Removed nodes stay in the graph to keep it
+ * connected but are never returned.</p>
+ */
+public final class HnswIndex {
+
+	/**
+	 * An indexed photo with its squared distance to the query.
+	 */
+	public record Match(long photoId, int distance) {}
+
+	private static final int DISTANCE_BITS = 32;
+
+	private final int dimensions;
+	private final int maxLinks;
+	private final int maxLinks0;
+	private final int efConstruction;
+	private final double levelMultiplier;
+	private final Random random = new Random(42);
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private long[] ids;
+	private byte[] vectors;
+	private boolean[] removed;
+	// Layer 0 links of node n: count at n * (maxLinks0 + 1), then the neighbours
+	private int[] links0;
+	// Higher layer links of node n, layer by layer in the same count-first format; null on layer 0 only
+	private int[][] upperLinks;
+	private int size;
+	private int live;
+	private int sortedPrefix;
+	// Nodes [0, graphSize) are linked into the graph
+	private int graphSize;
+	private int entryPoint = -1;
+	private int topLevel = -1;
+
+	/**
+	 * @param dimensions Vector length in bytes
+	 * @param maxLinks Neighbours per node on the upper layers (M); twice that on layer 0
+	 * @param efConstruction Candidate list size while linking new nodes
+	 * @param initialCapacity Expected number of vectors
+	 */
+	public HnswIndex(int dimensions, int maxLinks, int efConstruction, int initialCapacity) {
+		this.dimensions = dimensions;
+		this.maxLinks = maxLinks;
+		this.maxLinks0 = maxLinks * 2;
+		this.efConstruction = efConstruction;
+		this.levelMultiplier = 1.0 / Math.log(maxLinks);
+		int capacity = Math.max(16, initialCapacity);
+		this.ids = new long[capacity];
+		this.vectors = new byte[capacity * dimensions];
+		this.removed = new boolean[capacity];
+		this.links0 = new int[capacity * (maxLinks0 + 1)];
+		this.upperLinks = new int[capacity][];
+	}
+
+	/**
+	 * @return number of vectors that can be found
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return live;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return vectors not yet linked into the graph
+	 */
+	public int pending() {
+		lock.readLock().lock();
+		try {
+			return size - graphSize;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return removed vectors still taking up nodes
+	 */
+	public int removedCount() {
+		lock.readLock().lock();
+		try {
+			return size - live;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Add a photo's vector, replacing any earlier one. It can be found right away and is
+	 * linked into the graph by the next {@link #buildStep(int)}.
+	 */
+	public void add(long photoId, byte[] vector) {
+		if (vector.length != dimensions) {
+			throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + vector.length);
+		}
+		lock.writeLock().lock();
+		try {
+			int existing = find(photoId);
+			if (existing >= 0) {
+				removed[existing] = true;
+				live--;
+			}
+			if (size == ids.length) {
+				grow();
+			}
+			ids[size] = photoId;
+			System.arraycopy(vector, 0, vectors, size * dimensions, dimensions);
+			if (sortedPrefix == size && (size == 0 || ids[size - 1] < photoId)) {
+				sortedPrefix++;
+			}
+			size++;
+			live++;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Remove a photo.
+	 *
+	 * @return whether it was indexed
+	 */
+	public boolean remove(long photoId) {
+		lock.writeLock().lock();
+		try {
+			int slot = find(photoId);
+			if (slot < 0) {
+				return false;
+			}
+			removed[slot] = true;
+			live--;
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return a copy of the photo's vector, or null if it is not indexed
+	 */
+	public byte[] vectorOf(long photoId) {
+		lock.readLock().lock();
+		try {
+			int slot = find(photoId);
+			return slot >= 0 ? Arrays.copyOfRange(vectors, slot * dimensions, (slot + 1) * dimensions) : null;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Link up to {@code maxNodes} pending vectors into the graph.
+	 *
+	 * @return whether vectors are still pending
+	 */
+	public boolean buildStep(int maxNodes) {
+		lock.writeLock().lock();
+		try {
+			int end = Math.min(size, graphSize + maxNodes);
+			while (graphSize < end) {
+				link(graphSize);
+				graphSize++;
+			}
+			return graphSize < size;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Find the approximate nearest neighbours of a vector.
+	 *
+	 * @param query Query vector
+	 * @param k Most matches to return
+	 * @param ef Candidate list size; larger is slower and more accurate, at least {@code k}
+	 * @param excludeId Photo to leave out, usually the one the query belongs to
+	 * @return matches, nearest first
+	 */
+	public List<Match> search(byte[] query, int k, int ef, long excludeId) {
+		lock.readLock().lock();
+		try {
+			LongHeap found = new LongHeap(k + 1);
+			if (entryPoint >= 0) {
+				int current = entryPoint;
+				int currentDistance = distance(query, current);
+				for (int level = topLevel; level > 0; level--) {
+					long nearest = greedyClosest(query, current, currentDistance, level);
+					current = node(nearest);
+					currentDistance = distanceOf(nearest);
+				}
+				LongHeap results = searchLayer(query, current, currentDistance, Math.max(ef, k), 0);
+				for (long entry : sortedByDistance(results)) {
+					offer(found, k, node(entry), distanceOf(entry), excludeId);
+				}
+			}
+			for (int slot = graphSize; slot < size; slot++) {
+				offer(found, k, slot, distance(query, slot), excludeId);
+			}
+			return toMatches(found);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Find the exact nearest neighbours by scanning every vector; for measuring recall.
+	 */
+	public List<Match> exactSearch(byte[] query, int k, long excludeId) {
+		lock.readLock().lock();
+		try {
+			LongHeap found = new LongHeap(k + 1);
+			for (int slot = 0; slot < size; slot++) {
+				offer(found, k, slot, distance(query, slot), excludeId);
+			}
+			return toMatches(found);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private void offer(LongHeap found, int k, int slot, int distance, long excludeId) {
+		if (removed[slot] || ids[slot] == excludeId) {
+			return;
+		}
+		// Max-heap of the k nearest so far
+		found.push(maxKey(distance, slot));
+		if (found.size() > k) {
+			found.pop();
+		}
+	}
+
+	private List<Match> toMatches(LongHeap found) {
+		List<Match> matches = new ArrayList<>(found.size());
+		for (long entry : found.toArray()) {
+			int slot = node(entry);
+			matches.add(new Match(ids[slot], Integer.MAX_VALUE - (int) (entry >>> DISTANCE_BITS)));
+		}
+		matches.sort(Comparator.comparingInt(Match::distance).thenComparingLong(Match::photoId));
+		return matches;
+	}
+
+	/**
+	 * Insert node {@code slot} into the graph. Caller holds the write lock.
+	 */
+	private void link(int slot) {
+		int level = (int) (-Math.log(1.0 - random.nextDouble()) * levelMultiplier);
+		if (level > 0) {
+			upperLinks[slot] = new int[level * (maxLinks + 1)];
+		}
+		if (entryPoint < 0) {
+			entryPoint = slot;
+			topLevel = level;
+			return;
+		}
+
+		int current = entryPoint;
+		int currentDistance = distance(slot, current);
+		for (int l = topLevel; l > level; l--) {
+			long nearest = greedyClosest(vectorAt(slot), current, currentDistance, l);
+			current = node(nearest);
+			currentDistance = distanceOf(nearest);
+		}
+		for (int l = Math.min(level, topLevel); l >= 0; l--) {
+			LongHeap candidates = searchLayer(vectorAt(slot), current, currentDistance, efConstruction, l);
+			long[] nearestFirst = sortedByDistance(candidates);
+			int[] neighbours = selectNeighbours(slot, nearestFirst, l == 0 ? maxLinks0 : maxLinks);
+			setLinks(slot, l, neighbours, neighbours.length);
+			for (int neighbour : neighbours) {
+				addLink(neighbour, slot, l);
+			}
+			current = node(nearestFirst[0]);
+			currentDistance = distanceOf(nearestFirst[0]);
+		}
+		if (level > topLevel) {
+			entryPoint = slot;
+			topLevel = level;
+		}
+	}
+
+	/**
+	 * Pick up to {@code max} neighbours from candidates sorted nearest first, skipping a
+	 * candidate that is closer to an already chosen neighbour than to the node.
+	 */
+	private int[] selectNeighbours(int slot, long[] nearestFirst, int max) {
+		int[] chosen = new int[Math.min(max, nearestFirst.length)];
+		int count = 0;
+		for (long entry : nearestFirst) {
+			if (count == chosen.length) {
+				break;
+			}
+			int candidate = node(entry);
+			if (candidate == slot) {
+				continue;
+			}
+			int toNode = distanceOf(entry);
+			boolean diverse = true;
+			for (int i = 0; i < count; i++) {
+				if (distance(candidate, chosen[i]) < toNode) {
+					diverse = false;
+					break;
+				}
+			}
+			if (diverse) {
+				chosen[count++] = candidate;
+			}
+		}
+		return Arrays.copyOf(chosen, count);
+	}
+
+	private void addLink(int node, int newNeighbour, int level) {
+		int[] links = linksArray(node, level);
+		int base = linksBase(node, level);
+		int max = level == 0 ? maxLinks0 : maxLinks;
+		int count = links[base];
+		if (count < max) {
+			links[base + 1 + count] = newNeighbour;
+			links[base]++;
+			return;
+		}
+		// Full: re-select among the current neighbours plus the new one
+		long[] candidates = new long[count + 1];
+		for (int i = 0; i < count; i++) {
+			int neighbour = links[base + 1 + i];
+			candidates[i] = minKey(distance(node, neighbour), neighbour);
+		}
+		candidates[count] = minKey(distance(node, newNeighbour), newNeighbour);
+		Arrays.sort(candidates);
+		int[] selected = selectNeighbours(node, candidates, max);
+		setLinks(node, level, selected, selected.length);
+	}
+
+	private void setLinks(int node, int level, int[] neighbours, int count) {
+		int[] links = linksArray(node, level);
+		int base = linksBase(node, level);
+		links[base] = count;
+		System.arraycopy(neighbours, 0, links, base + 1, count);
+	}
+
+	private int[] linksArray(int node, int level) {
+		return level == 0 ? links0 : upperLinks[node];
+	}
+
+	private int linksBase(int node, int level) {
+		return level == 0 ? node * (maxLinks0 + 1) : (level - 1) * (maxLinks + 1);
+	}
+
+	/**
+	 * Walk to the closest node on one layer.
+	 *
+	 * @return min-key of the closest node
+	 */
+	private long greedyClosest(byte[] query, int start, int startDistance, int level) {
+		int current = start;
+		int currentDistance = startDistance;
+		boolean improved = true;
+		while (improved) {
+			improved = false;
+			int[] links = linksArray(current, level);
+			int base = linksBase(current, level);
+			for (int i = 0; i < links[base]; i++) {
+				int neighbour = links[base + 1 + i];
+				int d = distance(query, neighbour);
+				if (d < currentDistance) {
+					current = neighbour;
+					currentDistance = d;
+					improved = true;
+				}
+			}
+		}
+		return minKey(currentDistance, current);
+	}
+
+	/**
+	 * Best-first search on one layer.
+	 *
+	 * @return max-heap of up to {@code ef} nearest nodes found
+	 */
+	private LongHeap searchLayer(byte[] query, int start, int startDistance, int ef, int level) {
+		IntSet visited = new IntSet(ef * 8);
+		LongHeap candidates = new LongHeap(ef * 2);
+		LongHeap results = new LongHeap(ef + 1);
+		visited.add(start);
+		candidates.push(minKey(startDistance, start));
+		results.push(maxKey(startDistance, start));
+		while (candidates.size() > 0) {
+			long next = candidates.pop();
+			int furthest = Integer.MAX_VALUE - (int) (results.peek() >>> DISTANCE_BITS);
+			if (distanceOf(next) > furthest && results.size() >= ef) {
+				break;
+			}
+			int node = node(next);
+			int[] links = linksArray(node, level);
+			int base = linksBase(node, level);
+			for (int i = 0; i < links[base]; i++) {
+				int neighbour = links[base + 1 + i];
+				if (!visited.add(neighbour)) {
+					continue;
+				}
+				int d = distance(query, neighbour);
+				furthest = Integer.MAX_VALUE - (int) (results.peek() >>> DISTANCE_BITS);
+				if (results.size() < ef || d < furthest) {
+					candidates.push(minKey(d, neighbour));
+					results.push(maxKey(d, neighbour));
+					if (results.size() > ef) {
+						results.pop();
+					}
+				}
+			}
+		}
+		return results;
+	}
+
+	private long[] sortedByDistance(LongHeap maxHeap) {
+		long[] entries = maxHeap.toArray();
+		for (int i = 0; i < entries.length; i++) {
+			entries[i] = minKey(Integer.MAX_VALUE - (int) (entries[i] >>> DISTANCE_BITS), node(entries[i]));
+		}
+		Arrays.sort(entries);
+		return entries;
+	}
+
+	private int distance(byte[] query, int slot) {
+		byte[] data = vectors;
+		int offset = slot * dimensions;
+		int sum = 0;
+		for (int i = 0; i < dimensions; i++) {
+			int d = (query[i] & 0xff) - (data[offset + i] & 0xff);
+			sum += d * d;
+		}
+		return sum;
+	}
+
+	private int distance(int a, int b) {
+		byte[] data = vectors;
+		int offsetA = a * dimensions;
+		int offsetB = b * dimensions;
+		int sum = 0;
+		for (int i = 0; i < dimensions; i++) {
+			int d = (data[offsetA + i] & 0xff) - (data[offsetB + i] & 0xff);
+			sum += d * d;
+		}
+		return sum;
+	}
+
+	private byte[] vectorAt(int slot) {
+		return Arrays.copyOfRange(vectors, slot * dimensions, (slot + 1) * dimensions);
+	}
+
+	private int find(long photoId) {
+		int slot = Arrays.binarySearch(ids, 0, sortedPrefix, photoId);
+		if (slot >= 0 && !removed[slot]) {
+			return slot;
+		}
+		for (slot = sortedPrefix; slot < size; slot++) {
+			if (ids[slot] == photoId && !removed[slot]) {
+				return slot;
+			}
+		}
+		return -1;
+	}
+
+	private void grow() {
+		int capacity = ids.length + (ids.length >> 1);
+		ids = Arrays.copyOf(ids, capacity);
+		vectors = Arrays.copyOf(vectors, capacity * dimensions);
+		removed = Arrays.copyOf(removed, capacity);
+		links0 = Arrays.copyOf(links0, capacity * (maxLinks0 + 1));
+		upperLinks = Arrays.copyOf(upperLinks, capacity);
+	}
+
+	// Heap entries pack the distance in the high and the node in the low 32 bits, so
+	// plain long order is distance order; max-heap keys store the distance inverted.
+
+	private static long minKey(int distance, int node) {
+		return ((long) distance << DISTANCE_BITS) | node;
+	}
+
+	private static long maxKey(int distance, int node) {
+		return ((long) (Integer.MAX_VALUE - distance) << DISTANCE_BITS) | node;
+	}
+
+	private static int node(long key) {
+		return (int) key;
+	}
+
+	private static int distanceOf(long minKey) {
+		return (int) (minKey >>> DISTANCE_BITS);
+	}
+
+	/**
+	 * Binary min-heap of longs.
+	 */
+	private static final class LongHeap {
+
+		private long[] heap;
+		private int size;
+
+		LongHeap(int capacity) {
+			heap = new long[Math.max(4, capacity)];
+		}
+
+		int size() {
+			return size;
+		}
+
+		long peek() {
+			return heap[0];
+		}
+
+		void push(long value) {
+			if (size == heap.length) {
+				heap = Arrays.copyOf(heap, size * 2);
+			}
+			int i = size++;
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (heap[parent] <= value) {
+					break;
+				}
+				heap[i] = heap[parent];
+				i = parent;
+			}
+			heap[i] = value;
+		}
+
+		long pop() {
+			long top = heap[0];
+			long last = heap[--size];
+			int i = 0;
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= size) {
+					break;
+				}
+				if (child + 1 < size && heap[child + 1] < heap[child]) {
+					child++;
+				}
+				if (heap[child] >= last) {
+					break;
+				}
+				heap[i] = heap[child];
+				i = child;
+			}
+			heap[i] = last;
+			return top;
+		}
+
+		long[] toArray() {
+			return Arrays.copyOf(heap, size);
+		}
+	}
+
+	/**
+	 * Open-addressing set of non-negative ints, for the nodes visited by one search.
+	 */
+	private static final class IntSet {
+
+		private int[] table;
+		private int count;
+
+		IntSet(int expected) {
+			table = new int[Integer.highestOneBit(Math.max(16, expected * 2) - 1) << 1];
+			Arrays.fill(table, -1);
+		}
+
+		/**
+		 * @return whether the value was not in the set yet
+		 */
+		boolean add(int value) {
+			if ((count + 1) * 2 > table.length) {
+				int[] old = table;
+				table = new int[old.length * 2];
+				Arrays.fill(table, -1);
+				count = 0;
+				for (int v : old) {
+					if (v >= 0) {
+						add(v);
+					}
+				}
+			}
+			int mask = table.length - 1;
+			int i = (value * 0x9E3779B9) >>> 1 & mask;
+			while (table[i] >= 0) {
+				if (table[i] == value) {
+					return false;
+				}
+				i = (i + 1) & mask;
+			}
+			table[i] = value;
+			count++;
+			return true;
+		}
+	}
+}
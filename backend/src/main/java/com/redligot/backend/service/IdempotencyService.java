@@ -0,0 +1,290 @@
+package com.redligot.backend.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redligot.backend.repository.IdempotencyKeyStore;
+import com.redligot.backend.repository.IdempotencyKeyStore.IdempotencyKey;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs upload and update requests at most once per <code>Idempotency-Key</code>, so a
+ * request retried after a timeout gets the first response instead of storing its
+ * photos again.
+ *
+ * <p>The first request with a key claims it in <code>idempotency_keys</code>, runs, and
+ * stores its successful response for the TTL; a retry replays that response with an
+ * <code>Idempotent-Replayed</code> header without reading the upload. A duplicate that
+ * arrives while the first request is still running waits for it: on the same instance
+ * until it is released, on another by polling the table. Failed requests release their
+ * key, so a retry runs again. A key reused for a different request, by method, path,
+ * query or content, is rejected; once its TTL has passed a key counts as unused.</p>
+ */
+@Service
+public class IdempotencyService {
+
+	private static final Logger logger = LoggerFactory.getLogger(IdempotencyService.class);
+
+	public static final String HEADER = "Idempotency-Key";
+	public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+	private static final int MAX_KEY_LENGTH = 255;
+	private static final int MAX_FINGERPRINT_LENGTH = 300;
+	// How often a request waiting on another instance's claim checks the table
+	private static final long POLL_INTERVAL_MS = 250;
+
+	/**
+	 * A request handler guarded by a key.
+	 */
+	@FunctionalInterface
+	public interface Action<T> {
+		ResponseEntity<T> run() throws IOException;
+	}
+
+	private final IdempotencyKeyStore idempotencyKeyStore;
+	private final ObjectMapper objectMapper;
+	private final long ttlMinutes;
+	private final long leaseMs;
+	private final long waitTimeoutMs;
+	// Requests running on this instance, by user and key; released when they finish
+	private final ConcurrentHashMap<String, CountDownLatch> running = new ConcurrentHashMap<>();
+
+	public IdempotencyService(IdempotencyKeyStore idempotencyKeyStore, ObjectMapper objectMapper,
+			@Value("${app.idempotency.ttl-minutes:1440}") long ttlMinutes,
+			@Value("${app.idempotency.lease-ms:600000}") long leaseMs,
+			@Value("${app.idempotency.wait-timeout-ms:120000}") long waitTimeoutMs) {
+		this.idempotencyKeyStore = idempotencyKeyStore;
+		this.objectMapper = objectMapper;
+		this.ttlMinutes = ttlMinutes;
+		this.leaseMs = leaseMs;
+		this.waitTimeoutMs = waitTimeoutMs;
+	}
+
+	/**
+	 * Run {@code action} unless a request with the same key already has, binding the key
+	 * to the request's method, path and query only. For handlers that stream their body,
+	 * which cannot be read up front; the others pass their content to
+	 * {@link #execute(long, String, HttpServletRequest, Object[], HttpServletResponse, Action)}.
+	 *
+	 * @see #execute(long, String, HttpServletRequest, Object[], HttpServletResponse, Action)
+	 */
+	public <T> ResponseEntity<T> execute(long userId, String key, HttpServletRequest request,
+			HttpServletResponse response, Action<T> action) throws IOException {
+		return execute(userId, key, request, null, response, action);
+	}
+
+	/**
+	 * Run {@code action} unless a request with the same key already has, in which case
+	 * its stored response is written to {@code response} instead.
+	 *
+	 * @param userId Authenticated user ID; keys are scoped per user
+	 * @param key Idempotency-Key header value, or null to just run the action
+	 * @param request Current request, whose method, path and query the key is bound to
+	 * @param content What the request carries besides its URL (form fields, files, a
+	 *        body), which the key is bound to as well; files count by part name, filename
+	 *        and size. May be null.
+	 * @param response Current response, for replays
+	 * @param action Handles the request
+	 * @return the action's response, or null once a stored response has been written
+	 * @throws ResponseStatusException 400 if the key is too long, 422 if it was used for
+	 *         another request, 409 if the first request is still running after the wait timeout
+	 * @throws IOException if the action or writing the replay fails
+	 */
+	public <T> ResponseEntity<T> execute(long userId, String key, HttpServletRequest request, Object[] content,
+			HttpServletResponse response, Action<T> action) throws IOException {
+		if (key == null || key.isBlank()) {
+			return action.run();
+		}
+		if (key.length() > MAX_KEY_LENGTH) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+					HEADER + " must be at most " + MAX_KEY_LENGTH + " characters");
+		}
+		String fingerprint = fingerprint(request, content);
+		String localKey = userId + ":" + key;
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitTimeoutMs);
+
+		while (true) {
+			CountDownLatch done = new CountDownLatch(1);
+			CountDownLatch other = running.putIfAbsent(localKey, done);
+			if (other != null) {
+				// Same key running here: wait for it, then look at what it left behind
+				awaitUntil(other, deadline);
+				continue;
+			}
+
+			boolean claimed = false;
+			try {
+				claimed = idempotencyKeyStore.claim(userId, key, fingerprint,
+						LocalDateTime.now().plusNanos(TimeUnit.MILLISECONDS.toNanos(leaseMs)));
+				if (claimed) {
+					return runClaimed(userId, key, action);
+				}
+			} finally {
+				running.remove(localKey, done);
+				done.countDown();
+			}
+
+			IdempotencyKey existing = idempotencyKeyStore.find(userId, key);
+			if (existing == null) {
+				// Released by a failed request since the claim was attempted
+				continue;
+			}
+			if (existing.expiresAt().isBefore(LocalDateTime.now())) {
+				// Past its TTL, or claimed by a request that never finished (e.g. on an
+				// instance that stopped): unused either way, even before the cleanup job runs
+				idempotencyKeyStore.releaseIfExpired(userId, key, LocalDateTime.now());
+				continue;
+			}
+			if (!existing.fingerprint().equals(fingerprint)) {
+				throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+						HEADER + " was already used for a different request");
+			}
+			if (IdempotencyKeyStore.COMPLETED.equals(existing.status())) {
+				replay(existing, response);
+				return null;
+			}
+			// Running on another instance
+			sleepUntil(deadline);
+		}
+	}
+
+	/**
+	 * Remove keys whose TTL has passed.
+	 */
+	@Scheduled(fixedDelayString = "${app.idempotency.cleanup-interval-ms:600000}")
+	public void purgeExpiredKeys() {
+		int purged = idempotencyKeyStore.deleteExpired(LocalDateTime.now());
+		if (purged > 0) {
+			logger.info("Purged {} expired idempotency keys", purged);
+		}
+	}
+
+	private <T> ResponseEntity<T> runClaimed(long userId, String key, Action<T> action) throws IOException {
+		boolean completed = false;
+		try {
+			ResponseEntity<T> result = action.run();
+			if (result != null && result.getStatusCode().is2xxSuccessful()) {
+				idempotencyKeyStore.complete(userId, key, result.getStatusCode().value(),
+						objectMapper.writeValueAsString(result.getBody()), LocalDateTime.now().plusMinutes(ttlMinutes));
+				completed = true;
+			}
+			return result;
+		} finally {
+			if (!completed) {
+				idempotencyKeyStore.release(userId, key);
+			}
+		}
+	}
+
+	/**
+	 * Method and path, readable in the table, followed by a SHA-256 of the query and content.
+	 */
+	private String fingerprint(HttpServletRequest request, Object[] content) {
+		StringBuilder description = new StringBuilder();
+		describe(request.getQueryString(), description);
+		describe(content, description);
+		String digest;
+		try {
+			digest = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+					.digest(description.toString().getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 not available", e);
+		}
+		String target = request.getMethod() + " " + request.getRequestURI();
+		int maxTarget = MAX_FINGERPRINT_LENGTH - digest.length() - 1;
+		if (target.length() > maxTarget) {
+			target = target.substring(0, maxTarget);
+		}
+		return target + " " + digest;
+	}
+
+	/**
+	 * Append an unambiguous description of a value: JSON for fields and bodies, metadata
+	 * for files, so uploads are not read again.
+	 */
+	private void describe(Object value, StringBuilder out) {
+		if (value instanceof MultipartFile file) {
+			out.append("file(");
+			describe(file.getName(), out);
+			describe(file.getOriginalFilename(), out);
+			out.append(file.getSize()).append(')');
+		} else if (value instanceof Object[] values) {
+			out.append('[');
+			for (Object element : values) {
+				describe(element, out);
+			}
+			out.append(']');
+		} else {
+			try {
+				out.append(objectMapper.writeValueAsString(value));
+			} catch (JsonProcessingException e) {
+				throw new IllegalArgumentException("Cannot fingerprint request content", e);
+			}
+		}
+		out.append(',');
+	}
+
+	private static void replay(IdempotencyKey stored, HttpServletResponse response) throws IOException {
+		byte[] body = stored.responseBody() != null ? stored.responseBody().getBytes(StandardCharsets.UTF_8) : new byte[0];
+		response.setStatus(stored.responseStatus());
+		response.setHeader(REPLAYED_HEADER, "true");
+		response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+		response.setContentLength(body.length);
+		response.getOutputStream().write(body);
+	}
+
+	private static void awaitUntil(CountDownLatch latch, long deadline) {
+		try {
+			if (!latch.await(remaining(deadline), TimeUnit.NANOSECONDS)) {
+				throw stillRunning();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw stillRunning();
+		}
+	}
+
+	private static void sleepUntil(long deadline) {
+		long remaining = remaining(deadline);
+		try {
+			Thread.sleep(Math.min(POLL_INTERVAL_MS, TimeUnit.NANOSECONDS.toMillis(remaining) + 1));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw stillRunning();
+		}
+	}
+
+	private static long remaining(long deadline) {
+		long remaining = deadline - System.nanoTime();
+		if (remaining <= 0) {
+			throw stillRunning();
+		}
+		return remaining;
+	}
+
+	private static ResponseStatusException stillRunning() {
+		return new ResponseStatusException(HttpStatus.CONFLICT,
+				"A request with this " + HEADER + " is still in progress");
+	}
+}
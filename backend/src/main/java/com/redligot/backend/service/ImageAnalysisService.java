@@ -0,0 +1,176 @@
+package com.redligot.backend.service;
+
+import com.redligot.backend.repository.PhotoContentStore;
+import com.redligot.backend.repository.PhotoContentStore.ImageMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the {@link ImageAnalyzer}s over a photo with a single decode.
+ *
+ * <p>New photos are analyzed in the background right after upload, reading the content
+ * back from the database once so the upload itself stays a pure stream. Photos that
+ * predate an analyzer, came in through a ZIP import or were missed because the decode
+ * budget was exhausted are picked up by {@link PhotoBackfillJob}, for which this
+ * service is one step.</p>
+ */
+@Service
+public class ImageAnalysisService implements PhotoBackfillStep {
+
+	private static final Logger logger = LoggerFactory.getLogger(ImageAnalysisService.class);
+
+	private final PhotoContentStore photoContentStore;
+	private final ImageDecodeService imageDecodeService;
+	private final ImageMetadataExtractor imageMetadataExtractor;
+	private final List<ImageAnalyzer> analyzers;
+	private final int sourceDimension;
+
+	public ImageAnalysisService(PhotoContentStore photoContentStore, ImageDecodeService imageDecodeService,
+			ImageMetadataExtractor imageMetadataExtractor, List<ImageAnalyzer> analyzers) {
+		this.photoContentStore = photoContentStore;
+		this.imageDecodeService = imageDecodeService;
+		this.imageMetadataExtractor = imageMetadataExtractor;
+		this.analyzers = analyzers;
+		this.sourceDimension = analyzers.stream().mapToInt(ImageAnalyzer::sourceDimension).max().orElse(0);
+	}
+
+	/**
+	 * Analyze a photo in the background.
+	 *
+	 * @param photoId Photo ID
+	 */
+	@Async
+	public void analyzeLater(long photoId) {
+		try {
+			photoContentStore.readContent(photoId, content -> {
+				if (content != null) {
+					apply(photoId, content);
+				}
+				return Boolean.TRUE;
+			});
+		} catch (RuntimeException e) {
+			// The backfill job retries it
+			logger.info("Analysis of photo {} deferred: {}", photoId, e.getMessage());
+		}
+	}
+
+	@Override
+	public String name() {
+		return "image-analysis";
+	}
+
+	/**
+	 * Every analyzer runs when any of them is pending; they overwrite their own value.
+	 */
+	@Override
+	public String pendingCondition() {
+		return analyzers.stream()
+				.map(analyzer -> "(" + analyzer.pendingCondition() + ")")
+				.collect(Collectors.joining(" OR "));
+	}
+
+	/**
+	 * Decode a photo and run every analyzer over it. Photos that cannot be decoded, or
+	 * are too large to, are recorded as analyzed without a value.
+	 *
+	 * @throws ResponseStatusException 503 if the decode budget stayed exhausted; nothing
+	 *         is recorded, so the photo is tried again later
+	 */
+	@Override
+	public void apply(long photoId, InputStream content) throws IOException {
+		if (analyzers.isEmpty()) {
+			return;
+		}
+		boolean[] decoded = new boolean[1];
+		ImageMetadataExtractor.HeaderCapture header = imageMetadataExtractor.capture(content);
+		try {
+			// Analyzers run while the decoded pixels are still reserved in the decode budget
+			imageDecodeService.decode(header, sourceDimension, image -> {
+				decoded[0] = true;
+				// The EXIF header precedes the pixels, so it has been captured by now
+				ImageMetadata metadata = header.metadata();
+				analyzeAll(photoId, orient(image, metadata != null ? metadata.orientation() : null));
+				return Boolean.TRUE;
+			});
+		} catch (ResponseStatusException e) {
+			if (decoded[0] || e.getStatusCode() != HttpStatus.PAYLOAD_TOO_LARGE) {
+				throw e;
+			}
+			logger.info("Photo {} is too large to analyze: {}", photoId, e.getReason());
+		} catch (IOException | RuntimeException e) {
+			if (decoded[0]) {
+				throw e;
+			}
+			logger.info("Photo {} cannot be decoded for analysis: {}", photoId, e.getMessage());
+		} finally {
+			header.releaseBuffer();
+		}
+		if (!decoded[0]) {
+			analyzeAll(photoId, null);
+		}
+	}
+
+	private void analyzeAll(long photoId, BufferedImage image) {
+		for (ImageAnalyzer analyzer : analyzers) {
+			analyzer.analyze(photoId, image);
+		}
+	}
+
+	/**
+	 * Draw the image upright as <code>TYPE_INT_RGB</code>, with transparency flattened
+	 * onto white as for thumbnails. EXIF orientations 2 to 8 mirror and/or rotate.
+	 */
+	static BufferedImage orient(BufferedImage source, Integer orientation) {
+		int width = source.getWidth();
+		int height = source.getHeight();
+		BufferedImage rgb = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = rgb.createGraphics();
+		try {
+			g.setColor(Color.WHITE);
+			g.fillRect(0, 0, width, height);
+			g.drawImage(source, 0, 0, null);
+		} finally {
+			g.dispose();
+		}
+		int o = orientation != null ? orientation : 1;
+		if (o < 2 || o > 8) {
+			return rgb;
+		}
+		boolean transpose = o >= 5;
+		int outWidth = transpose ? height : width;
+		int outHeight = transpose ? width : height;
+		BufferedImage oriented = new BufferedImage(outWidth, outHeight, BufferedImage.TYPE_INT_RGB);
+		int[] in = ((DataBufferInt) rgb.getRaster().getDataBuffer()).getData();
+		int[] out = ((DataBufferInt) oriented.getRaster().getDataBuffer()).getData();
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int ox;
+				int oy;
+				switch (o) {
+					case 2 -> { ox = width - 1 - x; oy = y; }
+					case 3 -> { ox = width - 1 - x; oy = height - 1 - y; }
+					case 4 -> { ox = x; oy = height - 1 - y; }
+					case 5 -> { ox = y; oy = x; }
+					case 6 -> { ox = height - 1 - y; oy = x; }
+					case 7 -> { ox = height - 1 - y; oy = width - 1 - x; }
+					default -> { ox = y; oy = width - 1 - x; }
+				}
+				out[oy * outWidth + ox] = in[y * width + x];
+			}
+		}
+		return oriented;
+	}
+}
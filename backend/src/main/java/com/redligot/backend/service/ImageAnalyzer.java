@@ -0,0 +1,42 @@
+package com.redligot.backend.service;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Derives a stored value from a photo's pixels, such as a perceptual hash.
+ *
+ * <p>{@link ImageAnalysisService} decodes each photo once, at the largest
+ * {@link #sourceDimension()} of all analyzers, applies its EXIF orientation and hands
+ * the same image to every analyzer: after upload, and for existing photos through the
+ * backfill job.</p>
+ */
+public interface ImageAnalyzer {
+
+	/**
+	 * @return short name used in logs
+	 */
+	String name();
+
+	/**
+	 * @return largest width or height the analyzer needs; the image is decoded at no
+	 *         less than this, or at full size if smaller
+	 */
+	int sourceDimension();
+
+	/**
+	 * @return SQL condition over <code>photos</code> columns that selects the rows this
+	 *         analyzer has not processed yet
+	 * @see PhotoBackfillStep#pendingCondition()
+	 */
+	String pendingCondition();
+
+	/**
+	 * Compute and store the value for one photo.
+	 *
+	 * @param photoId Photo ID
+	 * @param image Oriented <code>TYPE_INT_RGB</code> image, shared with the other
+	 *        analyzers and not to be modified; null if the photo cannot be decoded, in
+	 *        which case the row must still be marked as processed
+	 */
+	void analyze(long photoId, BufferedImage image);
+}
@@ -0,0 +1,370 @@
+package com.redligot.backend.service;
+
+import com.redligot.backend.security.ImageUrlSigner.Variant;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Bounded in-heap cache of image bytes, weighted by size.
+ *
+ * <p>Follows the W-TinyLFU layout: new entries land in a small LRU window (1% of the
+ * capacity); entries leaving the window, and entries too large for it, must beat the
+ * eviction victims of the main segmented LRU on estimated access frequency to get in.
+ * Frequencies come from a count-min sketch of 4-bit counters that is halved
+ * periodically, so one-off downloads cannot flush photos that are requested again and
+ * again. Keys carry the content version, so a replaced image is never served from
+ * here; {@link #invalidate} only frees the memory early.</p>
+ *
+ * <p>Concurrent misses for the same key share one load. All bookkeeping is done under
+ * one lock; loading is not.</p>
+ */
+@Component
+public class ImageCache {
+
+	private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+	/**
+	 * Identifies one variant of one content version of a photo.
+	 */
+	public record Key(long photoId, int version, Variant variant) {}
+
+	/**
+	 * Cached image bytes with their content type. The array must not be modified.
+	 */
+	public record CachedImage(String contentType, byte[] data) {
+
+		long weight() {
+			return data.length + ENTRY_OVERHEAD_BYTES;
+		}
+	}
+
+	/**
+	 * Snapshot of the cache counters.
+	 */
+	public record Stats(long hits, long misses, long coalescedLoads, long evictions, long rejections,
+			int entries, long bytes, long maxBytes) {
+
+		public double hitRate() {
+			long requests = hits + misses;
+			return requests == 0 ? 0.0 : (double) hits / requests;
+		}
+	}
+
+	private final long maxBytes;
+	private final long windowMaxBytes;
+	private final long protectedMaxBytes;
+	private final FrequencySketch sketch;
+	private final ConcurrentHashMap<Key, CompletableFuture<CachedImage>> loading = new ConcurrentHashMap<>();
+	private final ReentrantLock lock = new ReentrantLock();
+
+	// Access-ordered: iteration starts at the least recently used entry
+	private final LinkedHashMap<Key, CachedImage> window = new LinkedHashMap<>(16, 0.75f, true);
+	private final LinkedHashMap<Key, CachedImage> probation = new LinkedHashMap<>(16, 0.75f, true);
+	private final LinkedHashMap<Key, CachedImage> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+	private long windowBytes;
+	private long probationBytes;
+	private long protectedBytes;
+
+	private long hits;
+	private long misses;
+	private long coalescedLoads;
+	private long evictions;
+	private long rejections;
+
+	public ImageCache(@Value("${app.images.cache.max-bytes:67108864}") long maxBytes,
+			@Value("${app.images.cache.expected-entry-bytes:262144}") long expectedEntryBytes) {
+		this.maxBytes = Math.max(0, maxBytes);
+		this.windowMaxBytes = this.maxBytes / 100;
+		this.protectedMaxBytes = (this.maxBytes - windowMaxBytes) * 4 / 5;
+		long expectedEntries = this.maxBytes / Math.max(1, expectedEntryBytes);
+		this.sketch = new FrequencySketch((int) Math.min(1 << 20, Math.max(256, expectedEntries * 4)));
+	}
+
+	/**
+	 * Return the cached image, loading it on a miss.
+	 * Only one load runs per key; other callers wait for its result.
+	 *
+	 * @param key Photo, version and variant
+	 * @param loader Reads the image; may return null if there is none
+	 * @return the image, or null if the loader found none (not cached)
+	 */
+	public CachedImage get(Key key, Supplier<CachedImage> loader) {
+		if (maxBytes == 0) {
+			return loader.get();
+		}
+		CachedImage cached = lookup(key);
+		if (cached != null) {
+			return cached;
+		}
+
+		CompletableFuture<CachedImage> mine = new CompletableFuture<>();
+		CompletableFuture<CachedImage> running = loading.putIfAbsent(key, mine);
+		if (running != null) {
+			lock.lock();
+			try {
+				coalescedLoads++;
+			} finally {
+				lock.unlock();
+			}
+			return await(running);
+		}
+		try {
+			CachedImage loaded = loader.get();
+			if (loaded != null) {
+				put(key, loaded);
+			}
+			mine.complete(loaded);
+			return loaded;
+		} catch (RuntimeException | Error e) {
+			mine.completeExceptionally(e);
+			throw e;
+		} finally {
+			loading.remove(key, mine);
+		}
+	}
+
+	/**
+	 * Drop every cached version and variant of a photo.
+	 *
+	 * @param photoId Photo ID
+	 */
+	public void invalidate(long photoId) {
+		lock.lock();
+		try {
+			windowBytes -= removeAll(window, photoId);
+			probationBytes -= removeAll(probation, photoId);
+			protectedBytes -= removeAll(protectedSegment, photoId);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return current counters
+	 */
+	public Stats stats() {
+		lock.lock();
+		try {
+			return new Stats(hits, misses, coalescedLoads, evictions, rejections,
+					window.size() + probation.size() + protectedSegment.size(),
+					windowBytes + probationBytes + protectedBytes, maxBytes);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private CachedImage lookup(Key key) {
+		lock.lock();
+		try {
+			sketch.increment(key);
+			CachedImage image = window.get(key);
+			if (image == null) {
+				image = probation.remove(key);
+				if (image != null) {
+					// Second hit in the main area: promote, demoting protected LRU entries as needed
+					probationBytes -= image.weight();
+					protectedSegment.put(key, image);
+					protectedBytes += image.weight();
+					demoteProtectedOverflow();
+				} else {
+					image = protectedSegment.get(key);
+				}
+			}
+			if (image != null) {
+				hits++;
+			} else {
+				misses++;
+			}
+			return image;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void put(Key key, CachedImage image) {
+		lock.lock();
+		try {
+			if (window.containsKey(key) || probation.containsKey(key) || protectedSegment.containsKey(key)) {
+				return;
+			}
+			if (image.weight() > windowMaxBytes) {
+				admit(key, image);
+				return;
+			}
+			window.put(key, image);
+			windowBytes += image.weight();
+			while (windowBytes > windowMaxBytes) {
+				Map.Entry<Key, CachedImage> eldest = window.entrySet().iterator().next();
+				window.remove(eldest.getKey());
+				windowBytes -= eldest.getValue().weight();
+				admit(eldest.getKey(), eldest.getValue());
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Let a candidate into the main area if it is requested more often than every entry
+	 * it would displace; otherwise drop it.
+	 */
+	private void admit(Key key, CachedImage candidate) {
+		long mainMax = maxBytes - windowMaxBytes;
+		long weight = candidate.weight();
+		if (weight > mainMax) {
+			rejections++;
+			return;
+		}
+		long needed = probationBytes + protectedBytes + weight - mainMax;
+		if (needed > 0) {
+			int candidateFrequency = sketch.frequency(key);
+			List<Key> victims = new ArrayList<>();
+			long freed = 0;
+			for (Iterator<Map.Entry<Key, CachedImage>> it = victimOrder(); freed < needed && it.hasNext(); ) {
+				Map.Entry<Key, CachedImage> victim = it.next();
+				if (sketch.frequency(victim.getKey()) >= candidateFrequency) {
+					rejections++;
+					return;
+				}
+				victims.add(victim.getKey());
+				freed += victim.getValue().weight();
+			}
+			for (Key victim : victims) {
+				CachedImage removed = probation.remove(victim);
+				if (removed != null) {
+					probationBytes -= removed.weight();
+				} else {
+					protectedBytes -= protectedSegment.remove(victim).weight();
+				}
+				evictions++;
+			}
+		}
+		probation.put(key, candidate);
+		probationBytes += weight;
+	}
+
+	/**
+	 * Probation entries from least recently used, then protected ones.
+	 */
+	private Iterator<Map.Entry<Key, CachedImage>> victimOrder() {
+		Iterator<Map.Entry<Key, CachedImage>> first = probation.entrySet().iterator();
+		Iterator<Map.Entry<Key, CachedImage>> second = protectedSegment.entrySet().iterator();
+		return new Iterator<>() {
+			@Override
+			public boolean hasNext() {
+				return first.hasNext() || second.hasNext();
+			}
+
+			@Override
+			public Map.Entry<Key, CachedImage> next() {
+				return first.hasNext() ? first.next() : second.next();
+			}
+		};
+	}
+
+	private void demoteProtectedOverflow() {
+		while (protectedBytes > protectedMaxBytes && protectedSegment.size() > 1) {
+			Map.Entry<Key, CachedImage> eldest = protectedSegment.entrySet().iterator().next();
+			protectedSegment.remove(eldest.getKey());
+			protectedBytes -= eldest.getValue().weight();
+			probation.put(eldest.getKey(), eldest.getValue());
+			probationBytes += eldest.getValue().weight();
+		}
+	}
+
+	private static long removeAll(Map<Key, CachedImage> segment, long photoId) {
+		long removed = 0;
+		for (Iterator<Map.Entry<Key, CachedImage>> it = segment.entrySet().iterator(); it.hasNext(); ) {
+			Map.Entry<Key, CachedImage> entry = it.next();
+			if (entry.getKey().photoId() == photoId) {
+				removed += entry.getValue().weight();
+				it.remove();
+			}
+		}
+		return removed;
+	}
+
+	private static CachedImage await(CompletableFuture<CachedImage> load) {
+		try {
+			return load.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			}
+			if (e.getCause() instanceof Error cause) {
+				throw cause;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Count-min sketch with four 4-bit counters per key. Every counter is halved once
+	 * the number of increments reaches ten times the table size, so old popularity
+	 * fades out.
+	 */
+	static final class FrequencySketch {
+
+		private static final int[] SEEDS = {0x97cb3127, 0x9e3779b9, 0x7f4a7c15, 0x85ebca6b};
+
+		private final byte[] counters;
+		private final int mask;
+		private final int resetAt;
+		private int additions;
+
+		FrequencySketch(int size) {
+			int capacity = Integer.highestOneBit(Math.max(16, size - 1) << 1);
+			this.counters = new byte[capacity];
+			this.mask = capacity - 1;
+			this.resetAt = capacity * 10;
+		}
+
+		void increment(Object key) {
+			int hash = spread(key.hashCode());
+			boolean added = false;
+			for (int seed : SEEDS) {
+				int index = indexOf(hash, seed);
+				if (counters[index] < 15) {
+					counters[index]++;
+					added = true;
+				}
+			}
+			if (added && ++additions >= resetAt) {
+				for (int i = 0; i < counters.length; i++) {
+					counters[i] >>= 1;
+				}
+				additions /= 2;
+			}
+		}
+
+		int frequency(Object key) {
+			int hash = spread(key.hashCode());
+			int min = 15;
+			for (int seed : SEEDS) {
+				min = Math.min(min, counters[indexOf(hash, seed)]);
+			}
+			return min;
+		}
+
+		private int indexOf(int hash, int seed) {
+			int h = (hash ^ seed) * 0x9e3779b9;
+			return (h ^ (h >>> 16)) & mask;
+		}
+
+		private static int spread(int hash) {
+			int h = hash * 0x45d9f3b;
+			return h ^ (h >>> 16);
+		}
+	}
+}
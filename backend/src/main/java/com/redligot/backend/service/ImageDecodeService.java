@@ -0,0 +1,276 @@
+package com.redligot.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.SampleModel;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decodes images under a global memory budget.
+ *
+ * <p>A small file can hold a huge image: a 100-megapixel PNG under 8 MB decodes to
+ * about 400 MB. Every decode therefore reads the dimensions from the header first,
+ * picks a source subsampling that decodes straight to about twice the size the caller
+ * needs, and reserves the decoded pixels from a shared budget before any pixel is
+ * read. The bytes per pixel come from the type the reader decodes to, so a 16-bit PNG
+ * with alpha reserves 8 bytes per pixel where a JPEG reserves 3 or 4. The reservation is held until the caller has finished with the
+ * image. Callers wait for budget up to a timeout; images above the pixel limit, or
+ * larger than the whole budget even when subsampled, are rejected outright.</p>
+ */
+@Service
+public class ImageDecodeService {
+
+	// Used when a reader does not report the type it decodes to
+	private static final int DEFAULT_BYTES_PER_PIXEL = 4;
+	// Budget is counted in KB so large budgets fit in the semaphore's int permits
+	private static final int PERMIT_BYTES = 1024;
+
+	/**
+	 * Works on a decoded image while its memory is reserved.
+	 */
+	@FunctionalInterface
+	public interface ImageProcessor<T> {
+		T process(BufferedImage image) throws IOException;
+	}
+
+	/**
+	 * Decodes parts of one image, each under the budget.
+	 */
+	public interface RegionReader {
+		/**
+		 * @return width of the whole image as stored
+		 */
+		int width();
+
+		/**
+		 * @return height of the whole image as stored
+		 */
+		int height();
+
+		/**
+		 * Decode one region of the image and hand it to {@code processor}.
+		 *
+		 * @param region Region in pixels of the whole image
+		 * @param subsampling Keep every n-th pixel of the region in both directions
+		 * @param processor Uses the region; its memory stays reserved until this returns
+		 * @return the processor's result
+		 * @throws ResponseStatusException 413 if the decoded region needs more than the whole
+		 *         budget, 503 if the budget stayed exhausted for the queue timeout
+		 * @throws IOException if the region cannot be decoded
+		 */
+		<T> T read(Rectangle region, int subsampling, ImageProcessor<T> processor) throws IOException;
+	}
+
+	/**
+	 * Works on an image region by region.
+	 */
+	@FunctionalInterface
+	public interface RegionProcessor<T> {
+		T process(RegionReader reader) throws IOException;
+	}
+
+	/**
+	 * Snapshot of the decode counters.
+	 */
+	public record Stats(long budgetBytes, long reservedBytes, int waiting, long decoded, long rejected) {}
+
+	private final long maxSourcePixels;
+	private final int budgetPermits;
+	private final long queueTimeoutMs;
+	private final Semaphore budget;
+	private final AtomicLong decoded = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+
+	public ImageDecodeService(@Value("${app.images.decode.max-source-pixels:150000000}") long maxSourcePixels,
+			@Value("${app.images.decode.memory-budget-bytes:268435456}") long budgetBytes,
+			@Value("${app.images.decode.queue-timeout-ms:5000}") long queueTimeoutMs) {
+		this.maxSourcePixels = maxSourcePixels;
+		this.budgetPermits = (int) Math.min(Integer.MAX_VALUE, budgetBytes / PERMIT_BYTES);
+		this.queueTimeoutMs = queueTimeoutMs;
+		this.budget = new Semaphore(budgetPermits, true);
+		// Buffer stream headers in memory rather than in temp files
+		ImageIO.setUseCache(false);
+	}
+
+	/**
+	 * Decode an image to roughly the size needed and hand it to {@code processor}.
+	 *
+	 * @param content Encoded image; not closed
+	 * @param targetMaxDimension Largest width or height the caller will produce; the
+	 *        image is decoded at no less than twice that, or at full size if smaller
+	 * @param processor Uses the image; its memory stays reserved until this returns
+	 * @return the processor's result, or null if the format is not supported
+	 * @throws ResponseStatusException 413 if the image is too large to decode at all,
+	 *         503 if the budget stayed exhausted for the queue timeout
+	 * @throws IOException if the content cannot be read or decoded
+	 */
+	public <T> T decode(InputStream content, int targetMaxDimension, ImageProcessor<T> processor) throws IOException {
+		try (ImageInputStream input = ImageIO.createImageInputStream(content)) {
+			Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+			if (readers == null || !readers.hasNext()) {
+				return null;
+			}
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(input, true, true);
+				int width = reader.getWidth(0);
+				int height = reader.getHeight(0);
+				if ((long) width * height > maxSourcePixels) {
+					rejected.incrementAndGet();
+					throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+							"Image of " + width + "x" + height + " pixels exceeds the decode limit of "
+									+ maxSourcePixels + " pixels");
+				}
+
+				int subsampling = subsampling(width, height, targetMaxDimension);
+				int permits = permits(width, height, subsampling, bytesPerPixel(reader));
+				reserve(permits, width, height);
+				try {
+					ImageReadParam param = reader.getDefaultReadParam();
+					param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+					BufferedImage image = reader.read(0, param);
+					decoded.incrementAndGet();
+					return processor.process(image);
+				} finally {
+					budget.release(permits);
+				}
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Open an image file for decoding region by region, for images too large to decode
+	 * at the size needed in one piece. Only the region being read is reserved from the
+	 * budget, so the pixel limit does not apply; the file is read again for each region.
+	 *
+	 * @param file Encoded image
+	 * @param processor Reads the regions it needs
+	 * @return the processor's result, or null if the format is not supported
+	 * @throws IOException if the file cannot be read
+	 */
+	public <T> T decodeRegions(Path file, RegionProcessor<T> processor) throws IOException {
+		try (ImageInputStream input = new FileImageInputStream(file.toFile())) {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+			if (!readers.hasNext()) {
+				return null;
+			}
+			ImageReader reader = readers.next();
+			try {
+				// Not seek-forward-only: every region reads the stream from its start
+				reader.setInput(input, false, true);
+				int width = reader.getWidth(0);
+				int height = reader.getHeight(0);
+				int bytesPerPixel = bytesPerPixel(reader);
+				return processor.process(new RegionReader() {
+					@Override
+					public int width() {
+						return width;
+					}
+
+					@Override
+					public int height() {
+						return height;
+					}
+
+					@Override
+					public <T2> T2 read(Rectangle region, int subsampling, ImageProcessor<T2> regionProcessor)
+							throws IOException {
+						int permits = permits(region.width, region.height, subsampling, bytesPerPixel);
+						reserve(permits, region.width, region.height);
+						try {
+							ImageReadParam param = reader.getDefaultReadParam();
+							param.setSourceRegion(region);
+							param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+							BufferedImage image = reader.read(0, param);
+							decoded.incrementAndGet();
+							return regionProcessor.process(image);
+						} finally {
+							budget.release(permits);
+						}
+					}
+				});
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	/**
+	 * @return current counters
+	 */
+	public Stats stats() {
+		return new Stats((long) budgetPermits * PERMIT_BYTES,
+				(long) (budgetPermits - budget.availablePermits()) * PERMIT_BYTES,
+				budget.getQueueLength(), decoded.get(), rejected.get());
+	}
+
+	/**
+	 * @return the subsampling that decodes to no less than twice {@code targetMaxDimension}
+	 */
+	static int subsampling(int width, int height, int targetMaxDimension) {
+		return Math.max(1, Math.max(width, height) / Math.max(1, targetMaxDimension * 2));
+	}
+
+	/**
+	 * @return budget permits for the pixels left after subsampling, at least one
+	 */
+	static int permits(int width, int height, int subsampling, int bytesPerPixel) {
+		long decodedWidth = (width + subsampling - 1) / subsampling;
+		long decodedHeight = (height + subsampling - 1) / subsampling;
+		long bytes = decodedWidth * decodedHeight * bytesPerPixel;
+		return (int) Math.min(Integer.MAX_VALUE, Math.max(1, (bytes + PERMIT_BYTES - 1) / PERMIT_BYTES));
+	}
+
+	/**
+	 * @return bytes per pixel of the image type, rounded up to whole bytes
+	 */
+	static int bytesPerPixel(ImageTypeSpecifier type) {
+		SampleModel sampleModel = type.getSampleModel(1, 1);
+		int bits = DataBuffer.getDataTypeSize(sampleModel.getDataType()) * sampleModel.getNumDataElements();
+		return Math.max(1, (bits + 7) / 8);
+	}
+
+	private static int bytesPerPixel(ImageReader reader) throws IOException {
+		// The default read decodes to the first type the reader offers
+		Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+		return types != null && types.hasNext() ? bytesPerPixel(types.next()) : DEFAULT_BYTES_PER_PIXEL;
+	}
+
+	private void reserve(int permits, int width, int height) {
+		if (permits > budgetPermits) {
+			rejected.incrementAndGet();
+			throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+					"Image of " + width + "x" + height + " pixels needs more memory than the decode budget");
+		}
+		try {
+			if (!budget.tryAcquire(permits, queueTimeoutMs, TimeUnit.MILLISECONDS)) {
+				rejected.incrementAndGet();
+				throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+						"Too many images are being processed; try again shortly");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Interrupted while waiting to decode");
+		}
+	}
+}
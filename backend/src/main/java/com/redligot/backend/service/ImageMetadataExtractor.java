@@ -0,0 +1,553 @@
+package com.redligot.backend.service;
+
+import com.redligot.backend.repository.PhotoContentStore.ImageMetadata;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads dimensions, orientation, capture time and camera model from image headers.
+ *
+ * <p>Only the first {@code app.images.metadata.scan-bytes} of a file are looked at and
+ * nothing is decoded: JPEG markers are walked up to the start of the scan, PNG and WebP
+ * chunks up to the first image data, and within those the EXIF (TIFF) directory and
+ * XMP packet are read. During uploads the prefix is captured as the content streams to
+ * the database, so the file is never read twice.</p>
+ */
+@Component
+public class ImageMetadataExtractor {
+
+	/**
+	 * Stored in <code>photos.metadata_version</code>; raise it when parsing improves so
+	 * the backfill job re-reads existing photos.
+	 */
+	public static final int VERSION = 1;
+
+	private static final int MAX_CAMERA_MODEL_LENGTH = 100;
+
+	private static final int TAG_ORIENTATION = 0x0112;
+	private static final int TAG_MODEL = 0x0110;
+	private static final int TAG_DATE_TIME = 0x0132;
+	private static final int TAG_EXIF_IFD = 0x8769;
+	private static final int TAG_DATE_TIME_ORIGINAL = 0x9003;
+	private static final int TAG_DATE_TIME_DIGITIZED = 0x9004;
+	private static final int TAG_PIXEL_X_DIMENSION = 0xA002;
+	private static final int TAG_PIXEL_Y_DIMENSION = 0xA003;
+
+	private static final byte[] EXIF_HEADER = "Exif\0\0".getBytes(StandardCharsets.ISO_8859_1);
+	private static final byte[] XMP_HEADER = "http://ns.adobe.com/xap/1.0/\0".getBytes(StandardCharsets.ISO_8859_1);
+	private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+
+	private static final DateTimeFormatter EXIF_DATE = DateTimeFormatter.ofPattern("yyyy:MM:dd HH:mm:ss");
+
+	private final BufferPool bufferPool;
+	private final int scanBytes;
+
+	public ImageMetadataExtractor(BufferPool bufferPool,
+			@Value("${app.images.metadata.scan-bytes:262144}") int scanBytes) {
+		this.bufferPool = bufferPool;
+		this.scanBytes = Math.min(scanBytes, bufferPool.getMaxBufferBytes());
+	}
+
+	/**
+	 * @return how many leading bytes of a file are read
+	 */
+	public int getScanBytes() {
+		return scanBytes;
+	}
+
+	/**
+	 * Read the metadata from the start of a stream.
+	 *
+	 * @param content Image content; only the prefix is read, and it is not closed
+	 * @return metadata, with null fields for anything not found
+	 * @throws IOException if the stream cannot be read
+	 */
+	public ImageMetadata extract(InputStream content) throws IOException {
+		try (BufferPool.Buffer buffer = bufferPool.acquire(scanBytes)) {
+			int length = content.readNBytes(buffer.array(), 0, scanBytes);
+			return parse(buffer.array(), 0, length);
+		}
+	}
+
+	/**
+	 * Wrap a stream so its first bytes are kept while it is read by someone else.
+	 *
+	 * @param content Image content
+	 * @return stream to read instead; close it, or call {@link HeaderCapture#releaseBuffer}
+	 *         to leave the wrapped stream open, to release its buffer
+	 */
+	public HeaderCapture capture(InputStream content) {
+		return new HeaderCapture(content, bufferPool.acquire(scanBytes));
+	}
+
+	/**
+	 * Parse metadata from an in-memory file or file prefix.
+	 *
+	 * @return metadata, with null fields for anything not found
+	 */
+	public ImageMetadata parse(byte[] data, int offset, int length) {
+		Parsed parsed = new Parsed();
+		try {
+			if (length >= 4 && (data[offset] & 0xff) == 0xff && (data[offset + 1] & 0xff) == 0xd8) {
+				parseJpeg(data, offset, offset + length, parsed);
+			} else if (startsWith(data, offset, offset + length, PNG_SIGNATURE)) {
+				parsePng(data, offset, offset + length, parsed);
+			} else if (length >= 10 && data[offset] == 'G' && data[offset + 1] == 'I' && data[offset + 2] == 'F') {
+				parsed.setSize(u16le(data, offset + 6), u16le(data, offset + 8));
+			} else if (length >= 12 && ascii(data, offset, 4).equals("RIFF") && ascii(data, offset + 8, 4).equals("WEBP")) {
+				parseWebp(data, offset, offset + length, parsed);
+			} else if (length >= 26 && data[offset] == 'B' && data[offset + 1] == 'M') {
+				// Height is negative for top-down bitmaps
+				parsed.setSize(u32le(data, offset + 18), Math.abs(u32le(data, offset + 22)));
+			}
+		} catch (IndexOutOfBoundsException e) {
+			// Truncated or malformed header: keep whatever was read before it
+		}
+		return parsed.toMetadata();
+	}
+
+	private void parseJpeg(byte[] data, int start, int end, Parsed parsed) {
+		int pos = start + 2;
+		while (pos + 4 <= end) {
+			if ((data[pos] & 0xff) != 0xff) {
+				return;
+			}
+			int marker = data[pos + 1] & 0xff;
+			if (marker == 0xff) {
+				// Fill byte
+				pos++;
+				continue;
+			}
+			if (marker == 0xd8 || marker == 0x01 || (marker >= 0xd0 && marker <= 0xd7)) {
+				pos += 2;
+				continue;
+			}
+			if (marker == 0xda || marker == 0xd9) {
+				// Start of scan: entropy-coded data follows, no more metadata
+				return;
+			}
+			int segmentLength = u16be(data, pos + 2);
+			int body = pos + 4;
+			int bodyEnd = Math.min(end, pos + 2 + segmentLength);
+			if (segmentLength < 2) {
+				return;
+			}
+			boolean startOfFrame = marker >= 0xc0 && marker <= 0xcf && marker != 0xc4 && marker != 0xc8 && marker != 0xcc;
+			if (startOfFrame && parsed.width == null && body + 5 <= bodyEnd) {
+				parsed.setSize(u16be(data, body + 3), u16be(data, body + 1));
+			} else if (marker == 0xe1 && startsWith(data, body, bodyEnd, EXIF_HEADER)) {
+				parseTiff(data, body + EXIF_HEADER.length, bodyEnd, parsed);
+			} else if (marker == 0xe1 && startsWith(data, body, bodyEnd, XMP_HEADER)) {
+				parseXmp(new String(data, body + XMP_HEADER.length, bodyEnd - body - XMP_HEADER.length,
+						StandardCharsets.UTF_8), parsed);
+			}
+			pos += 2 + segmentLength;
+		}
+	}
+
+	private void parsePng(byte[] data, int start, int end, Parsed parsed) {
+		int pos = start + PNG_SIGNATURE.length;
+		while (pos + 8 <= end) {
+			int chunkLength = u32be(data, pos);
+			String type = ascii(data, pos + 4, 4);
+			int body = pos + 8;
+			int bodyEnd = Math.min(end, body + Math.max(0, chunkLength));
+			switch (type) {
+				case "IHDR" -> parsed.setSize(u32be(data, body), u32be(data, body + 4));
+				case "eXIf" -> parseTiff(data, body, bodyEnd, parsed);
+				case "iTXt" -> {
+					String keyword = "XML:com.adobe.xmp";
+					if (startsWith(data, body, bodyEnd, keyword.getBytes(StandardCharsets.ISO_8859_1))) {
+						parseXmp(new String(data, body, bodyEnd - body, StandardCharsets.UTF_8), parsed);
+					}
+				}
+				case "IDAT", "IEND" -> {
+					return;
+				}
+				default -> {
+				}
+			}
+			if (chunkLength < 0) {
+				return;
+			}
+			pos = body + chunkLength + 4;
+		}
+	}
+
+	private void parseWebp(byte[] data, int start, int end, Parsed parsed) {
+		int pos = start + 12;
+		while (pos + 8 <= end) {
+			String type = ascii(data, pos, 4);
+			int chunkLength = u32le(data, pos + 4);
+			int body = pos + 8;
+			int bodyEnd = Math.min(end, body + Math.max(0, chunkLength));
+			switch (type) {
+				case "VP8X" -> parsed.setSize(u24le(data, body + 4) + 1, u24le(data, body + 7) + 1);
+				case "VP8 " -> {
+					if (parsed.width == null) {
+						parsed.setSize(u16le(data, body + 6) & 0x3fff, u16le(data, body + 8) & 0x3fff);
+					}
+				}
+				case "VP8L" -> {
+					if (parsed.width == null) {
+						int bits = u32le(data, body + 1);
+						parsed.setSize((bits & 0x3fff) + 1, ((bits >>> 14) & 0x3fff) + 1);
+					}
+				}
+				case "EXIF" -> {
+					int tiff = startsWith(data, body, bodyEnd, EXIF_HEADER) ? body + EXIF_HEADER.length : body;
+					parseTiff(data, tiff, bodyEnd, parsed);
+				}
+				case "XMP " -> parseXmp(new String(data, body, bodyEnd - body, StandardCharsets.UTF_8), parsed);
+				default -> {
+				}
+			}
+			if (chunkLength < 0) {
+				return;
+			}
+			// Chunks are padded to an even length
+			pos = body + chunkLength + (chunkLength & 1);
+		}
+	}
+
+	/**
+	 * Read IFD0 and the Exif sub-IFD of a TIFF structure. Offsets are relative to
+	 * {@code start}; the byte order comes from its header.
+	 */
+	private void parseTiff(byte[] data, int start, int end, Parsed parsed) {
+		if (start + 8 > end) {
+			return;
+		}
+		boolean littleEndian;
+		if (data[start] == 'I' && data[start + 1] == 'I') {
+			littleEndian = true;
+		} else if (data[start] == 'M' && data[start + 1] == 'M') {
+			littleEndian = false;
+		} else {
+			return;
+		}
+		Tiff tiff = new Tiff(data, start, end, littleEndian);
+		int exifIfd = readIfd(tiff, tiff.u32(start + 4), parsed);
+		if (exifIfd > 0) {
+			readIfd(tiff, exifIfd, parsed);
+		}
+	}
+
+	/**
+	 * @return offset of the Exif sub-IFD if this directory points to one, else 0
+	 */
+	private int readIfd(Tiff tiff, int ifdOffset, Parsed parsed) {
+		int pos = tiff.start + ifdOffset;
+		if (ifdOffset < 8 || pos + 2 > tiff.end) {
+			return 0;
+		}
+		int entries = tiff.u16(pos);
+		int exifIfd = 0;
+		for (int i = 0; i < entries; i++) {
+			int entry = pos + 2 + i * 12;
+			if (entry + 12 > tiff.end) {
+				break;
+			}
+			int tag = tiff.u16(entry);
+			int type = tiff.u16(entry + 2);
+			int count = tiff.u32(entry + 4);
+			int value = entry + 8;
+			switch (tag) {
+				case TAG_ORIENTATION -> {
+					int orientation = tiff.u16(value);
+					if (orientation >= 1 && orientation <= 8) {
+						parsed.orientation = orientation;
+					}
+				}
+				case TAG_MODEL -> parsed.cameraModel = tiff.ascii(value, count);
+				case TAG_DATE_TIME -> parsed.modifiedAt = parseExifDate(tiff.ascii(value, count));
+				case TAG_DATE_TIME_ORIGINAL -> parsed.takenAt = parseExifDate(tiff.ascii(value, count));
+				case TAG_DATE_TIME_DIGITIZED -> parsed.digitizedAt = parseExifDate(tiff.ascii(value, count));
+				case TAG_EXIF_IFD -> exifIfd = tiff.u32(value);
+				case TAG_PIXEL_X_DIMENSION -> parsed.exifWidth = type == 3 ? tiff.u16(value) : tiff.u32(value);
+				case TAG_PIXEL_Y_DIMENSION -> parsed.exifHeight = type == 3 ? tiff.u16(value) : tiff.u32(value);
+				default -> {
+				}
+			}
+		}
+		return exifIfd;
+	}
+
+	private void parseXmp(String xmp, Parsed parsed) {
+		if (parsed.takenAt == null) {
+			LocalDateTime taken = parseXmpDate(xmpValue(xmp, "exif:DateTimeOriginal"));
+			if (taken == null) {
+				taken = parseXmpDate(xmpValue(xmp, "photoshop:DateCreated"));
+			}
+			if (taken == null) {
+				taken = parseXmpDate(xmpValue(xmp, "xmp:CreateDate"));
+			}
+			parsed.takenAt = taken;
+		}
+		if (parsed.cameraModel == null) {
+			parsed.cameraModel = xmpValue(xmp, "tiff:Model");
+		}
+		if (parsed.orientation == null) {
+			Integer orientation = parseInt(xmpValue(xmp, "tiff:Orientation"));
+			if (orientation != null && orientation >= 1 && orientation <= 8) {
+				parsed.orientation = orientation;
+			}
+		}
+		if (parsed.exifWidth == null) {
+			parsed.exifWidth = parseInt(xmpValue(xmp, "exif:PixelXDimension"));
+			parsed.exifHeight = parseInt(xmpValue(xmp, "exif:PixelYDimension"));
+		}
+	}
+
+	/**
+	 * Find a simple XMP property, written either as an attribute or as an element.
+	 */
+	private static String xmpValue(String xmp, String name) {
+		String quoted = Pattern.quote(name);
+		Matcher attribute = Pattern.compile(quoted + "\\s*=\\s*([\"'])(.*?)\\1").matcher(xmp);
+		if (attribute.find()) {
+			return attribute.group(2);
+		}
+		Matcher element = Pattern.compile("<" + quoted + ">([^<]*)</" + quoted + ">").matcher(xmp);
+		return element.find() ? element.group(1) : null;
+	}
+
+	private static LocalDateTime parseExifDate(String value) {
+		if (value == null || value.length() < 19 || value.startsWith("0000")) {
+			return null;
+		}
+		try {
+			return LocalDateTime.parse(value.substring(0, 19), EXIF_DATE);
+		} catch (DateTimeParseException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * XMP dates are ISO 8601, possibly with an offset or with fewer fields. The local
+	 * time is kept, as for EXIF dates.
+	 */
+	private static LocalDateTime parseXmpDate(String value) {
+		if (value == null || value.isBlank()) {
+			return null;
+		}
+		String trimmed = value.trim();
+		try {
+			return OffsetDateTime.parse(trimmed).toLocalDateTime();
+		} catch (DateTimeParseException e) {
+			// No offset
+		}
+		try {
+			return LocalDateTime.parse(trimmed.length() == 16 ? trimmed + ":00" : trimmed);
+		} catch (DateTimeParseException e) {
+			return null;
+		}
+	}
+
+	private static Integer parseInt(String value) {
+		if (value == null) {
+			return null;
+		}
+		try {
+			return Integer.valueOf(value.trim());
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private static boolean startsWith(byte[] data, int pos, int end, byte[] prefix) {
+		if (pos + prefix.length > end) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (data[pos + i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String ascii(byte[] data, int pos, int length) {
+		return new String(data, pos, length, StandardCharsets.ISO_8859_1);
+	}
+
+	private static int u16be(byte[] data, int pos) {
+		return ((data[pos] & 0xff) << 8) | (data[pos + 1] & 0xff);
+	}
+
+	private static int u32be(byte[] data, int pos) {
+		return (u16be(data, pos) << 16) | u16be(data, pos + 2);
+	}
+
+	private static int u16le(byte[] data, int pos) {
+		return (data[pos] & 0xff) | ((data[pos + 1] & 0xff) << 8);
+	}
+
+	private static int u24le(byte[] data, int pos) {
+		return u16le(data, pos) | ((data[pos + 2] & 0xff) << 16);
+	}
+
+	private static int u32le(byte[] data, int pos) {
+		return u16le(data, pos) | (u16le(data, pos + 2) << 16);
+	}
+
+	/**
+	 * A TIFF structure inside a larger array, with its byte order.
+	 */
+	private record Tiff(byte[] data, int start, int end, boolean littleEndian) {
+
+		int u16(int pos) {
+			return littleEndian ? u16le(data, pos) : u16be(data, pos);
+		}
+
+		int u32(int pos) {
+			return littleEndian ? u32le(data, pos) : u32be(data, pos);
+		}
+
+		/**
+		 * Read an ASCII value stored in the entry at {@code valuePos}: inline when it
+		 * fits in four bytes, otherwise at the offset found there.
+		 */
+		String ascii(int valuePos, int count) {
+			if (count <= 0 || count > 4096) {
+				return null;
+			}
+			int pos = count <= 4 ? valuePos : start + u32(valuePos);
+			if (pos < start || pos + count > end) {
+				return null;
+			}
+			return new String(data, pos, count, StandardCharsets.ISO_8859_1);
+		}
+	}
+
+	/**
+	 * Values found so far; later sources only fill what earlier ones did not.
+	 */
+	private static final class Parsed {
+		Integer width;
+		Integer height;
+		Integer exifWidth;
+		Integer exifHeight;
+		Integer orientation;
+		LocalDateTime takenAt;
+		LocalDateTime digitizedAt;
+		LocalDateTime modifiedAt;
+		String cameraModel;
+
+		void setSize(int width, int height) {
+			if (width > 0 && height > 0) {
+				this.width = width;
+				this.height = height;
+			}
+		}
+
+		ImageMetadata toMetadata() {
+			boolean frameSize = width != null;
+			boolean exifSize = exifWidth != null && exifHeight != null && exifWidth > 0 && exifHeight > 0;
+			LocalDateTime taken = takenAt != null ? takenAt : digitizedAt != null ? digitizedAt : modifiedAt;
+			return new ImageMetadata(frameSize ? width : exifSize ? exifWidth : null,
+					frameSize ? height : exifSize ? exifHeight : null, orientation, taken, cleanModel(cameraModel),
+					VERSION);
+		}
+
+		private static String cleanModel(String model) {
+			if (model == null) {
+				return null;
+			}
+			String cleaned = model.replace("\0", "").trim();
+			if (cleaned.isEmpty()) {
+				return null;
+			}
+			return cleaned.length() > MAX_CAMERA_MODEL_LENGTH ? cleaned.substring(0, MAX_CAMERA_MODEL_LENGTH) : cleaned;
+		}
+	}
+
+	/**
+	 * Passes a stream through while copying its first bytes aside, so the metadata can
+	 * be parsed once the stream has been consumed.
+	 */
+	public final class HeaderCapture extends FilterInputStream {
+
+		private final BufferPool.Buffer buffer;
+		private int captured;
+		private boolean released;
+
+		private HeaderCapture(InputStream in, BufferPool.Buffer buffer) {
+			super(in);
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0 && !released && captured < scanBytes) {
+				buffer.array()[captured++] = (byte) b;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = in.read(b, off, len);
+			if (read > 0 && !released && captured < scanBytes) {
+				int keep = Math.min(read, scanBytes - captured);
+				System.arraycopy(b, off, buffer.array(), captured, keep);
+				captured += keep;
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			// Skipped bytes would leave a hole in the captured header
+			return !released && captured < scanBytes ? Math.max(0, read(new byte[(int) Math.min(n, 8192)])) : in.skip(n);
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		/**
+		 * @return metadata parsed from the bytes read so far, or null once the buffer
+		 *         has been released
+		 */
+		public ImageMetadata metadata() {
+			return released ? null : parse(buffer.array(), 0, captured);
+		}
+
+		/**
+		 * Return the buffer to the pool without closing the wrapped stream. Reading can
+		 * continue, but nothing more is captured. Calling it again is a no-op.
+		 */
+		public void releaseBuffer() {
+			if (!released) {
+				released = true;
+				buffer.close();
+			}
+		}
+
+		/**
+		 * Closes the wrapped stream and releases the buffer.
+		 */
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				releaseBuffer();
+			}
+		}
+	}
+}
@@ -0,0 +1,266 @@
+package com.redligot.backend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optional upload-time optimization of image content, so originals take less storage
+ * and egress.
+ *
+ * <p>In <code>lossless</code> mode JPEGs get Huffman tables fitted to the image
+ * ({@link JpegHuffmanOptimizer}) and PNGs are re-deflated ({@link PngRecompressor});
+ * the decoded pixels are unchanged. <code>lossy</code> mode does the same and also
+ * re-encodes JPEGs above the byte or pixel threshold at the configured quality, scaled
+ * down to the pixel threshold, keeping their EXIF, XMP and comment segments. A
+ * re-encode is only kept if it saves at least a tenth over the lossless result. Other
+ * formats, and content that does not get smaller, are stored as uploaded.</p>
+ */
+@Service
+public class IngestOptimizer {
+
+	private static final Logger logger = LoggerFactory.getLogger(IngestOptimizer.class);
+
+	// Smallest saving over the lossless result worth a generation of JPEG loss
+	private static final double MIN_LOSSY_SAVING = 0.1;
+
+	/**
+	 * What the ingest stage may do to uploaded content.
+	 */
+	public enum Mode {
+		/** Content is stored as uploaded */
+		OFF,
+		/** Re-encode the compressed data only; pixels stay identical */
+		LOSSLESS,
+		/** Lossless, plus re-encoding of JPEGs above the thresholds */
+		LOSSY
+	}
+
+	/**
+	 * Snapshot of the ingest counters.
+	 *
+	 * @param processed Uploads passed through the optimizer
+	 * @param optimized Uploads stored smaller than uploaded
+	 * @param reencoded Uploads re-encoded lossily
+	 * @param bytesIn Uploaded bytes
+	 * @param bytesOut Stored bytes
+	 */
+	public record Stats(Mode mode, long processed, long optimized, long reencoded, long bytesIn, long bytesOut) {
+		public long savedBytes() {
+			return bytesIn - bytesOut;
+		}
+	}
+
+	/**
+	 * Header facts of a JPEG that may be re-encoded.
+	 *
+	 * @param metadata The APPn and COM segments, to be carried over
+	 */
+	record JpegSource(int width, int height, byte[] metadata) {}
+
+	private final ImageDecodeService imageDecodeService;
+	private final Mode mode;
+	private final boolean keepOriginals;
+	private final long lossyMinBytes;
+	private final long lossyMaxPixels;
+	private final float lossyQuality;
+	private final AtomicLong processed = new AtomicLong();
+	private final AtomicLong optimized = new AtomicLong();
+	private final AtomicLong reencoded = new AtomicLong();
+	private final AtomicLong bytesIn = new AtomicLong();
+	private final AtomicLong bytesOut = new AtomicLong();
+
+	public IngestOptimizer(ImageDecodeService imageDecodeService,
+			@Value("${app.images.ingest.mode:off}") String mode,
+			@Value("${app.images.ingest.keep-original:false}") boolean keepOriginals,
+			@Value("${app.images.ingest.lossy.min-bytes:4194304}") long lossyMinBytes,
+			@Value("${app.images.ingest.lossy.max-pixels:24000000}") long lossyMaxPixels,
+			@Value("${app.images.ingest.lossy.quality:0.85}") float lossyQuality) {
+		this.imageDecodeService = imageDecodeService;
+		this.mode = Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+		this.keepOriginals = keepOriginals;
+		this.lossyMinBytes = lossyMinBytes;
+		this.lossyMaxPixels = lossyMaxPixels;
+		this.lossyQuality = lossyQuality;
+	}
+
+	/**
+	 * @return false if content is stored as uploaded, so callers need not buffer it
+	 */
+	public boolean isEnabled() {
+		return mode != Mode.OFF;
+	}
+
+	/**
+	 * @return true if the uploaded bytes are to be kept when the stored content differs
+	 */
+	public boolean keepsOriginals() {
+		return keepOriginals;
+	}
+
+	/**
+	 * Optimize uploaded content. The format never changes, so the content type stays valid.
+	 *
+	 * @param content Uploaded image
+	 * @return the content to store; {@code content} itself if it is stored as uploaded
+	 */
+	public byte[] optimize(byte[] content) {
+		if (mode == Mode.OFF) {
+			return content;
+		}
+		byte[] result = content;
+		if (isJpeg(content)) {
+			result = optimizeJpeg(content);
+		} else if (isPng(content)) {
+			byte[] recompressed = PngRecompressor.recompress(content);
+			if (recompressed != null) {
+				result = recompressed;
+			}
+		}
+		processed.incrementAndGet();
+		bytesIn.addAndGet(content.length);
+		bytesOut.addAndGet(result.length);
+		if (result != content) {
+			optimized.incrementAndGet();
+		}
+		return result;
+	}
+
+	public Stats stats() {
+		return new Stats(mode, processed.get(), optimized.get(), reencoded.get(), bytesIn.get(), bytesOut.get());
+	}
+
+	private byte[] optimizeJpeg(byte[] jpeg) {
+		byte[] lossless = JpegHuffmanOptimizer.optimize(jpeg);
+		byte[] best = lossless != null ? lossless : jpeg;
+		if (mode != Mode.LOSSY) {
+			return best;
+		}
+		JpegSource source = readJpegSource(jpeg);
+		if (source == null) {
+			return best;
+		}
+		long pixels = (long) source.width() * source.height();
+		if (jpeg.length <= lossyMinBytes && pixels <= lossyMaxPixels) {
+			return best;
+		}
+		try {
+			byte[] lossy = reencode(jpeg, source);
+			if (lossy != null && lossy.length <= best.length * (1 - MIN_LOSSY_SAVING)) {
+				reencoded.incrementAndGet();
+				return lossy;
+			}
+		} catch (IOException | ResponseStatusException e) {
+			// Too large for the decode budget right now, or not decodable by ImageIO
+			logger.debug("Keeping lossless JPEG after failed re-encode: {}", e.getMessage());
+		}
+		return best;
+	}
+
+	private byte[] reencode(byte[] jpeg, JpegSource source) throws IOException {
+		long pixels = (long) source.width() * source.height();
+		double ratio = pixels > lossyMaxPixels ? Math.sqrt((double) lossyMaxPixels / pixels) : 1.0;
+		int width = Math.max(1, (int) (source.width() * ratio));
+		int height = Math.max(1, (int) (source.height() * ratio));
+		return imageDecodeService.decode(new ByteArrayInputStream(jpeg), Math.max(width, height), image -> {
+			BufferedImage scaled = image.getWidth() != width || image.getHeight() != height
+					? ThumbnailService.scale(image, width, height) : image;
+			byte[] encoded = withMetadata(ThumbnailService.encodeJpeg(scaled, lossyQuality), source.metadata());
+			byte[] optimizedEncoding = JpegHuffmanOptimizer.optimize(encoded);
+			return optimizedEncoding != null ? optimizedEncoding : encoded;
+		});
+	}
+
+	/**
+	 * Read the frame size and metadata segments of a JPEG that can be re-encoded without
+	 * changing its colours: one or three components and no embedded ICC profile or Adobe
+	 * colour transform, which the encoder would not write back.
+	 *
+	 * @return the source facts, or null if the JPEG is not to be re-encoded
+	 */
+	static JpegSource readJpegSource(byte[] jpeg) {
+		ByteArrayOutputStream metadata = new ByteArrayOutputStream();
+		int width = 0;
+		int height = 0;
+		int pos = 2;
+		try {
+			while (pos + 4 <= jpeg.length && (jpeg[pos] & 0xff) == 0xFF) {
+				int marker = jpeg[pos + 1] & 0xff;
+				if (marker == 0xFF) {
+					pos++;
+					continue;
+				}
+				if (marker == 0xDA || marker == 0xD9) {
+					break;
+				}
+				int length = (jpeg[pos + 2] & 0xff) << 8 | (jpeg[pos + 3] & 0xff);
+				if ((marker >= 0xE0 && marker <= 0xEF) || marker == 0xFE) {
+					if ((marker == 0xE2 && startsWith(jpeg, pos + 4, "ICC_PROFILE"))
+							|| (marker == 0xEE && startsWith(jpeg, pos + 4, "Adobe"))) {
+						return null;
+					}
+					metadata.write(jpeg, pos, 2 + length);
+				} else if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+					height = (jpeg[pos + 5] & 0xff) << 8 | (jpeg[pos + 6] & 0xff);
+					width = (jpeg[pos + 7] & 0xff) << 8 | (jpeg[pos + 8] & 0xff);
+					int components = jpeg[pos + 9] & 0xff;
+					if (components != 1 && components != 3) {
+						return null;
+					}
+				}
+				pos += 2 + length;
+			}
+		} catch (IndexOutOfBoundsException e) {
+			return null;
+		}
+		return width > 0 && height > 0 ? new JpegSource(width, height, metadata.toByteArray()) : null;
+	}
+
+	/**
+	 * Replace the APPn segments the encoder wrote after SOI with {@code metadata}.
+	 */
+	static byte[] withMetadata(byte[] encoded, byte[] metadata) {
+		int pos = 2;
+		while (pos + 4 <= encoded.length && (encoded[pos] & 0xff) == 0xFF
+				&& (encoded[pos + 1] & 0xff) >= 0xE0 && (encoded[pos + 1] & 0xff) <= 0xEF) {
+			pos += 2 + ((encoded[pos + 2] & 0xff) << 8 | (encoded[pos + 3] & 0xff));
+		}
+		byte[] result = new byte[2 + metadata.length + encoded.length - pos];
+		System.arraycopy(encoded, 0, result, 0, 2);
+		System.arraycopy(metadata, 0, result, 2, metadata.length);
+		System.arraycopy(encoded, pos, result, 2 + metadata.length, encoded.length - pos);
+		return result;
+	}
+
+	private static boolean startsWith(byte[] data, int offset, String prefix) {
+		byte[] expected = prefix.getBytes(StandardCharsets.US_ASCII);
+		if (offset + expected.length > data.length) {
+			return false;
+		}
+		for (int i = 0; i < expected.length; i++) {
+			if (data[offset + i] != expected[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isJpeg(byte[] content) {
+		return content.length > 3 && (content[0] & 0xff) == 0xFF && (content[1] & 0xff) == 0xD8;
+	}
+
+	private static boolean isPng(byte[] content) {
+		return content.length > 8 && (content[0] & 0xff) == 0x89 && content[1] == 'P' && content[2] == 'N'
+				&& content[3] == 'G';
+	}
+}
@@ -0,0 +1,607 @@
+package com.redligot.backend.service;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lossless JPEG optimization: rewrites the entropy-coded data of a baseline JPEG with
+ * Huffman tables built for that image, as <code>jpegtran -optimize</code> does.
+ *
+ * <p>Cameras and most encoders use the example tables from the JPEG standard; tables
+ * fitted to the image's own symbol counts typically save 5-15% with the pixels, markers
+ * and metadata left untouched. Only the Huffman codes are translated, so the blocks are
+ * never decoded. Single-scan sequential Huffman images are supported; progressive,
+ * arithmetic-coded and multi-scan files are left as they are.</p>
+ */
+final class JpegHuffmanOptimizer {
+
+	private static final int SOI = 0xD8;
+	private static final int EOI = 0xD9;
+	private static final int SOS = 0xDA;
+	private static final int DHT = 0xC4;
+	private static final int DRI = 0xDD;
+	private static final int RST0 = 0xD0;
+	// Tables 0-3 are DC tables, 4-7 AC tables
+	private static final int TABLES = 8;
+
+	private JpegHuffmanOptimizer() {
+	}
+
+	/**
+	 * @param jpeg Complete JPEG file
+	 * @return the optimized file, or null if the file is not a supported JPEG or is damaged
+	 */
+	static byte[] optimize(byte[] jpeg) {
+		try {
+			return new Transcoder(jpeg).transcode();
+		} catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * A Huffman table as defined in a DHT segment, with lookup arrays for decoding and
+	 * encoding.
+	 */
+	private static final class HuffmanTable {
+		final int[] maxCode = new int[18];
+		final int[] valueOffset = new int[17];
+		final int[] values;
+		final int[] codes = new int[256];
+		final int[] sizes = new int[256];
+
+		HuffmanTable(int[] counts, int[] values) {
+			this.values = values;
+			int code = 0;
+			int k = 0;
+			for (int length = 1; length <= 16; length++) {
+				valueOffset[length] = k - code;
+				for (int i = 0; i < counts[length]; i++) {
+					int symbol = values[k++];
+					codes[symbol] = code;
+					sizes[symbol] = length;
+					code++;
+				}
+				maxCode[length] = counts[length] > 0 ? code - 1 : -1;
+				code <<= 1;
+			}
+			maxCode[17] = Integer.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * Receives the symbols of a scan in order.
+	 */
+	private interface SymbolSink {
+		void symbol(int table, int symbol, int extraBits, int extraLength);
+
+		void restart(int marker);
+	}
+
+	private static final class Transcoder {
+
+		private final byte[] data;
+		private final HuffmanTable[] tables = new HuffmanTable[TABLES];
+		private final List<int[]> keptSegments = new ArrayList<>();
+		private int width;
+		private int height;
+		private int[] componentIds;
+		private int[] horizontal;
+		private int[] vertical;
+		private int restartInterval;
+
+		Transcoder(byte[] data) {
+			this.data = data;
+		}
+
+		byte[] transcode() {
+			if ((data[0] & 0xff) != 0xff || (data[1] & 0xff) != SOI) {
+				return null;
+			}
+			int pos = 2;
+			while (true) {
+				if ((data[pos] & 0xff) != 0xff) {
+					return null;
+				}
+				while ((data[pos] & 0xff) == 0xff) {
+					pos++;
+				}
+				int marker = data[pos++] & 0xff;
+				if (marker == EOI) {
+					return null;
+				}
+				int length = u16(pos);
+				int end = pos + length;
+				if (marker == SOS) {
+					return transcodeScan(pos - 2, end);
+				}
+				switch (marker) {
+					case DHT -> readTables(pos + 2, end);
+					case 0xC0, 0xC1 -> {
+						if (!readFrame(pos + 2)) {
+							return null;
+						}
+						keptSegments.add(new int[] {pos - 2, end});
+					}
+					case DRI -> {
+						restartInterval = u16(pos + 2);
+						keptSegments.add(new int[] {pos - 2, end});
+					}
+					default -> {
+						// Progressive, lossless, hierarchical and arithmetic-coded frames
+						if (marker >= 0xC2 && marker <= 0xCF && marker != DHT && marker != 0xC8) {
+							return null;
+						}
+						keptSegments.add(new int[] {pos - 2, end});
+					}
+				}
+				pos = end;
+			}
+		}
+
+		private void readTables(int pos, int end) {
+			while (pos < end) {
+				int classAndId = data[pos++] & 0xff;
+				int tableClass = classAndId >> 4;
+				int id = classAndId & 0x0f;
+				if (tableClass > 1 || id > 3) {
+					throw new IllegalArgumentException("Bad Huffman table " + classAndId);
+				}
+				int[] counts = new int[17];
+				int total = 0;
+				for (int length = 1; length <= 16; length++) {
+					counts[length] = data[pos++] & 0xff;
+					total += counts[length];
+				}
+				if (total > 256) {
+					throw new IllegalArgumentException("Bad Huffman table size " + total);
+				}
+				int[] values = new int[total];
+				for (int i = 0; i < total; i++) {
+					values[i] = data[pos++] & 0xff;
+				}
+				tables[tableClass * 4 + id] = new HuffmanTable(counts, values);
+			}
+		}
+
+		private boolean readFrame(int pos) {
+			height = u16(pos + 1);
+			width = u16(pos + 3);
+			int count = data[pos + 5] & 0xff;
+			if (width == 0 || height == 0 || count == 0) {
+				// Height from a DNL marker after the scan
+				return false;
+			}
+			componentIds = new int[count];
+			horizontal = new int[count];
+			vertical = new int[count];
+			for (int i = 0; i < count; i++) {
+				int at = pos + 6 + i * 3;
+				componentIds[i] = data[at] & 0xff;
+				horizontal[i] = (data[at + 1] & 0xff) >> 4;
+				vertical[i] = data[at + 1] & 0x0f;
+				if (horizontal[i] < 1 || vertical[i] < 1) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private byte[] transcodeScan(int sosStart, int sosEnd) {
+			if (componentIds == null) {
+				return null;
+			}
+			int count = data[sosStart + 4] & 0xff;
+			int[] frameIndex = new int[count];
+			int[] dcTable = new int[count];
+			int[] acTable = new int[count];
+			for (int i = 0; i < count; i++) {
+				int at = sosStart + 5 + i * 2;
+				frameIndex[i] = indexOf(data[at] & 0xff);
+				dcTable[i] = (data[at + 1] & 0xff) >> 4;
+				acTable[i] = 4 + (data[at + 1] & 0x0f);
+				if (frameIndex[i] < 0 || dcTable[i] > 3 || acTable[i] > 7
+						|| tables[dcTable[i]] == null || tables[acTable[i]] == null) {
+					return null;
+				}
+			}
+			int spectral = sosStart + 5 + count * 2;
+			if (count != componentIds.length || (data[spectral] & 0xff) != 0 || (data[spectral + 1] & 0xff) != 63
+					|| (data[spectral + 2] & 0xff) != 0) {
+				// A scan that covers part of the image; more scans follow
+				return null;
+			}
+
+			// First pass counts the symbols, the second writes them with the new codes
+			long[][] frequencies = new long[TABLES][257];
+			Scan counting = new Scan(sosEnd, frameIndex, dcTable, acTable);
+			int scanEnd = counting.run(new SymbolSink() {
+				@Override
+				public void symbol(int table, int symbol, int extraBits, int extraLength) {
+					frequencies[table][symbol]++;
+				}
+
+				@Override
+				public void restart(int marker) {
+				}
+			});
+			if (scanEnd + 1 >= data.length || (data[scanEnd + 1] & 0xff) != EOI) {
+				return null;
+			}
+
+			HuffmanTable[] optimal = new HuffmanTable[TABLES];
+			ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+			out.write(0xff);
+			out.write(SOI);
+			for (int[] segment : keptSegments) {
+				out.write(data, segment[0], segment[1] - segment[0]);
+			}
+			ByteArrayOutputStream dht = new ByteArrayOutputStream();
+			for (int table = 0; table < TABLES; table++) {
+				if (!used(table, dcTable, acTable)) {
+					continue;
+				}
+				int[] counts = new int[17];
+				int[] values = optimalTable(frequencies[table], counts);
+				optimal[table] = new HuffmanTable(counts, values);
+				dht.write((table / 4) << 4 | (table % 4));
+				for (int length = 1; length <= 16; length++) {
+					dht.write(counts[length]);
+				}
+				for (int value : values) {
+					dht.write(value);
+				}
+			}
+			out.write(0xff);
+			out.write(DHT);
+			out.write((dht.size() + 2) >> 8);
+			out.write((dht.size() + 2) & 0xff);
+			out.write(dht.toByteArray(), 0, dht.size());
+			out.write(data, sosStart, sosEnd - sosStart);
+
+			BitWriter writer = new BitWriter(out);
+			new Scan(sosEnd, frameIndex, dcTable, acTable).run(new SymbolSink() {
+				@Override
+				public void symbol(int table, int symbol, int extraBits, int extraLength) {
+					HuffmanTable huffman = optimal[table];
+					writer.write(huffman.codes[symbol], huffman.sizes[symbol]);
+					writer.write(extraBits, extraLength);
+				}
+
+				@Override
+				public void restart(int marker) {
+					writer.flush();
+					out.write(0xff);
+					out.write(marker);
+				}
+			});
+			writer.flush();
+			out.write(data, scanEnd, data.length - scanEnd);
+			byte[] optimized = out.toByteArray();
+			return optimized.length < data.length ? optimized : data;
+		}
+
+		private int indexOf(int componentId) {
+			for (int i = 0; i < componentIds.length; i++) {
+				if (componentIds[i] == componentId) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		private static boolean used(int table, int[] dcTable, int[] acTable) {
+			for (int i = 0; i < dcTable.length; i++) {
+				if (dcTable[i] == table || acTable[i] == table) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private int u16(int pos) {
+			return (data[pos] & 0xff) << 8 | (data[pos + 1] & 0xff);
+		}
+
+		/**
+		 * Walks the blocks of the scan in MCU order and reports every Huffman symbol.
+		 */
+		private final class Scan {
+
+			private final int[] frameIndex;
+			private final int[] dcTable;
+			private final int[] acTable;
+			private int pos;
+			private long bitBuffer;
+			private int bitCount;
+			private boolean atMarker;
+
+			Scan(int start, int[] frameIndex, int[] dcTable, int[] acTable) {
+				this.pos = start;
+				this.frameIndex = frameIndex;
+				this.dcTable = dcTable;
+				this.acTable = acTable;
+			}
+
+			/**
+			 * @return offset of the marker that ends the scan
+			 */
+			int run(SymbolSink sink) {
+				int maxH = 1;
+				int maxV = 1;
+				for (int i = 0; i < horizontal.length; i++) {
+					maxH = Math.max(maxH, horizontal[i]);
+					maxV = Math.max(maxV, vertical[i]);
+				}
+				int mcusX;
+				int mcusY;
+				int[] blocksPerMcu;
+				if (frameIndex.length == 1) {
+					// Non-interleaved: one block per MCU over the component's own size
+					int c = frameIndex[0];
+					mcusX = ceilDiv(ceilDiv(width * horizontal[c], maxH), 8);
+					mcusY = ceilDiv(ceilDiv(height * vertical[c], maxV), 8);
+					blocksPerMcu = new int[] {1};
+				} else {
+					mcusX = ceilDiv(width, 8 * maxH);
+					mcusY = ceilDiv(height, 8 * maxV);
+					blocksPerMcu = new int[frameIndex.length];
+					for (int i = 0; i < frameIndex.length; i++) {
+						blocksPerMcu[i] = horizontal[frameIndex[i]] * vertical[frameIndex[i]];
+					}
+				}
+
+				long mcus = (long) mcusX * mcusY;
+				for (long mcu = 0; mcu < mcus; mcu++) {
+					if (restartInterval > 0 && mcu > 0 && mcu % restartInterval == 0) {
+						int marker = nextRestartMarker();
+						sink.restart(marker);
+					}
+					for (int i = 0; i < frameIndex.length; i++) {
+						for (int block = 0; block < blocksPerMcu[i]; block++) {
+							readBlock(sink, dcTable[i], acTable[i]);
+						}
+					}
+				}
+				return endOfScan();
+			}
+
+			private void readBlock(SymbolSink sink, int dc, int ac) {
+				int size = decode(tables[dc]);
+				if (size > 16) {
+					throw new IllegalArgumentException("Bad DC size " + size);
+				}
+				sink.symbol(dc, size, bits(size), size);
+				HuffmanTable acHuffman = tables[ac];
+				for (int k = 1; k < 64; k++) {
+					int runSize = decode(acHuffman);
+					int run = runSize >> 4;
+					int acSize = runSize & 0x0f;
+					sink.symbol(ac, runSize, bits(acSize), acSize);
+					if (acSize == 0) {
+						if (run != 15) {
+							// End of block
+							break;
+						}
+						k += 15;
+					} else {
+						k += run;
+					}
+				}
+			}
+
+			private int decode(HuffmanTable table) {
+				int code = 0;
+				for (int length = 1; length <= 16; length++) {
+					code = code << 1 | bits(1);
+					if (code <= table.maxCode[length]) {
+						return table.values[table.valueOffset[length] + code];
+					}
+				}
+				throw new IllegalArgumentException("Bad Huffman code");
+			}
+
+			private int bits(int count) {
+				if (count == 0) {
+					return 0;
+				}
+				if (bitCount < count) {
+					fill();
+				}
+				int value = (int) (bitBuffer >>> (64 - count));
+				bitBuffer <<= count;
+				bitCount -= count;
+				return value;
+			}
+
+			private void fill() {
+				while (bitCount <= 56) {
+					int b = 0;
+					if (!atMarker) {
+						b = data[pos] & 0xff;
+						if (b == 0xff) {
+							int next = data[pos + 1] & 0xff;
+							if (next == 0) {
+								pos += 2;
+							} else {
+								// Past the end of the segment the decoder reads zeros
+								atMarker = true;
+								b = 0;
+							}
+						} else {
+							pos++;
+						}
+					}
+					bitBuffer |= (long) b << (56 - bitCount);
+					bitCount += 8;
+				}
+			}
+
+			private int nextRestartMarker() {
+				int marker = endOfScan();
+				int code = data[marker + 1] & 0xff;
+				if (code < RST0 || code > RST0 + 7) {
+					throw new IllegalArgumentException("Missing restart marker");
+				}
+				pos = marker + 2;
+				bitBuffer = 0;
+				bitCount = 0;
+				atMarker = false;
+				return code;
+			}
+
+			/**
+			 * Drop the padding bits and find the marker that follows them.
+			 */
+			private int endOfScan() {
+				int at = pos;
+				while (!((data[at] & 0xff) == 0xff && (data[at + 1] & 0xff) != 0 && (data[at + 1] & 0xff) != 0xff)) {
+					at++;
+				}
+				return at;
+			}
+		}
+	}
+
+	/**
+	 * Packs codes into bytes, stuffing a zero byte after every 0xFF.
+	 */
+	private static final class BitWriter {
+
+		private final ByteArrayOutputStream out;
+		private long buffer;
+		private int count;
+
+		BitWriter(ByteArrayOutputStream out) {
+			this.out = out;
+		}
+
+		void write(int bits, int length) {
+			if (length == 0) {
+				return;
+			}
+			buffer = buffer << length | (bits & ((1L << length) - 1));
+			count += length;
+			while (count >= 8) {
+				int b = (int) (buffer >>> (count - 8)) & 0xff;
+				out.write(b);
+				if (b == 0xff) {
+					out.write(0);
+				}
+				count -= 8;
+			}
+		}
+
+		/**
+		 * Pad the last byte with one bits, as the standard requires before a marker.
+		 */
+		void flush() {
+			if (count > 0) {
+				write(0x7f, 8 - count);
+			}
+			buffer = 0;
+			count = 0;
+		}
+	}
+
+	/**
+	 * Build the optimal length-limited Huffman code for a set of symbol counts (JPEG
+	 * standard, section K.2).
+	 *
+	 * @param counted Count of each of the 256 symbols; entry 256 is used as scratch space
+	 * @param counts Filled with the number of codes of each length, 1 to 16
+	 * @return the symbols in code order
+	 */
+	static int[] optimalTable(long[] counted, int[] counts) {
+		long[] frequency = new long[257];
+		System.arraycopy(counted, 0, frequency, 0, 256);
+		// A reserved symbol keeps any real code from being all ones
+		frequency[256] = 1;
+		int[] codeSize = new int[257];
+		int[] others = new int[257];
+		Arrays.fill(others, -1);
+
+		while (true) {
+			int c1 = -1;
+			long least = Long.MAX_VALUE;
+			for (int i = 0; i <= 256; i++) {
+				if (frequency[i] > 0 && frequency[i] <= least) {
+					least = frequency[i];
+					c1 = i;
+				}
+			}
+			int c2 = -1;
+			least = Long.MAX_VALUE;
+			for (int i = 0; i <= 256; i++) {
+				if (frequency[i] > 0 && frequency[i] <= least && i != c1) {
+					least = frequency[i];
+					c2 = i;
+				}
+			}
+			if (c2 < 0) {
+				break;
+			}
+			frequency[c1] += frequency[c2];
+			frequency[c2] = 0;
+			codeSize[c1]++;
+			while (others[c1] >= 0) {
+				c1 = others[c1];
+				codeSize[c1]++;
+			}
+			others[c1] = c2;
+			codeSize[c2]++;
+			while (others[c2] >= 0) {
+				c2 = others[c2];
+				codeSize[c2]++;
+			}
+		}
+
+		int[] bits = new int[33];
+		for (int i = 0; i <= 256; i++) {
+			if (codeSize[i] > 0) {
+				bits[codeSize[i]]++;
+			}
+		}
+		// Shorten codes over 16 bits, keeping the code prefix-free
+		for (int i = 32; i > 16; i--) {
+			while (bits[i] > 0) {
+				int j = i - 2;
+				while (bits[j] == 0) {
+					j--;
+				}
+				bits[i] -= 2;
+				bits[i - 1]++;
+				bits[j + 1] += 2;
+				bits[j]--;
+			}
+		}
+		int longest = 16;
+		while (bits[longest] == 0) {
+			longest--;
+		}
+		// Drop the reserved symbol, which has one of the longest codes
+		bits[longest]--;
+
+		System.arraycopy(bits, 1, counts, 1, 16);
+		int total = 0;
+		for (int length = 1; length <= 16; length++) {
+			total += counts[length];
+		}
+		int[] values = new int[total];
+		int k = 0;
+		for (int length = 1; length <= 32 && k < total; length++) {
+			for (int symbol = 0; symbol < 256; symbol++) {
+				if (codeSize[symbol] == length) {
+					values[k++] = symbol;
+				}
+			}
+		}
+		return values;
+	}
+
+	private static int ceilDiv(int value, int divisor) {
+		return (value + divisor - 1) / divisor;
+	}
+}
@@ -0,0 +1,40 @@
+package com.redligot.backend.service;
+
+import com.redligot.backend.repository.PhotoContentStore;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads header metadata for photos uploaded before {@link ImageMetadataExtractor} ran
+ * at upload time, or by an older version of it. Only the first
+ * {@link ImageMetadataExtractor#getScanBytes()} of each image are read.
+ */
+@Component
+public class MetadataBackfillStep implements PhotoBackfillStep {
+
+	private final ImageMetadataExtractor imageMetadataExtractor;
+	private final PhotoContentStore photoContentStore;
+
+	public MetadataBackfillStep(ImageMetadataExtractor imageMetadataExtractor, PhotoContentStore photoContentStore) {
+		this.imageMetadataExtractor = imageMetadataExtractor;
+		this.photoContentStore = photoContentStore;
+	}
+
+	@Override
+	public String name() {
+		return "metadata";
+	}
+
+	@Override
+	public String pendingCondition() {
+		return "metadata_version < " + ImageMetadataExtractor.VERSION;
+	}
+
+	@Override
+	public void apply(long photoId, InputStream content) throws IOException {
+		// Unrecognised formats still get a row of nulls, stamped with the current version
+		photoContentStore.updateMetadata(photoId, imageMetadataExtractor.extract(content));
+	}
+}
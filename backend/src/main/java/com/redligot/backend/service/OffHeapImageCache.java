@@ -0,0 +1,611 @@
+package com.redligot.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Off-heap cache tier for original image bytes.
+ *
+ * <p>Content lives in direct {@link ByteBuffer} slabs that are allocated lazily up to
+ * the configured size and cut into fixed pages; an image occupies a chain of pages, so
+ * any size fits without fragmentation beyond one partial page. Everything on the heap
+ * is primitive arrays indexed by entry slot plus an open-addressing
+ * <code>long → int</code> map from photo ID to slot, so the garbage collector sees a
+ * handful of objects no matter how many gigabytes are cached.</p>
+ *
+ * <p>Eviction is CLOCK: a hit sets the entry's reference bit, and the hand clears bits
+ * until it finds an unreferenced entry. Readers take a {@link Lease} that pins the
+ * entry; pinned entries are never evicted or overwritten, so responses can be written
+ * straight from the slab while the client drains them. Concurrent misses for the same
+ * photo share one load. Bookkeeping is guarded by one {@link ReentrantLock}; filling
+ * and reading pages are not.</p>
+ */
+@Component
+public class OffHeapImageCache {
+
+	private static final byte FREE = 0;
+	private static final byte LOADING = 1;
+	private static final byte READY = 2;
+	// Invalidated or replaced while pinned; freed by the last lease
+	private static final byte DOOMED = 3;
+
+	private static final int NO_PAGE = -1;
+
+	/**
+	 * Fills a freshly reserved entry.
+	 */
+	@FunctionalInterface
+	public interface Filler {
+		/**
+		 * @return false if there is no content (e.g. the photo was deleted meanwhile)
+		 */
+		boolean fill(OutputStream target) throws IOException;
+	}
+
+	/**
+	 * What to cache for a photo on a miss.
+	 *
+	 * @param version Content version being loaded
+	 * @param length Exact content length
+	 * @param contentType MIME type
+	 * @param filler Writes the content; called without the cache lock
+	 */
+	public record Source(int version, long length, String contentType, Filler filler) {}
+
+	/**
+	 * Snapshot of the tier's counters.
+	 */
+	public record Stats(long hits, long misses, long loads, long coalescedLoads, long evictions, long rejections,
+			int entries, long usedBytes, long allocatedBytes, long maxBytes) {
+
+		public double hitRate() {
+			long requests = hits + misses;
+			return requests == 0 ? 0.0 : (double) hits / requests;
+		}
+	}
+
+	private final long maxBytes;
+	private final int pageSize;
+	private final int pagesPerSlab;
+	private final int maxPages;
+	private final ByteBuffer[] slabs;
+	private int slabCount;
+
+	// Pages: free stack and per-page successor in an entry's chain
+	private final int[] nextPage;
+	private final int[] freePages;
+	private int freePageCount;
+
+	// Entry slots; at most one entry per page
+	private final long[] entryPhotoId;
+	private final int[] entryVersion;
+	private final int[] entryLength;
+	private final int[] entryFirstPage;
+	private final int[] entryPins;
+	private final byte[] entryState;
+	private final boolean[] entryReferenced;
+	private final String[] entryContentType;
+	private final int[] freeSlots;
+	private int freeSlotCount;
+	private int clockHand;
+
+	private final LongIntHashMap index;
+	// Slots being filled; at most one per photo because loads are coalesced
+	private final LongIntHashMap loadingIndex;
+	private final ConcurrentHashMap<Long, CompletableFuture<Void>> loading = new ConcurrentHashMap<>();
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private long hits;
+	private long misses;
+	private long loads;
+	private long coalescedLoads;
+	private long evictions;
+	private long rejections;
+	private int entries;
+	private long usedBytes;
+
+	public OffHeapImageCache(@Value("${app.images.offheap.max-bytes:0}") long maxBytes,
+			@Value("${app.images.offheap.page-size:32768}") int pageSize,
+			@Value("${app.images.offheap.slab-size:67108864}") int slabSize) {
+		this.pageSize = pageSize;
+		this.pagesPerSlab = Math.max(1, slabSize / pageSize);
+		int maxSlabs = (int) Math.max(0, maxBytes / ((long) pagesPerSlab * pageSize));
+		this.maxBytes = (long) maxSlabs * pagesPerSlab * pageSize;
+		this.maxPages = maxSlabs * pagesPerSlab;
+		this.slabs = new ByteBuffer[maxSlabs];
+		this.nextPage = new int[maxPages];
+		this.freePages = new int[maxPages];
+		this.entryPhotoId = new long[maxPages];
+		this.entryVersion = new int[maxPages];
+		this.entryLength = new int[maxPages];
+		this.entryFirstPage = new int[maxPages];
+		this.entryPins = new int[maxPages];
+		this.entryState = new byte[maxPages];
+		this.entryReferenced = new boolean[maxPages];
+		this.entryContentType = new String[maxPages];
+		this.freeSlots = new int[maxPages];
+		for (int slot = maxPages - 1; slot >= 0; slot--) {
+			freeSlots[freeSlotCount++] = slot;
+		}
+		this.index = new LongIntHashMap(Math.max(16, maxPages));
+		this.loadingIndex = new LongIntHashMap(Math.max(16, maxPages));
+	}
+
+	/**
+	 * @return true if a size has been configured
+	 */
+	public boolean isEnabled() {
+		return maxPages > 0;
+	}
+
+	/**
+	 * Pin a cached image.
+	 *
+	 * @param photoId Photo ID
+	 * @param version Content version
+	 * @return a lease that must be closed, or null on a miss
+	 */
+	public Lease get(long photoId, int version) {
+		lock.lock();
+		try {
+			int slot = index.get(photoId);
+			if (slot < 0 || entryVersion[slot] != version) {
+				misses++;
+				return null;
+			}
+			hits++;
+			return pin(slot);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Pin a cached image, loading it on a miss.
+	 * Only one load runs per photo; other callers wait for it and then take its result.
+	 *
+	 * @param photoId Photo ID
+	 * @param version Content version wanted
+	 * @param loader Describes the current content on a miss; returns null if there is none
+	 * @return a lease that must be closed, or null if the image is not cacheable
+	 *         (too large, no evictable space, or no content)
+	 */
+	public Lease getOrLoad(long photoId, int version, Supplier<Source> loader) {
+		Lease lease = get(photoId, version);
+		if (lease != null || !isEnabled()) {
+			return lease;
+		}
+		CompletableFuture<Void> mine = new CompletableFuture<>();
+		CompletableFuture<Void> running = loading.putIfAbsent(photoId, mine);
+		if (running != null) {
+			lock.lock();
+			try {
+				coalescedLoads++;
+			} finally {
+				lock.unlock();
+			}
+			running.join();
+			lock.lock();
+			try {
+				// Only take what was just loaded if it is the version asked for
+				int slot = index.get(photoId);
+				if (slot >= 0 && entryVersion[slot] == version) {
+					return pin(slot);
+				}
+			} finally {
+				lock.unlock();
+			}
+			// Already evicted again, or the load failed: try for ourselves
+			return getOrLoad(photoId, version, loader);
+		}
+		try {
+			Source source = loader.get();
+			return source == null ? null : load(photoId, source);
+		} finally {
+			loading.remove(photoId, mine);
+			mine.complete(null);
+		}
+	}
+
+	/**
+	 * Drop a photo's entry; a pinned entry is freed when its last lease closes.
+	 *
+	 * @param photoId Photo ID
+	 */
+	public void invalidate(long photoId) {
+		lock.lock();
+		try {
+			int slot = index.remove(photoId);
+			if (slot >= 0) {
+				retire(slot);
+			}
+			int loadingSlot = loadingIndex.get(photoId);
+			if (loadingSlot >= 0) {
+				// An in-flight load must not publish content that predates the invalidation
+				entryState[loadingSlot] = DOOMED;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return current counters
+	 */
+	public Stats stats() {
+		lock.lock();
+		try {
+			return new Stats(hits, misses, loads, coalescedLoads, evictions, rejections, entries, usedBytes,
+					(long) slabCount * pagesPerSlab * pageSize, maxBytes);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private Lease load(long photoId, Source source) {
+		long length = source.length();
+		if (length <= 0 || length > maxBytes) {
+			reject();
+			return null;
+		}
+		int pages = (int) ((length + pageSize - 1) / pageSize);
+		int slot = reserve(photoId, source.version(), (int) length, pages);
+		if (slot < 0) {
+			return null;
+		}
+		Lease lease = null;
+		try {
+			PageOutputStream target = new PageOutputStream(entryFirstPage[slot], (int) length);
+			if (source.filler().fill(target) && target.remaining == 0) {
+				lock.lock();
+				try {
+					if (entryState[slot] == LOADING) {
+						publish(slot, source.contentType());
+						lease = pin(slot);
+						// Start unreferenced so one-off downloads are the first to go
+						entryReferenced[slot] = false;
+					}
+				} finally {
+					lock.unlock();
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (PageOutputStream.OverflowException e) {
+			// The stored size was stale; the caller serves this one from the heap path
+		} finally {
+			lock.lock();
+			try {
+				loadingIndex.remove(photoId);
+				if (lease == null) {
+					free(slot);
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+		return lease;
+	}
+
+	private int reserve(long photoId, int version, int length, int pages) {
+		lock.lock();
+		try {
+			if (!ensureFreePages(pages) || freeSlotCount == 0) {
+				rejections++;
+				return -1;
+			}
+			int slot = freeSlots[--freeSlotCount];
+			int first = NO_PAGE;
+			for (int i = 0; i < pages; i++) {
+				int page = freePages[--freePageCount];
+				nextPage[page] = first;
+				first = page;
+			}
+			entryPhotoId[slot] = photoId;
+			entryVersion[slot] = version;
+			entryLength[slot] = length;
+			entryFirstPage[slot] = first;
+			entryPins[slot] = 0;
+			entryReferenced[slot] = false;
+			entryState[slot] = LOADING;
+			loadingIndex.put(photoId, slot);
+			return slot;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void publish(int slot, String contentType) {
+		long photoId = entryPhotoId[slot];
+		int previous = index.put(photoId, slot);
+		if (previous >= 0) {
+			retire(previous);
+		}
+		entryContentType[slot] = contentType;
+		entryState[slot] = READY;
+		entries++;
+		usedBytes += entryLength[slot];
+		loads++;
+	}
+
+	/**
+	 * Make room by allocating slabs while under the limit, then by running the clock.
+	 */
+	private boolean ensureFreePages(int pages) {
+		while (freePageCount < pages && slabCount < slabs.length) {
+			allocateSlab();
+		}
+		int budget = 2 * maxPages;
+		while (freePageCount < pages && budget-- > 0) {
+			int slot = clockHand;
+			clockHand = (clockHand + 1) % maxPages;
+			if (entryState[slot] != READY || entryPins[slot] > 0) {
+				continue;
+			}
+			if (entryReferenced[slot]) {
+				entryReferenced[slot] = false;
+				continue;
+			}
+			index.remove(entryPhotoId[slot]);
+			retire(slot);
+			evictions++;
+		}
+		return freePageCount >= pages;
+	}
+
+	private void allocateSlab() {
+		int slab = slabCount++;
+		slabs[slab] = ByteBuffer.allocateDirect(pagesPerSlab * pageSize);
+		for (int i = pagesPerSlab - 1; i >= 0; i--) {
+			freePages[freePageCount++] = slab * pagesPerSlab + i;
+		}
+	}
+
+	private Lease pin(int slot) {
+		entryPins[slot]++;
+		entryReferenced[slot] = true;
+		ByteBuffer[] chunks = new ByteBuffer[(entryLength[slot] + pageSize - 1) / pageSize];
+		int remaining = entryLength[slot];
+		int page = entryFirstPage[slot];
+		for (int i = 0; i < chunks.length; i++) {
+			int length = Math.min(pageSize, remaining);
+			chunks[i] = slabs[page / pagesPerSlab].slice((page % pagesPerSlab) * pageSize, length).asReadOnlyBuffer();
+			remaining -= length;
+			page = nextPage[page];
+		}
+		return new Lease(slot, entryContentType[slot], entryLength[slot], chunks);
+	}
+
+	private void unpin(int slot) {
+		lock.lock();
+		try {
+			if (--entryPins[slot] == 0 && entryState[slot] == DOOMED) {
+				free(slot);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Take an entry out of service; its memory is reused once no lease holds it.
+	 */
+	private void retire(int slot) {
+		if (entryState[slot] == READY) {
+			entries--;
+			usedBytes -= entryLength[slot];
+		}
+		if (entryPins[slot] > 0) {
+			entryState[slot] = DOOMED;
+		} else {
+			free(slot);
+		}
+	}
+
+	private void free(int slot) {
+		for (int page = entryFirstPage[slot]; page != NO_PAGE; page = nextPage[page]) {
+			freePages[freePageCount++] = page;
+		}
+		entryFirstPage[slot] = NO_PAGE;
+		entryContentType[slot] = null;
+		entryState[slot] = FREE;
+		freeSlots[freeSlotCount++] = slot;
+	}
+
+	private void reject() {
+		lock.lock();
+		try {
+			rejections++;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * A pinned cache entry. The chunks are read-only views of the slab; close the lease
+	 * once the response has been written.
+	 */
+	public final class Lease implements AutoCloseable {
+
+		private final int slot;
+		private final String contentType;
+		private final int length;
+		private final ByteBuffer[] chunks;
+		private boolean closed;
+
+		private Lease(int slot, String contentType, int length, ByteBuffer[] chunks) {
+			this.slot = slot;
+			this.contentType = contentType;
+			this.length = length;
+			this.chunks = chunks;
+		}
+
+		public String contentType() {
+			return contentType;
+		}
+
+		public int length() {
+			return length;
+		}
+
+		/**
+		 * @return the content as consecutive direct buffers
+		 */
+		public ByteBuffer[] chunks() {
+			return chunks;
+		}
+
+		@Override
+		public void close() {
+			lock.lock();
+			try {
+				if (closed) {
+					return;
+				}
+				closed = true;
+				unpin(slot);
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Copies a loader's output into the reserved page chain.
+	 */
+	private final class PageOutputStream extends OutputStream {
+
+		static final class OverflowException extends RuntimeException {
+
+			private static final long serialVersionUID = 1L;
+
+			OverflowException() {
+				super(null, null, false, false);
+			}
+		}
+
+		private int page;
+		private int offset;
+		private int remaining;
+
+		PageOutputStream(int firstPage, int length) {
+			this.page = firstPage;
+			this.remaining = length;
+		}
+
+		@Override
+		public void write(int b) {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			if (len > remaining) {
+				throw new OverflowException();
+			}
+			while (len > 0) {
+				if (offset == pageSize) {
+					page = nextPage[page];
+					offset = 0;
+				}
+				int count = Math.min(len, pageSize - offset);
+				slabs[page / pagesPerSlab].put((page % pagesPerSlab) * pageSize + offset, b, off, count);
+				offset += count;
+				off += count;
+				len -= count;
+				remaining -= count;
+			}
+		}
+	}
+
+	/**
+	 * Open-addressing map from non-negative <code>long</code> keys to slot numbers,
+	 * with linear probing and backward-shift deletion.
+	 */
+	static final class LongIntHashMap {
+
+		private static final long EMPTY = -1L;
+
+		private final long[] keys;
+		private final int[] values;
+		private final int mask;
+
+		LongIntHashMap(int expected) {
+			int capacity = Integer.highestOneBit(Math.max(4, expected) * 2 - 1) << 1;
+			this.keys = new long[capacity];
+			this.values = new int[capacity];
+			this.mask = capacity - 1;
+			Arrays.fill(keys, EMPTY);
+		}
+
+		int get(long key) {
+			for (int i = hash(key); ; i = (i + 1) & mask) {
+				if (keys[i] == key) {
+					return values[i];
+				}
+				if (keys[i] == EMPTY) {
+					return -1;
+				}
+			}
+		}
+
+		/**
+		 * @return the previous value, or -1
+		 */
+		int put(long key, int value) {
+			for (int i = hash(key); ; i = (i + 1) & mask) {
+				if (keys[i] == key) {
+					int previous = values[i];
+					values[i] = value;
+					return previous;
+				}
+				if (keys[i] == EMPTY) {
+					keys[i] = key;
+					values[i] = value;
+					return -1;
+				}
+			}
+		}
+
+		/**
+		 * @return the removed value, or -1
+		 */
+		int remove(long key) {
+			int i = hash(key);
+			while (keys[i] != key) {
+				if (keys[i] == EMPTY) {
+					return -1;
+				}
+				i = (i + 1) & mask;
+			}
+			int removed = values[i];
+			// Shift later entries of the probe run back so lookups never stop early
+			int gap = i;
+			for (int j = (gap + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+				int home = hash(keys[j]);
+				if (((j - home) & mask) >= ((j - gap) & mask)) {
+					keys[gap] = keys[j];
+					values[gap] = values[j];
+					gap = j;
+				}
+			}
+			keys[gap] = EMPTY;
+			return removed;
+		}
+
+		private int hash(long key) {
+			long h = key * 0x9e3779b97f4a7c15L;
+			return (int) (h ^ (h >>> 32)) & mask;
+		}
+	}
+}
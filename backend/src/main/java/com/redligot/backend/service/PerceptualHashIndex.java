@@ -0,0 +1,411 @@
+package com.redligot.backend.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+/**
+ * Hamming-distance index over the 64-bit perceptual hashes of one user's photos.
+ *
+ * <p>Uses multi-index hashing: each hash is split into four 16-bit chunks, and each
+ * chunk position has a table from chunk value to the photos having it. If two hashes
+ * are within distance {@code d}, at least one of their chunks is within
+ * {@code d / 4} (pigeonhole), so a search only probes the buckets of chunk values
+ * that close to the query's and checks the full distance of what it finds there.
+ * That keeps a search to a few thousand comparisons however many photos there are,
+ * which is what makes clustering a whole library fast.</p>
+ *
+ * <p>The tables are rebuilt in one pass (a counting sort per chunk). Photos added
+ * since the last rebuild are kept in a short tail that is scanned linearly, and
+ * removed photos are marked; either triggers a rebuild once it grows past a fraction
+ * of the index. Small indexes have no tables and are always scanned.</p>
+ */
+public final class PerceptualHashIndex {
+
+	/**
+	 * Largest distance a search accepts; beyond it nearly everything matches anyway.
+	 */
+	public static final int MAX_DISTANCE = 16;
+
+	private static final int CHUNKS = 4;
+	private static final int CHUNK_BITS = 16;
+	private static final int CHUNK_VALUES = 1 << CHUNK_BITS;
+	private static final int MIN_TABLE_SIZE = 4096;
+	private static final int MIN_TAIL = 256;
+
+	// All 16-bit masks with at most MAX_DISTANCE / CHUNKS bits set, fewest bits first
+	private static final int[] PROBE_MASKS;
+	// PROBE_COUNT[r] = number of masks with at most r bits set
+	private static final int[] PROBE_COUNT = new int[MAX_DISTANCE / CHUNKS + 1];
+
+	static {
+		int maxRadius = MAX_DISTANCE / CHUNKS;
+		PROBE_MASKS = IntStream.range(0, CHUNK_VALUES)
+				.filter(mask -> Integer.bitCount(mask) <= maxRadius)
+				.boxed()
+				.sorted(Comparator.comparingInt(Integer::bitCount))
+				.mapToInt(Integer::intValue)
+				.toArray();
+		for (int mask : PROBE_MASKS) {
+			for (int r = Integer.bitCount(mask); r <= maxRadius; r++) {
+				PROBE_COUNT[r]++;
+			}
+		}
+	}
+
+	/**
+	 * A photo within the searched distance.
+	 */
+	public record Match(long photoId, int distance) {}
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private long[] ids;
+	private long[] hashes;
+	private boolean[] removed;
+	private int size;
+	private int live;
+	// Slots [0, indexed) are in the tables, sorted by photo ID
+	private int indexed;
+	private int[][] offsets;
+	private int[][] slots;
+
+	/**
+	 * @param photoIds Photo IDs in ascending order
+	 * @param photoHashes Hash of each photo
+	 * @param count Number of entries used in the arrays
+	 */
+	public PerceptualHashIndex(long[] photoIds, long[] photoHashes, int count) {
+		int capacity = Math.max(16, count);
+		this.ids = Arrays.copyOf(photoIds, capacity);
+		this.hashes = Arrays.copyOf(photoHashes, capacity);
+		this.removed = new boolean[capacity];
+		this.size = count;
+		this.live = count;
+		rebuild();
+	}
+
+	/**
+	 * @return number of photos in the index
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return live;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Add a photo, or replace its hash if it is already indexed.
+	 */
+	public void put(long photoId, long hash) {
+		lock.writeLock().lock();
+		try {
+			int slot = find(photoId);
+			if (slot >= 0) {
+				if (hashes[slot] == hash) {
+					return;
+				}
+				markRemoved(slot);
+			}
+			if (size == ids.length) {
+				int capacity = size + (size >> 1);
+				ids = Arrays.copyOf(ids, capacity);
+				hashes = Arrays.copyOf(hashes, capacity);
+				removed = Arrays.copyOf(removed, capacity);
+			}
+			ids[size] = photoId;
+			hashes[size] = hash;
+			size++;
+			live++;
+			if (size - indexed > Math.max(MIN_TAIL, indexed / 8)) {
+				rebuild();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Remove a photo.
+	 *
+	 * @return whether it was indexed
+	 */
+	public boolean remove(long photoId) {
+		lock.writeLock().lock();
+		try {
+			int slot = find(photoId);
+			if (slot < 0) {
+				return false;
+			}
+			markRemoved(slot);
+			if (size - live > Math.max(MIN_TAIL, live / 4)) {
+				rebuild();
+			}
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the indexed hash of a photo, or null if it is not indexed
+	 */
+	public Long hashOf(long photoId) {
+		lock.readLock().lock();
+		try {
+			int slot = find(photoId);
+			return slot >= 0 ? hashes[slot] : null;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Find the photos within a Hamming distance of a hash.
+	 *
+	 * @param hash Query hash
+	 * @param maxDistance Largest distance to include, at most {@link #MAX_DISTANCE}
+	 * @param excludeId Photo to leave out, usually the one the hash belongs to
+	 * @param limit Most matches to return
+	 * @return matches, closest first
+	 */
+	public List<Match> search(long hash, int maxDistance, long excludeId, int limit) {
+		checkDistance(maxDistance);
+		List<Match> matches = new ArrayList<>();
+		lock.readLock().lock();
+		try {
+			forEachWithin(hash, maxDistance, (slot, distance) -> {
+				if (ids[slot] != excludeId) {
+					matches.add(new Match(ids[slot], distance));
+				}
+			});
+		} finally {
+			lock.readLock().unlock();
+		}
+		matches.sort(Comparator.comparingInt(Match::distance).thenComparingLong(Match::photoId));
+		return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+	}
+
+	/**
+	 * Group photos into clusters of near-duplicates: two photos are in the same cluster
+	 * if a chain of photos, each within {@code maxDistance} of the next, links them.
+	 *
+	 * @param maxDistance Largest distance between linked photos, at most {@link #MAX_DISTANCE}
+	 * @return clusters of at least two photos, largest first, each with its photo IDs in ascending order
+	 */
+	public List<long[]> clusters(int maxDistance) {
+		checkDistance(maxDistance);
+		lock.writeLock().lock();
+		try {
+			if (size > indexed || live < size) {
+				// Fold the tail into the tables so every search below is a table lookup
+				rebuild();
+			}
+			// Downgrade: searches may run alongside the clustering, writers wait
+			lock.readLock().lock();
+		} finally {
+			lock.writeLock().unlock();
+		}
+		try {
+			int[] parent = new int[size];
+			for (int i = 0; i < size; i++) {
+				parent[i] = i;
+			}
+			for (int slot = 0; slot < size; slot++) {
+				int from = slot;
+				forEachWithin(hashes[slot], maxDistance, (other, distance) -> {
+					if (other > from) {
+						union(parent, from, other);
+					}
+				});
+			}
+
+			int[] clusterSize = new int[size];
+			for (int slot = 0; slot < size; slot++) {
+				clusterSize[root(parent, slot)]++;
+			}
+			List<long[]> clusters = new ArrayList<>();
+			int[] fill = new int[size];
+			long[][] byRoot = new long[size][];
+			for (int slot = 0; slot < size; slot++) {
+				int root = root(parent, slot);
+				if (clusterSize[root] < 2) {
+					continue;
+				}
+				if (byRoot[root] == null) {
+					byRoot[root] = new long[clusterSize[root]];
+					clusters.add(byRoot[root]);
+				}
+				// Slots are in ID order after the rebuild, so each cluster comes out sorted
+				byRoot[root][fill[root]++] = ids[slot];
+			}
+			clusters.sort(Comparator.<long[]>comparingInt(c -> -c.length).thenComparingLong(c -> c[0]));
+			return clusters;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@FunctionalInterface
+	private interface SlotVisitor {
+		void visit(int slot, int distance);
+	}
+
+	/**
+	 * Visit every live slot within {@code maxDistance} of {@code hash}, each once.
+	 * Caller holds a lock.
+	 */
+	private void forEachWithin(long hash, int maxDistance, SlotVisitor visitor) {
+		int scanFrom = 0;
+		if (offsets != null) {
+			int radius = maxDistance / CHUNKS;
+			int probes = PROBE_COUNT[radius];
+			for (int chunk = 0; chunk < CHUNKS; chunk++) {
+				int value = chunk(hash, chunk);
+				int[] chunkOffsets = offsets[chunk];
+				int[] chunkSlots = slots[chunk];
+				for (int p = 0; p < probes; p++) {
+					int bucket = value ^ PROBE_MASKS[p];
+					for (int i = chunkOffsets[bucket], end = chunkOffsets[bucket + 1]; i < end; i++) {
+						int slot = chunkSlots[i];
+						if (removed[slot] || !firstCloseChunk(hash, hashes[slot], radius, chunk)) {
+							continue;
+						}
+						int distance = Long.bitCount(hash ^ hashes[slot]);
+						if (distance <= maxDistance) {
+							visitor.visit(slot, distance);
+						}
+					}
+				}
+			}
+			scanFrom = indexed;
+		}
+		for (int slot = scanFrom; slot < size; slot++) {
+			if (!removed[slot]) {
+				int distance = Long.bitCount(hash ^ hashes[slot]);
+				if (distance <= maxDistance) {
+					visitor.visit(slot, distance);
+				}
+			}
+		}
+	}
+
+	/**
+	 * A candidate is reachable through every chunk within the radius; only the first
+	 * such chunk reports it, so nothing is visited twice.
+	 */
+	private static boolean firstCloseChunk(long a, long b, int radius, int chunk) {
+		for (int earlier = 0; earlier < chunk; earlier++) {
+			if (Integer.bitCount(chunk(a, earlier) ^ chunk(b, earlier)) <= radius) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int chunk(long hash, int chunk) {
+		return (int) (hash >>> (chunk * CHUNK_BITS)) & (CHUNK_VALUES - 1);
+	}
+
+	/**
+	 * Drop removed slots, restore ID order and rebuild the tables. Caller holds the write lock.
+	 */
+	private void rebuild() {
+		Integer[] order = new Integer[live];
+		int n = 0;
+		boolean sorted = true;
+		for (int slot = 0; slot < size; slot++) {
+			if (!removed[slot]) {
+				if (n > 0 && ids[order[n - 1]] > ids[slot]) {
+					sorted = false;
+				}
+				order[n++] = slot;
+			}
+		}
+		if (!sorted) {
+			Arrays.sort(order, Comparator.comparingLong(slot -> ids[slot]));
+		}
+		long[] compactIds = new long[Math.max(16, live + (live >> 2))];
+		long[] compactHashes = new long[compactIds.length];
+		for (int i = 0; i < live; i++) {
+			compactIds[i] = ids[order[i]];
+			compactHashes[i] = hashes[order[i]];
+		}
+		ids = compactIds;
+		hashes = compactHashes;
+		removed = new boolean[compactIds.length];
+		size = live;
+		indexed = live;
+
+		if (live < MIN_TABLE_SIZE) {
+			offsets = null;
+			slots = null;
+			return;
+		}
+		offsets = new int[CHUNKS][CHUNK_VALUES + 1];
+		slots = new int[CHUNKS][live];
+		for (int chunk = 0; chunk < CHUNKS; chunk++) {
+			int[] chunkOffsets = offsets[chunk];
+			for (int slot = 0; slot < live; slot++) {
+				chunkOffsets[chunk(hashes[slot], chunk) + 1]++;
+			}
+			for (int value = 0; value < CHUNK_VALUES; value++) {
+				chunkOffsets[value + 1] += chunkOffsets[value];
+			}
+			int[] next = Arrays.copyOf(chunkOffsets, CHUNK_VALUES);
+			for (int slot = 0; slot < live; slot++) {
+				slots[chunk][next[chunk(hashes[slot], chunk)]++] = slot;
+			}
+		}
+	}
+
+	/**
+	 * @return the live slot holding a photo, or -1
+	 */
+	private int find(long photoId) {
+		int slot = Arrays.binarySearch(ids, 0, indexed, photoId);
+		if (slot >= 0 && !removed[slot]) {
+			return slot;
+		}
+		for (slot = indexed; slot < size; slot++) {
+			if (ids[slot] == photoId && !removed[slot]) {
+				return slot;
+			}
+		}
+		return -1;
+	}
+
+	private void markRemoved(int slot) {
+		removed[slot] = true;
+		live--;
+	}
+
+	private static void checkDistance(int maxDistance) {
+		if (maxDistance < 0 || maxDistance > MAX_DISTANCE) {
+			throw new IllegalArgumentException("Distance must be between 0 and " + MAX_DISTANCE);
+		}
+	}
+
+	private static int root(int[] parent, int slot) {
+		while (parent[slot] != slot) {
+			parent[slot] = parent[parent[slot]];
+			slot = parent[slot];
+		}
+		return slot;
+	}
+
+	private static void union(int[] parent, int a, int b) {
+		int rootA = root(parent, a);
+		int rootB = root(parent, b);
+		if (rootA != rootB) {
+			// Keep the smaller slot as root so roots are stable across runs
+			parent[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+		}
+	}
+}
@@ -0,0 +1,282 @@
+package com.redligot.backend.service;
+
+import com.redligot.backend.dto.PhotoDto;
+import com.redligot.backend.repository.PerceptualHashStore;
+import com.redligot.backend.repository.PerceptualHashStore.PhotoHash;
+import com.redligot.backend.repository.PhotoContentStore;
+import com.redligot.backend.security.ImageUrlSigner;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Near-duplicate detection with 64-bit difference hashes (dHash).
+ *
+ * <p>The hash compares the brightness of neighbouring cells on a 9x8 grid of the
+ * upright image, so it survives re-encoding, resizing and small edits, and burst shots
+ * land a few bits apart. It is computed by {@link ImageAnalysisService} and kept in
+ * <code>photos.dhash</code>. Searches run against a {@link PerceptualHashIndex} per
+ * user, loaded on first use and kept up to date as photos are hashed or deleted; the
+ * most recently used indexes stay in memory. Results are described from metadata
+ * columns only; photo content is never read.</p>
+ */
+@Service
+public class PerceptualHashService implements ImageAnalyzer {
+
+	/**
+	 * Stored in <code>photos.dhash_version</code>; raise it when the hash changes so the
+	 * backfill job recomputes existing photos.
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * Largest distance accepted when clustering a whole library.
+	 */
+	public static final int MAX_CLUSTER_DISTANCE = 10;
+
+	private static final int GRID_WIDTH = 9;
+	private static final int GRID_HEIGHT = 8;
+
+	/**
+	 * Most photos listed per duplicate cluster; larger clusters report their full size.
+	 */
+	static final int MAX_CLUSTER_PHOTOS = 50;
+
+	/**
+	 * A photo similar to the one searched for.
+	 */
+	public record SimilarPhoto(PhotoDto photo, int distance) {}
+
+	/**
+	 * A group of near-duplicates.
+	 *
+	 * @param size Photos in the cluster
+	 * @param photos Up to {@value #MAX_CLUSTER_PHOTOS} of them
+	 */
+	public record Cluster(int size, List<PhotoDto> photos) {}
+
+	/**
+	 * Near-duplicate clusters of a user's library.
+	 *
+	 * @param totalClusters Clusters found
+	 * @param totalPhotos Photos in those clusters
+	 * @param clusters Largest clusters, up to the requested limit
+	 */
+	public record DuplicateReport(int totalClusters, int totalPhotos, List<Cluster> clusters) {}
+
+	private final PerceptualHashStore perceptualHashStore;
+	private final PhotoContentStore photoContentStore;
+	private final ImageUrlSigner imageUrlSigner;
+	private final UserIndexCache<PerceptualHashIndex> indexes;
+
+	public PerceptualHashService(PerceptualHashStore perceptualHashStore, PhotoContentStore photoContentStore,
+			ImageUrlSigner imageUrlSigner, @Value("${app.similarity.max-cached-users:32}") int maxCachedUsers) {
+		this.perceptualHashStore = perceptualHashStore;
+		this.photoContentStore = photoContentStore;
+		this.imageUrlSigner = imageUrlSigner;
+		this.indexes = new UserIndexCache<>(maxCachedUsers, this::load);
+	}
+
+	@Override
+	public String name() {
+		return "dhash";
+	}
+
+	@Override
+	public int sourceDimension() {
+		return 32;
+	}
+
+	@Override
+	public String pendingCondition() {
+		return "dhash_version < " + VERSION;
+	}
+
+	@Override
+	public void analyze(long photoId, BufferedImage image) {
+		Long hash = image != null ? dHash(image) : null;
+		Long userId = perceptualHashStore.save(photoId, hash, VERSION);
+		if (userId != null) {
+			// Waits for an index of this user that is being loaded, which may or may not include the hash
+			indexes.ifLoaded(userId, index -> {
+				if (hash != null) {
+					index.put(photoId, hash);
+				} else {
+					index.remove(photoId);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Find photos that look like a given photo.
+	 *
+	 * @param photoId Photo ID; must belong to the user
+	 * @param userId Owner user ID
+	 * @param maxDistance Largest Hamming distance to include (0 to 16)
+	 * @param limit Most photos to return
+	 * @return similar photos, closest first
+	 * @throws ResponseStatusException 404 if the photo does not exist or belongs to another user,
+	 *         409 if it has not been hashed yet, 422 if it cannot be hashed
+	 */
+	public List<SimilarPhoto> findSimilar(long photoId, long userId, int maxDistance, int limit) {
+		checkDistance(maxDistance, PerceptualHashIndex.MAX_DISTANCE);
+		PhotoHash photoHash = perceptualHashStore.find(photoId);
+		if (photoHash == null || photoHash.userId() != userId) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Photo with ID " + photoId + " not found");
+		}
+		if (photoHash.hash() == null) {
+			if (photoHash.version() == 0) {
+				throw new ResponseStatusException(HttpStatus.CONFLICT,
+						"Photo " + photoId + " has not been analyzed yet; try again shortly");
+			}
+			throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+					"Photo " + photoId + " could not be decoded for comparison");
+		}
+
+		List<PerceptualHashIndex.Match> matches = indexes.get(userId).search(photoHash.hash(), maxDistance, photoId, limit);
+		Map<Long, PhotoDto> photos = loadPhotos(matches.stream().map(PerceptualHashIndex.Match::photoId).toList(), userId);
+		List<SimilarPhoto> similar = new ArrayList<>(matches.size());
+		for (PerceptualHashIndex.Match match : matches) {
+			PhotoDto photo = photos.get(match.photoId());
+			if (photo != null) {
+				similar.add(new SimilarPhoto(photo, match.distance()));
+			}
+		}
+		return similar;
+	}
+
+	/**
+	 * Group a user's library into clusters of near-duplicates.
+	 *
+	 * @param userId Owner user ID
+	 * @param maxDistance Largest Hamming distance between linked photos (0 to 10)
+	 * @param limit Most clusters to return with their photos
+	 * @return the clusters, largest first
+	 */
+	public DuplicateReport findDuplicates(long userId, int maxDistance, int limit) {
+		checkDistance(maxDistance, MAX_CLUSTER_DISTANCE);
+		List<long[]> clusters = indexes.get(userId).clusters(maxDistance);
+		int totalPhotos = clusters.stream().mapToInt(cluster -> cluster.length).sum();
+
+		List<long[]> shown = clusters.subList(0, Math.min(limit, clusters.size()));
+		Map<Long, PhotoDto> photos = loadPhotos(shown.stream()
+				.flatMapToLong(cluster -> Arrays.stream(cluster).limit(MAX_CLUSTER_PHOTOS))
+				.boxed().toList(), userId);
+		List<Cluster> result = new ArrayList<>(shown.size());
+		for (long[] cluster : shown) {
+			List<PhotoDto> members = Arrays.stream(cluster).limit(MAX_CLUSTER_PHOTOS)
+					.mapToObj(photos::get).filter(p -> p != null).toList();
+			if (members.size() > 1) {
+				result.add(new Cluster(cluster.length, members));
+			}
+		}
+		return new DuplicateReport(clusters.size(), totalPhotos, result);
+	}
+
+	/**
+	 * Drop deleted photos from the loaded indexes.
+	 *
+	 * @param photoIds Deleted photo IDs
+	 */
+	public void remove(Collection<Long> photoIds) {
+		indexes.forEachLoaded(index -> {
+			for (Long photoId : photoIds) {
+				index.remove(photoId);
+			}
+		});
+	}
+
+	/**
+	 * Put restored photos back into their owner's index, if it is loaded.
+	 *
+	 * @param userId Owner user ID
+	 * @param photoIds Restored photo IDs
+	 */
+	public void restore(long userId, Collection<Long> photoIds) {
+		List<PhotoHash> hashes = photoIds.stream()
+				.map(perceptualHashStore::find)
+				.filter(photoHash -> photoHash != null && photoHash.hash() != null)
+				.toList();
+		indexes.ifLoaded(userId, index -> hashes.forEach(photoHash -> index.put(photoHash.photoId(), photoHash.hash())));
+	}
+
+	/**
+	 * Compute the 64-bit difference hash of an image: average the brightness over a 9x8
+	 * grid, then set one bit per cell that is darker than its right-hand neighbour.
+	 *
+	 * @param image <code>TYPE_INT_RGB</code> image
+	 * @return the hash, first row in the most significant bits
+	 */
+	static long dHash(BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		double[] cells = new double[GRID_WIDTH * GRID_HEIGHT];
+		for (int cy = 0; cy < GRID_HEIGHT; cy++) {
+			int y0 = cy * height / GRID_HEIGHT;
+			int y1 = Math.max(y0 + 1, (cy + 1) * height / GRID_HEIGHT);
+			for (int cx = 0; cx < GRID_WIDTH; cx++) {
+				int x0 = cx * width / GRID_WIDTH;
+				int x1 = Math.max(x0 + 1, (cx + 1) * width / GRID_WIDTH);
+				long sum = 0;
+				for (int y = y0; y < y1; y++) {
+					for (int x = x0; x < x1; x++) {
+						int rgb = pixels[y * width + x];
+						sum += 299 * ((rgb >> 16) & 0xff) + 587 * ((rgb >> 8) & 0xff) + 114 * (rgb & 0xff);
+					}
+				}
+				int count = (y1 - y0) * (x1 - x0);
+				cells[cy * GRID_WIDTH + cx] = (double) sum / count;
+			}
+		}
+		long hash = 0;
+		for (int cy = 0; cy < GRID_HEIGHT; cy++) {
+			for (int cx = 0; cx < GRID_WIDTH - 1; cx++) {
+				hash <<= 1;
+				if (cells[cy * GRID_WIDTH + cx] < cells[cy * GRID_WIDTH + cx + 1]) {
+					hash |= 1;
+				}
+			}
+		}
+		return hash;
+	}
+
+	private PerceptualHashIndex load(long userId) {
+		long[][] arrays = {new long[1024], new long[1024]};
+		int[] count = new int[1];
+		perceptualHashStore.forEachHash(userId, (photoId, hash) -> {
+			if (count[0] == arrays[0].length) {
+				arrays[0] = Arrays.copyOf(arrays[0], count[0] * 2);
+				arrays[1] = Arrays.copyOf(arrays[1], count[0] * 2);
+			}
+			arrays[0][count[0]] = photoId;
+			arrays[1][count[0]] = hash;
+			count[0]++;
+		});
+		return new PerceptualHashIndex(arrays[0], arrays[1], count[0]);
+	}
+
+	private Map<Long, PhotoDto> loadPhotos(List<Long> photoIds, long userId) {
+		return photoContentStore.findDetails(photoIds, userId).stream()
+				.map(details -> imageUrlSigner.applyTo(new PhotoDto(details)))
+				.collect(Collectors.toMap(PhotoDto::getId, Function.identity()));
+	}
+
+	private static void checkDistance(int maxDistance, int limit) {
+		if (maxDistance < 0 || maxDistance > limit) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "maxDistance must be between 0 and " + limit);
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package com.redligot.backend.service;
+
+import com.redligot.backend.repository.PhotoContentStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fills derived columns of existing photos in the background, one
+ * {@link PhotoBackfillStep} at a time.
+ *
+ * <p>Each run takes at most one batch of pending photo IDs per step, in ID order,
+ * reads each image through the same streaming path as downloads and pauses between
+ * photos, so the job never holds a connection for long or competes with uploads for
+ * the database. A cursor per step remembers where the last batch ended; it is reset
+ * once a batch comes back short, so photos that failed are retried on the next pass.</p>
+ */
+@Service
+public class PhotoBackfillJob {
+
+	private static final Logger logger = LoggerFactory.getLogger(PhotoBackfillJob.class);
+
+	private final PhotoContentStore photoContentStore;
+	private final List<PhotoBackfillStep> steps;
+	private final boolean enabled;
+	private final int batchSize;
+	private final long pauseMs;
+	private final Map<String, Long> cursors = new ConcurrentHashMap<>();
+
+	public PhotoBackfillJob(PhotoContentStore photoContentStore, List<PhotoBackfillStep> steps,
+			@Value("${app.backfill.enabled:true}") boolean enabled,
+			@Value("${app.backfill.batch-size:50}") int batchSize,
+			@Value("${app.backfill.pause-ms:50}") long pauseMs) {
+		this.photoContentStore = photoContentStore;
+		this.steps = steps;
+		this.enabled = enabled;
+		this.batchSize = batchSize;
+		this.pauseMs = pauseMs;
+	}
+
+	/**
+	 * Process the next batch of every step.
+	 */
+	@Scheduled(initialDelayString = "${app.backfill.initial-delay-ms:60000}",
+			fixedDelayString = "${app.backfill.interval-ms:60000}")
+	public void run() {
+		if (!enabled) {
+			return;
+		}
+		for (PhotoBackfillStep step : steps) {
+			try {
+				runBatch(step);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (RuntimeException e) {
+				logger.warn("Backfill step {} failed: {}", step.name(), e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * @return photos processed
+	 */
+	int runBatch(PhotoBackfillStep step) throws InterruptedException {
+		long cursor = cursors.getOrDefault(step.name(), 0L);
+		List<Long> ids = photoContentStore.findIdsWhere(step.pendingCondition(), cursor, batchSize);
+		int processed = 0;
+		for (long id : ids) {
+			try {
+				photoContentStore.readContent(id, content -> {
+					step.apply(id, content != null ? content : InputStream.nullInputStream());
+					return Boolean.TRUE;
+				});
+				processed++;
+			} catch (RuntimeException e) {
+				logger.warn("Backfill step {} failed for photo {}: {}", step.name(), id, e.getMessage());
+			}
+			cursor = id;
+			Thread.sleep(pauseMs);
+		}
+		cursors.put(step.name(), ids.size() < batchSize ? 0L : cursor);
+		if (processed > 0) {
+			logger.info("Backfill step {} processed {} photos", step.name(), processed);
+		}
+		return processed;
+	}
+}
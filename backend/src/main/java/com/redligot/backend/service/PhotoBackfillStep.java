@@ -0,0 +1,34 @@
+package com.redligot.backend.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A derived value that {@link PhotoBackfillJob} computes for existing photos from their
+ * stored content. New uploads fill the value themselves; the job only catches up rows
+ * that predate the step, or an older version of it.
+ */
+public interface PhotoBackfillStep {
+
+	/**
+	 * @return short name used in logs
+	 */
+	String name();
+
+	/**
+	 * @return SQL condition over <code>photos</code> columns that selects the rows still
+	 *         to process; it should be served by an index
+	 */
+	String pendingCondition();
+
+	/**
+	 * Compute and store the value for one photo. Must leave the row outside
+	 * {@link #pendingCondition()} even when the content cannot be parsed, or the job
+	 * would keep coming back to it.
+	 *
+	 * @param photoId Photo ID
+	 * @param content Stored image bytes; read as much as needed, not closed
+	 * @throws IOException if the content cannot be read
+	 */
+	void apply(long photoId, InputStream content) throws IOException;
+}
@@ -0,0 +1,259 @@
+package com.redligot.backend.service;
+
+import com.redligot.backend.model.Gallery;
+import com.redligot.backend.repository.GalleryRepository;
+import com.redligot.backend.repository.PhotoContentStore;
+import com.redligot.backend.repository.PhotoContentStore.PhotoSummary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Builds ZIP archives of photos on the fly.
+ *
+ * Photos are read one at a time into reusable buffers from the {@link BufferPool} and
+ * written to the archive before the next is fetched. Memory stays at one photo however
+ * many are exported, no photo needs a humongous array, and a pooled connection is only
+ * held while a BLOB is read, not while the client drains the response. Formats that are already compressed are
+ * written as STORED entries; deflating them again costs CPU and saves nothing.
+ * A client that disconnects mid-download ends the export quietly.
+ */
+@Service
+public class PhotoExportService {
+
+	private static final Logger logger = LoggerFactory.getLogger(PhotoExportService.class);
+
+	private static final Set<String> COMPRESSED_TYPES = Set.of(
+			"image/jpeg", "image/jpg", "image/png", "image/gif", "image/webp", "image/avif", "image/heic");
+
+	private final PhotoContentStore photoContentStore;
+	private final GalleryRepository galleryRepository;
+	private final BufferPool bufferPool;
+	private final int pageSize;
+	private final int maxSelection;
+
+	public PhotoExportService(PhotoContentStore photoContentStore, GalleryRepository galleryRepository,
+			BufferPool bufferPool,
+			@Value("${app.export.page-size:200}") int pageSize,
+			@Value("${app.export.max-selection:1000}") int maxSelection) {
+		this.photoContentStore = photoContentStore;
+		this.galleryRepository = galleryRepository;
+		this.bufferPool = bufferPool;
+		this.pageSize = pageSize;
+		this.maxSelection = maxSelection;
+	}
+
+	/**
+	 * Check access to a gallery and derive the archive filename.
+	 *
+	 * @param galleryId Gallery ID
+	 * @param userId Owner user ID
+	 * @return archive filename, e.g. <code>Holiday.zip</code>
+	 * @throws ResponseStatusException if the gallery does not exist or belongs to another user
+	 */
+	public String galleryArchiveName(Long galleryId, Long userId) {
+		Gallery gallery = galleryRepository.findByIdAndUserId(galleryId, userId)
+				.orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
+						"Gallery not found or does not belong to user"));
+		String name = safeName(gallery.getName());
+		return (name.isEmpty() ? "gallery-" + galleryId : name) + ".zip";
+	}
+
+	/**
+	 * Validate a selection before the response is committed.
+	 *
+	 * @param photoIds Requested photo IDs
+	 * @param userId Owner user ID
+	 * @return the photos owned by the user, in ID order
+	 * @throws ResponseStatusException if the selection is too large or none of the photos belong to the user
+	 */
+	public List<PhotoSummary> resolveSelection(List<Long> photoIds, Long userId) {
+		if (photoIds.size() > maxSelection) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+					"At most " + maxSelection + " photos can be exported at once");
+		}
+		List<PhotoSummary> photos = photoContentStore.findOwned(photoIds.stream().distinct().toList(), userId);
+		if (photos.isEmpty()) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No photos found");
+		}
+		return photos;
+	}
+
+	/**
+	 * Write every photo of a gallery to {@code out} as a ZIP archive.
+	 *
+	 * @param galleryId Gallery ID, already checked with {@link #galleryArchiveName}
+	 * @param userId Owner user ID
+	 * @param out Response stream; not closed
+	 */
+	public void writeGallery(Long galleryId, Long userId, OutputStream out) {
+		ArchiveWriter archive = new ArchiveWriter(out);
+		try {
+			long lastId = 0;
+			List<PhotoSummary> page;
+			do {
+				page = photoContentStore.findGalleryPage(galleryId, userId, lastId, pageSize);
+				for (PhotoSummary photo : page) {
+					archive.add(photo);
+					lastId = photo.id();
+				}
+			} while (page.size() == pageSize);
+			archive.finish();
+		} catch (IOException e) {
+			archive.aborted(e);
+		} finally {
+			archive.close();
+		}
+	}
+
+	/**
+	 * Write the given photos to {@code out} as a ZIP archive.
+	 *
+	 * @param photos Photos returned by {@link #resolveSelection}
+	 * @param out Response stream; not closed
+	 */
+	public void writeSelection(List<PhotoSummary> photos, OutputStream out) {
+		ArchiveWriter archive = new ArchiveWriter(out);
+		try {
+			for (PhotoSummary photo : photos) {
+				archive.add(photo);
+			}
+			archive.finish();
+		} catch (IOException e) {
+			archive.aborted(e);
+		} finally {
+			archive.close();
+		}
+	}
+
+	private static String safeName(String name) {
+		if (name == null) {
+			return "";
+		}
+		return name.replaceAll("[\\\\/:*?\"<>|\\p{Cntrl}]", "_").replaceAll("^\\.+", "").trim();
+	}
+
+	/**
+	 * State of one archive being written: the pooled content buffers and the entry
+	 * names already used.
+	 */
+	private final class ArchiveWriter {
+
+		private final ZipOutputStream zip;
+		private final Set<String> names = new HashSet<>();
+		private final CRC32 crc = new CRC32();
+		private final List<BufferPool.Buffer> segments = new ArrayList<>();
+		private final int segmentSize = bufferPool.getMaxBufferBytes();
+		private long length;
+
+		ArchiveWriter(OutputStream out) {
+			// Closing the zip would close the response stream, which the container owns
+			this.zip = new ZipOutputStream(out);
+		}
+
+		void add(PhotoSummary photo) throws IOException {
+			Boolean found = photoContentStore.readContent(photo.id(), this::load);
+			if (found == null) {
+				// Deleted since it was listed
+				logger.debug("Photo {} disappeared during export", photo.id());
+				return;
+			}
+
+			ZipEntry entry = new ZipEntry(entryName(photo));
+			entry.setTimeLocal(photo.createdAt());
+			String contentType = photo.contentType() == null ? "" : photo.contentType().toLowerCase(Locale.ROOT);
+			if (COMPRESSED_TYPES.contains(contentType)) {
+				crc.reset();
+				for (int i = 0; i * (long) segmentSize < length; i++) {
+					crc.update(segments.get(i).array(), 0, segmentLength(i));
+				}
+				entry.setMethod(ZipEntry.STORED);
+				entry.setSize(length);
+				entry.setCompressedSize(length);
+				entry.setCrc(crc.getValue());
+			}
+			zip.putNextEntry(entry);
+			for (int i = 0; i * (long) segmentSize < length; i++) {
+				zip.write(segments.get(i).array(), 0, segmentLength(i));
+			}
+			zip.closeEntry();
+			// Push each finished entry to the client rather than waiting on the servlet buffer
+			zip.flush();
+		}
+
+		void finish() throws IOException {
+			zip.finish();
+			zip.flush();
+		}
+
+		/**
+		 * Writes only fail once the client has gone away. Stop without finishing the
+		 * archive: anything more would just fail again on the dead connection.
+		 */
+		void aborted(IOException e) {
+			logger.debug("ZIP export aborted after {} entries: {}", names.size(), e.getMessage());
+		}
+
+		/**
+		 * Return the buffers to the pool; the archive cannot be written to afterwards.
+		 */
+		void close() {
+			for (BufferPool.Buffer segment : segments) {
+				segment.close();
+			}
+			segments.clear();
+		}
+
+		private Boolean load(InputStream content) throws IOException {
+			length = 0;
+			while (true) {
+				int index = (int) (length / segmentSize);
+				if (index == segments.size()) {
+					// Kept for the following photos, so only the largest one allocates
+					segments.add(bufferPool.acquire(segmentSize));
+				}
+				int offset = (int) (length % segmentSize);
+				int read = content.read(segments.get(index).array(), offset, segmentSize - offset);
+				if (read < 0) {
+					return Boolean.TRUE;
+				}
+				length += read;
+			}
+		}
+
+		private int segmentLength(int index) {
+			return (int) Math.min(segmentSize, length - (long) index * segmentSize);
+		}
+
+		private String entryName(PhotoSummary photo) {
+			String name = safeName(photo.originalFilename());
+			if (name.isEmpty()) {
+				name = "photo-" + photo.id();
+			}
+			if (names.add(name.toLowerCase(Locale.ROOT))) {
+				return name;
+			}
+			int dot = name.lastIndexOf('.');
+			String unique = dot > 0
+					? name.substring(0, dot) + " (" + photo.id() + ")" + name.substring(dot)
+					: name + " (" + photo.id() + ")";
+			names.add(unique.toLowerCase(Locale.ROOT));
+			return unique;
+		}
+	}
+}
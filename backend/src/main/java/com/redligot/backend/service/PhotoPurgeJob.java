@@ -0,0 +1,108 @@
+package com.redligot.backend.service;
+
+import com.redligot.backend.repository.PhotoContentStore;
+import com.redligot.backend.repository.PhotoContentStore.DeletedPhoto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Removes deleted photos once their undo window has passed.
+ *
+ * <p>Deleting a photo only marks it (see {@link PhotoService#deleteById}), so the
+ * request never waits on BLOB deletes. This job then deletes the rows one photo per
+ * statement, longest deleted first, pausing between photos. Each run stops at the batch
+ * size or once the batch's content adds up to the byte budget, so the DB2 log sees a
+ * steady, bounded volume instead of the spikes of a large bulk delete. Runs can be
+ * confined to off-peak hours.</p>
+ */
+@Service
+public class PhotoPurgeJob {
+
+	private static final Logger logger = LoggerFactory.getLogger(PhotoPurgeJob.class);
+
+	private final PhotoContentStore photoContentStore;
+	private final boolean enabled;
+	private final Duration undoWindow;
+	private final int batchSize;
+	private final long batchBytes;
+	private final long pauseMs;
+	private final int startHour;
+	private final int endHour;
+
+	public PhotoPurgeJob(PhotoContentStore photoContentStore,
+			@Value("${app.photos.purge.enabled:true}") boolean enabled,
+			@Value("${app.photos.delete.undo-window-minutes:60}") long undoWindowMinutes,
+			@Value("${app.photos.purge.batch-size:20}") int batchSize,
+			@Value("${app.photos.purge.batch-bytes:52428800}") long batchBytes,
+			@Value("${app.photos.purge.pause-ms:200}") long pauseMs,
+			@Value("${app.photos.purge.start-hour:0}") int startHour,
+			@Value("${app.photos.purge.end-hour:24}") int endHour) {
+		this.photoContentStore = photoContentStore;
+		this.enabled = enabled;
+		this.undoWindow = Duration.ofMinutes(undoWindowMinutes);
+		this.batchSize = batchSize;
+		this.batchBytes = batchBytes;
+		this.pauseMs = pauseMs;
+		this.startHour = startHour;
+		this.endHour = endHour;
+	}
+
+	/**
+	 * Purge the next batch, if within the purge hours.
+	 */
+	@Scheduled(initialDelayString = "${app.photos.purge.initial-delay-ms:60000}",
+			fixedDelayString = "${app.photos.purge.interval-ms:60000}")
+	public void run() {
+		if (!enabled || !isPurgeHour(LocalDateTime.now().getHour())) {
+			return;
+		}
+		try {
+			purgeBatch(LocalDateTime.now().minus(undoWindow));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (RuntimeException e) {
+			logger.warn("Photo purge failed: {}", e.getMessage());
+		}
+	}
+
+	/**
+	 * @param deletedBefore End of the undo window
+	 * @return photos purged
+	 */
+	int purgeBatch(LocalDateTime deletedBefore) throws InterruptedException {
+		List<DeletedPhoto> photos = photoContentStore.findPurgeable(deletedBefore, batchSize);
+		int purged = 0;
+		long bytes = 0;
+		for (DeletedPhoto photo : photos) {
+			if (purged > 0 && bytes + photo.size() > batchBytes) {
+				break;
+			}
+			if (photoContentStore.purge(photo.id(), deletedBefore)) {
+				purged++;
+				bytes += photo.size();
+			}
+			Thread.sleep(pauseMs);
+		}
+		if (purged > 0) {
+			logger.info("Purged {} deleted photos ({} bytes)", purged, bytes);
+		}
+		return purged;
+	}
+
+	/**
+	 * @return true if {@code hour} is within [start-hour, end-hour), which may wrap past midnight
+	 */
+	boolean isPurgeHour(int hour) {
+		if (startHour <= endHour) {
+			return hour >= startHour && hour < endHour;
+		}
+		return hour >= startHour || hour < endHour;
+	}
+}
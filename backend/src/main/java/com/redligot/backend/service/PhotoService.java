@@ -1,21 +1,55 @@
 package com.redligot.backend.service;
 
+import com.redligot.backend.dto.CreateFromExistingRequest;
+import com.redligot.backend.dto.UploadPreflightRequest;
 import com.redligot.backend.model.Photo;
 import com.redligot.backend.model.Gallery;
+import com.redligot.backend.repository.ImageBlobStore;
+import com.redligot.backend.repository.PhotoContentStore;
+import com.redligot.backend.repository.PhotoContentStore.ImageInfo;
+import com.redligot.backend.repository.PhotoContentStore.ImageMetadata;
+import com.redligot.backend.repository.PhotoOriginalStore;
+import com.redligot.backend.repository.ThumbnailStore.Thumbnail;
 import com.redligot.backend.repository.PhotoRepository;
 import com.redligot.backend.repository.GalleryRepository;
+import com.redligot.backend.security.ImageUrlSigner;
+import com.redligot.backend.service.ImageCache.CachedImage;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 
 /**
  * Service layer for photo business logic and operations.
@@ -23,12 +57,57 @@ import java.util.List;
 @Service
 public class PhotoService {
 
+	/**
+	 * Largest accepted upload; keeps every image within the DB2 BLOB(10M) column.
+	 */
+	public static final long MAX_UPLOAD_BYTES = 8 * 1024 * 1024;
+
 	private final PhotoRepository photoRepository;
 	private final GalleryRepository galleryRepository;
-
-	public PhotoService(PhotoRepository photoRepository, GalleryRepository galleryRepository) {
+	private final PhotoContentStore photoContentStore;
+	private final ThumbnailService thumbnailService;
+	private final ImageUrlSigner imageUrlSigner;
+	private final ImageBlobStore imageBlobStore;
+	private final ImageCache imageCache;
+	private final OffHeapImageCache offHeapImageCache;
+	private final BufferPool bufferPool;
+	private final ImageMetadataExtractor imageMetadataExtractor;
+	private final ImageAnalysisService imageAnalysisService;
+	private final PerceptualHashService perceptualHashService;
+	private final VisualSimilarityService visualSimilarityService;
+	private final GalleryCoverService galleryCoverService;
+	private final TilePyramidService tilePyramidService;
+	private final IngestOptimizer ingestOptimizer;
+	private final PhotoOriginalStore photoOriginalStore;
+	private final Duration undoWindow;
+
+	public PhotoService(PhotoRepository photoRepository, GalleryRepository galleryRepository,
+			PhotoContentStore photoContentStore, ThumbnailService thumbnailService, ImageUrlSigner imageUrlSigner,
+			ImageBlobStore imageBlobStore, ImageCache imageCache, OffHeapImageCache offHeapImageCache,
+			BufferPool bufferPool, ImageMetadataExtractor imageMetadataExtractor,
+			ImageAnalysisService imageAnalysisService, PerceptualHashService perceptualHashService,
+			VisualSimilarityService visualSimilarityService, GalleryCoverService galleryCoverService,
+			TilePyramidService tilePyramidService, IngestOptimizer ingestOptimizer,
+			PhotoOriginalStore photoOriginalStore,
+			@Value("${app.photos.delete.undo-window-minutes:60}") long undoWindowMinutes) {
 		this.photoRepository = photoRepository;
 		this.galleryRepository = galleryRepository;
+		this.photoContentStore = photoContentStore;
+		this.thumbnailService = thumbnailService;
+		this.imageUrlSigner = imageUrlSigner;
+		this.imageBlobStore = imageBlobStore;
+		this.imageCache = imageCache;
+		this.offHeapImageCache = offHeapImageCache;
+		this.bufferPool = bufferPool;
+		this.imageMetadataExtractor = imageMetadataExtractor;
+		this.imageAnalysisService = imageAnalysisService;
+		this.perceptualHashService = perceptualHashService;
+		this.visualSimilarityService = visualSimilarityService;
+		this.galleryCoverService = galleryCoverService;
+		this.tilePyramidService = tilePyramidService;
+		this.ingestOptimizer = ingestOptimizer;
+		this.photoOriginalStore = photoOriginalStore;
+		this.undoWindow = Duration.ofMinutes(undoWindowMinutes);
 	}
 
 	/**
@@ -120,7 +199,6 @@ public class PhotoService {
 			photo.setOriginalFilename(file.getOriginalFilename());
 			photo.setContentType(contentType);
 			photo.setSize(file.getSize());
-			photo.setData(file.getBytes());
 			photo.setUser(user);
 			photo.setCreatedAt(LocalDateTime.now());
 			
@@ -132,7 +210,9 @@ public class PhotoService {
 				photo.setGallery(gallery);
 			}
 
-			return photoRepository.save(photo);
+			try (InputStream content = file.getInputStream()) {
+				return insertContent(photo, content);
+			}
 		} catch (IOException e) {
 			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, 
 					"Failed to process uploaded file: " + e.getMessage());
@@ -189,7 +269,6 @@ public class PhotoService {
 				photo.setOriginalFilename(file.getOriginalFilename());
 				photo.setContentType(contentType);
 				photo.setSize(file.getSize());
-				photo.setData(file.getBytes());
 				photo.setUser(user);
 				photo.setCreatedAt(LocalDateTime.now());
 				
@@ -201,7 +280,9 @@ public class PhotoService {
 					photo.setGallery(gallery);
 				}
 
-				createdPhotos.add(photoRepository.save(photo));
+				try (InputStream content = file.getInputStream()) {
+					createdPhotos.add(insertContent(photo, content));
+				}
 			} catch (IOException e) {
 				throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, 
 						"Failed to process uploaded file " + file.getOriginalFilename() + ": " + e.getMessage());
@@ -211,6 +292,284 @@ public class PhotoService {
 		return createdPhotos;
 	}
 
+	/**
+	 * Create a new photo from a file staged on local disk.
+	 * Used by background upload jobs, which persist files after the HTTP request has ended.
+	 * 
+	 * @param title Photo title
+	 * @param description Photo description (optional)
+	 * @param originalFilename Filename provided by the client
+	 * @param contentType MIME type provided by the client
+	 * @param file Staged file containing the image bytes
+	 * @param user The user who owns the photo
+	 * @param galleryId Gallery ID (optional, if null photo will be unorganized)
+	 * @return The created photo with user association
+	 * @throws ResponseStatusException if file is invalid or too large
+	 */
+	public Photo createFromFile(String title, String description, String originalFilename, String contentType,
+			Path file, com.redligot.backend.model.User user, Long galleryId) {
+		try {
+			long size = Files.size(file);
+			validateUpload(size, contentType, originalFilename);
+
+			Photo photo = new Photo();
+			photo.setTitle(title != null && !title.trim().isEmpty() ? title.trim() : getFilenameWithoutExtension(originalFilename));
+			photo.setDescription(description);
+			photo.setOriginalFilename(originalFilename);
+			photo.setContentType(contentType);
+			photo.setSize(size);
+			photo.setUser(user);
+			photo.setCreatedAt(LocalDateTime.now());
+			photo.setGallery(resolveGallery(galleryId, user.getId()));
+
+			try (InputStream content = Files.newInputStream(file)) {
+				return insertContent(photo, content);
+			}
+		} catch (IOException e) {
+			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, 
+					"Failed to process uploaded file " + originalFilename + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Create a new photo whose bytes are streamed straight into the database.
+	 * Used by the streaming multipart endpoints: the content is read from the request
+	 * body as the driver writes it, without a temp file or an in-memory copy.
+	 * 
+	 * @param title Photo title (optional, falls back to the filename)
+	 * @param description Photo description (optional)
+	 * @param originalFilename Filename provided by the client
+	 * @param contentType MIME type provided by the client
+	 * @param content Image bytes; read to the end but not closed
+	 * @param user The user who owns the photo
+	 * @param galleryId Gallery ID (optional, if null photo will be unorganized)
+	 * @return The created photo, without its image data
+	 * @throws ResponseStatusException if file is invalid or too large
+	 */
+	public Photo createFromStream(String title, String description, String originalFilename, String contentType,
+			InputStream content, com.redligot.backend.model.User user, Long galleryId) {
+		// Size is unknown up front; the store enforces the limit while streaming
+		validateUpload(0, contentType, originalFilename);
+		Gallery gallery = resolveGallery(galleryId, user.getId());
+
+		Photo photo = new Photo();
+		photo.setTitle(title != null && !title.trim().isEmpty() ? title.trim() : getFilenameWithoutExtension(originalFilename));
+		photo.setDescription(description);
+		photo.setOriginalFilename(originalFilename);
+		photo.setContentType(contentType);
+		photo.setUser(user);
+		photo.setGallery(gallery);
+		photo.setCreatedAt(LocalDateTime.now());
+
+		try {
+			return insertContent(photo, content);
+		} catch (DataAccessException e) {
+			if (hasCause(e, PhotoContentStore.ContentTooLargeException.class)) {
+				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
+						"File " + originalFilename + " exceeds maximum limit of 8MB");
+			}
+			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, 
+					"Failed to process uploaded file " + originalFilename + ": " + e.getMostSpecificCause().getMessage());
+		}
+	}
+
+	/**
+	 * Tell a client which of the files it is about to upload the user already has, so
+	 * it can send only the others. Files are matched by the SHA-256 of their bytes as
+	 * uploaded; only the user's own photos are considered.
+	 * 
+	 * @param files Digests and sizes of the files to upload
+	 * @param userId Owner user ID
+	 * @return one result per file, in request order
+	 */
+	public List<PreflightResult> preflight(List<UploadPreflightRequest.FileDigest> files, Long userId) {
+		List<String> digests = files.stream().map(file -> normalizeDigest(file.getSha256())).distinct().toList();
+		Map<String, Long> existing = photoContentStore.findByContentHash(userId, digests);
+		return files.stream()
+				.map(file -> {
+					String digest = normalizeDigest(file.getSha256());
+					return new PreflightResult(digest, file.getSize(), existing.get(digest));
+				})
+				.toList();
+	}
+
+	/**
+	 * Create photos whose content the user already has, identified by its SHA-256.
+	 * The content is copied within the database, so no image bytes are transferred.
+	 * 
+	 * @param files New photos and the digests of their content
+	 * @param user The user who owns the photos
+	 * @param galleryId Gallery ID (optional, if null photos will be unorganized)
+	 * @return the created photos, in request order
+	 * @throws ResponseStatusException 404 if the user has no photo with one of the digests,
+	 *         409 if such a photo was deleted while the copies were made (none are created)
+	 */
+	public List<Photo> createFromExisting(List<CreateFromExistingRequest.ExistingFile> files,
+			com.redligot.backend.model.User user, Long galleryId) {
+		Gallery gallery = resolveGallery(galleryId, user.getId());
+		Map<String, Long> existing = photoContentStore.findByContentHash(user.getId(),
+				files.stream().map(file -> normalizeDigest(file.getSha256())).distinct().toList());
+		List<PhotoContentStore.ContentCopy> copies = new ArrayList<>(files.size());
+		for (CreateFromExistingRequest.ExistingFile file : files) {
+			String digest = normalizeDigest(file.getSha256());
+			Long sourceId = existing.get(digest);
+			if (sourceId == null) {
+				throw new ResponseStatusException(HttpStatus.NOT_FOUND, 
+						"No photo with content " + digest + " found");
+			}
+			String title = file.getTitle() != null && !file.getTitle().trim().isEmpty()
+					? file.getTitle().trim() : getFilenameWithoutExtension(file.getOriginalFilename());
+			copies.add(new PhotoContentStore.ContentCopy(sourceId, title, file.getDescription(), file.getOriginalFilename()));
+		}
+
+		List<Long> ids;
+		try {
+			ids = photoContentStore.copyContents(copies, user.getId(), galleryId, LocalDateTime.now());
+		} catch (EmptyResultDataAccessException e) {
+			throw new ResponseStatusException(HttpStatus.CONFLICT, 
+					"A photo to copy was deleted during the request");
+		}
+		Map<Long, Photo> created = new HashMap<>();
+		photoRepository.findAllById(ids).forEach(photo -> created.put(photo.getId(), photo));
+		List<Photo> photos = ids.stream().map(created::get).filter(Objects::nonNull).toList();
+		for (Photo photo : photos) {
+			imageAnalysisService.analyzeLater(photo.getId());
+			buildTilesIfLarge(photo);
+		}
+		if (gallery != null) {
+			galleryCoverService.refreshLater(List.of(gallery.getId()));
+		}
+		return photos;
+	}
+
+	private static String normalizeDigest(String sha256) {
+		return sha256.toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Insert a validated photo with its content streamed from {@code content}, so the
+	 * image is never held as one (humongous) array. The header metadata is parsed from
+	 * the first bytes as they stream past and stored in the same transaction.
+	 * When ingest optimization is on, the content is read into memory first so it can be
+	 * optimized, and the uploaded bytes are kept alongside if configured.
+	 * 
+	 * @param photo New photo with metadata, owner and gallery set
+	 * @param content Image bytes; read to the end but not closed
+	 * @return the photo with its ID and stored size
+	 */
+	private Photo insertContent(Photo photo, InputStream content) {
+		byte[] original = null;
+		// Over the bytes as uploaded, before any optimization
+		MessageDigest digest = ContentHash.newDigest();
+		content = new DigestInputStream(content, digest);
+		if (ingestOptimizer.isEnabled()) {
+			byte[] uploaded = readUpload(content, photo.getOriginalFilename());
+			if (uploaded.length <= MAX_UPLOAD_BYTES) {
+				byte[] optimized = ingestOptimizer.optimize(uploaded);
+				original = optimized != uploaded && ingestOptimizer.keepsOriginals() ? uploaded : null;
+				content = new ByteArrayInputStream(optimized);
+			} else {
+				// Over the limit: left to the store to reject, as for any other upload
+				content = new SequenceInputStream(new ByteArrayInputStream(uploaded), content);
+			}
+		}
+		ImageMetadataExtractor.HeaderCapture header = imageMetadataExtractor.capture(content);
+		try {
+			ImageMetadata[] metadata = new ImageMetadata[1];
+			// Finishing the digest resets it, so it is taken once, when the store asks
+			String[] sha256 = new String[1];
+			PhotoContentStore.StoredContent stored = photoContentStore.insert(photo.getTitle(), photo.getDescription(),
+					photo.getOriginalFilename(), photo.getContentType(), header, MAX_UPLOAD_BYTES, photo.getUser().getId(),
+					photo.getGallery() != null ? photo.getGallery().getId() : null, photo.getCreatedAt(),
+					() -> metadata[0] = header.metadata(), () -> sha256[0] = ContentHash.hex(digest));
+			photo.setId(stored.id());
+			photo.setSize(stored.size());
+			photo.setContentSha256(sha256[0]);
+			if (original != null) {
+				photoOriginalStore.save(new PhotoOriginalStore.Original(stored.id(), photo.getContentType(), original));
+			}
+			applyMetadata(photo, metadata[0]);
+			afterCommit(() -> {
+				imageAnalysisService.analyzeLater(stored.id());
+				buildTilesIfLarge(photo);
+				if (photo.getGallery() != null) {
+					galleryCoverService.refreshLater(List.of(photo.getGallery().getId()));
+				}
+			});
+			return photo;
+		} finally {
+			// Not closed: the content stream belongs to the caller
+			header.releaseBuffer();
+		}
+	}
+
+	private static byte[] readUpload(InputStream content, String filename) {
+		try {
+			return content.readNBytes((int) MAX_UPLOAD_BYTES + 1);
+		} catch (IOException e) {
+			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, 
+					"Failed to process uploaded file " + filename + ": " + e.getMessage());
+		}
+	}
+
+	private static void applyMetadata(Photo photo, ImageMetadata metadata) {
+		if (metadata == null) {
+			return;
+		}
+		photo.setWidth(metadata.width());
+		photo.setHeight(metadata.height());
+		photo.setOrientation(metadata.orientation());
+		photo.setTakenAt(metadata.takenAt());
+		photo.setCameraModel(metadata.cameraModel());
+		photo.setMetadataVersion(metadata.version());
+	}
+
+	private static boolean hasCause(Throwable error, Class<? extends Throwable> type) {
+		for (Throwable t = error; t != null; t = t.getCause()) {
+			if (type.isInstance(t)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Validate size and type of an uploaded image.
+	 * 
+	 * @param size File size in bytes
+	 * @param contentType MIME type provided by the client
+	 * @param filename Original filename, used in error messages
+	 * @throws ResponseStatusException if file is invalid or too large
+	 */
+	public void validateUpload(long size, String contentType, String filename) {
+		// Validate file size (max 8MB to fit in DB2 BLOB(10M))
+		if (size > MAX_UPLOAD_BYTES) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
+					"File " + filename + " exceeds maximum limit of 8MB");
+		}
+		if (contentType == null || !contentType.startsWith("image/")) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
+					"File " + filename + " is not a valid image file");
+		}
+	}
+
+	/**
+	 * Look up a gallery owned by the user.
+	 * 
+	 * @param galleryId Gallery ID, may be null
+	 * @param userId Owner user ID
+	 * @return the gallery, or null when no gallery ID was given
+	 * @throws ResponseStatusException if the gallery does not exist or belongs to another user
+	 */
+	private Gallery resolveGallery(Long galleryId, Long userId) {
+		if (galleryId == null) {
+			return null;
+		}
+		return galleryRepository.findByIdAndUserId(galleryId, userId)
+				.orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, 
+						"Gallery not found or does not belong to user"));
+	}
+
 	/**
 	 * Helper method to extract filename without extension.
 	 * 
@@ -236,6 +595,7 @@ public class PhotoService {
 	 */
 	public Photo update(Long id, String title, String description, MultipartFile file, Long galleryId) {
 		Photo existingPhoto = findById(id);
+		Long previousGalleryId = existingPhoto.getGallery() != null ? existingPhoto.getGallery().getId() : null;
 
 		existingPhoto.setTitle(title);
 		existingPhoto.setDescription(description);
@@ -252,6 +612,8 @@ public class PhotoService {
 		}
 
 		if (file != null && !file.isEmpty()) {
+			byte[] uploaded;
+			byte[] stored;
 			try {
 				// Validate file size (max 8MB to fit in DB2 BLOB(10M))
 				if (file.getSize() > 8 * 1024 * 1024) {
@@ -268,46 +630,147 @@ public class PhotoService {
 
 				existingPhoto.setOriginalFilename(file.getOriginalFilename());
 				existingPhoto.setContentType(contentType);
-				existingPhoto.setSize(file.getSize());
-				existingPhoto.setData(file.getBytes());
+				uploaded = file.getBytes();
+				existingPhoto.setContentSha256(ContentHash.of(uploaded));
+				byte[] data = ingestOptimizer.optimize(uploaded);
+				stored = data;
+				existingPhoto.setSize((long) data.length);
+				existingPhoto.setData(data);
+				applyMetadata(existingPhoto, imageMetadataExtractor.parse(data, 0, data.length));
+				// Changes the signed image URLs, so cached copies of the old image are not reused
+				existingPhoto.setContentVersion(existingPhoto.getContentVersion() + 1);
 			} catch (IOException e) {
 				throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, 
 						"Failed to process uploaded file: " + e.getMessage());
 			}
+			Photo saved = photoRepository.save(existingPhoto);
+			if (stored != uploaded && ingestOptimizer.keepsOriginals()) {
+				photoOriginalStore.save(new PhotoOriginalStore.Original(id, saved.getContentType(), uploaded));
+			} else {
+				// The previous upload's original, if any, no longer matches
+				photoOriginalStore.delete(id);
+			}
+			thumbnailService.invalidate(id);
+			imageBlobStore.evict(id);
+			imageCache.invalidate(id);
+			offHeapImageCache.invalidate(id);
+			imageAnalysisService.analyzeLater(id);
+			buildTilesIfLarge(saved);
+			refreshCovers(previousGalleryId, galleryId);
+			return saved;
 		}
 
-		return photoRepository.save(existingPhoto);
+		Photo saved = photoRepository.save(existingPhoto);
+		if (!Objects.equals(previousGalleryId, galleryId)) {
+			refreshCovers(previousGalleryId, galleryId);
+		}
+		return saved;
 	}
 
 	/**
-	 * Delete a photo by ID.
+	 * Run background work once the surrounding transaction commits, or right away without one,
+	 * so the worker threads never look for a photo that is not visible yet.
+	 */
+	private static void afterCommit(Runnable task) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			task.run();
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				task.run();
+			}
+		});
+	}
+
+	private void buildTilesIfLarge(Photo photo) {
+		if (tilePyramidService.isTiled(photo.getWidth(), photo.getHeight())) {
+			tilePyramidService.buildLater(photo.getId());
+		}
+	}
+
+	private void refreshCovers(Long... galleryIds) {
+		List<Long> changed = Arrays.stream(galleryIds).filter(Objects::nonNull).distinct().toList();
+		if (!changed.isEmpty()) {
+			galleryCoverService.refreshLater(changed);
+		}
+	}
+
+	/**
+	 * Delete a photo by ID. The photo is hidden at once and can be restored during the
+	 * undo window; its row and content are removed later by {@link PhotoPurgeJob}.
 	 * 
 	 * @param id Photo ID
-	 * @throws ResponseStatusException if photo not found
+	 * @param userId Owner user ID
+	 * @throws ResponseStatusException 404 if the user has no such photo, or it is already deleted
 	 */
-	public void deleteById(Long id) {
-		if (!photoRepository.existsById(id)) {
+	public void deleteById(Long id, Long userId) {
+		List<Long> galleryIds = galleryCoverService.findGalleryIds(List.of(id));
+		if (photoContentStore.markDeleted(List.of(id), userId, LocalDateTime.now()) != 1) {
 			throw new ResponseStatusException(HttpStatus.NOT_FOUND, 
 					"Photo with ID " + id + " not found");
 		}
-		photoRepository.deleteById(id);
+		forgetDeleted(List.of(id), galleryIds);
 	}
 
 	/**
-	 * Bulk delete multiple photos by their IDs.
+	 * Bulk delete multiple photos by their IDs, the same way as {@link #deleteById}.
+	 * All or none are deleted.
 	 * 
 	 * @param ids List of photo IDs to delete
-	 * @throws ResponseStatusException if any photo not found
+	 * @param userId Owner user ID
+	 * @throws ResponseStatusException 404 if any photo is not the user's, or is already deleted
+	 */
+	@Transactional
+	public void bulkDeleteByIds(List<Long> ids, Long userId) {
+		List<Long> distinct = ids.stream().distinct().toList();
+		if (photoContentStore.countLive(distinct, userId) != distinct.size()) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "One or more photos not found");
+		}
+		List<Long> galleryIds = galleryCoverService.findGalleryIds(distinct);
+		// Fewer rows than counted means another request deleted some meanwhile; rolls back
+		if (photoContentStore.markDeleted(distinct, userId, LocalDateTime.now()) != distinct.size()) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "One or more photos not found");
+		}
+		afterCommit(() -> forgetDeleted(distinct, galleryIds));
+	}
+
+	/**
+	 * Drop deleted photos from the blob store, caches and search indexes, and redraw the
+	 * covers of the galleries they were in.
 	 */
-	public void bulkDeleteByIds(List<Long> ids) {
-		// Verify all photos exist before deleting
+	private void forgetDeleted(List<Long> ids, List<Long> galleryIds) {
 		for (Long id : ids) {
-			if (!photoRepository.existsById(id)) {
-				throw new ResponseStatusException(HttpStatus.NOT_FOUND, 
-						"Photo with ID " + id + " not found");
-			}
+			imageBlobStore.evict(id);
+			imageCache.invalidate(id);
+			offHeapImageCache.invalidate(id);
 		}
-		photoRepository.deleteAllById(ids);
+		perceptualHashService.remove(ids);
+		visualSimilarityService.remove(ids);
+		galleryCoverService.refreshLater(galleryIds);
+	}
+
+	/**
+	 * Undo the deletion of photos that are still within the undo window.
+	 * 
+	 * @param ids IDs of deleted photos
+	 * @param userId Owner user ID; other users' photos are skipped
+	 * @return the restored photos
+	 * @throws ResponseStatusException 404 if none of the photos can be restored
+	 */
+	public List<Photo> restore(List<Long> ids, Long userId) {
+		List<Long> restored = photoContentStore.restore(ids, userId, LocalDateTime.now().minus(undoWindow));
+		if (restored.isEmpty()) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, 
+					"No deleted photos to restore; the undo window may have passed");
+		}
+		List<Photo> photos = photoRepository.findAllById(restored);
+		perceptualHashService.restore(userId, restored);
+		visualSimilarityService.restore(userId, restored);
+		photos.forEach(this::buildTilesIfLarge);
+		galleryCoverService.refreshLater(galleryCoverService.findGalleryIds(restored));
+		return photos;
 	}
 
 	/**
@@ -325,10 +788,61 @@ public class PhotoService {
 				photo.getDescription(),
 				photo.getOriginalFilename(),
 				photo.getContentType(),
-				photo.getSize()
+				photo.getSize(),
+				imageUrlSigner.sign(photo.getId(), photo.getContentVersion(), ImageUrlSigner.Variant.ORIGINAL),
+				imageUrlSigner.sign(photo.getId(), photo.getContentVersion(), ImageUrlSigner.Variant.THUMB)
 		);
 	}
 
+	/**
+	 * Get the owner, type and content version of a photo without loading its content.
+	 * 
+	 * @param id Photo ID
+	 * @return image info
+	 * @throws ResponseStatusException if photo not found
+	 */
+	public ImageInfo getImageInfo(Long id) {
+		ImageInfo info = photoContentStore.findImageInfo(id);
+		if (info == null) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, 
+					"Photo with ID " + id + " not found");
+		}
+		return info;
+	}
+
+	/**
+	 * Get the uploaded bytes of a photo whose content was optimized at ingest.
+	 * 
+	 * @param id Photo ID
+	 * @return the kept original
+	 * @throws ResponseStatusException if the photo is stored as uploaded or its original was not kept
+	 */
+	public PhotoOriginalStore.Original getKeptOriginal(Long id) {
+		PhotoOriginalStore.Original original = photoOriginalStore.find(id);
+		if (original == null) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, 
+					"Photo with ID " + id + " has no kept original");
+		}
+		return original;
+	}
+
+	/**
+	 * Copy one content version of a photo to {@code out} through the driver's stream.
+	 * 
+	 * @param id Photo ID
+	 * @param version Content version the copy is stored under
+	 * @param out Destination; not closed
+	 * @return false if the photo no longer exists or its content has been replaced
+	 * @throws IOException if writing fails
+	 */
+	public boolean copyContent(Long id, int version, OutputStream out) throws IOException {
+		try {
+			return photoContentStore.readContent(id, version, content -> bufferPool.copy(content, out)) != null;
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
 	/**
 	 * Get the image data as a resource for download/display.
 	 * 
@@ -337,14 +851,113 @@ public class PhotoService {
 	 * @throws ResponseStatusException if photo not found
 	 */
 	public Resource getImageResource(Long id) {
-		Photo photo = findById(id);
-		if (photo.getData() == null) {
+		ImageInfo info = getImageInfo(id);
+		return new ByteArrayResource(getOriginal(id, info.contentVersion()).data());
+	}
+
+	/**
+	 * Get the image data as a buffer for streaming responses.
+	 * 
+	 * @param id Photo ID
+	 * @return buffer positioned over the image bytes
+	 * @throws ResponseStatusException if photo not found
+	 */
+	public ByteBuffer getImageContent(Long id) {
+		ImageInfo info = getImageInfo(id);
+		return ByteBuffer.wrap(getOriginal(id, info.contentVersion()).data());
+	}
+
+	/**
+	 * Get the original image through the hot-image cache.
+	 * 
+	 * @param id Photo ID
+	 * @param version Content version
+	 * @return cached image; its bytes must not be modified
+	 * @throws ResponseStatusException if photo not found
+	 */
+	public CachedImage getOriginal(long id, int version) {
+		CachedImage image = imageCache.get(new ImageCache.Key(id, version, ImageUrlSigner.Variant.ORIGINAL),
+				() -> readOriginal(id, version));
+		if (image == null) {
 			throw new ResponseStatusException(HttpStatus.NOT_FOUND, 
 					"Image data not found for photo with ID " + id);
 		}
-		return new ByteArrayResource(photo.getData());
+		return image;
 	}
 
+	/**
+	 * Pin the original image in the off-heap tier, loading it on a miss, so it can be
+	 * written to the client straight from direct memory.
+	 * 
+	 * @param id Photo ID
+	 * @param version Content version
+	 * @return lease to close once the response is written, or null if the tier is
+	 *         disabled or cannot hold the image; use {@link #getOriginal} then
+	 */
+	public OffHeapImageCache.Lease leaseOriginal(long id, int version) {
+		if (!offHeapImageCache.isEnabled()) {
+			return null;
+		}
+		return offHeapImageCache.getOrLoad(id, version, () -> {
+			ImageInfo info = photoContentStore.findImageInfo(id);
+			if (info == null || info.contentVersion() != version) {
+				return null;
+			}
+			String contentType = info.contentType() != null ? info.contentType() : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+			return new OffHeapImageCache.Source(version, info.size(), contentType,
+					out -> photoContentStore.readContent(id, version, content -> bufferPool.copy(content, out)) != null);
+		});
+	}
+
+	/**
+	 * Get the listing thumbnail through the hot-image cache.
+	 * 
+	 * @param id Photo ID
+	 * @param version Content version
+	 * @return cached thumbnail, or null if the photo does not exist, cannot be decoded
+	 *         or no longer has that content version
+	 */
+	public CachedImage getThumbnail(long id, int version) {
+		return imageCache.get(new ImageCache.Key(id, version, ImageUrlSigner.Variant.THUMB), () -> {
+			Thumbnail thumbnail = thumbnailService.getThumbnail(id, version);
+			return thumbnail == null ? null : new CachedImage(thumbnail.contentType(), thumbnail.data());
+		});
+	}
+
+	/**
+	 * Read one content version of an original; null once it has been replaced, so a
+	 * still-valid URL for the old version never caches the new bytes under its key.
+	 */
+	private CachedImage readOriginal(long id, int version) {
+		ImageInfo info = photoContentStore.findImageInfo(id);
+		if (info == null || info.contentVersion() != version) {
+			return null;
+		}
+		// Sized once from the stored size: readAllBytes would grow a list of chunks and copy them again
+		byte[] data = photoContentStore.readContent(id, version, content -> {
+			byte[] exact = content.readNBytes((int) Math.min(info.size(), MAX_UPLOAD_BYTES));
+			byte[] rest = content.readAllBytes();
+			if (rest.length == 0) {
+				return exact;
+			}
+			byte[] all = Arrays.copyOf(exact, exact.length + rest.length);
+			System.arraycopy(rest, 0, all, exact.length, rest.length);
+			return all;
+		});
+		if (data == null) {
+			return null;
+		}
+		String contentType = info.contentType() != null ? info.contentType() : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+		return new CachedImage(contentType, data);
+	}
+
+	/**
+	 * Whether the user already has a file about to be uploaded.
+	 *
+	 * @param existingPhotoId A photo with the same content, or null if the file must be uploaded
+	 */
+	public record PreflightResult(String sha256, long size, Long existingPhotoId) {}
+
 	/**
 	 * Record class for photo metadata without image data.
 	 */
@@ -354,6 +967,8 @@ public class PhotoService {
 			String description,
 			String originalFilename,
 			String contentType,
-			Long size
+			Long size,
+			String imageUrl,
+			String thumbnailUrl
 	) {}
 }
@@ -0,0 +1,134 @@
+package com.redligot.backend.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Lossless PNG optimization: re-deflates the image data at the highest compression
+ * level into a single IDAT chunk.
+ *
+ * <p>Screenshots and exports are often written at a fast deflate level; recompressing
+ * the same filtered scanlines typically saves 5-20%. Every other chunk, including
+ * colour and text metadata, is copied unchanged. The data is streamed from the old
+ * compressed form to the new one, so the decompressed scanlines are never held in
+ * memory.</p>
+ */
+final class PngRecompressor {
+
+	private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+	private static final int COPY_BUFFER = 64 * 1024;
+
+	private PngRecompressor() {
+	}
+
+	/**
+	 * @param png Complete PNG file
+	 * @return the recompressed file, the input itself if recompressing does not make it
+	 *         smaller, or null if the file is not a valid PNG
+	 */
+	static byte[] recompress(byte[] png) {
+		try {
+			return new Chunks(png).recompress();
+		} catch (IOException | IllegalArgumentException | IndexOutOfBoundsException e) {
+			return null;
+		}
+	}
+
+	private static final class Chunks {
+
+		private final byte[] data;
+
+		Chunks(byte[] data) {
+			this.data = data;
+		}
+
+		byte[] recompress() throws IOException {
+			for (int i = 0; i < SIGNATURE.length; i++) {
+				if (data[i] != SIGNATURE[i]) {
+					return null;
+				}
+			}
+			int firstIdat = -1;
+			int afterIdat = -1;
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+			int pos = SIGNATURE.length;
+			while (pos < data.length) {
+				int length = u32(pos);
+				if (length < 0 || pos + 12L + length > data.length) {
+					throw new IllegalArgumentException("Truncated chunk");
+				}
+				String type = new String(data, pos + 4, 4, StandardCharsets.US_ASCII);
+				if (type.equals("IDAT")) {
+					if (afterIdat >= 0) {
+						// IDAT chunks must be consecutive
+						return null;
+					}
+					if (firstIdat < 0) {
+						firstIdat = pos;
+					}
+					compressed.write(data, pos + 8, length);
+				} else if (firstIdat >= 0 && afterIdat < 0) {
+					afterIdat = pos;
+				}
+				pos += 12 + length;
+				if (type.equals("IEND")) {
+					break;
+				}
+			}
+			if (firstIdat < 0 || afterIdat < 0) {
+				return null;
+			}
+
+			ByteArrayOutputStream deflated = new ByteArrayOutputStream(compressed.size());
+			Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+			try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(compressed.toByteArray()));
+					OutputStream out = new DeflaterOutputStream(deflated, deflater, COPY_BUFFER)) {
+				in.transferTo(out);
+			} finally {
+				deflater.end();
+			}
+			byte[] idat = deflated.toByteArray();
+			long size = firstIdat + 12L + idat.length + (pos - afterIdat);
+			if (size >= data.length) {
+				return data;
+			}
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream((int) size);
+			out.write(data, 0, firstIdat);
+			writeChunk(out, "IDAT", idat);
+			out.write(data, afterIdat, pos - afterIdat);
+			return out.toByteArray();
+		}
+
+		private int u32(int pos) {
+			return (data[pos] & 0xff) << 24 | (data[pos + 1] & 0xff) << 16 | (data[pos + 2] & 0xff) << 8
+					| (data[pos + 3] & 0xff);
+		}
+
+		private static void writeChunk(ByteArrayOutputStream out, String type, byte[] body) {
+			byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+			writeU32(out, body.length);
+			out.write(typeBytes, 0, typeBytes.length);
+			out.write(body, 0, body.length);
+			CRC32 crc = new CRC32();
+			crc.update(typeBytes);
+			crc.update(body);
+			writeU32(out, (int) crc.getValue());
+		}
+
+		private static void writeU32(ByteArrayOutputStream out, int value) {
+			out.write(value >>> 24);
+			out.write((value >>> 16) & 0xff);
+			out.write((value >>> 8) & 0xff);
+			out.write(value & 0xff);
+		}
+	}
+}
@@ -0,0 +1,282 @@
+package com.redligot.backend.service;
+
+import com.redligot.backend.dto.CreateUploadSessionRequest;
+import com.redligot.backend.model.Photo;
+import com.redligot.backend.model.UploadSession;
+import com.redligot.backend.model.User;
+import com.redligot.backend.repository.GalleryRepository;
+import com.redligot.backend.repository.UploadSessionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Service for resumable (tus-style) uploads.
+ * 
+ * A client opens a session with the total length, then PATCHes chunks at explicit
+ * offsets. Each chunk is appended to a staging file and the committed offset is
+ * stored on the session, so after a dropped connection the client asks for the
+ * current offset and continues from there. Finalizing hands the staged file to
+ * {@link PhotoService#createFromFile}.
+ */
+@Service
+public class ResumableUploadService {
+
+	private static final Logger logger = LoggerFactory.getLogger(ResumableUploadService.class);
+
+	private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+	private final UploadSessionRepository uploadSessionRepository;
+	private final GalleryRepository galleryRepository;
+	private final PhotoService photoService;
+	private final BufferPool bufferPool;
+	private final Path stagingRoot;
+	private final int maxChunkSize;
+	private final Duration sessionTtl;
+	private final ConcurrentHashMap<String, ReentrantLock> sessionLocks = new ConcurrentHashMap<>();
+
+	public ResumableUploadService(UploadSessionRepository uploadSessionRepository, GalleryRepository galleryRepository,
+			PhotoService photoService, BufferPool bufferPool,
+			@Value("${app.upload.staging-dir:./data/upload-staging}") String stagingDir,
+			@Value("${app.upload.resumable.max-chunk-size:1048576}") int maxChunkSize,
+			@Value("${app.upload.resumable.session-ttl-minutes:1440}") long sessionTtlMinutes) {
+		this.uploadSessionRepository = uploadSessionRepository;
+		this.galleryRepository = galleryRepository;
+		this.photoService = photoService;
+		this.bufferPool = bufferPool;
+		this.stagingRoot = Paths.get(stagingDir).toAbsolutePath().normalize().resolve("sessions");
+		this.maxChunkSize = maxChunkSize;
+		this.sessionTtl = Duration.ofMinutes(sessionTtlMinutes);
+	}
+
+	/**
+	 * @return largest chunk accepted by {@link #appendChunk}
+	 */
+	public int getMaxChunkSize() {
+		return maxChunkSize;
+	}
+
+	/**
+	 * Open a new upload session with an empty staging file.
+	 * 
+	 * @param request Declared file metadata and total length
+	 * @param userId Owner of the upload
+	 * @return the new session
+	 * @throws ResponseStatusException if the declared file is invalid or the gallery does not belong to the user
+	 */
+	public UploadSession create(CreateUploadSessionRequest request, Long userId) {
+		photoService.validateUpload(request.getLength(), request.getContentType(), request.getFilename());
+		if (request.getGalleryId() != null && galleryRepository.findByIdAndUserId(request.getGalleryId(), userId).isEmpty()) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, 
+					"Gallery not found or does not belong to user");
+		}
+
+		UploadSession session = new UploadSession();
+		session.setId(UUID.randomUUID().toString());
+		session.setUserId(userId);
+		session.setGalleryId(request.getGalleryId());
+		session.setTitle(request.getTitle());
+		session.setDescription(request.getDescription());
+		session.setOriginalFilename(request.getFilename());
+		session.setContentType(request.getContentType());
+		session.setUploadLength(request.getLength());
+		session.setUploadOffset(0);
+		session.setExpiresAt(LocalDateTime.now().plus(sessionTtl));
+
+		Path staged = stagingRoot.resolve(session.getId());
+		try {
+			Files.createDirectories(stagingRoot);
+			Files.createFile(staged);
+		} catch (IOException e) {
+			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, 
+					"Failed to create upload session: " + e.getMessage());
+		}
+		session.setStagedPath(staged.toString());
+		return uploadSessionRepository.save(session);
+	}
+
+	/**
+	 * Get a session owned by the user.
+	 * 
+	 * @param sessionId Session ID
+	 * @param userId Owner user ID
+	 * @return the session
+	 * @throws ResponseStatusException if the session does not exist, expired or belongs to another user
+	 */
+	public UploadSession get(String sessionId, Long userId) {
+		return uploadSessionRepository.findByIdAndUserId(sessionId, userId)
+				.filter(s -> s.getExpiresAt().isAfter(LocalDateTime.now()))
+				.orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, 
+						"Upload session " + sessionId + " not found"));
+	}
+
+	/**
+	 * Append a chunk at the given offset.
+	 * Bytes received before a client disconnect are kept, so the next HEAD reports them.
+	 * 
+	 * @param sessionId Session ID
+	 * @param userId Owner user ID
+	 * @param offset Offset the client believes it is writing at
+	 * @param body Chunk bytes
+	 * @return the session with its new offset
+	 * @throws ResponseStatusException 409 on offset mismatch or concurrent writes, 413 if the chunk is too large
+	 */
+	public UploadSession appendChunk(String sessionId, Long userId, long offset, InputStream body) {
+		ReentrantLock lock = sessionLocks.computeIfAbsent(sessionId, id -> new ReentrantLock());
+		if (!lock.tryLock()) {
+			throw new ResponseStatusException(HttpStatus.CONFLICT, 
+					"Another chunk is already being written to this session");
+		}
+		try {
+			UploadSession session = requireActive(get(sessionId, userId));
+			if (offset != session.getUploadOffset()) {
+				throw new ResponseStatusException(HttpStatus.CONFLICT, 
+						"Upload offset mismatch: expected " + session.getUploadOffset());
+			}
+			long limit = Math.min(maxChunkSize, session.getUploadLength() - offset);
+
+			long written = 0;
+			try (FileChannel channel = FileChannel.open(Paths.get(session.getStagedPath()), StandardOpenOption.WRITE)) {
+				// Drop any bytes past the committed offset left by an interrupted write
+				channel.truncate(offset);
+				channel.position(offset);
+				try (BufferPool.Buffer pooled = bufferPool.acquire(COPY_BUFFER_SIZE)) {
+					byte[] buffer = pooled.array();
+					ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+					int read;
+					while (written <= limit
+							&& (read = body.read(buffer, 0, (int) Math.min(buffer.length, limit + 1 - written))) > 0) {
+						wrapped.clear().limit(read);
+						while (wrapped.hasRemaining()) {
+							channel.write(wrapped);
+						}
+						written += read;
+					}
+				} catch (IOException e) {
+					logger.debug("Upload session {} chunk interrupted after {} bytes: {}", sessionId, written, e.getMessage());
+				}
+				if (written > limit) {
+					channel.truncate(offset);
+					throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, 
+							"Chunk exceeds the remaining length or maximum chunk size of " + maxChunkSize + " bytes");
+				}
+				channel.force(false);
+			} catch (IOException e) {
+				throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, 
+						"Failed to write upload chunk: " + e.getMessage());
+			}
+
+			session.setUploadOffset(offset + written);
+			session.setExpiresAt(LocalDateTime.now().plus(sessionTtl));
+			return uploadSessionRepository.save(session);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Turn a fully uploaded session into a photo.
+	 * Finalizing an already completed session returns the photo created the first time.
+	 * 
+	 * @param sessionId Session ID
+	 * @param user Owner of the upload
+	 * @return the created photo
+	 * @throws ResponseStatusException 409 if not all bytes have been received
+	 */
+	public Photo complete(String sessionId, User user) {
+		ReentrantLock lock = sessionLocks.computeIfAbsent(sessionId, id -> new ReentrantLock());
+		lock.lock();
+		try {
+			UploadSession session = get(sessionId, user.getId());
+			if (session.getStatus() == UploadSession.Status.COMPLETED) {
+				return photoService.findById(session.getPhotoId());
+			}
+			if (session.getUploadOffset() != session.getUploadLength()) {
+				throw new ResponseStatusException(HttpStatus.CONFLICT, 
+						"Upload incomplete: " + session.getUploadOffset() + " of " + session.getUploadLength() + " bytes received");
+			}
+
+			Path staged = Paths.get(session.getStagedPath());
+			Photo photo = photoService.createFromFile(session.getTitle(), session.getDescription(),
+					session.getOriginalFilename(), session.getContentType(), staged, user, session.getGalleryId());
+
+			session.setStatus(UploadSession.Status.COMPLETED);
+			session.setPhotoId(photo.getId());
+			session.setStagedPath(null);
+			uploadSessionRepository.save(session);
+			deleteQuietly(staged);
+			return photo;
+		} finally {
+			lock.unlock();
+			sessionLocks.remove(sessionId, lock);
+		}
+	}
+
+	/**
+	 * Abort a session and discard its staged bytes.
+	 * 
+	 * @param sessionId Session ID
+	 * @param userId Owner user ID
+	 */
+	public void cancel(String sessionId, Long userId) {
+		UploadSession session = get(sessionId, userId);
+		discard(session);
+	}
+
+	/**
+	 * Remove sessions whose TTL has passed, together with their staging files.
+	 */
+	@Scheduled(fixedDelayString = "${app.upload.resumable.cleanup-interval-ms:600000}")
+	public void purgeExpiredSessions() {
+		List<UploadSession> expired = uploadSessionRepository.findByExpiresAtBefore(LocalDateTime.now());
+		for (UploadSession session : expired) {
+			discard(session);
+		}
+		if (!expired.isEmpty()) {
+			logger.info("Purged {} expired upload sessions", expired.size());
+		}
+	}
+
+	private UploadSession requireActive(UploadSession session) {
+		if (session.getStatus() != UploadSession.Status.ACTIVE) {
+			throw new ResponseStatusException(HttpStatus.CONFLICT, 
+					"Upload session " + session.getId() + " is already completed");
+		}
+		return session;
+	}
+
+	private void discard(UploadSession session) {
+		if (session.getStagedPath() != null) {
+			deleteQuietly(Paths.get(session.getStagedPath()));
+		}
+		uploadSessionRepository.delete(session);
+		sessionLocks.remove(session.getId());
+	}
+
+	private void deleteQuietly(Path path) {
+		try {
+			Files.deleteIfExists(path);
+		} catch (IOException e) {
+			logger.warn("Could not delete staged upload {}: {}", path, e.getMessage());
+		}
+	}
+}
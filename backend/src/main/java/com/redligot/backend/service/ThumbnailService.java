@@ -0,0 +1,250 @@
+package com.redligot.backend.service;
+
+import com.redligot.backend.repository.PhotoContentStore;
+import com.redligot.backend.repository.ThumbnailStore;
+import com.redligot.backend.repository.ThumbnailStore.Thumbnail;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Listing thumbnails, served in batches.
+ *
+ * Thumbnails are generated from the original on first request and cached in
+ * <code>photo_thumbnails</code> under the content version they were made from, so a
+ * generation that races a content update can never be served for the new content. A batch is answered with one query that both
+ * checks ownership and loads the cached thumbnails; only photos without one
+ * yet cost a second query over their originals. Originals are decoded through
+ * {@link ImageDecodeService}, already subsampled to near the thumbnail size.
+ */
+@Service
+public class ThumbnailService {
+
+	private static final Logger logger = LoggerFactory.getLogger(ThumbnailService.class);
+
+	/**
+	 * Content type of every generated thumbnail.
+	 */
+	public static final String THUMBNAIL_TYPE = "image/jpeg";
+
+	private final ThumbnailStore thumbnailStore;
+	private final PhotoContentStore photoContentStore;
+	private final ImageDecodeService imageDecodeService;
+	private final int maxDimension;
+	private final float quality;
+	private final int maxBatch;
+
+	public ThumbnailService(ThumbnailStore thumbnailStore, PhotoContentStore photoContentStore,
+			ImageDecodeService imageDecodeService,
+			@Value("${app.thumbnails.max-dimension:320}") int maxDimension,
+			@Value("${app.thumbnails.jpeg-quality:0.8}") float quality,
+			@Value("${app.thumbnails.max-batch:100}") int maxBatch) {
+		this.thumbnailStore = thumbnailStore;
+		this.photoContentStore = photoContentStore;
+		this.imageDecodeService = imageDecodeService;
+		this.maxDimension = maxDimension;
+		this.quality = quality;
+		this.maxBatch = maxBatch;
+	}
+
+	/**
+	 * Get thumbnails for a page of photos.
+	 * Photos that belong to other users, do not exist or cannot be decoded are left
+	 * out; clients fall back to the full image for those.
+	 *
+	 * @param photoIds Photo IDs, in display order
+	 * @param userId Owner user ID
+	 * @return thumbnails in the order requested
+	 * @throws ResponseStatusException if more than the maximum batch size is requested
+	 */
+	public List<Thumbnail> getThumbnails(List<Long> photoIds, Long userId) {
+		List<Long> ids = photoIds.stream().distinct().toList();
+		if (ids.size() > maxBatch) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+					"At most " + maxBatch + " thumbnails can be requested at once");
+		}
+
+		Map<Long, Thumbnail> found = new LinkedHashMap<>();
+		for (Thumbnail thumbnail : thumbnailStore.findOwned(ids, userId)) {
+			found.put(thumbnail.photoId(), thumbnail);
+		}
+		List<Long> missing = ids.stream().filter(id -> !found.containsKey(id)).toList();
+		if (!missing.isEmpty()) {
+			Map<Long, Integer> versions = new HashMap<>();
+			photoContentStore.forEachOwnedContent(missing, userId, (id, version, content) -> {
+				Thumbnail thumbnail = generate(id, content);
+				if (thumbnail != null) {
+					found.put(id, thumbnail);
+					versions.put(id, version);
+				}
+			});
+			for (Long id : missing) {
+				Thumbnail thumbnail = found.get(id);
+				if (thumbnail != null) {
+					thumbnailStore.save(thumbnail, versions.get(id));
+				}
+			}
+		}
+
+		List<Thumbnail> ordered = new ArrayList<>(found.size());
+		for (Long id : ids) {
+			Thumbnail thumbnail = found.get(id);
+			if (thumbnail != null) {
+				ordered.add(thumbnail);
+			}
+		}
+		return ordered;
+	}
+
+	/**
+	 * Get the thumbnail of a single photo, generating it if needed.
+	 * Access must already have been checked, e.g. through a signed image URL.
+	 *
+	 * @param photoId Photo ID
+	 * @return the thumbnail, or null if the photo does not exist or cannot be decoded
+	 */
+	public Thumbnail getThumbnail(Long photoId) {
+		Thumbnail cached = thumbnailStore.find(photoId);
+		if (cached != null) {
+			return cached;
+		}
+		Thumbnail[] generated = new Thumbnail[1];
+		photoContentStore.visitContent(photoId, (id, version, content) -> {
+			generated[0] = generate(id, content);
+			if (generated[0] != null) {
+				thumbnailStore.save(generated[0], version);
+			}
+		});
+		return generated[0];
+	}
+
+	/**
+	 * Get the thumbnail of one content version of a photo, generating it if needed.
+	 * Access must already have been checked, e.g. through a signed image URL.
+	 *
+	 * @param photoId Photo ID
+	 * @param contentVersion Content version wanted
+	 * @return the thumbnail, or null if the photo does not exist, cannot be decoded or
+	 *         no longer has that content version
+	 */
+	public Thumbnail getThumbnail(Long photoId, int contentVersion) {
+		Thumbnail cached = thumbnailStore.find(photoId, contentVersion);
+		if (cached != null) {
+			return cached;
+		}
+		Thumbnail[] generated = new Thumbnail[1];
+		photoContentStore.visitContent(photoId, (id, version, content) -> {
+			if (version != contentVersion) {
+				return;
+			}
+			generated[0] = generate(id, content);
+			if (generated[0] != null) {
+				thumbnailStore.save(generated[0], version);
+			}
+		});
+		return generated[0];
+	}
+
+	/**
+	 * Drop the cached thumbnail after a photo's content changed.
+	 *
+	 * @param photoId Photo ID
+	 */
+	public void invalidate(Long photoId) {
+		thumbnailStore.delete(photoId);
+	}
+
+	private Thumbnail generate(long photoId, InputStream content) throws IOException {
+		Thumbnail thumbnail;
+		try {
+			thumbnail = imageDecodeService.decode(content, maxDimension, source -> {
+				BufferedImage scaled = scale(source);
+				return new Thumbnail(photoId, THUMBNAIL_TYPE, scaled.getWidth(), scaled.getHeight(), encodeJpeg(scaled, quality));
+			});
+		} catch (ResponseStatusException e) {
+			// Too large to decode, or no decode budget right now; nothing is cached, so a later request retries
+			logger.info("No thumbnail for photo {}: {}", photoId, e.getReason());
+			return null;
+		}
+		if (thumbnail == null) {
+			logger.debug("No thumbnail for photo {}: format not supported by ImageIO", photoId);
+		}
+		return thumbnail;
+	}
+
+	/**
+	 * Fit within the maximum dimension.
+	 */
+	private BufferedImage scale(BufferedImage source) {
+		double ratio = Math.min(1.0, (double) maxDimension / Math.max(source.getWidth(), source.getHeight()));
+		int targetWidth = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+		int targetHeight = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+		return scale(source, targetWidth, targetHeight);
+	}
+
+	/**
+	 * Resize to exactly the target size as RGB, halving first so bilinear filtering does
+	 * not skip pixels on large reductions.
+	 */
+	static BufferedImage scale(BufferedImage source, int targetWidth, int targetHeight) {
+		BufferedImage current = source;
+		int width = source.getWidth();
+		int height = source.getHeight();
+		do {
+			width = Math.max(targetWidth, width / 2);
+			height = Math.max(targetHeight, height / 2);
+			BufferedImage step = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			Graphics2D g = step.createGraphics();
+			try {
+				// JPEG has no alpha; flatten transparent images onto white
+				g.setColor(Color.WHITE);
+				g.fillRect(0, 0, width, height);
+				g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+				g.drawImage(current, 0, 0, width, height, null);
+			} finally {
+				g.dispose();
+			}
+			current = step;
+		} while (width != targetWidth || height != targetHeight);
+		return current;
+	}
+
+	/**
+	 * Encode an RGB image as a baseline JPEG.
+	 */
+	static byte[] encodeJpeg(BufferedImage image, float quality) throws IOException {
+		ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+			writer.setOutput(ios);
+			ImageWriteParam param = writer.getDefaultWriteParam();
+			param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+			param.setCompressionQuality(quality);
+			writer.write(null, new IIOImage(image, null, null), param);
+		} finally {
+			writer.dispose();
+		}
+		return out.toByteArray();
+	}
+}
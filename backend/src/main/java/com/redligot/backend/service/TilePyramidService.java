@@ -0,0 +1,384 @@
+package com.redligot.backend.service;
+
+import com.redligot.backend.repository.ImageBlobStore;
+import com.redligot.backend.repository.PhotoContentStore;
+import com.redligot.backend.repository.PhotoContentStore.ImageGeometry;
+import com.redligot.backend.security.ImageUrlSigner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Deep-zoom tile pyramids for very large photos, so a viewer can fetch only the tiles
+ * it shows instead of the whole original.
+ *
+ * <p>The layout is that of Deep Zoom (DZI): level <i>n</i> is the upright image scaled
+ * to fit within 2<sup>n</sup> pixels, from a single pixel at level 0 up to full size at
+ * the top level, and each level is cut into 256-pixel JPEG tiles without overlap. Tiles
+ * are kept in {@link ImageBlobStore} under the photo's content version, next to a
+ * <code>.dzi</code> descriptor written once every tile is in place, so a pyramid is only
+ * ever served complete and a replaced image gets a new one.</p>
+ *
+ * <p>Pyramids are built in the background for photos above the pixel threshold. The
+ * original is read in horizontal strips with {@link ImageDecodeService#decodeRegions},
+ * each within the strip budget, until a level is small enough to hold whole; the
+ * levels below it are halved from it in memory.</p>
+ */
+@Service
+public class TilePyramidService {
+
+	private static final Logger logger = LoggerFactory.getLogger(TilePyramidService.class);
+
+	/**
+	 * Width and height of every tile except those on the right and bottom edges.
+	 */
+	public static final int TILE_SIZE = 256;
+
+	/**
+	 * Content type of every tile.
+	 */
+	public static final String TILE_TYPE = "image/jpeg";
+
+	private static final String DESCRIPTOR_VARIANT = "tiles";
+	private static final String DESCRIPTOR_TYPE = "application/xml";
+	private static final int BYTES_PER_PIXEL = 4;
+
+	/**
+	 * Where a photo's tiles are and whether they are ready; enough for a Deep Zoom viewer.
+	 *
+	 * @param width Upright width in pixels
+	 * @param height Upright height in pixels
+	 * @param maxLevel Top level, where the image is at full size
+	 * @param contentVersion Content version the tiles are requested for
+	 * @param ready false while the pyramid is still being built
+	 */
+	public record TilePyramid(int width, int height, int tileSize, int overlap, String format, int maxLevel,
+			int contentVersion, boolean ready) {}
+
+	/**
+	 * A stored tile.
+	 *
+	 * @param blobPath Path relative to the blob store, for offloading to the proxy
+	 * @param file The tile's file
+	 */
+	public record Tile(String blobPath, Path file) {}
+
+	private final PhotoContentStore photoContentStore;
+	private final ImageBlobStore imageBlobStore;
+	private final ImageDecodeService imageDecodeService;
+	private final BufferPool bufferPool;
+	private final long minPixels;
+	private final long stripBytes;
+	private final float quality;
+	private final Set<Long> building = ConcurrentHashMap.newKeySet();
+
+	public TilePyramidService(PhotoContentStore photoContentStore, ImageBlobStore imageBlobStore,
+			ImageDecodeService imageDecodeService, BufferPool bufferPool,
+			@Value("${app.images.tiles.min-pixels:20000000}") long minPixels,
+			@Value("${app.images.tiles.strip-bytes:33554432}") long stripBytes,
+			@Value("${app.thumbnails.jpeg-quality:0.8}") float quality) {
+		this.photoContentStore = photoContentStore;
+		this.imageBlobStore = imageBlobStore;
+		this.imageDecodeService = imageDecodeService;
+		this.bufferPool = bufferPool;
+		this.minPixels = minPixels;
+		this.stripBytes = stripBytes;
+		this.quality = quality;
+	}
+
+	/**
+	 * Describe the tile pyramid of a photo.
+	 *
+	 * @param photoId Photo ID
+	 * @param userId Owner user ID
+	 * @return the pyramid; not ready if it still has to be built
+	 * @throws ResponseStatusException 404 if the photo does not exist, belongs to another
+	 *         user or is too small to be tiled
+	 */
+	public TilePyramid getPyramid(long photoId, long userId) {
+		ImageGeometry geometry = findOwned(photoId, userId);
+		if (!isTiled(geometry)) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Photo " + photoId + " has no tile pyramid");
+		}
+		boolean transpose = transposes(geometry.orientation());
+		int width = transpose ? geometry.height() : geometry.width();
+		int height = transpose ? geometry.width() : geometry.height();
+		boolean ready = imageBlobStore.find(photoId, geometry.contentVersion(), DESCRIPTOR_VARIANT,
+				DESCRIPTOR_TYPE) != null;
+		return new TilePyramid(width, height, TILE_SIZE, 0, "jpg", maxLevel(width, height),
+				geometry.contentVersion(), ready);
+	}
+
+	/**
+	 * Find one tile of a photo's pyramid.
+	 *
+	 * @param photoId Photo ID
+	 * @param userId Owner user ID
+	 * @param version Content version the tile is requested for
+	 * @param level Pyramid level
+	 * @param x Tile column
+	 * @param y Tile row
+	 * @return the tile
+	 * @throws ResponseStatusException 404 if the photo does not exist, belongs to another
+	 *         user or has been replaced since, or there is no such tile (yet)
+	 */
+	public Tile getTile(long photoId, long userId, int version, int level, int x, int y) {
+		ImageGeometry geometry = findOwned(photoId, userId);
+		String path = geometry.contentVersion() == version
+				? imageBlobStore.find(photoId, version, tileVariant(level, x, y), TILE_TYPE)
+				: null;
+		if (path == null) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+					"Tile " + level + "/" + x + "_" + y + " of photo " + photoId + " not found");
+		}
+		return new Tile(path, imageBlobStore.resolve(path));
+	}
+
+	/**
+	 * Build a photo's tile pyramid in the background if it is large enough and has none
+	 * yet. Does nothing while a build for the photo is already running.
+	 *
+	 * @param photoId Photo ID
+	 */
+	@Async
+	public void buildLater(long photoId) {
+		if (!building.add(photoId)) {
+			return;
+		}
+		try {
+			build(photoId);
+		} catch (IOException | RuntimeException e) {
+			// Retried the next time the pyramid is requested
+			logger.warn("Could not build tile pyramid of photo {}: {}", photoId, e.getMessage());
+		} finally {
+			building.remove(photoId);
+		}
+	}
+
+	private void build(long photoId) throws IOException {
+		ImageGeometry geometry = photoContentStore.findImageGeometry(photoId);
+		if (geometry == null || !isTiled(geometry)) {
+			return;
+		}
+		int version = geometry.contentVersion();
+		if (imageBlobStore.find(photoId, version, DESCRIPTOR_VARIANT, DESCRIPTOR_TYPE) != null) {
+			return;
+		}
+		// The same file nginx serves the original from; regions are read from it repeatedly
+		String original = imageBlobStore.ensure(photoId, version, ImageUrlSigner.Variant.ORIGINAL.path(),
+				geometry.contentType(), out -> photoContentStore.readContent(photoId,
+						content -> bufferPool.copy(content, out)) != null);
+		if (original == null) {
+			return;
+		}
+		long started = System.nanoTime();
+		int[] size = imageDecodeService.decodeRegions(imageBlobStore.resolve(original),
+				reader -> buildLevels(photoId, version, reader, geometry.orientation()));
+		if (size == null) {
+			logger.info("Photo {} is in a format that cannot be tiled", photoId);
+			return;
+		}
+
+		ImageGeometry current = photoContentStore.findImageGeometry(photoId);
+		if (current == null) {
+			// Deleted while building; its blobs were evicted before these tiles were written
+			imageBlobStore.evict(photoId);
+			return;
+		}
+		if (current.contentVersion() != version) {
+			return;
+		}
+		byte[] descriptor = descriptor(size[0], size[1]);
+		imageBlobStore.ensure(photoId, version, DESCRIPTOR_VARIANT, DESCRIPTOR_TYPE, out -> {
+			out.write(descriptor);
+			return true;
+		});
+		logger.info("Built tile pyramid of photo {} ({}x{}) in {} ms", photoId, size[0], size[1],
+				(System.nanoTime() - started) / 1_000_000);
+	}
+
+	/**
+	 * Write every level, top level first.
+	 *
+	 * @return upright width and height
+	 */
+	private int[] buildLevels(long photoId, int version, ImageDecodeService.RegionReader reader, Integer orientation)
+			throws IOException {
+		boolean transpose = transposes(orientation);
+		int width = transpose ? reader.height() : reader.width();
+		int height = transpose ? reader.width() : reader.height();
+		int maxLevel = maxLevel(width, height);
+		BufferedImage whole = null;
+		for (int level = maxLevel; level >= 0; level--) {
+			int scale = 1 << (maxLevel - level);
+			int levelWidth = ceilDiv(width, scale);
+			int levelHeight = ceilDiv(height, scale);
+			if (whole != null) {
+				whole = resize(whole, levelWidth, levelHeight);
+				writeTiles(photoId, version, level, whole, 0);
+				continue;
+			}
+			// Levels below full size are decoded at twice their size and halved, like thumbnails
+			int oversampling = scale > 1 ? 2 : 1;
+			long bytesPerRow = (long) levelWidth * oversampling * oversampling * BYTES_PER_PIXEL;
+			if (bytesPerRow * levelHeight <= stripBytes) {
+				whole = decodeStrip(reader, orientation, width, height, scale, 0, levelWidth, levelHeight);
+				writeTiles(photoId, version, level, whole, 0);
+				continue;
+			}
+			int stripRows = (int) Math.max(1, stripBytes / (bytesPerRow * TILE_SIZE)) * TILE_SIZE;
+			for (int top = 0; top < levelHeight; top += stripRows) {
+				int rows = Math.min(stripRows, levelHeight - top);
+				BufferedImage strip = decodeStrip(reader, orientation, width, height, scale, top, levelWidth, rows);
+				writeTiles(photoId, version, level, strip, top / TILE_SIZE);
+			}
+		}
+		return new int[] {width, height};
+	}
+
+	/**
+	 * Decode rows of one level, upright.
+	 *
+	 * @param width Upright width of the full-size image
+	 * @param height Upright height of the full-size image
+	 * @param scale Full-size pixels per level pixel
+	 * @param top First row, in level pixels
+	 * @param levelWidth Width of the level
+	 * @param rows Rows to decode, in level pixels
+	 */
+	private static BufferedImage decodeStrip(ImageDecodeService.RegionReader reader, Integer orientation,
+			int width, int height, int scale, int top, int levelWidth, int rows) throws IOException {
+		int y0 = top * scale;
+		int y1 = Math.min(height, (top + rows) * scale);
+		Rectangle region = sourceRegion(new Rectangle(0, y0, width, y1 - y0), reader.width(), reader.height(),
+				orientation);
+		return reader.read(region, Math.max(1, scale / 2), image -> {
+			BufferedImage upright = ImageAnalysisService.orient(image, orientation);
+			if (upright.getWidth() == levelWidth && upright.getHeight() == rows) {
+				return upright;
+			}
+			return resize(upright, levelWidth, rows);
+		});
+	}
+
+	/**
+	 * Map a region of the upright image back to the image as stored.
+	 *
+	 * @param upright Region of the upright image
+	 * @param width Stored width
+	 * @param height Stored height
+	 * @param orientation EXIF orientation
+	 */
+	static Rectangle sourceRegion(Rectangle upright, int width, int height, Integer orientation) {
+		int x0 = upright.x;
+		int y0 = upright.y;
+		int x1 = upright.x + upright.width;
+		int y1 = upright.y + upright.height;
+		int o = orientation != null ? orientation : 1;
+		return switch (o) {
+			case 2 -> new Rectangle(width - x1, y0, x1 - x0, y1 - y0);
+			case 3 -> new Rectangle(width - x1, height - y1, x1 - x0, y1 - y0);
+			case 4 -> new Rectangle(x0, height - y1, x1 - x0, y1 - y0);
+			case 5 -> new Rectangle(y0, x0, y1 - y0, x1 - x0);
+			case 6 -> new Rectangle(y0, height - x1, y1 - y0, x1 - x0);
+			case 7 -> new Rectangle(width - y1, height - x1, y1 - y0, x1 - x0);
+			case 8 -> new Rectangle(width - y1, x0, y1 - y0, x1 - x0);
+			default -> new Rectangle(upright);
+		};
+	}
+
+	/**
+	 * Cut rows of a level into tiles and store them.
+	 *
+	 * @param firstRow Tile row the image starts at
+	 */
+	private void writeTiles(long photoId, int version, int level, BufferedImage image, int firstRow) {
+		for (int y = 0; y < image.getHeight(); y += TILE_SIZE) {
+			for (int x = 0; x < image.getWidth(); x += TILE_SIZE) {
+				BufferedImage tile = image.getSubimage(x, y, Math.min(TILE_SIZE, image.getWidth() - x),
+						Math.min(TILE_SIZE, image.getHeight() - y));
+				imageBlobStore.ensure(photoId, version, tileVariant(level, x / TILE_SIZE, firstRow + y / TILE_SIZE),
+						TILE_TYPE, out -> {
+							out.write(ThumbnailService.encodeJpeg(tile, quality));
+							return true;
+						});
+			}
+		}
+	}
+
+	private static BufferedImage resize(BufferedImage image, int width, int height) {
+		BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = resized.createGraphics();
+		try {
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.drawImage(image, 0, 0, width, height, null);
+		} finally {
+			g.dispose();
+		}
+		return resized;
+	}
+
+	private ImageGeometry findOwned(long photoId, long userId) {
+		ImageGeometry geometry = photoContentStore.findImageGeometry(photoId);
+		if (geometry == null || geometry.userId() != userId) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Photo with ID " + photoId + " not found");
+		}
+		return geometry;
+	}
+
+	/**
+	 * @param width Image width, or null if unknown
+	 * @param height Image height, or null if unknown
+	 * @return true if an image of this size gets a tile pyramid
+	 */
+	public boolean isTiled(Integer width, Integer height) {
+		return width != null && height != null && (long) width * height >= minPixels;
+	}
+
+	private boolean isTiled(ImageGeometry geometry) {
+		return isTiled(geometry.width(), geometry.height());
+	}
+
+	private static boolean transposes(Integer orientation) {
+		return orientation != null && orientation >= 5 && orientation <= 8;
+	}
+
+	/**
+	 * @return the level at which the image is at full size: the number of halvings down
+	 *         to a single pixel
+	 */
+	static int maxLevel(int width, int height) {
+		int largest = Math.max(width, height);
+		return largest <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(largest - 1);
+	}
+
+	private static int ceilDiv(int value, int divisor) {
+		return (value + divisor - 1) / divisor;
+	}
+
+	private static String tileVariant(int level, int x, int y) {
+		return "tile-" + level + "-" + x + "_" + y;
+	}
+
+	private static byte[] descriptor(int width, int height) {
+		return ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+				+ "<Image xmlns=\"http://schemas.microsoft.com/deepzoom/2008\" Format=\"jpg\" Overlap=\"0\" TileSize=\""
+				+ TILE_SIZE + "\">\n"
+				+ "  <Size Width=\"" + width + "\" Height=\"" + height + "\"/>\n"
+				+ "</Image>\n").getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,232 @@
+package com.redligot.backend.service;
+
+import com.redligot.backend.dto.UploadJobDto;
+import com.redligot.backend.model.Photo;
+import com.redligot.backend.model.UploadJob;
+import com.redligot.backend.model.UploadJobItem;
+import com.redligot.backend.model.User;
+import com.redligot.backend.repository.GalleryRepository;
+import com.redligot.backend.repository.UploadJobRepository;
+import com.redligot.backend.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Service for asynchronous bulk uploads.
+ * 
+ * Submitting a job only spools the multipart files to a local staging directory and
+ * records them in the database; photos are persisted later by {@link #process(String)}
+ * on a background thread. Because both the staged files and the job rows are durable,
+ * unfinished jobs are picked up again after a restart.
+ */
+@Service
+public class UploadJobService {
+
+	private static final Logger logger = LoggerFactory.getLogger(UploadJobService.class);
+
+	private final UploadJobRepository uploadJobRepository;
+	private final UserRepository userRepository;
+	private final GalleryRepository galleryRepository;
+	private final PhotoService photoService;
+	private final TransactionTemplate transactionTemplate;
+	private final Path stagingRoot;
+	private final Set<String> runningJobs = ConcurrentHashMap.newKeySet();
+
+	public UploadJobService(UploadJobRepository uploadJobRepository, UserRepository userRepository,
+			GalleryRepository galleryRepository, PhotoService photoService, PlatformTransactionManager transactionManager,
+			@Value("${app.upload.staging-dir:./data/upload-staging}") String stagingDir) {
+		this.uploadJobRepository = uploadJobRepository;
+		this.userRepository = userRepository;
+		this.galleryRepository = galleryRepository;
+		this.photoService = photoService;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.stagingRoot = Paths.get(stagingDir).toAbsolutePath().normalize();
+	}
+
+	/**
+	 * Stage uploaded files and create a pending job for them.
+	 * 
+	 * @param files Array of uploaded image files
+	 * @param titles Array of titles (optional, will use filename if not provided)
+	 * @param descriptions Array of descriptions (optional)
+	 * @param userId Owner of the photos
+	 * @param galleryId Gallery ID (optional)
+	 * @return the created job
+	 * @throws ResponseStatusException if no files were given, the gallery is invalid or staging fails
+	 */
+	public UploadJob submit(MultipartFile[] files, String[] titles, String[] descriptions, Long userId, Long galleryId) {
+		if (files == null || files.length == 0) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
+					"At least one file must be provided");
+		}
+		if (galleryId != null && galleryRepository.findByIdAndUserId(galleryId, userId).isEmpty()) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, 
+					"Gallery not found or does not belong to user");
+		}
+
+		UploadJob job = new UploadJob();
+		job.setId(UUID.randomUUID().toString());
+		job.setUserId(userId);
+		job.setGalleryId(galleryId);
+		job.setStatus(UploadJob.Status.PENDING);
+
+		Path jobDir = stagingRoot.resolve(job.getId());
+		try {
+			Files.createDirectories(jobDir);
+			for (int i = 0; i < files.length; i++) {
+				MultipartFile file = files[i];
+				Path staged = jobDir.resolve(String.valueOf(i));
+				// For disk-backed parts this moves Tomcat's temp file instead of copying it
+				file.transferTo(staged.toFile());
+
+				UploadJobItem item = new UploadJobItem();
+				item.setItemIndex(i);
+				item.setTitle(titles != null && i < titles.length ? titles[i] : null);
+				item.setDescription(descriptions != null && i < descriptions.length ? descriptions[i] : null);
+				item.setOriginalFilename(file.getOriginalFilename());
+				item.setContentType(file.getContentType());
+				item.setSize(file.getSize());
+				item.setStagedPath(staged.toString());
+				job.addItem(item);
+			}
+			return uploadJobRepository.save(job);
+		} catch (IOException | RuntimeException e) {
+			deleteStagingDirectory(job.getId());
+			if (e instanceof ResponseStatusException rse) {
+				throw rse;
+			}
+			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, 
+					"Failed to stage uploaded files: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Get progress of a job owned by the user.
+	 * 
+	 * @param jobId Job ID
+	 * @param userId Owner user ID
+	 * @return job progress with per-file results
+	 * @throws ResponseStatusException if the job does not exist or belongs to another user
+	 */
+	public UploadJobDto getJob(String jobId, Long userId) {
+		UploadJob job = uploadJobRepository.findWithItemsById(jobId)
+				.filter(j -> j.getUserId().equals(userId))
+				.orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, 
+						"Upload job " + jobId + " not found"));
+		return new UploadJobDto(job);
+	}
+
+	/**
+	 * @return IDs of jobs that were not finished, oldest first
+	 */
+	public List<String> findUnfinishedJobIds() {
+		return uploadJobRepository.findIdsByStatusIn(List.of(UploadJob.Status.PENDING, UploadJob.Status.RUNNING));
+	}
+
+	/**
+	 * Persist every pending item of a job as a photo.
+	 * Each photo commits in one transaction with its item's status, so a restart resumes
+	 * with the first unfinished file and never stores a finished one twice.
+	 * 
+	 * @param jobId Job ID
+	 */
+	public void process(String jobId) {
+		if (!runningJobs.add(jobId)) {
+			return;
+		}
+		try {
+			UploadJob job = uploadJobRepository.findWithItemsById(jobId).orElse(null);
+			if (job == null) {
+				return;
+			}
+			User user = userRepository.findById(job.getUserId()).orElse(null);
+			job.setStatus(UploadJob.Status.RUNNING);
+			uploadJobRepository.save(job);
+
+			for (UploadJobItem item : job.getItems()) {
+				if (item.getStatus() != UploadJobItem.Status.PENDING) {
+					continue;
+				}
+				job.setProcessedFiles(job.getProcessedFiles() + 1);
+				try {
+					if (user == null) {
+						throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found");
+					}
+					// The photo row and the item's completion commit together, so a crash in between
+					// cannot leave a stored photo behind an item that a restart would upload again
+					transactionTemplate.executeWithoutResult(status -> {
+						Photo photo = photoService.createFromFile(item.getTitle(), item.getDescription(),
+								item.getOriginalFilename(), item.getContentType(), Paths.get(item.getStagedPath()),
+								user, job.getGalleryId());
+						item.setStatus(UploadJobItem.Status.COMPLETED);
+						item.setPhotoId(photo.getId());
+						uploadJobRepository.save(job);
+					});
+				} catch (ResponseStatusException e) {
+					markFailed(job, item, e.getReason());
+					uploadJobRepository.save(job);
+				} catch (RuntimeException e) {
+					logger.error("Upload job {} failed to persist {}", jobId, item.getOriginalFilename(), e);
+					markFailed(job, item, e.getMessage());
+					uploadJobRepository.save(job);
+				}
+				// Only once the outcome is durable; the path itself is cleared with the next save
+				deleteStagedFile(item);
+			}
+
+			job.setStatus(job.getFailedFiles() > 0 ? UploadJob.Status.COMPLETED_WITH_ERRORS : UploadJob.Status.COMPLETED);
+			job.setCompletedAt(LocalDateTime.now());
+			uploadJobRepository.save(job);
+			deleteStagingDirectory(jobId);
+			logger.info("Upload job {} finished: {} files, {} failed", jobId, job.getTotalFiles(), job.getFailedFiles());
+		} finally {
+			runningJobs.remove(jobId);
+		}
+	}
+
+	private void markFailed(UploadJob job, UploadJobItem item, String message) {
+		// A rolled back transaction may have completed the item in memory
+		item.setStatus(UploadJobItem.Status.FAILED);
+		item.setPhotoId(null);
+		item.setErrorMessage(message != null && message.length() > 500 ? message.substring(0, 500) : message);
+		job.setFailedFiles(job.getFailedFiles() + 1);
+	}
+
+	private void deleteStagedFile(UploadJobItem item) {
+		if (item.getStagedPath() == null) {
+			return;
+		}
+		try {
+			Files.deleteIfExists(Paths.get(item.getStagedPath()));
+			item.setStagedPath(null);
+		} catch (IOException e) {
+			logger.warn("Could not delete staged file {}: {}", item.getStagedPath(), e.getMessage());
+		}
+	}
+
+	private void deleteStagingDirectory(String jobId) {
+		try {
+			FileSystemUtils.deleteRecursively(stagingRoot.resolve(jobId));
+		} catch (IOException e) {
+			logger.warn("Could not delete staging directory for job {}: {}", jobId, e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package com.redligot.backend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Runs upload jobs on the application task executor and resumes jobs that were
+ * still pending or running when the application last stopped.
+ */
+@Component
+public class UploadJobWorker {
+
+	private static final Logger logger = LoggerFactory.getLogger(UploadJobWorker.class);
+
+	private final UploadJobService uploadJobService;
+
+	public UploadJobWorker(UploadJobService uploadJobService) {
+		this.uploadJobService = uploadJobService;
+	}
+
+	/**
+	 * Process a job in the background.
+	 * 
+	 * @param jobId Job ID
+	 */
+	@Async
+	public void run(String jobId) {
+		uploadJobService.process(jobId);
+	}
+
+	@Async
+	@EventListener(ApplicationReadyEvent.class)
+	public void resumeUnfinishedJobs() {
+		List<String> jobIds = uploadJobService.findUnfinishedJobIds();
+		if (!jobIds.isEmpty()) {
+			logger.info("Resuming {} unfinished upload jobs", jobIds.size());
+		}
+		// Run sequentially so a restart does not flood the small connection pool
+		for (String jobId : jobIds) {
+			uploadJobService.process(jobId);
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package com.redligot.backend.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * In-memory search indexes of the most recently used users' libraries.
+ *
+ * <p>An index is loaded on first use; loading holds off updates for that user only, so
+ * an update arriving meanwhile is applied after the load and must tolerate finding its
+ * photo already indexed. Beyond the cap the least recently used index is dropped and
+ * reloaded when next needed.</p>
+ *
+ * @param <T> Index type; must be safe for concurrent use
+ */
+final class UserIndexCache<T> {
+
+	private final int maxUsers;
+	private final LongFunction<T> loader;
+	private final Map<Long, Entry<T>> entries = new ConcurrentHashMap<>();
+
+	UserIndexCache(int maxUsers, LongFunction<T> loader) {
+		this.maxUsers = Math.max(1, maxUsers);
+		this.loader = loader;
+	}
+
+	/**
+	 * @return the user's index, loading it if needed
+	 */
+	T get(long userId) {
+		Entry<T> entry = entries.get(userId);
+		if (entry == null) {
+			entry = entries.computeIfAbsent(userId, id -> new Entry<>(loader.apply(id)));
+			evictIdle();
+		}
+		entry.lastUsed = System.nanoTime();
+		return entry.index;
+	}
+
+	/**
+	 * Apply an update to the user's index if it is loaded, or being loaded.
+	 */
+	void ifLoaded(long userId, Consumer<T> update) {
+		entries.computeIfPresent(userId, (id, entry) -> {
+			update.accept(entry.index);
+			return entry;
+		});
+	}
+
+	/**
+	 * Apply an update to every loaded index.
+	 */
+	void forEachLoaded(Consumer<T> update) {
+		for (Entry<T> entry : entries.values()) {
+			update.accept(entry.index);
+		}
+	}
+
+	/**
+	 * Visit every loaded index with its user ID.
+	 */
+	void forEachEntry(BiConsumer<Long, T> action) {
+		entries.forEach((userId, entry) -> action.accept(userId, entry.index));
+	}
+
+	/**
+	 * Drop a user's index so it is reloaded when next needed.
+	 */
+	void invalidate(long userId, T index) {
+		entries.computeIfPresent(userId, (id, entry) -> entry.index == index ? null : entry);
+	}
+
+	private void evictIdle() {
+		while (entries.size() > maxUsers) {
+			entries.entrySet().stream()
+					.min((a, b) -> Long.compare(a.getValue().lastUsed, b.getValue().lastUsed))
+					.ifPresent(eldest -> entries.remove(eldest.getKey(), eldest.getValue()));
+		}
+	}
+
+	private static final class Entry<T> {
+
+		final T index;
+		volatile long lastUsed = System.nanoTime();
+
+		Entry(T index) {
+			this.index = index;
+		}
+	}
+}
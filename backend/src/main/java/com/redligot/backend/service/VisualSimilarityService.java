@@ -0,0 +1,322 @@
+package com.redligot.backend.service;
+
+import com.redligot.backend.dto.PhotoDto;
+import com.redligot.backend.repository.PhotoContentStore;
+import com.redligot.backend.repository.VisualFeatureStore;
+import com.redligot.backend.repository.VisualFeatureStore.PhotoFeatures;
+import com.redligot.backend.security.ImageUrlSigner;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * "More like this" search over colour and texture.
+ *
+ * <p>Each photo gets a 64-byte feature vector: a hue/value colour histogram, a histogram
+ * of edge orientations and the edge density over a 4x4 grid, so photos of similar
+ * scenes land close together even when they share no pixels. It is computed by
+ * {@link ImageAnalysisService} and kept in <code>photos.features</code>. Searches run
+ * against an {@link HnswIndex} per user; a loaded index answers right away by scanning
+ * and is linked into the graph by {@link #buildIndexes()} in the background.</p>
+ */
+@Service
+public class VisualSimilarityService implements ImageAnalyzer {
+
+	/**
+	 * Stored in <code>photos.features_version</code>; raise it when the features change so
+	 * the backfill job recomputes existing photos.
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * Feature vector length in bytes.
+	 */
+	public static final int DIMENSIONS = 64;
+
+	/**
+	 * Squared distance between two unit vectors with no overlap, after quantization.
+	 */
+	private static final double MAX_DISTANCE = 2.0 * 255 * 255;
+
+	private static final int COLOR_BINS = 40;
+	private static final int ORIENTATION_BINS = 8;
+	private static final int GRID = 4;
+	private static final double TEXTURE_WEIGHT = 0.7;
+	private static final int BUILD_BATCH = 256;
+
+	/**
+	 * A photo that looks like the one searched for.
+	 *
+	 * @param similarity 1 for identical features down to 0 for nothing in common
+	 */
+	public record RelatedPhoto(PhotoDto photo, double similarity) {}
+
+	private final VisualFeatureStore visualFeatureStore;
+	private final PhotoContentStore photoContentStore;
+	private final ImageUrlSigner imageUrlSigner;
+	private final UserIndexCache<HnswIndex> indexes;
+	private final int maxLinks;
+	private final int efConstruction;
+	private final int efSearch;
+	private final long buildBudgetMs;
+
+	public VisualSimilarityService(VisualFeatureStore visualFeatureStore, PhotoContentStore photoContentStore,
+			ImageUrlSigner imageUrlSigner, @Value("${app.similarity.max-cached-users:32}") int maxCachedUsers,
+			@Value("${app.similarity.hnsw.max-links:16}") int maxLinks,
+			@Value("${app.similarity.hnsw.ef-construction:100}") int efConstruction,
+			@Value("${app.similarity.hnsw.ef-search:64}") int efSearch,
+			@Value("${app.similarity.hnsw.build-budget-ms:500}") long buildBudgetMs) {
+		this.visualFeatureStore = visualFeatureStore;
+		this.photoContentStore = photoContentStore;
+		this.imageUrlSigner = imageUrlSigner;
+		this.maxLinks = maxLinks;
+		this.efConstruction = efConstruction;
+		this.efSearch = efSearch;
+		this.buildBudgetMs = buildBudgetMs;
+		this.indexes = new UserIndexCache<>(maxCachedUsers, this::load);
+	}
+
+	@Override
+	public String name() {
+		return "features";
+	}
+
+	@Override
+	public int sourceDimension() {
+		return 64;
+	}
+
+	@Override
+	public String pendingCondition() {
+		return "features_version < " + VERSION;
+	}
+
+	@Override
+	public void analyze(long photoId, BufferedImage image) {
+		byte[] features = image != null ? features(image) : null;
+		Long userId = visualFeatureStore.save(photoId, features, VERSION);
+		if (userId != null) {
+			indexes.ifLoaded(userId, index -> {
+				if (features != null) {
+					index.add(photoId, features);
+				} else {
+					index.remove(photoId);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Find the photos of a user's library that look most like a given photo.
+	 *
+	 * @param photoId Photo ID; must belong to the user
+	 * @param userId Owner user ID
+	 * @param limit Most photos to return
+	 * @return related photos, most similar first
+	 * @throws ResponseStatusException 404 if the photo does not exist or belongs to another user,
+	 *         409 if it has not been analyzed yet, 422 if it cannot be analyzed
+	 */
+	public List<RelatedPhoto> findRelated(long photoId, long userId, int limit) {
+		PhotoFeatures photoFeatures = visualFeatureStore.find(photoId);
+		if (photoFeatures == null || photoFeatures.userId() != userId) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Photo with ID " + photoId + " not found");
+		}
+		if (photoFeatures.features() == null) {
+			if (photoFeatures.version() == 0) {
+				throw new ResponseStatusException(HttpStatus.CONFLICT,
+						"Photo " + photoId + " has not been analyzed yet; try again shortly");
+			}
+			throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+					"Photo " + photoId + " could not be decoded for comparison");
+		}
+
+		List<HnswIndex.Match> matches = indexes.get(userId)
+				.search(photoFeatures.features(), limit, Math.max(efSearch, limit + 1), photoId);
+		Map<Long, PhotoDto> photos = loadPhotos(matches.stream().map(HnswIndex.Match::photoId).toList(), userId);
+		List<RelatedPhoto> related = new ArrayList<>(matches.size());
+		for (HnswIndex.Match match : matches) {
+			PhotoDto photo = photos.get(match.photoId());
+			if (photo != null) {
+				related.add(new RelatedPhoto(photo, Math.max(0, 1 - match.distance() / MAX_DISTANCE)));
+			}
+		}
+		return related;
+	}
+
+	/**
+	 * Drop deleted photos from the loaded indexes.
+	 *
+	 * @param photoIds Deleted photo IDs
+	 */
+	public void remove(Collection<Long> photoIds) {
+		indexes.forEachLoaded(index -> {
+			for (Long photoId : photoIds) {
+				index.remove(photoId);
+			}
+		});
+	}
+
+	/**
+	 * Put restored photos back into their owner's index, if it is loaded.
+	 *
+	 * @param userId Owner user ID
+	 * @param photoIds Restored photo IDs
+	 */
+	public void restore(long userId, Collection<Long> photoIds) {
+		List<PhotoFeatures> features = photoIds.stream()
+				.map(visualFeatureStore::find)
+				.filter(photoFeatures -> photoFeatures != null && photoFeatures.features() != null)
+				.toList();
+		indexes.ifLoaded(userId, index -> features.forEach(
+				photoFeatures -> index.add(photoFeatures.photoId(), photoFeatures.features())));
+	}
+
+	/**
+	 * Link newly loaded and added photos into the graphs of the loaded indexes, for up to
+	 * the build budget per run. An index where more than 30% of the nodes are deleted
+	 * photos is dropped instead and rebuilt from the database when next used.
+	 */
+	@Scheduled(fixedDelayString = "${app.similarity.hnsw.build-interval-ms:1000}")
+	public void buildIndexes() {
+		long deadline = System.nanoTime() + buildBudgetMs * 1_000_000;
+		indexes.forEachEntry((userId, index) -> {
+			if (index.removedCount() > (index.size() + index.removedCount()) * 3L / 10) {
+				indexes.invalidate(userId, index);
+				return;
+			}
+			while (System.nanoTime() < deadline && index.buildStep(BUILD_BATCH)) {
+				// Each step takes the write lock briefly so searches interleave
+			}
+		});
+	}
+
+	/**
+	 * Compute the feature vector of an image: a 40-bin colour histogram (four grey
+	 * levels, then twelve hues at three brightness levels), an 8-bin histogram of Sobel
+	 * edge orientations weighted by strength and the edge strength in each cell of a 4x4
+	 * grid. Each part is normalized and square-rooted so that no single bin dominates,
+	 * the texture parts are weighted down against colour, and the whole vector is scaled
+	 * to unit length and quantized to bytes.
+	 *
+	 * @param image <code>TYPE_INT_RGB</code> image
+	 * @return {@link #DIMENSIONS} bytes, each read unsigned
+	 */
+	static byte[] features(BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		double[] color = new double[COLOR_BINS];
+		double[] orientation = new double[ORIENTATION_BINS];
+		double[] grid = new double[GRID * GRID];
+		int[] gridPixels = new int[GRID * GRID];
+		int[] luma = new int[pixels.length];
+
+		for (int i = 0; i < pixels.length; i++) {
+			int r = (pixels[i] >> 16) & 0xff;
+			int g = (pixels[i] >> 8) & 0xff;
+			int b = pixels[i] & 0xff;
+			luma[i] = (299 * r + 587 * g + 114 * b) / 1000;
+			color[colorBin(r, g, b)]++;
+		}
+
+		for (int y = 1; y < height - 1; y++) {
+			for (int x = 1; x < width - 1; x++) {
+				int i = y * width + x;
+				int gx = luma[i - width + 1] + 2 * luma[i + 1] + luma[i + width + 1]
+						- luma[i - width - 1] - 2 * luma[i - 1] - luma[i + width - 1];
+				int gy = luma[i + width - 1] + 2 * luma[i + width] + luma[i + width + 1]
+						- luma[i - width - 1] - 2 * luma[i - width] - luma[i - width + 1];
+				double magnitude = Math.sqrt(gx * gx + gy * gy);
+				double angle = Math.atan2(gy, gx);
+				if (angle < 0) {
+					angle += Math.PI;
+				}
+				orientation[Math.min(ORIENTATION_BINS - 1, (int) (angle / Math.PI * ORIENTATION_BINS))] += magnitude;
+				int cell = Math.min(GRID - 1, y * GRID / height) * GRID + Math.min(GRID - 1, x * GRID / width);
+				grid[cell] += magnitude;
+				gridPixels[cell]++;
+			}
+		}
+		for (int cell = 0; cell < grid.length; cell++) {
+			if (gridPixels[cell] > 0) {
+				grid[cell] /= gridPixels[cell];
+			}
+		}
+
+		double[] vector = new double[DIMENSIONS];
+		int offset = copyRootNormalized(color, vector, 0, 1.0);
+		offset = copyRootNormalized(orientation, vector, offset, TEXTURE_WEIGHT);
+		copyRootNormalized(grid, vector, offset, TEXTURE_WEIGHT);
+
+		double norm = 0;
+		for (double v : vector) {
+			norm += v * v;
+		}
+		norm = Math.sqrt(norm);
+		byte[] features = new byte[DIMENSIONS];
+		for (int i = 0; i < DIMENSIONS; i++) {
+			features[i] = (byte) Math.min(255, Math.round(norm > 0 ? vector[i] / norm * 255 : 0));
+		}
+		return features;
+	}
+
+	private static int colorBin(int r, int g, int b) {
+		int max = Math.max(r, Math.max(g, b));
+		int min = Math.min(r, Math.min(g, b));
+		float value = max / 255f;
+		float saturation = max == 0 ? 0 : (max - min) / (float) max;
+		if (value < 0.1f || saturation < 0.15f) {
+			return Math.min(3, (int) (value * 4));
+		}
+		float hue;
+		if (max == r) {
+			hue = ((g - b) / (float) (max - min) + 6) % 6;
+		} else if (max == g) {
+			hue = (b - r) / (float) (max - min) + 2;
+		} else {
+			hue = (r - g) / (float) (max - min) + 4;
+		}
+		int hueBin = Math.min(11, (int) (hue * 2));
+		int valueBin = value < 0.4f ? 0 : value < 0.7f ? 1 : 2;
+		return 4 + hueBin * 3 + valueBin;
+	}
+
+	private static int copyRootNormalized(double[] histogram, double[] vector, int offset, double weight) {
+		double sum = 0;
+		for (double v : histogram) {
+			sum += v;
+		}
+		for (int i = 0; i < histogram.length; i++) {
+			vector[offset + i] = sum > 0 ? Math.sqrt(histogram[i] / sum) * weight : 0;
+		}
+		return offset + histogram.length;
+	}
+
+	private HnswIndex load(long userId) {
+		HnswIndex index = new HnswIndex(DIMENSIONS, maxLinks, efConstruction, 1024);
+		visualFeatureStore.forEachFeatures(userId, (photoId, features) -> {
+			if (features.length == DIMENSIONS) {
+				index.add(photoId, features);
+			}
+		});
+		return index;
+	}
+
+	private Map<Long, PhotoDto> loadPhotos(List<Long> photoIds, long userId) {
+		// Metadata columns only: loading the entities would read every result's BLOB
+		return photoContentStore.findDetails(photoIds, userId).stream()
+				.map(details -> imageUrlSigner.applyTo(new PhotoDto(details)))
+				.collect(Collectors.toMap(PhotoDto::getId, Function.identity()));
+	}
+}
@@ -0,0 +1,78 @@
+package com.redligot.backend.web;
+
+import com.redligot.backend.repository.ImageBlobStore;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hands image bytes to nginx with <code>X-Accel-Redirect</code>.
+ *
+ * <p>The content is copied once into {@link ImageBlobStore}, on a volume nginx can
+ * read, and the response only names the file; nginx then serves it from an internal
+ * location with sendfile. The JVM does the authorization and one metadata lookup,
+ * and never holds the bytes of a cached blob. Only used when the proxy announces
+ * support with <code>X-Sendfile-Type: X-Accel-Redirect</code>, so requests that
+ * reach the backend directly still get the content.</p>
+ */
+@Component
+public class AccelRedirectResponder {
+
+	public static final String SENDFILE_TYPE_HEADER = "X-Sendfile-Type";
+	public static final String ACCEL_REDIRECT_HEADER = "X-Accel-Redirect";
+
+	private final ImageBlobStore blobStore;
+	private final boolean enabled;
+	private final String location;
+
+	public AccelRedirectResponder(ImageBlobStore blobStore,
+			@Value("${app.images.accel-redirect.enabled:false}") boolean enabled,
+			@Value("${app.images.accel-redirect.location:/internal/blobs/}") String location) {
+		this.blobStore = blobStore;
+		this.enabled = enabled;
+		this.location = location.endsWith("/") ? location : location + "/";
+	}
+
+	/**
+	 * @param request current request
+	 * @return true if the response can be offloaded to the proxy
+	 */
+	public boolean supports(HttpServletRequest request) {
+		return enabled && ACCEL_REDIRECT_HEADER.equalsIgnoreCase(request.getHeader(SENDFILE_TYPE_HEADER));
+	}
+
+	/**
+	 * Point the proxy at the blob for a photo variant, writing it first if needed.
+	 * Other headers (Content-Disposition, Cache-Control) set by the caller are kept.
+	 *
+	 * @param response current response
+	 * @param photoId Photo ID
+	 * @param version Content version
+	 * @param variant Variant name
+	 * @param contentType MIME type of the content
+	 * @param writer Produces the content if the blob does not exist yet
+	 * @return false if the writer had no content; nothing has been sent in that case
+	 */
+	public boolean send(HttpServletResponse response, long photoId, int version, String variant, String contentType,
+			ImageBlobStore.BlobWriter writer) {
+		String path = blobStore.ensure(photoId, version, variant, contentType, writer);
+		if (path == null) {
+			return false;
+		}
+		send(response, path, contentType);
+		return true;
+	}
+
+	/**
+	 * Point the proxy at a blob that is already stored.
+	 *
+	 * @param response current response
+	 * @param path Path returned by {@link ImageBlobStore#find}
+	 * @param contentType MIME type of the content
+	 */
+	public void send(HttpServletResponse response, String path, String contentType) {
+		response.setContentType(contentType);
+		response.setHeader(ACCEL_REDIRECT_HEADER, location + path);
+	}
+}
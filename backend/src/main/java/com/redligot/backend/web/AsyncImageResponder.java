@@ -0,0 +1,304 @@
+package com.redligot.backend.web;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.ServletResponseWrapper;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.catalina.connector.CoyoteOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes image bytes with Servlet 3.1 non-blocking I/O.
+ *
+ * <p>The request thread only starts the async cycle; bytes are written by the
+ * container from a {@link WriteListener} whenever the socket can accept more, one
+ * chunk at a time. A slow client therefore holds at most one chunk in the response
+ * buffer and no worker thread. The content itself stays referenced until the
+ * response completes, so the total held by in-flight responses is capped and
+ * requests over the cap are rejected with 503.</p>
+ *
+ * <p>Direct buffers (the off-heap image cache) are handed to Tomcat's output stream as
+ * buffers, so their bytes go from native memory to the socket buffer without passing
+ * through a heap array.</p>
+ */
+@Component
+public class AsyncImageResponder {
+
+	private static final Logger logger = LoggerFactory.getLogger(AsyncImageResponder.class);
+
+	private final boolean enabled;
+	private final int chunkSize;
+	private final long timeoutMs;
+	private final long maxInFlightBytes;
+	private final AtomicLong inFlightBytes = new AtomicLong();
+
+	public AsyncImageResponder(
+			@Value("${app.download.async.enabled:true}") boolean enabled,
+			@Value("${app.download.async.chunk-size:65536}") int chunkSize,
+			@Value("${app.download.async.timeout-ms:300000}") long timeoutMs,
+			@Value("${app.download.async.max-in-flight-bytes:268435456}") long maxInFlightBytes) {
+		this.enabled = enabled;
+		this.chunkSize = chunkSize;
+		this.timeoutMs = timeoutMs;
+		this.maxInFlightBytes = maxInFlightBytes;
+	}
+
+	/**
+	 * @param request current request
+	 * @return true if the response can be written asynchronously
+	 */
+	public boolean supports(HttpServletRequest request) {
+		return enabled && request.isAsyncSupported();
+	}
+
+	/**
+	 * @return bytes currently held by responses that have not finished draining
+	 */
+	public long getInFlightBytes() {
+		return inFlightBytes.get();
+	}
+
+	/**
+	 * Start an async response that drains {@code content} to the client.
+	 * Status and headers must be set on {@code response} before calling.
+	 *
+	 * @param request current request
+	 * @param response current response
+	 * @param content bytes to send, from position to limit
+	 * @throws ResponseStatusException 503 if too many bytes are already in flight
+	 * @throws IOException if the output stream cannot be obtained
+	 */
+	public void send(HttpServletRequest request, HttpServletResponse response, ByteBuffer content) throws IOException {
+		send(request, response, new ByteBuffer[] {content}, null);
+	}
+
+	/**
+	 * Start an async response that drains consecutive buffers to the client.
+	 * Status and headers must be set on {@code response} before calling.
+	 *
+	 * @param request current request
+	 * @param response current response
+	 * @param content buffers to send one after another, each from position to limit
+	 * @param onComplete run once the buffers are no longer needed, also when the
+	 *        response fails or is rejected; may be null
+	 * @throws ResponseStatusException 503 if too many bytes are already in flight
+	 * @throws IOException if the output stream cannot be obtained
+	 */
+	public void send(HttpServletRequest request, HttpServletResponse response, ByteBuffer[] content,
+			Runnable onComplete) throws IOException {
+		long length = 0;
+		for (ByteBuffer chunk : content) {
+			length += chunk.remaining();
+		}
+		if (!reserve(length)) {
+			if (onComplete != null) {
+				onComplete.run();
+			}
+			response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+			throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many downloads in progress");
+		}
+
+		ServletOutputStream out;
+		AsyncContext asyncContext;
+		try {
+			out = outputStream(response, content);
+			asyncContext = request.startAsync();
+		} catch (IOException | RuntimeException e) {
+			inFlightBytes.addAndGet(-length);
+			if (onComplete != null) {
+				onComplete.run();
+			}
+			throw e;
+		}
+		asyncContext.setTimeout(timeoutMs);
+		ChunkedWriter writer = new ChunkedWriter(asyncContext, out, content, length, onComplete);
+		asyncContext.addListener(writer);
+		response.setBufferSize(chunkSize);
+		response.setContentLengthLong(length);
+		writer.out.setWriteListener(writer);
+	}
+
+	/**
+	 * Write consecutive buffers with blocking I/O, for requests that cannot go async.
+	 *
+	 * @param response current response
+	 * @param content buffers to send one after another, each from position to limit
+	 * @throws IOException if writing fails
+	 */
+	public void write(HttpServletResponse response, ByteBuffer[] content) throws IOException {
+		long length = 0;
+		for (ByteBuffer chunk : content) {
+			length += chunk.remaining();
+		}
+		response.setContentLengthLong(length);
+		// Commit through the wrappers first so header writers still run
+		response.flushBuffer();
+		ServletOutputStream out = outputStream(response, content);
+		byte[] scratch = null;
+		for (ByteBuffer chunk : content) {
+			ByteBuffer remaining = chunk.duplicate();
+			if (out instanceof CoyoteOutputStream coyote) {
+				coyote.write(remaining);
+			} else if (remaining.hasArray()) {
+				out.write(remaining.array(), remaining.arrayOffset() + remaining.position(), remaining.remaining());
+			} else {
+				if (scratch == null) {
+					scratch = new byte[chunkSize];
+				}
+				while (remaining.hasRemaining()) {
+					int count = Math.min(scratch.length, remaining.remaining());
+					remaining.get(scratch, 0, count);
+					out.write(scratch, 0, count);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The container's own output stream when there are direct buffers to write, since
+	 * only it accepts {@link ByteBuffer}s; response wrappers (e.g. Spring Security's)
+	 * only ever see <code>byte[]</code> writes. The wrappers have done their work once
+	 * the headers are out (async writes start after the filter chain has returned), so
+	 * bypassing them for the body loses nothing.
+	 */
+	private static ServletOutputStream outputStream(HttpServletResponse response, ByteBuffer[] content)
+			throws IOException {
+		boolean direct = false;
+		for (ByteBuffer chunk : content) {
+			direct |= chunk.isDirect();
+		}
+		if (direct) {
+			ServletResponse raw = response;
+			while (raw instanceof ServletResponseWrapper wrapper) {
+				raw = wrapper.getResponse();
+			}
+			ServletOutputStream out = raw.getOutputStream();
+			if (out instanceof CoyoteOutputStream) {
+				return out;
+			}
+		}
+		return response.getOutputStream();
+	}
+
+	private boolean reserve(long bytes) {
+		while (true) {
+			long current = inFlightBytes.get();
+			// Always admit a single response even if it alone exceeds the cap
+			if (current > 0 && current + bytes > maxInFlightBytes) {
+				return false;
+			}
+			if (inFlightBytes.compareAndSet(current, current + bytes)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Per-connection state: the remaining content and a chunk-sized scratch
+	 * buffer used when the content is neither array-backed nor writable as a buffer.
+	 */
+	private final class ChunkedWriter implements WriteListener, AsyncListener {
+
+		private final AsyncContext asyncContext;
+		private final ServletOutputStream out;
+		private final ByteBuffer[] content;
+		private final long reserved;
+		private final Runnable onComplete;
+		private final AtomicBoolean released = new AtomicBoolean();
+		private int current;
+		private byte[] scratch;
+
+		ChunkedWriter(AsyncContext asyncContext, ServletOutputStream out, ByteBuffer[] content, long reserved,
+				Runnable onComplete) {
+			this.asyncContext = asyncContext;
+			this.out = out;
+			this.content = content;
+			this.reserved = reserved;
+			this.onComplete = onComplete;
+		}
+
+		@Override
+		public void onWritePossible() throws IOException {
+			while (out.isReady()) {
+				while (current < content.length && !content[current].hasRemaining()) {
+					current++;
+				}
+				if (current == content.length) {
+					asyncContext.complete();
+					return;
+				}
+				writeChunk(content[current]);
+			}
+		}
+
+		private void writeChunk(ByteBuffer buffer) throws IOException {
+			int length = Math.min(chunkSize, buffer.remaining());
+			if (buffer.hasArray()) {
+				out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+			} else if (out instanceof CoyoteOutputStream coyote) {
+				coyote.write(buffer.slice(buffer.position(), length));
+			} else {
+				if (scratch == null) {
+					scratch = new byte[chunkSize];
+				}
+				buffer.get(buffer.position(), scratch, 0, length);
+				out.write(scratch, 0, length);
+			}
+			buffer.position(buffer.position() + length);
+		}
+
+		@Override
+		public void onError(Throwable t) {
+			// Typically the client went away mid-transfer
+			logger.debug("Async image write failed: {}", t.getMessage());
+			release();
+			asyncContext.complete();
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) {
+			release();
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) {
+			logger.debug("Async image write timed out after {} ms", timeoutMs);
+			release();
+			asyncContext.complete();
+		}
+
+		@Override
+		public void onError(AsyncEvent event) {
+			release();
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+		}
+
+		private void release() {
+			if (released.compareAndSet(false, true)) {
+				inFlightBytes.addAndGet(-reserved);
+				if (onComplete != null) {
+					onComplete.run();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package com.redligot.backend.web;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Servlet filter that classifies API requests and admits them through
+ * {@link RequestBulkhead}. Saturated classes get 503 with Retry-After.
+ *
+ * <p>Registered ahead of Spring Security so rejected requests never reach the
+ * JWT filter, which itself needs a database connection to load the user.</p>
+ */
+public class BulkheadFilter extends OncePerRequestFilter {
+
+	private final RequestBulkhead bulkhead;
+	private final int retryAfterSeconds;
+
+	public BulkheadFilter(RequestBulkhead bulkhead, int retryAfterSeconds) {
+		this.bulkhead = bulkhead;
+		this.retryAfterSeconds = retryAfterSeconds;
+	}
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		String path = request.getRequestURI();
+		return !(path.startsWith("/api/") || path.startsWith("/img/")) || path.startsWith("/api/health")
+				|| HttpMethod.OPTIONS.matches(request.getMethod());
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		RequestBulkhead.RequestClass requestClass = classify(request);
+		RequestBulkhead.Permit permit;
+		try {
+			permit = bulkhead.tryAcquire(requestClass);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			reject(response, requestClass);
+			return;
+		}
+		if (permit == null) {
+			reject(response, requestClass);
+			return;
+		}
+
+		boolean async = false;
+		try {
+			filterChain.doFilter(request, response);
+			if (request.isAsyncStarted()) {
+				// Async downloads keep their slot until the last byte has drained
+				request.getAsyncContext().addListener(new ReleaseOnCompletion(permit));
+				async = true;
+			}
+		} finally {
+			if (!async) {
+				permit.release();
+			}
+		}
+	}
+
+	/**
+	 * Map a request to its bulkhead.
+	 *
+	 * @param request incoming request
+	 * @return request class used for admission
+	 */
+	static RequestBulkhead.RequestClass classify(HttpServletRequest request) {
+		String method = request.getMethod();
+		String path = request.getRequestURI();
+		String contentType = request.getContentType();
+
+		if (path.endsWith(".zip") && HttpMethod.POST.matches(method)) {
+			// Selection exports post their ID list but behave like any other download
+			return RequestBulkhead.RequestClass.DOWNLOAD;
+		}
+		if (HttpMethod.GET.matches(method) || HttpMethod.HEAD.matches(method)) {
+			if (path.endsWith("/file") || path.endsWith("/profile-picture") || path.endsWith(".zip")
+					|| (path.startsWith("/img/") && path.endsWith("/original"))) {
+				return RequestBulkhead.RequestClass.DOWNLOAD;
+			}
+			return RequestBulkhead.RequestClass.INTERACTIVE;
+		}
+		boolean multipart = contentType != null && contentType.toLowerCase().startsWith("multipart/");
+		if (multipart || path.contains("/bulk") || path.startsWith("/api/uploads") || path.endsWith("/import")) {
+			return RequestBulkhead.RequestClass.BULK_WRITE;
+		}
+		return RequestBulkhead.RequestClass.INTERACTIVE;
+	}
+
+	private void reject(HttpServletResponse response, RequestBulkhead.RequestClass requestClass) throws IOException {
+		response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+		response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+		response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		response.getWriter().write("{\"status\":503,\"error\":\"Service Unavailable\",\"message\":\"Server is busy with "
+				+ requestClass.name().toLowerCase().replace('_', ' ') + " requests, please retry\"}");
+	}
+
+	private static final class ReleaseOnCompletion implements AsyncListener {
+
+		private final RequestBulkhead.Permit permit;
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		ReleaseOnCompletion(RequestBulkhead.Permit permit) {
+			this.permit = permit;
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) {
+			release();
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) {
+			release();
+		}
+
+		@Override
+		public void onError(AsyncEvent event) {
+			release();
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+		}
+
+		private void release() {
+			if (released.compareAndSet(false, true)) {
+				permit.release();
+			}
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package com.redligot.backend.web;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control for API requests, partitioned by request class.
+ *
+ * <p>Each {@link RequestClass} has its own concurrency limit so bulk uploads cannot
+ * starve listings and thumbnails. Queue timeouts are short and shrink further when
+ * Hikari reports threads already waiting for a connection. Downloads and bulk writes
+ * also share one permit per connection outside the interactive reserve, taken in the
+ * same step that admits them, and are rejected outright once those are held.</p>
+ */
+@Component
+public class RequestBulkhead {
+
+	private static final Logger logger = LoggerFactory.getLogger(RequestBulkhead.class);
+
+	/**
+	 * Request classes with independent limits.
+	 */
+	public enum RequestClass {
+		INTERACTIVE,
+		DOWNLOAD,
+		BULK_WRITE
+	}
+
+	/**
+	 * Outcome of an admission attempt; {@link #release()} must be called once when admitted.
+	 */
+	public final class Permit {
+		private final RequestClass requestClass;
+
+		private Permit(RequestClass requestClass) {
+			this.requestClass = requestClass;
+		}
+
+		public RequestClass getRequestClass() {
+			return requestClass;
+		}
+
+		public void release() {
+			if (requestClass != RequestClass.INTERACTIVE) {
+				sharedConnections.release();
+			}
+			limits.get(requestClass).release();
+		}
+	}
+
+	private final DataSource dataSource;
+	private final Map<RequestClass, Semaphore> limits = new EnumMap<>(RequestClass.class);
+	private final Map<RequestClass, Long> queueTimeouts = new EnumMap<>(RequestClass.class);
+	// Connections downloads and bulk writes may hold between them
+	private final Semaphore sharedConnections;
+	private volatile HikariPoolMXBean pool;
+
+	public RequestBulkhead(
+			DataSource dataSource,
+			@Value("${app.bulkhead.interactive.max-concurrent:64}") int interactiveLimit,
+			@Value("${app.bulkhead.interactive.queue-timeout-ms:2000}") long interactiveTimeout,
+			@Value("${app.bulkhead.download.max-concurrent:32}") int downloadLimit,
+			@Value("${app.bulkhead.download.queue-timeout-ms:1000}") long downloadTimeout,
+			@Value("${app.bulkhead.bulk-write.max-concurrent:0}") int bulkWriteLimit,
+			@Value("${app.bulkhead.bulk-write.queue-timeout-ms:500}") long bulkWriteTimeout,
+			@Value("${app.bulkhead.reserved-interactive-connections:1}") int reservedInteractiveConnections,
+			@Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize) {
+		this.dataSource = dataSource;
+		int shared = poolSize - reservedInteractiveConnections;
+		if (shared < 1) {
+			logger.warn("Pool size {} leaves nothing outside {} reserved connections; downloads and bulk writes share 1",
+					poolSize, reservedInteractiveConnections);
+			shared = 1;
+		}
+		this.sharedConnections = new Semaphore(shared);
+		// By default bulk writes may use every connection except the interactive reserve
+		int writes = bulkWriteLimit > 0 ? bulkWriteLimit : shared;
+		limits.put(RequestClass.INTERACTIVE, new Semaphore(interactiveLimit, true));
+		limits.put(RequestClass.DOWNLOAD, new Semaphore(downloadLimit, true));
+		limits.put(RequestClass.BULK_WRITE, new Semaphore(writes, true));
+		queueTimeouts.put(RequestClass.INTERACTIVE, interactiveTimeout);
+		queueTimeouts.put(RequestClass.DOWNLOAD, downloadTimeout);
+		queueTimeouts.put(RequestClass.BULK_WRITE, bulkWriteTimeout);
+		logger.info("Request bulkheads: interactive={}, download={}, bulk-write={}, shared connections={}",
+				interactiveLimit, downloadLimit, writes, shared);
+	}
+
+	/**
+	 * Try to admit a request of the given class.
+	 *
+	 * @param requestClass class of the incoming request
+	 * @return a permit, or null if the bulkhead is saturated
+	 * @throws InterruptedException if interrupted while queued
+	 */
+	public Permit tryAcquire(RequestClass requestClass) throws InterruptedException {
+		Semaphore limit = limits.get(requestClass);
+		if (!limit.tryAcquire(queueTimeout(requestClass, poolMetrics()), TimeUnit.MILLISECONDS)) {
+			return null;
+		}
+		// Never queue for a connection share: the reserve is what is left when none is free
+		if (requestClass != RequestClass.INTERACTIVE && !sharedConnections.tryAcquire()) {
+			limit.release();
+			return null;
+		}
+		return new Permit(requestClass);
+	}
+
+	/**
+	 * @param requestClass class of request
+	 * @return number of further requests of that class that would be admitted right now
+	 */
+	public int availablePermits(RequestClass requestClass) {
+		return limits.get(requestClass).availablePermits();
+	}
+
+	/**
+	 * The configured timeout applies while connections are available. Once requests
+	 * are already waiting on the pool, queuing longer only adds latency, so the
+	 * timeout is divided by the number of waiters.
+	 */
+	private long queueTimeout(RequestClass requestClass, HikariPoolMXBean metrics) {
+		long timeout = queueTimeouts.get(requestClass);
+		if (metrics == null) {
+			return timeout;
+		}
+		int waiting = metrics.getThreadsAwaitingConnection();
+		return waiting > 0 ? timeout / (1 + waiting) : timeout;
+	}
+
+	private HikariPoolMXBean poolMetrics() {
+		HikariPoolMXBean current = pool;
+		if (current == null) {
+			try {
+				if (dataSource.isWrapperFor(HikariDataSource.class)) {
+					// Null until the pool has started
+					current = dataSource.unwrap(HikariDataSource.class).getHikariPoolMXBean();
+					pool = current;
+				}
+			} catch (SQLException e) {
+				logger.debug("Hikari pool metrics unavailable: {}", e.getMessage());
+			}
+		}
+		return current;
+	}
+}
@@ -0,0 +1,135 @@
+package com.redligot.backend.web;
+
+import com.redligot.backend.security.ImageUrlSigner;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Servlet filter that admits <code>/img/**</code> requests carrying a valid, unexpired
+ * signature from {@link ImageUrlSigner} and rejects everything else with 403.
+ *
+ * <p>Registered ahead of Spring Security: the check is a single HMAC, so image
+ * requests never parse a JWT or load a user, and <code>&lt;img src&gt;</code> works
+ * without an <code>Authorization</code> header. Admitted requests are marked with
+ * {@link #VERIFIED_ATTRIBUTE} for the controller. nginx serves cached images only after
+ * asking {@link #VERIFY_PATH}, so a cache hit still needs a valid link.</p>
+ */
+public class SignedImageFilter extends OncePerRequestFilter {
+
+	/**
+	 * Request attribute holding the verified expiry (epoch seconds) as a {@link Long}.
+	 */
+	public static final String VERIFIED_ATTRIBUTE = SignedImageFilter.class.getName() + ".EXPIRES";
+
+	/**
+	 * Endpoint for nginx <code>auth_request</code>, which checks the URL given in
+	 * {@link #ORIGINAL_URI_HEADER} without serving it.
+	 */
+	public static final String VERIFY_PATH = "/img/verify";
+	public static final String ORIGINAL_URI_HEADER = "X-Original-URI";
+
+	private final ImageUrlSigner signer;
+
+	public SignedImageFilter(ImageUrlSigner signer) {
+		this.signer = signer;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		String path = request.getRequestURI().substring(request.getContextPath().length());
+		if (VERIFY_PATH.equals(path)) {
+			verifyOriginal(request, response);
+			return;
+		}
+		if (!path.startsWith(ImageUrlSigner.PATH_PREFIX)) {
+			filterChain.doFilter(request, response);
+			return;
+		}
+		String error = check(path, request.getParameter("v"), request.getParameter("exp"), request.getParameter("sig"));
+		if (error != null) {
+			reject(response, error);
+			return;
+		}
+		request.setAttribute(VERIFIED_ATTRIBUTE, Long.parseLong(request.getParameter("exp")));
+		filterChain.doFilter(request, response);
+	}
+
+	/**
+	 * Answer an nginx <code>auth_request</code> subrequest for the URL in
+	 * {@link #ORIGINAL_URI_HEADER}: 204 if it may be served (from nginx's cache), 403 if not.
+	 */
+	private void verifyOriginal(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		String uri = request.getHeader(ORIGINAL_URI_HEADER);
+		if (uri == null) {
+			reject(response, "Missing " + ORIGINAL_URI_HEADER + " header");
+			return;
+		}
+		int question = uri.indexOf('?');
+		String path = question < 0 ? uri : uri.substring(0, question);
+		Map<String, String> query = new HashMap<>();
+		if (question >= 0) {
+			for (String pair : uri.substring(question + 1).split("&")) {
+				int eq = pair.indexOf('=');
+				if (eq > 0) {
+					query.putIfAbsent(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+							URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+				}
+			}
+		}
+		String error = check(path, query.get("v"), query.get("exp"), query.get("sig"));
+		if (error != null) {
+			reject(response, error);
+			return;
+		}
+		response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+	}
+
+	/**
+	 * @return why the URL is rejected, or null if it is valid
+	 */
+	private String check(String path, String v, String exp, String sig) {
+		if (!path.startsWith(ImageUrlSigner.PATH_PREFIX)) {
+			return "Invalid image URL";
+		}
+		String[] segments = path.substring(ImageUrlSigner.PATH_PREFIX.length()).split("/");
+		if (segments.length != 2) {
+			return "Invalid image URL";
+		}
+		long photoId;
+		int version;
+		long expires;
+		try {
+			photoId = Long.parseLong(segments[0]);
+			version = Integer.parseInt(v);
+			expires = Long.parseLong(exp);
+		} catch (NumberFormatException e) {
+			return "Invalid image URL";
+		}
+		if (!signer.verify(photoId, segments[1], version, expires, sig)) {
+			return "Invalid image URL signature";
+		}
+		if (expires < System.currentTimeMillis() / 1000) {
+			return "Image URL has expired";
+		}
+		return null;
+	}
+
+	private void reject(HttpServletResponse response, String message) throws IOException {
+		response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+		response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+		response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		response.getWriter().write("{\"status\":403,\"error\":\"Forbidden\",\"message\":\"" + message + "\"}");
+	}
+}
@@ -0,0 +1,337 @@
+package com.redligot.backend.web;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Pull parser for <code>multipart/form-data</code> bodies.
+ *
+ * <p>Parts are returned one at a time in the order they arrive, and each part's
+ * content is exposed as an {@link InputStream} that reads straight from the request
+ * body up to the next boundary. Nothing is spooled to disk and at most one read
+ * buffer is held, so a file part can be handed to a consumer while the client is
+ * still sending it. A part must be consumed (or is skipped) before the next one is
+ * returned.</p>
+ */
+public class StreamingMultipartReader {
+
+	private static final int BUFFER_SIZE = 16 * 1024;
+	private static final int MAX_HEADER_BYTES = 8 * 1024;
+
+	private final InputStream in;
+	private final byte[] delimiter;
+	private final byte[] buffer;
+	private int head;
+	private int tail;
+	private boolean eof;
+	private boolean finished;
+	private PartInputStream current;
+
+	/**
+	 * @param in request body
+	 * @param boundary boundary parameter of the request content type
+	 */
+	public StreamingMultipartReader(InputStream in, String boundary) {
+		this.in = in;
+		this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+		this.buffer = new byte[Math.max(BUFFER_SIZE, delimiter.length * 2)];
+		// The body starts with "--boundary"; seed a CRLF so every delimiter looks the same
+		buffer[0] = '\r';
+		buffer[1] = '\n';
+		this.tail = 2;
+	}
+
+	/**
+	 * Extract the boundary from a <code>multipart/form-data</code> content type.
+	 *
+	 * @param contentType request content type
+	 * @return the boundary, or null if the content type is not multipart or has none
+	 */
+	public static String boundaryOf(String contentType) {
+		if (contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith("multipart/")) {
+			return null;
+		}
+		for (String param : contentType.split(";")) {
+			String trimmed = param.trim();
+			if (trimmed.toLowerCase(Locale.ROOT).startsWith("boundary=")) {
+				String value = trimmed.substring("boundary=".length());
+				if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")) {
+					value = value.substring(1, value.length() - 1);
+				}
+				return value.isEmpty() ? null : value;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Advance to the next part, skipping whatever is left of the current one.
+	 *
+	 * @return the next part, or null after the closing boundary
+	 * @throws IOException if the body is malformed or ends early
+	 */
+	public Part next() throws IOException {
+		if (finished) {
+			return null;
+		}
+		if (current == null) {
+			// Preamble before the first boundary
+			current = new PartInputStream();
+		}
+		current.skipRemaining();
+
+		if (!ensure(2)) {
+			throw new IOException("Unexpected end of multipart body after boundary");
+		}
+		if (buffer[head] == '-' && buffer[head + 1] == '-') {
+			finished = true;
+			current = null;
+			return null;
+		}
+		skipToLineEnd();
+		String headers = readHeaders();
+		current = new PartInputStream();
+		return new Part(headers, current);
+	}
+
+	private void skipToLineEnd() throws IOException {
+		// Transport padding may follow the boundary before CRLF
+		while (true) {
+			if (!ensure(1)) {
+				throw new IOException("Unexpected end of multipart body after boundary");
+			}
+			if (buffer[head++] == '\n') {
+				return;
+			}
+		}
+	}
+
+	private String readHeaders() throws IOException {
+		ByteArrayOutputStream headers = new ByteArrayOutputStream();
+		int lineLength = 0;
+		while (true) {
+			if (!ensure(1)) {
+				throw new IOException("Unexpected end of multipart body in part headers");
+			}
+			byte b = buffer[head++];
+			if (b == '\n') {
+				if (lineLength == 0) {
+					return headers.toString(StandardCharsets.UTF_8);
+				}
+				headers.write('\n');
+				lineLength = 0;
+			} else if (b != '\r') {
+				headers.write(b);
+				lineLength++;
+			}
+			if (headers.size() > MAX_HEADER_BYTES) {
+				throw new IOException("Multipart part headers exceed " + MAX_HEADER_BYTES + " bytes");
+			}
+		}
+	}
+
+	/**
+	 * Make at least {@code count} unread bytes available.
+	 *
+	 * @return false if the body ended first
+	 */
+	private boolean ensure(int count) throws IOException {
+		while (tail - head < count) {
+			if (eof) {
+				return false;
+			}
+			if (head > 0) {
+				System.arraycopy(buffer, head, buffer, 0, tail - head);
+				tail -= head;
+				head = 0;
+			}
+			int read = in.read(buffer, tail, buffer.length - tail);
+			if (read < 0) {
+				eof = true;
+			} else {
+				tail += read;
+			}
+		}
+		return true;
+	}
+
+	private int indexOfDelimiter() {
+		int last = tail - delimiter.length;
+		outer:
+		for (int i = head; i <= last; i++) {
+			for (int j = 0; j < delimiter.length; j++) {
+				if (buffer[i + j] != delimiter[j]) {
+					continue outer;
+				}
+			}
+			return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * A single part: its headers and a stream over its content.
+	 */
+	public static final class Part {
+
+		private final String name;
+		private final String filename;
+		private final String contentType;
+		private final InputStream content;
+
+		Part(String headers, InputStream content) {
+			String disposition = null;
+			String type = null;
+			for (String line : headers.split("\n")) {
+				int colon = line.indexOf(':');
+				if (colon < 0) {
+					continue;
+				}
+				String header = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+				String value = line.substring(colon + 1).trim();
+				if (header.equals("content-disposition")) {
+					disposition = value;
+				} else if (header.equals("content-type")) {
+					type = value;
+				}
+			}
+			this.name = dispositionParam(disposition, "name");
+			this.filename = dispositionParam(disposition, "filename");
+			this.contentType = type;
+			this.content = content;
+		}
+
+		/**
+		 * @return form field name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return client filename, or null for plain form fields
+		 */
+		public String getFilename() {
+			return filename;
+		}
+
+		/**
+		 * @return declared content type, or null
+		 */
+		public String getContentType() {
+			return contentType;
+		}
+
+		/**
+		 * @return true if the part carries a file
+		 */
+		public boolean isFile() {
+			return filename != null;
+		}
+
+		/**
+		 * @return the part content; valid until {@link StreamingMultipartReader#next()} is called again
+		 */
+		public InputStream getInputStream() {
+			return content;
+		}
+
+		/**
+		 * Read a form field value.
+		 *
+		 * @param maxBytes largest value accepted
+		 * @return the value decoded as UTF-8
+		 * @throws IOException if the value is larger than {@code maxBytes}
+		 */
+		public String readString(int maxBytes) throws IOException {
+			byte[] value = content.readNBytes(maxBytes + 1);
+			if (value.length > maxBytes) {
+				throw new IOException("Form field " + name + " exceeds " + maxBytes + " bytes");
+			}
+			return new String(value, StandardCharsets.UTF_8);
+		}
+
+		private static String dispositionParam(String disposition, String param) {
+			if (disposition == null) {
+				return null;
+			}
+			for (String token : disposition.split(";")) {
+				String trimmed = token.trim();
+				int eq = trimmed.indexOf('=');
+				if (eq < 0 || !trimmed.substring(0, eq).trim().equalsIgnoreCase(param)) {
+					continue;
+				}
+				String value = trimmed.substring(eq + 1).trim();
+				if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")) {
+					value = value.substring(1, value.length() - 1);
+				}
+				// Browsers may send a full path on some platforms
+				if (param.equals("filename")) {
+					value = value.substring(Math.max(value.lastIndexOf('/'), value.lastIndexOf('\\')) + 1);
+				}
+				return value;
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Reads from the shared buffer until the next delimiter, never past it.
+	 */
+	private final class PartInputStream extends InputStream {
+
+		private boolean done;
+
+		@Override
+		public int read() throws IOException {
+			byte[] one = new byte[1];
+			return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (done || current != this) {
+				return -1;
+			}
+			if (len == 0) {
+				return 0;
+			}
+			while (true) {
+				ensure(delimiter.length);
+				int found = indexOfDelimiter();
+				int available;
+				if (found >= 0) {
+					available = found - head;
+					if (available == 0) {
+						head += delimiter.length;
+						done = true;
+						return -1;
+					}
+				} else if (eof) {
+					throw new IOException("Unexpected end of multipart body; closing boundary missing");
+				} else {
+					// The tail could hold the start of a delimiter split across reads
+					available = tail - head - (delimiter.length - 1);
+				}
+				if (available > 0) {
+					int count = Math.min(len, available);
+					System.arraycopy(buffer, head, b, off, count);
+					head += count;
+					return count;
+				}
+				// Not enough unread bytes to rule out a delimiter; compact and read more
+				ensure(tail - head + 1);
+			}
+		}
+
+		void skipRemaining() throws IOException {
+			byte[] discard = new byte[BUFFER_SIZE];
+			while (read(discard, 0, discard.length) >= 0) {
+				// drain
+			}
+		}
+	}
+}
@@ -0,0 +1,16 @@
+-- Migration: V10__Gallery_Covers
+-- Description: Cached 2x2 cover mosaic of each gallery's first four photos.
+-- cover_version fingerprints the photos and content versions the mosaic was drawn
+-- from; a cover whose fingerprint no longer matches the gallery is redrawn.
+
+CREATE TABLE gallery_covers (
+    gallery_id BIGINT NOT NULL PRIMARY KEY,
+    cover_version VARCHAR(16) NOT NULL,
+    size BIGINT NOT NULL,
+    data BLOB(1M) NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT TIMESTAMP NOT NULL,
+    FOREIGN KEY (gallery_id) REFERENCES galleries(id) ON DELETE CASCADE
+);
+
+-- Covers finding a gallery's first photos in ID order
+CREATE INDEX idx_photos_gallery_id_id ON photos(gallery_id, id);
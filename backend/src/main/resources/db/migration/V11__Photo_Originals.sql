@@ -0,0 +1,13 @@
+-- Migration: V11__Photo_Originals
+-- Description: Uploaded bytes of photos whose stored content was optimized at ingest,
+-- kept only when app.images.ingest.keep-original is set. Rows exist only for photos
+-- whose stored content differs from the upload.
+
+CREATE TABLE photo_originals (
+    photo_id BIGINT NOT NULL PRIMARY KEY,
+    content_type VARCHAR(100) NOT NULL,
+    size BIGINT NOT NULL,
+    data BLOB(10M) NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT TIMESTAMP NOT NULL,
+    FOREIGN KEY (photo_id) REFERENCES photos(id) ON DELETE CASCADE
+);
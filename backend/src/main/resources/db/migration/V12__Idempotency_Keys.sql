@@ -0,0 +1,19 @@
+-- Migration: V12__Idempotency_Keys
+-- Description: Idempotency-Key header values of upload and update requests, with the
+-- response to replay when a request is retried. A key is IN_PROGRESS while the first
+-- request runs and COMPLETED once its response is stored; expired keys are purged.
+
+CREATE TABLE idempotency_keys (
+    user_id BIGINT NOT NULL,
+    idempotency_key VARCHAR(255) NOT NULL,
+    request_fingerprint VARCHAR(300) NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    response_status INTEGER,
+    response_body CLOB(1M),
+    created_at TIMESTAMP DEFAULT CURRENT TIMESTAMP NOT NULL,
+    expires_at TIMESTAMP NOT NULL,
+    PRIMARY KEY (user_id, idempotency_key),
+    FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
+);
+
+CREATE INDEX idx_idempotency_keys_expires_at ON idempotency_keys(expires_at);
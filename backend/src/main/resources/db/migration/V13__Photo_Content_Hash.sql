@@ -0,0 +1,8 @@
+-- Migration: V13__Photo_Content_Hash
+-- Description: SHA-256 of each photo's bytes as uploaded, so clients can ask which
+-- files the user already has before sending them. Existing rows are hashed by the
+-- background backfill; the index serves both per-user lookups and the backfill scan.
+
+ALTER TABLE photos ADD COLUMN content_sha256 CHAR(64);
+
+CREATE INDEX idx_photos_content_sha256 ON photos(content_sha256, id);
@@ -0,0 +1,8 @@
+-- Migration: V14__Photo_Soft_Delete
+-- Description: Deleting a photo only sets deleted_at, which hides it from every query
+-- and starts its undo window. Rows past the window are removed, with their content and
+-- cascaded thumbnails and originals, by the throttled background purge.
+
+ALTER TABLE photos ADD COLUMN deleted_at TIMESTAMP;
+
+CREATE INDEX idx_photos_deleted_at ON photos(deleted_at);
@@ -0,0 +1,9 @@
+-- Migration: V15__Thumbnail_Content_Version
+-- Description: Content version each cached thumbnail was generated from. Thumbnails are
+-- only served while it matches the photo's, so one generated from the old content by a
+-- request racing an image replacement is ignored and replaced instead of served.
+
+ALTER TABLE photo_thumbnails ADD COLUMN content_version INTEGER NOT NULL DEFAULT 1;
+
+-- Thumbnails are deleted whenever the content changes, so existing ones match their photo
+UPDATE photo_thumbnails t SET content_version = (SELECT p.content_version FROM photos p WHERE p.id = t.photo_id);
@@ -0,0 +1,38 @@
+-- Migration: V2__Upload_Jobs
+-- Description: Background upload jobs. Files are staged on local disk and persisted
+-- by a worker after the HTTP request returns 202; job state lives here so that
+-- unfinished jobs are resumed after a restart.
+
+CREATE TABLE upload_jobs (
+    id VARCHAR(36) NOT NULL PRIMARY KEY,
+    user_id BIGINT NOT NULL,
+    gallery_id BIGINT,
+    status VARCHAR(30) NOT NULL,
+    total_files INT NOT NULL,
+    processed_files INT DEFAULT 0 NOT NULL,
+    failed_files INT DEFAULT 0 NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT TIMESTAMP NOT NULL,
+    updated_at TIMESTAMP DEFAULT CURRENT TIMESTAMP NOT NULL,
+    completed_at TIMESTAMP,
+    FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
+);
+
+CREATE TABLE upload_job_items (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    job_id VARCHAR(36) NOT NULL,
+    item_index INT NOT NULL,
+    title VARCHAR(255),
+    description VARCHAR(500),
+    original_filename VARCHAR(255),
+    content_type VARCHAR(100),
+    size BIGINT,
+    staged_path VARCHAR(1000),
+    status VARCHAR(30) NOT NULL,
+    photo_id BIGINT,
+    error_message VARCHAR(500),
+    FOREIGN KEY (job_id) REFERENCES upload_jobs(id) ON DELETE CASCADE
+);
+
+CREATE INDEX idx_upload_jobs_user_id ON upload_jobs(user_id);
+CREATE INDEX idx_upload_jobs_status ON upload_jobs(status);
+CREATE INDEX idx_upload_job_items_job_id ON upload_job_items(job_id);
@@ -0,0 +1,26 @@
+-- Migration: V3__Upload_Sessions
+-- Description: Resumable (tus-style) upload sessions. Chunks are appended to a
+-- staging file; the session row tracks the committed offset so clients can resume
+-- after a dropped connection.
+
+CREATE TABLE upload_sessions (
+    id VARCHAR(36) NOT NULL PRIMARY KEY,
+    user_id BIGINT NOT NULL,
+    gallery_id BIGINT,
+    title VARCHAR(255),
+    description VARCHAR(500),
+    original_filename VARCHAR(255),
+    content_type VARCHAR(100),
+    upload_length BIGINT NOT NULL,
+    upload_offset BIGINT DEFAULT 0 NOT NULL,
+    staged_path VARCHAR(1000),
+    status VARCHAR(30) NOT NULL,
+    photo_id BIGINT,
+    created_at TIMESTAMP DEFAULT CURRENT TIMESTAMP NOT NULL,
+    updated_at TIMESTAMP DEFAULT CURRENT TIMESTAMP NOT NULL,
+    expires_at TIMESTAMP NOT NULL,
+    FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
+);
+
+CREATE INDEX idx_upload_sessions_user_id ON upload_sessions(user_id);
+CREATE INDEX idx_upload_sessions_expires_at ON upload_sessions(expires_at);
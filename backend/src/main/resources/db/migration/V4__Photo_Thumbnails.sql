@@ -0,0 +1,13 @@
+-- Migration: V4__Photo_Thumbnails
+-- Description: Cached listing thumbnails, generated on first request
+
+CREATE TABLE photo_thumbnails (
+    photo_id BIGINT NOT NULL PRIMARY KEY,
+    content_type VARCHAR(100) NOT NULL,
+    width INTEGER NOT NULL,
+    height INTEGER NOT NULL,
+    size BIGINT NOT NULL,
+    data BLOB(2M) NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT TIMESTAMP NOT NULL,
+    FOREIGN KEY (photo_id) REFERENCES photos(id) ON DELETE CASCADE
+);
@@ -0,0 +1,5 @@
+-- Migration: V5__Photo_Content_Version
+-- Description: Content version per photo, bumped when the image is replaced.
+-- Signed image URLs carry it so cached copies of old content are never reused.
+
+ALTER TABLE photos ADD COLUMN content_version INTEGER NOT NULL DEFAULT 1;
@@ -0,0 +1,18 @@
+-- Migration: V6__Photo_Image_Metadata
+-- Description: Dimensions, orientation, capture time and camera model read from the
+-- EXIF/XMP headers at upload, so photos can be sorted and filtered by them.
+-- metadata_version records which extractor version has processed the row; existing
+-- rows start at 0 and are filled in by the background backfill.
+
+ALTER TABLE photos ADD COLUMN width INTEGER;
+ALTER TABLE photos ADD COLUMN height INTEGER;
+ALTER TABLE photos ADD COLUMN orientation SMALLINT;
+ALTER TABLE photos ADD COLUMN taken_at TIMESTAMP;
+ALTER TABLE photos ADD COLUMN camera_model VARCHAR(100);
+ALTER TABLE photos ADD COLUMN metadata_version SMALLINT NOT NULL DEFAULT 0;
+
+CREATE INDEX idx_photos_user_taken_at ON photos(user_id, taken_at);
+CREATE INDEX idx_photos_user_camera_model ON photos(user_id, camera_model);
+CREATE INDEX idx_photos_user_width ON photos(user_id, width);
+CREATE INDEX idx_photos_user_height ON photos(user_id, height);
+CREATE INDEX idx_photos_metadata_version ON photos(metadata_version, id);
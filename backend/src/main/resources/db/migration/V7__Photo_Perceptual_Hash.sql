@@ -0,0 +1,11 @@
+-- Migration: V7__Photo_Perceptual_Hash
+-- Description: 64-bit difference hash (dHash) of each photo for near-duplicate search.
+-- dhash_version records which hash version has processed the row; rows at 0 are
+-- filled in by the background backfill, and undecodable images keep a NULL hash.
+
+ALTER TABLE photos ADD COLUMN dhash BIGINT;
+ALTER TABLE photos ADD COLUMN dhash_version SMALLINT NOT NULL DEFAULT 0;
+
+-- Covers loading a user's hashes into the in-memory index without touching the table
+CREATE INDEX idx_photos_user_dhash ON photos(user_id, dhash);
+CREATE INDEX idx_photos_dhash_version ON photos(dhash_version, id);
@@ -0,0 +1,9 @@
+-- Migration: V8__Photo_Visual_Features
+-- Description: Colour and texture feature vector of each photo for "more like this" search.
+-- features_version records which feature version has processed the row; rows at 0 are
+-- filled in by the background backfill, and undecodable images keep NULL features.
+
+ALTER TABLE photos ADD COLUMN features VARCHAR(64) FOR BIT DATA;
+ALTER TABLE photos ADD COLUMN features_version SMALLINT NOT NULL DEFAULT 0;
+
+CREATE INDEX idx_photos_features_version ON photos(features_version, id);
@@ -0,0 +1,9 @@
+-- Migration: V9__Photo_Blur_Hash
+-- Description: BlurHash placeholder of each photo, returned inline with listings so the
+-- grid can paint before any thumbnail arrives. blurhash_version records which encoder
+-- version has processed the row; rows at 0 are filled in by the background backfill.
+
+ALTER TABLE photos ADD COLUMN blurhash VARCHAR(40);
+ALTER TABLE photos ADD COLUMN blurhash_version SMALLINT NOT NULL DEFAULT 0;
+
+CREATE INDEX idx_photos_blurhash_version ON photos(blurhash_version, id);
@@ -0,0 +1,73 @@
+package com.redligot.backend.config;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares platform and virtual threads for 1,000 concurrent photo downloads.
+ *
+ * <p>Each simulated download blocks for the round trip of a BLOB read and then
+ * copies the image through a 64 KB buffer, which is the shape of
+ * <code>PhotoController.download</code>. The platform pool is sized like Tomcat's
+ * default (200 threads). Run with <code>mvn test -Pbenchmark</code>.</p>
+ */
+@Tag("benchmark")
+class VirtualThreadBenchmarkTests {
+
+	private static final int CONCURRENT_DOWNLOADS = 1_000;
+	private static final int TOMCAT_DEFAULT_MAX_THREADS = 200;
+	private static final long LOB_READ_LATENCY_MS = 50;
+	private static final int IMAGE_BYTES = 512 * 1024;
+
+	@Test
+	void compareThroughput() throws Exception {
+		// Warm up both paths so JIT compilation does not skew the first run
+		run(Executors.newFixedThreadPool(TOMCAT_DEFAULT_MAX_THREADS), 200);
+		run(Executors.newVirtualThreadPerTaskExecutor(), 200);
+
+		double platform = run(Executors.newFixedThreadPool(TOMCAT_DEFAULT_MAX_THREADS), CONCURRENT_DOWNLOADS);
+		double virtual = run(Executors.newVirtualThreadPerTaskExecutor(), CONCURRENT_DOWNLOADS);
+
+		System.out.printf("Platform threads (%d): %.1f downloads/s%n", TOMCAT_DEFAULT_MAX_THREADS, platform);
+		System.out.printf("Virtual threads:       %.1f downloads/s (%.1fx)%n", virtual, virtual / platform);
+		assertThat(virtual).isPositive();
+	}
+
+	private double run(ExecutorService executor, int downloads) throws InterruptedException {
+		byte[] image = new byte[IMAGE_BYTES];
+		CountDownLatch done = new CountDownLatch(downloads);
+		long start = System.nanoTime();
+		try (executor) {
+			for (int i = 0; i < downloads; i++) {
+				executor.execute(() -> {
+					try {
+						Thread.sleep(LOB_READ_LATENCY_MS);
+						byte[] chunk = new byte[64 * 1024];
+						long checksum = 0;
+						for (int offset = 0; offset < image.length; offset += chunk.length) {
+							System.arraycopy(image, offset, chunk, 0, Math.min(chunk.length, image.length - offset));
+							checksum += chunk[0];
+						}
+						if (checksum < 0) {
+							throw new IllegalStateException();
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						done.countDown();
+					}
+				});
+			}
+			assertThat(done.await(2, TimeUnit.MINUTES)).isTrue();
+		}
+		double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+		return downloads / seconds;
+	}
+}
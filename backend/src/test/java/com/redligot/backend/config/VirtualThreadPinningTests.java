@@ -0,0 +1,139 @@
+package com.redligot.backend.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.asm.ClassReader;
+import org.springframework.asm.ClassVisitor;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Verifies the pinning detector and that application code does not pin virtual threads.
+ */
+class VirtualThreadPinningTests {
+
+	private VirtualThreadPinningMonitor monitor;
+
+	@BeforeEach
+	void startMonitor() {
+		monitor = new VirtualThreadPinningMonitor(Duration.ofMillis(10));
+		monitor.start();
+	}
+
+	@AfterEach
+	void closeMonitor() {
+		monitor.close();
+	}
+
+	@Test
+	void detectsBlockingInsideSynchronized() throws Exception {
+		Object lock = new Object();
+		Thread thread = Thread.ofVirtual().start(() -> {
+			synchronized (lock) {
+				sleep(100);
+			}
+		});
+		thread.join();
+		monitor.stop();
+
+		assertThat(monitor.getPinnedCount()).isPositive();
+		assertThat(monitor.getPinnedSites()).anyMatch(site -> site.contains(VirtualThreadPinningTests.class.getName()));
+	}
+
+	@Test
+	void reentrantLockDoesNotPin() throws Exception {
+		ReentrantLock lock = new ReentrantLock();
+		Thread thread = Thread.ofVirtual().start(() -> {
+			lock.lock();
+			try {
+				sleep(100);
+			} finally {
+				lock.unlock();
+			}
+		});
+		thread.join();
+		monitor.stop();
+
+		assertThat(monitor.getPinnedCount()).isZero();
+	}
+
+	@Test
+	void applicationClassesNeverEnterAMonitor() throws Exception {
+		// Bytecode, not reflection: synchronized blocks only show up as MONITORENTER
+		Resource[] classes = new PathMatchingResourcePatternResolver()
+				.getResources("classpath*:com/redligot/backend/**/*.class");
+		assertThat(classes).isNotEmpty();
+
+		List<String> offenders = new ArrayList<>();
+		for (Resource resource : classes) {
+			ClassReader reader;
+			try (InputStream in = resource.getInputStream()) {
+				reader = new ClassReader(in);
+			}
+			String className = reader.getClassName().replace('/', '.');
+			if (className.replaceAll("\\$.*", "").endsWith("Tests")) {
+				continue;
+			}
+			reader.accept(new ClassVisitor(Opcodes.ASM9) {
+				@Override
+				public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+						String[] exceptions) {
+					if ((access & Opcodes.ACC_SYNCHRONIZED) != 0) {
+						offenders.add(className + "." + name + " is synchronized");
+					}
+					return new MethodVisitor(Opcodes.ASM9) {
+						@Override
+						public void visitInsn(int opcode) {
+							if (opcode == Opcodes.MONITORENTER) {
+								offenders.add(className + "." + name + " has a synchronized block");
+							}
+						}
+					};
+				}
+			}, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+		}
+
+		assertThat(offenders).as("use ReentrantLock instead of synchronized").isEmpty();
+	}
+
+	@Test
+	void scanFindsSynchronizedBlocks() throws Exception {
+		List<Integer> opcodes = new ArrayList<>();
+		try (InputStream in = VirtualThreadPinningTests.class.getResourceAsStream("VirtualThreadPinningTests.class")) {
+			new ClassReader(in).accept(new ClassVisitor(Opcodes.ASM9) {
+				@Override
+				public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+						String[] exceptions) {
+					return new MethodVisitor(Opcodes.ASM9) {
+						@Override
+						public void visitInsn(int opcode) {
+							opcodes.add(opcode);
+						}
+					};
+				}
+			}, ClassReader.SKIP_DEBUG);
+		}
+
+		// detectsBlockingInsideSynchronized uses one
+		assertThat(opcodes).contains(Opcodes.MONITORENTER);
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package com.redligot.backend.controller;
+
+import com.redligot.backend.repository.ImageBlobStore;
+import com.redligot.backend.repository.PhotoContentStore.ImageInfo;
+import com.redligot.backend.service.PhotoService;
+import com.redligot.backend.service.ThumbnailService;
+import com.redligot.backend.web.AccelRedirectResponder;
+import com.redligot.backend.web.SignedImageFilter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Signed image requests offloaded to nginx with X-Accel-Redirect.
+ */
+class ImageControllerTests {
+
+	@TempDir
+	Path blobs;
+
+	private PhotoService photoService;
+	private ImageController controller;
+
+	@BeforeEach
+	void setUp() {
+		photoService = mock(PhotoService.class);
+		when(photoService.getImageInfo(5L)).thenReturn(new ImageInfo(5, 7, "a.jpg", "image/jpeg", 3, 2));
+		controller = new ImageController(photoService, mock(ThumbnailService.class), null,
+				new AccelRedirectResponder(new ImageBlobStore(blobs.toString()), true, "/internal/blobs/"));
+	}
+
+	@Test
+	void currentVersionIsOffloadedFromItsBlob() throws Exception {
+		when(photoService.copyContent(eq(5L), eq(2), any())).thenAnswer(invocation -> {
+			invocation.<OutputStream>getArgument(2).write(new byte[] {1, 2, 3});
+			return true;
+		});
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		controller.get(5L, "original", 2, proxiedRequest(), response);
+
+		assertThat(response.getHeader(AccelRedirectResponder.ACCEL_REDIRECT_HEADER))
+				.isEqualTo("/internal/blobs/05/5-2-original.jpg");
+		assertThat(response.getHeader("Cache-Control")).contains("public", "immutable");
+		assertThat(Files.readAllBytes(blobs.resolve("05/5-2-original.jpg"))).containsExactly(1, 2, 3);
+	}
+
+	@Test
+	void replacedVersionIsNotFoundInsteadOfServingTheCurrentBlob() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		assertThatThrownBy(() -> controller.get(5L, "original", 1, proxiedRequest(), response))
+				.isInstanceOfSatisfying(ResponseStatusException.class,
+						e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND));
+
+		assertThat(response.getHeader(AccelRedirectResponder.ACCEL_REDIRECT_HEADER)).isNull();
+		verify(photoService, never()).copyContent(anyLong(), anyInt(), any());
+		assertThat(blobs).isEmptyDirectory();
+	}
+
+	@Test
+	void contentGoneBeforeTheBlobIsWrittenIsNotFound() throws Exception {
+		when(photoService.copyContent(eq(5L), eq(2), any())).thenReturn(false);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		assertThatThrownBy(() -> controller.get(5L, "original", 2, proxiedRequest(), response))
+				.isInstanceOfSatisfying(ResponseStatusException.class,
+						e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND));
+
+		assertThat(response.getHeader(AccelRedirectResponder.ACCEL_REDIRECT_HEADER)).isNull();
+	}
+
+	private static MockHttpServletRequest proxiedRequest() {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/img/5/original");
+		request.setAttribute(SignedImageFilter.VERIFIED_ATTRIBUTE, System.currentTimeMillis() / 1000 + 3600);
+		request.addHeader(AccelRedirectResponder.SENDFILE_TYPE_HEADER, "X-Accel-Redirect");
+		return request;
+	}
+}
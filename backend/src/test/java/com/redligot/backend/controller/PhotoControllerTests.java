@@ -0,0 +1,76 @@
+package com.redligot.backend.controller;
+
+import com.redligot.backend.repository.ThumbnailStore.Thumbnail;
+import com.redligot.backend.security.CustomUserDetails;
+import com.redligot.backend.service.ThumbnailService;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Response framing of the batch thumbnail endpoint.
+ */
+class PhotoControllerTests {
+
+	private static final long USER_ID = 7;
+
+	@Test
+	void thumbnailsAreFramedAsMultipartMixedParts() throws IOException {
+		ThumbnailService thumbnailService = mock(ThumbnailService.class);
+		// Binary content that contains CRLF and dashes must come through byte for byte
+		byte[] first = {(byte) 0xFF, (byte) 0xD8, '\r', '\n', '-', '-', 0, (byte) 0xD9};
+		byte[] second = {1, 2, 3};
+		when(thumbnailService.getThumbnails(List.of(5L, 9L, 6L), USER_ID)).thenReturn(List.of(
+				new Thumbnail(5, "image/jpeg", 32, 24, first),
+				new Thumbnail(6, "image/jpeg", 16, 32, second)));
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		newController(thumbnailService).getThumbnails(List.of(5L, 9L, 6L), user(), response);
+
+		String contentType = response.getContentType();
+		assertThat(contentType).startsWith("multipart/mixed; boundary=");
+		String boundary = contentType.substring(contentType.indexOf('=') + 1);
+		assertThat(response.getHeader("Cache-Control")).isEqualTo("no-store");
+		String body = new String(response.getContentAsByteArray(), StandardCharsets.ISO_8859_1);
+		assertThat(body).isEqualTo("--" + boundary + "\r\n"
+				+ "Content-Type: image/jpeg\r\n"
+				+ "Content-Length: 8\r\n"
+				+ "X-Photo-Id: 5\r\n"
+				+ "X-Image-Size: 32x24\r\n\r\n"
+				+ new String(first, StandardCharsets.ISO_8859_1) + "\r\n"
+				+ "--" + boundary + "\r\n"
+				+ "Content-Type: image/jpeg\r\n"
+				+ "Content-Length: 3\r\n"
+				+ "X-Photo-Id: 6\r\n"
+				+ "X-Image-Size: 16x32\r\n\r\n"
+				+ new String(second, StandardCharsets.ISO_8859_1) + "\r\n"
+				+ "--" + boundary + "--\r\n");
+	}
+
+	@Test
+	void emptyBatchIsJustTheClosingBoundary() throws IOException {
+		ThumbnailService thumbnailService = mock(ThumbnailService.class);
+		when(thumbnailService.getThumbnails(List.of(1L), USER_ID)).thenReturn(List.of());
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		newController(thumbnailService).getThumbnails(List.of(1L), user(), response);
+
+		String boundary = response.getContentType().substring(response.getContentType().indexOf('=') + 1);
+		assertThat(response.getContentAsString()).isEqualTo("--" + boundary + "--\r\n");
+	}
+
+	private static PhotoController newController(ThumbnailService thumbnailService) {
+		return new PhotoController(null, null, null, null, null, thumbnailService, null, null, null, null, null, 100);
+	}
+
+	private static CustomUserDetails user() {
+		return new CustomUserDetails(USER_ID, "user", "user@example.com", "secret", List.of());
+	}
+}
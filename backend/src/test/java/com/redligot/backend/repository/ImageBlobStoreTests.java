@@ -0,0 +1,98 @@
+package com.redligot.backend.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Writing, reuse and eviction of image blobs in a temporary directory.
+ */
+class ImageBlobStoreTests {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void contentIsWrittenToATempFileAndMovedIntoPlace() throws IOException {
+        ImageBlobStore store = new ImageBlobStore(root.toString());
+        Path target = root.resolve("2a/42-3-original.jpg");
+
+        String path = store.ensure(42, 3, "original", "image/jpeg; charset=binary", out -> {
+            out.write(new byte[] {1, 2});
+            // Until the writer is done, only a temporary file exists next to the target
+            assertThat(target).doesNotExist();
+            assertThat(files(target.getParent())).singleElement().asString().endsWith(".tmp");
+            out.write(3);
+            return true;
+        });
+
+        assertThat(path).isEqualTo("2a/42-3-original.jpg");
+        assertThat(store.resolve(path)).isEqualTo(target);
+        assertThat(Files.readAllBytes(target)).containsExactly(1, 2, 3);
+        assertThat(files(target.getParent())).containsExactly(target);
+        assertThat(store.find(42, 3, "original", "image/jpeg")).isEqualTo(path);
+        assertThat(store.find(42, 4, "original", "image/jpeg")).isNull();
+    }
+
+    @Test
+    void existingBlobIsReusedWithoutWriting() {
+        ImageBlobStore store = new ImageBlobStore(root.toString());
+        AtomicInteger writes = new AtomicInteger();
+        ImageBlobStore.BlobWriter writer = out -> {
+            writes.incrementAndGet();
+            out.write(1);
+            return true;
+        };
+
+        String first = store.ensure(42, 3, "thumb", "image/jpeg", writer);
+        String second = store.ensure(42, 3, "thumb", "image/jpeg", writer);
+
+        assertThat(second).isEqualTo(first);
+        assertThat(writes).hasValue(1);
+        // A new content version is a new file
+        assertThat(store.ensure(42, 4, "thumb", "image/jpeg", writer)).isEqualTo("2a/42-4-thumb.jpg");
+        assertThat(writes).hasValue(2);
+    }
+
+    @Test
+    void missingContentLeavesNoFile() throws IOException {
+        ImageBlobStore store = new ImageBlobStore(root.toString());
+
+        assertThat(store.ensure(42, 3, "original", "image/png", out -> {
+            out.write(1);
+            return false;
+        })).isNull();
+
+        assertThat(files(root.resolve("2a"))).isEmpty();
+        assertThat(store.find(42, 3, "original", "image/png")).isNull();
+    }
+
+    @Test
+    void evictRemovesEveryVersionAndVariantOfThePhotoOnly() throws IOException {
+        ImageBlobStore store = new ImageBlobStore(root.toString());
+        for (String variant : List.of("original", "thumb")) {
+            store.ensure(1, 1, variant, "image/jpeg", out -> true);
+            store.ensure(1, 2, variant, "image/jpeg", out -> true);
+        }
+        // Same shard directory, different photo
+        String neighbour = store.ensure(257, 1, "original", "image/jpeg", out -> true);
+
+        store.evict(1);
+
+        assertThat(files(root.resolve("01"))).containsExactly(store.resolve(neighbour));
+    }
+
+    private static List<Path> files(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.toList();
+        }
+    }
+}
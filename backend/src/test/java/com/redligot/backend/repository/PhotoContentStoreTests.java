@@ -0,0 +1,115 @@
+package com.redligot.backend.repository;
+
+import com.redligot.backend.repository.PhotoContentStore.ContentCopy;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.support.KeyHolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Streaming inserts and in-database content copies, against a mocked {@link JdbcTemplate}.
+ */
+class PhotoContentStoreTests {
+
+    private static final long USER_ID = 7;
+    private static final LocalDateTime CREATED_AT = LocalDateTime.of(2024, 5, 1, 12, 0);
+
+    @Test
+    void copiesEachSourceScopedToTheOwner() throws Exception {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        List<PreparedStatement> statements = new ArrayList<>();
+        long[] nextId = {100};
+        when(jdbcTemplate.update(any(PreparedStatementCreator.class), any(KeyHolder.class))).thenAnswer(invocation -> {
+            statements.add(prepare(invocation.getArgument(0)));
+            invocation.<KeyHolder>getArgument(1).getKeyList().add(Map.of("id", nextId[0]++));
+            return 1;
+        });
+
+        List<Long> ids = new PhotoContentStore(jdbcTemplate).copyContents(List.of(
+                new ContentCopy(11, "Beach", "Sunset", "beach.jpg"),
+                new ContentCopy(12, "Hills", null, "hills.jpg")), USER_ID, null, CREATED_AT);
+
+        assertThat(ids).containsExactly(100L, 101L);
+        PreparedStatement first = statements.get(0);
+        verify(first).setString(1, "Beach");
+        verify(first).setString(2, "Sunset");
+        verify(first).setString(3, "beach.jpg");
+        verify(first).setNull(4, Types.BIGINT);
+        verify(first).setTimestamp(5, Timestamp.valueOf(CREATED_AT));
+        verify(first).setLong(6, 11);
+        verify(first).setLong(7, USER_ID);
+        verify(statements.get(1)).setLong(6, 12);
+    }
+
+    @Test
+    void failsWhenASourceIsGone() throws Exception {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        PreparedStatement[] statement = new PreparedStatement[1];
+        when(jdbcTemplate.update(any(PreparedStatementCreator.class), any(KeyHolder.class))).thenAnswer(invocation -> {
+            statement[0] = prepare(invocation.getArgument(0));
+            return 0;
+        });
+
+        assertThatThrownBy(() -> new PhotoContentStore(jdbcTemplate).copyContents(
+                List.of(new ContentCopy(11, "Beach", null, "beach.jpg")), USER_ID, 3L, CREATED_AT))
+                .isInstanceOf(EmptyResultDataAccessException.class)
+                .hasMessageContaining("Photo 11");
+        verify(statement[0]).setLong(4, 3L);
+    }
+
+    @Test
+    void insertWritesSizeAndDigestOnceTheContentIsRead() throws Exception {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        byte[] content = {1, 2, 3, 4, 5};
+        long[] read = {-1};
+        when(jdbcTemplate.update(any(PreparedStatementCreator.class), any(KeyHolder.class))).thenAnswer(invocation -> {
+            PreparedStatement statement = prepare(invocation.getArgument(0));
+            ArgumentCaptor<InputStream> stream = ArgumentCaptor.forClass(InputStream.class);
+            verify(statement).setBinaryStream(eq(5), stream.capture());
+            // The driver reads the content while executing the insert
+            read[0] = stream.getValue().transferTo(OutputStream.nullOutputStream());
+            invocation.<KeyHolder>getArgument(1).getKeyList().add(Map.of("id", 100L));
+            return 1;
+        });
+
+        PhotoContentStore.StoredContent stored = new PhotoContentStore(jdbcTemplate).insert("Beach", null, "beach.jpg",
+                "image/jpeg", new ByteArrayInputStream(content), 10, USER_ID, null, CREATED_AT, null, () -> {
+                    assertThat(read[0]).isEqualTo(content.length);
+                    return "ab12";
+                });
+
+        assertThat(stored.size()).isEqualTo(content.length);
+        verify(jdbcTemplate).update("UPDATE photos SET size = ?, content_sha256 = ? WHERE id = ?", 5L, "ab12", 100L);
+    }
+
+    private static PreparedStatement prepare(PreparedStatementCreator creator) throws Exception {
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        when(connection.prepareStatement(anyString(), any(String[].class))).thenReturn(statement);
+        assertThat(creator.createPreparedStatement(connection)).isSameAs(statement);
+        return statement;
+    }
+}
@@ -0,0 +1,81 @@
+package com.redligot.backend.security;
+
+import com.redligot.backend.dto.PhotoDto;
+import com.redligot.backend.security.ImageUrlSigner.Variant;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.util.UriComponents;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Signing, bucketed expiry and tamper detection of image URLs.
+ */
+class ImageUrlSignerTests {
+
+	private static final String SECRET = "test-secret-test-secret-test-secret";
+
+	@Test
+	void expiryIsRoundedUpToTheBucket() {
+		ImageUrlSigner signer = new ImageUrlSigner(SECRET, 3600, 900);
+		long now = System.currentTimeMillis() / 1000;
+
+		String first = signer.sign(42, 3, Variant.THUMB);
+		String second = signer.sign(42, 3, Variant.THUMB);
+		long exp = Long.parseLong(parse(first).getQueryParams().getFirst("exp"));
+
+		// Every URL signed within one bucket is the same, so caches can hit
+		assertThat(second).isEqualTo(first);
+		assertThat(exp % 900).isZero();
+		assertThat(exp).isGreaterThan(now + 3600).isLessThanOrEqualTo(now + 3600 + 900 + 1);
+		assertThat(first).startsWith("/img/42/thumb?v=3&exp=" + exp + "&sig=");
+	}
+
+	@Test
+	void verifiesItsOwnSignatures() {
+		ImageUrlSigner signer = new ImageUrlSigner(SECRET, 3600, 900);
+		UriComponents url = parse(signer.sign(42, 3, Variant.ORIGINAL));
+		long exp = Long.parseLong(url.getQueryParams().getFirst("exp"));
+		String sig = url.getQueryParams().getFirst("sig");
+
+		assertThat(signer.verify(42, "original", 3, exp, sig)).isTrue();
+	}
+
+	@Test
+	void rejectsAnyTamperedField() {
+		ImageUrlSigner signer = new ImageUrlSigner(SECRET, 3600, 900);
+		UriComponents url = parse(signer.sign(42, 3, Variant.ORIGINAL));
+		long exp = Long.parseLong(url.getQueryParams().getFirst("exp"));
+		String sig = url.getQueryParams().getFirst("sig");
+
+		assertThat(signer.verify(43, "original", 3, exp, sig)).isFalse();
+		assertThat(signer.verify(42, "thumb", 3, exp, sig)).isFalse();
+		assertThat(signer.verify(42, "original", 4, exp, sig)).isFalse();
+		assertThat(signer.verify(42, "original", 3, exp + 900, sig)).isFalse();
+		assertThat(signer.verify(42, "original", 3, exp, sig.substring(1))).isFalse();
+		assertThat(signer.verify(42, "original", 3, exp, null)).isFalse();
+		assertThat(new ImageUrlSigner(SECRET + "x", 3600, 900).verify(42, "original", 3, exp, sig)).isFalse();
+	}
+
+	@Test
+	void fillsBothUrlsOfADto() {
+		ImageUrlSigner signer = new ImageUrlSigner(SECRET, 3600, 900);
+		PhotoDto dto = new PhotoDto();
+		dto.setId(42L);
+
+		signer.applyTo(dto);
+
+		assertThat(dto.getImageUrl()).startsWith("/img/42/original?v=1&");
+		assertThat(dto.getThumbnailUrl()).startsWith("/img/42/thumb?v=1&");
+	}
+
+	@Test
+	void requiresASecret() {
+		assertThatThrownBy(() -> new ImageUrlSigner(" ", 3600, 900)).isInstanceOf(IllegalStateException.class);
+	}
+
+	private static UriComponents parse(String url) {
+		return UriComponentsBuilder.fromUriString(url).build();
+	}
+}
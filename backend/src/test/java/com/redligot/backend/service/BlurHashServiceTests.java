@@ -0,0 +1,45 @@
+package com.redligot.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BlurHashServiceTests {
+
+	@Test
+	void encodesFlatImageAsItsColour() {
+		String hash = BlurHashService.encode(filled(40, 30, new Color(0x33, 0x66, 0xcc)));
+
+		// 4x3 components, then after the AC scale the colour itself as DC
+		assertThat(hash).hasSize(28).startsWith("L");
+		assertThat(hash.substring(2, 6)).isEqualTo("5?~E");
+	}
+
+	@Test
+	void encodesDetailWithinTheFormat() {
+		BufferedImage image = filled(24, 32, Color.WHITE);
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.BLACK);
+		g.fillRect(0, 0, 12, 32);
+		g.dispose();
+
+		String hash = BlurHashService.encode(image);
+
+		// Portrait: 3x4 components
+		assertThat(hash).hasSize(28).startsWith("T");
+		assertThat(hash.charAt(1)).isGreaterThan(BlurHashService.encode(filled(24, 32, Color.GRAY)).charAt(1));
+	}
+
+	private static BufferedImage filled(int width, int height, Color color) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		g.setColor(color);
+		g.fillRect(0, 0, width, height);
+		g.dispose();
+		return image;
+	}
+}
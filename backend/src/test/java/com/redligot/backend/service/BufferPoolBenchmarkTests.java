@@ -0,0 +1,170 @@
+package com.redligot.backend.service;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Counts humongous allocations in a bulk-upload workload with and without the
+ * {@link BufferPool}, from G1's own GC log.
+ *
+ * <p>Each run is a separate JVM (G1, 256 MB heap, 1 MB regions) in which four threads
+ * upload 200 photos of 6 MB. Without the pool every photo is read into one array, as
+ * <code>MultipartFile.getBytes()</code> into <code>Photo.setData</code> did; with it,
+ * the content is copied to the database stream through a pooled buffer. Run with
+ * <code>mvn test -Pbenchmark</code>.</p>
+ */
+@Tag("benchmark")
+class BufferPoolBenchmarkTests {
+
+	private static final int UPLOADS = 200;
+	private static final int THREADS = 4;
+	private static final int PHOTO_BYTES = 6 * 1024 * 1024;
+
+	private static final Pattern HUMONGOUS_REGIONS = Pattern.compile("Humongous regions: (\\d+)->");
+
+	@Test
+	void compareHumongousAllocations(@TempDir Path dir) throws Exception {
+		GcLog unpooled = run("unpooled", dir);
+		GcLog pooled = run("pooled", dir);
+
+		System.out.printf("Whole-array uploads: %s%n", unpooled);
+		System.out.printf("Pooled-buffer uploads: %s%n", pooled);
+		assertThat(pooled.humongousRegions()).isLessThan(unpooled.humongousRegions());
+	}
+
+	private GcLog run(String mode, Path dir) throws Exception {
+		Path log = dir.resolve(mode + "-gc.log");
+		Process process = new ProcessBuilder(
+				Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+				"-XX:+UseG1GC", "-Xmx256m", "-XX:G1HeapRegionSize=1m",
+				"-Xlog:gc,gc+heap=info:file=" + log,
+				"-cp", System.getProperty("java.class.path"),
+				Workload.class.getName(), mode)
+				.inheritIO()
+				.start();
+		assertThat(process.waitFor(5, TimeUnit.MINUTES)).isTrue();
+		assertThat(process.exitValue()).isZero();
+
+		List<String> lines = Files.readAllLines(log);
+		long pauses = lines.stream().filter(line -> line.contains("Pause")).count();
+		long humongousPauses = lines.stream().filter(line -> line.contains("(G1 Humongous Allocation)")).count();
+		long humongousRegions = 0;
+		for (String line : lines) {
+			Matcher matcher = HUMONGOUS_REGIONS.matcher(line);
+			if (matcher.find()) {
+				humongousRegions += Long.parseLong(matcher.group(1));
+			}
+		}
+		return new GcLog(pauses, humongousPauses, humongousRegions);
+	}
+
+	/**
+	 * @param humongousRegions Humongous regions found at the start of each collection, summed
+	 */
+	private record GcLog(long pauses, long humongousPauses, long humongousRegions) {
+
+		@Override
+		public String toString() {
+			return String.format("%d GC pauses, %d caused by humongous allocations, %d humongous regions collected",
+					pauses, humongousPauses, humongousRegions);
+		}
+	}
+
+	/**
+	 * The upload loop, run in the child JVM.
+	 */
+	static final class Workload {
+
+		public static void main(String[] args) throws Exception {
+			boolean pooled = "pooled".equals(args[0]);
+			BufferPool pool = new BufferPool(256 * 1024, 16 * 1024 * 1024, "off");
+			try (ExecutorService executor = Executors.newFixedThreadPool(THREADS)) {
+				List<Future<Long>> uploads = new ArrayList<>();
+				for (int i = 0; i < UPLOADS; i++) {
+					uploads.add(executor.submit(() -> {
+						DiscardingDriverStream database = new DiscardingDriverStream();
+						InputStream body = new SyntheticUpload(PHOTO_BYTES);
+						if (pooled) {
+							pool.copy(body, database);
+						} else {
+							database.write(body.readAllBytes());
+						}
+						return database.checksum;
+					}));
+				}
+				long checksum = 0;
+				for (Future<Long> upload : uploads) {
+					checksum += upload.get();
+				}
+				System.out.println("Uploaded " + UPLOADS + " photos (checksum " + checksum + ")");
+			}
+		}
+	}
+
+	/**
+	 * Request body of a given length, produced without allocating.
+	 */
+	private static final class SyntheticUpload extends InputStream {
+
+		private long remaining;
+
+		SyntheticUpload(long length) {
+			this.remaining = length;
+		}
+
+		@Override
+		public int read() {
+			return remaining-- > 0 ? (int) (remaining & 0xff) : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (remaining == 0) {
+				return -1;
+			}
+			int count = (int) Math.min(len, remaining);
+			for (int i = 0; i < count; i += 4096) {
+				b[off + i] = (byte) remaining;
+			}
+			remaining -= count;
+			return count;
+		}
+	}
+
+	/**
+	 * Stands in for the driver sending bytes to DB2.
+	 */
+	private static final class DiscardingDriverStream extends OutputStream {
+
+		private long checksum;
+
+		@Override
+		public void write(int b) {
+			checksum += b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			for (int i = off; i < off + len; i += 4096) {
+				checksum += b[i];
+			}
+		}
+	}
+}
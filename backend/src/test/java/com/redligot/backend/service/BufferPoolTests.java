@@ -0,0 +1,71 @@
+package com.redligot.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Size classes, reuse and leak detection of the shared buffer pool.
+ */
+class BufferPoolTests {
+
+	@Test
+	void reusesReleasedBuffersOfTheSameClass() {
+		BufferPool pool = new BufferPool(256 * 1024, 16 * 1024 * 1024, "paranoid");
+		byte[] first;
+		try (BufferPool.Buffer buffer = pool.acquire(50_000)) {
+			first = buffer.array();
+			assertThat(first).hasSize(64 * 1024);
+		}
+		try (BufferPool.Buffer buffer = pool.acquire(64 * 1024)) {
+			assertThat(buffer.array()).isSameAs(first);
+		}
+		try (BufferPool.Buffer buffer = pool.acquire(8 * 1024 * 1024)) {
+			// Never a humongous array: large requests get the largest class
+			assertThat(buffer.array()).hasSize(256 * 1024);
+		}
+
+		BufferPool.Stats stats = pool.stats();
+		assertThat(stats.acquired()).isEqualTo(3);
+		assertThat(stats.allocated()).isEqualTo(2);
+		assertThat(stats.outstanding()).isZero();
+		assertThat(stats.leaked()).isZero();
+	}
+
+	@Test
+	void copiesThroughAPooledBuffer() throws Exception {
+		BufferPool pool = new BufferPool(256 * 1024, 16 * 1024 * 1024, "paranoid");
+		byte[] content = new byte[1_000_000];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) (i * 31);
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		assertThat(pool.copy(new ByteArrayInputStream(content), out)).isEqualTo(content.length);
+		assertThat(out.toByteArray()).isEqualTo(content);
+		assertThat(pool.stats().outstanding()).isZero();
+	}
+
+	@Test
+	void reportsBuffersThatAreNeverReleased() throws Exception {
+		BufferPool pool = new BufferPool(256 * 1024, 16 * 1024 * 1024, "paranoid");
+		leak(pool);
+		assertThat(pool.stats().outstanding()).isEqualTo(1);
+
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (pool.stats().leaked() == 0 && System.nanoTime() < deadline) {
+			System.gc();
+			Thread.sleep(20);
+		}
+		assertThat(pool.stats().leaked()).isEqualTo(1);
+		assertThat(pool.stats().outstanding()).isZero();
+	}
+
+	private static void leak(BufferPool pool) {
+		pool.acquire(4096).array()[0] = 1;
+	}
+}
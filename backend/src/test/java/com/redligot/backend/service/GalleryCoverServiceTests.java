@@ -0,0 +1,214 @@
+package com.redligot.backend.service;
+
+import com.redligot.backend.repository.GalleryCoverStore;
+import com.redligot.backend.repository.GalleryCoverStore.Cover;
+import com.redligot.backend.repository.GalleryCoverStore.CoverSource;
+import com.redligot.backend.repository.ThumbnailStore.Thumbnail;
+import com.redligot.backend.service.GalleryCoverService.GalleryCover;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Versioning, mosaic rendering and background refreshes of gallery covers, with a stubbed store.
+ */
+class GalleryCoverServiceTests {
+
+	private static final long GALLERY_ID = 3;
+	private static final long USER_ID = 7;
+	private static final int TILE = 20;
+
+	private final StubCoverStore store = new StubCoverStore();
+	private final ThumbnailService thumbnails = mock(ThumbnailService.class);
+	private final GalleryCoverService service = new GalleryCoverService(store, thumbnails,
+			new ImageDecodeService(150_000_000, 64L * 1024 * 1024, 1000), TILE, 0.95f);
+
+	@Test
+	void versionFingerprintsPhotosContentAndOrientation() {
+		List<CoverSource> sources = List.of(new CoverSource(1, 1, null), new CoverSource(2, 1, 1));
+
+		assertThat(GalleryCoverService.version(sources))
+				.isEqualTo(GalleryCoverService.version(List.of(new CoverSource(1, 1, null), new CoverSource(2, 1, 1))))
+				.isNotEqualTo(GalleryCoverService.version(List.of(new CoverSource(1, 2, null), new CoverSource(2, 1, 1))))
+				.isNotEqualTo(GalleryCoverService.version(List.of(new CoverSource(1, 1, 6), new CoverSource(2, 1, 1))))
+				.isNotEqualTo(GalleryCoverService.version(List.of(new CoverSource(2, 1, 1), new CoverSource(1, 1, null))))
+				.isNotEqualTo(GalleryCoverService.version(List.of(new CoverSource(1, 1, null))));
+	}
+
+	@Test
+	void mosaicPlacesPhotosInOrderAndFillsEmptyTiles() throws IOException {
+		store.sources = List.of(new CoverSource(1, 1, null), new CoverSource(2, 1, null), new CoverSource(3, 1, null));
+		thumbnail(1, Color.RED);
+		thumbnail(2, Color.BLUE);
+		// Photo 3 has no thumbnail, the fourth tile no photo
+
+		BufferedImage cover = ImageIO.read(new ByteArrayInputStream(service.getCover(GALLERY_ID, USER_ID).data()));
+
+		assertThat(cover.getWidth()).isEqualTo(2 * TILE + 2);
+		assertThat(cover.getHeight()).isEqualTo(2 * TILE + 2);
+		assertColor(cover, TILE / 2, TILE / 2, Color.RED);
+		assertColor(cover, TILE + 2 + TILE / 2, TILE / 2, Color.BLUE);
+		assertColor(cover, TILE / 2, TILE + 2 + TILE / 2, new Color(0xe5, 0xe7, 0xeb));
+		assertColor(cover, TILE + 2 + TILE / 2, TILE + 2 + TILE / 2, new Color(0xe5, 0xe7, 0xeb));
+	}
+
+	@Test
+	void coverIsDrawnOnceAndRedrawnWhenStale() throws IOException {
+		store.sources = List.of(new CoverSource(1, 1, null));
+		thumbnail(1, Color.RED);
+
+		GalleryCover first = service.getCover(GALLERY_ID, USER_ID);
+		GalleryCover second = service.getCover(GALLERY_ID, USER_ID);
+
+		assertThat(store.saved).hasSize(1);
+		assertThat(second.version()).isEqualTo(first.version()).isEqualTo(service.getVersion(GALLERY_ID, USER_ID));
+		assertThat(second.data()).isSameAs(first.data());
+
+		store.sources = List.of(new CoverSource(1, 2, null));
+		GalleryCover replaced = service.getCover(GALLERY_ID, USER_ID);
+
+		assertThat(store.saved).hasSize(2);
+		assertThat(replaced.version()).isNotEqualTo(first.version());
+	}
+
+	@Test
+	void galleryWithoutPhotosHasNoCover() {
+		assertThatThrownBy(() -> service.getCover(GALLERY_ID, USER_ID))
+				.isInstanceOfSatisfying(ResponseStatusException.class,
+						e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND));
+		assertThatThrownBy(() -> service.getVersion(GALLERY_ID, USER_ID))
+				.isInstanceOfSatisfying(ResponseStatusException.class,
+						e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND));
+	}
+
+	@Test
+	void refreshRedrawsOnlyStaleCoversAndDropsEmptyOnes() throws IOException {
+		store.sources = List.of(new CoverSource(1, 1, null));
+		thumbnail(1, Color.RED);
+
+		service.refreshLater(List.of(GALLERY_ID));
+		service.refreshLater(List.of(GALLERY_ID));
+
+		assertThat(store.saved).hasSize(1);
+		assertThat(store.covers).containsKey(GALLERY_ID);
+
+		store.sources = List.of();
+		service.refreshLater(List.of(GALLERY_ID));
+
+		assertThat(store.covers).isEmpty();
+	}
+
+	@Test
+	void refreshesRequestedWhileOneRunsCoalesceIntoOne() throws Exception {
+		store.sources = List.of(new CoverSource(1, 1, null));
+		thumbnail(1, Color.RED);
+		store.blockFirstLookup = new CountDownLatch(1);
+		Thread running = Thread.ofVirtual().start(() -> service.refreshLater(List.of(GALLERY_ID)));
+		store.lookupStarted.await(5, TimeUnit.SECONDS);
+
+		// A bulk upload asks once per photo; these only mark the running refresh
+		for (int i = 0; i < 10; i++) {
+			service.refreshLater(List.of(GALLERY_ID));
+		}
+		assertThat(store.lookups).hasValue(1);
+		store.blockFirstLookup.countDown();
+		running.join(5_000);
+
+		assertThat(running.isAlive()).isFalse();
+		assertThat(store.lookups).hasValue(2);
+		assertThat(store.saved).hasSize(1);
+
+		// Nothing is left marked once it finishes
+		service.refreshLater(List.of(GALLERY_ID));
+		assertThat(store.lookups).hasValue(3);
+	}
+
+	private void thumbnail(long photoId, Color color) throws IOException {
+		BufferedImage image = new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		g.setColor(color);
+		g.fillRect(0, 0, 40, 30);
+		g.dispose();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", out);
+		when(thumbnails.getThumbnail(photoId))
+				.thenReturn(new Thumbnail(photoId, ThumbnailService.THUMBNAIL_TYPE, 40, 30, out.toByteArray()));
+	}
+
+	private static void assertColor(BufferedImage image, int x, int y, Color expected) {
+		Color actual = new Color(image.getRGB(x, y));
+		// JPEG is lossy; allow a small drift per channel
+		assertThat(Math.abs(actual.getRed() - expected.getRed())).isLessThan(12);
+		assertThat(Math.abs(actual.getGreen() - expected.getGreen())).isLessThan(12);
+		assertThat(Math.abs(actual.getBlue() - expected.getBlue())).isLessThan(12);
+	}
+
+	private static final class StubCoverStore extends GalleryCoverStore {
+
+		volatile List<CoverSource> sources = List.of();
+		final Map<Long, Cover> covers = new HashMap<>();
+		final List<Cover> saved = new ArrayList<>();
+		final AtomicInteger lookups = new AtomicInteger();
+		final CountDownLatch lookupStarted = new CountDownLatch(1);
+		volatile CountDownLatch blockFirstLookup;
+
+		StubCoverStore() {
+			super(null);
+		}
+
+		@Override
+		public List<CoverSource> findSources(long galleryId, Long userId, int limit) {
+			if (lookups.incrementAndGet() == 1 && blockFirstLookup != null) {
+				lookupStarted.countDown();
+				try {
+					blockFirstLookup.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return sources;
+		}
+
+		@Override
+		public Cover find(long galleryId) {
+			return covers.get(galleryId);
+		}
+
+		@Override
+		public String findVersion(long galleryId) {
+			Cover cover = covers.get(galleryId);
+			return cover == null ? null : cover.version();
+		}
+
+		@Override
+		public void save(Cover cover) {
+			saved.add(cover);
+			covers.put(cover.galleryId(), cover);
+		}
+
+		@Override
+		public void delete(long galleryId) {
+			covers.remove(galleryId);
+		}
+	}
+}
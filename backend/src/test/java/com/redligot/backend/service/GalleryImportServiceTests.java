@@ -0,0 +1,214 @@
+package com.redligot.backend.service;
+
+import com.redligot.backend.repository.GalleryRepository;
+import com.redligot.backend.repository.PhotoContentStore;
+import com.redligot.backend.repository.PhotoContentStore.NewPhoto;
+import com.redligot.backend.service.GalleryImportService.EntryStatus;
+import com.redligot.backend.service.GalleryImportService.ImportProgress;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Entry handling, batching and failure modes of streaming ZIP imports.
+ */
+class GalleryImportServiceTests {
+
+	private static final long GALLERY_ID = 3;
+	private static final long USER_ID = 7;
+
+	private final StubContentStore store = new StubContentStore();
+	private final GalleryCoverService covers = mock(GalleryCoverService.class);
+	private final List<ImportProgress> progress = new ArrayList<>();
+
+	@Test
+	void importsImagesAndSkipsEverythingElse() throws IOException {
+		byte[] archive = zip(
+				"holiday/beach.JPG", random(100, 1),
+				"holiday/", null,
+				"notes.txt", random(10, 2),
+				"__MACOSX/holiday/._beach.JPG", random(10, 3),
+				".DS_Store", random(10, 4),
+				"empty.png", new byte[0]);
+
+		newService(20, 1000).importArchive(GALLERY_ID, USER_ID, new ByteArrayInputStream(archive), progress::add);
+
+		assertThat(entries()).extracting(ImportProgress::name, ImportProgress::status, ImportProgress::reason)
+				.containsExactly(
+						tuple("notes.txt", EntryStatus.SKIPPED, "Not an image"),
+						tuple("empty.png", EntryStatus.SKIPPED, "Empty file"),
+						tuple("beach.JPG", EntryStatus.IMPORTED, null));
+		assertThat(store.inserted).extracting(NewPhoto::title, NewPhoto::contentType)
+				.containsExactly(tuple("beach", "image/jpeg"));
+		assertSummary(3, 1, 2, 0, null);
+		verify(covers).refreshLater(List.of(GALLERY_ID));
+	}
+
+	@Test
+	void oversizedEntriesAreSkippedWithoutADeclaredSize() throws IOException {
+		// Deflated entries from a stream carry no size in their local header
+		byte[] archive = zip(
+				"huge.png", new byte[(int) PhotoService.MAX_UPLOAD_BYTES + 1],
+				"small.png", random(100, 1));
+
+		newService(20, 1000).importArchive(GALLERY_ID, USER_ID, new ByteArrayInputStream(archive), progress::add);
+
+		assertThat(entries().get(0).name()).isEqualTo("huge.png");
+		assertThat(entries().get(0).reason()).isEqualTo("Exceeds maximum size of 8MB");
+		assertThat(store.inserted).extracting(NewPhoto::originalFilename).containsExactly("small.png");
+		assertSummary(2, 1, 1, 0, null);
+	}
+
+	@Test
+	void entriesPastTheLimitAreNotRead() throws IOException {
+		byte[] archive = zip(
+				"1.png", random(10, 1),
+				"__MACOSX/._1.png", random(10, 1),
+				"2.png", random(10, 2),
+				"3.png", random(10, 3),
+				"4.png", random(10, 4));
+
+		newService(20, 2).importArchive(GALLERY_ID, USER_ID, new ByteArrayInputStream(archive), progress::add);
+
+		assertThat(store.inserted).extracting(NewPhoto::originalFilename).containsExactly("1.png", "2.png");
+		assertSummary(2, 2, 0, 0, "Archive has more than 2 entries; the rest were not imported");
+	}
+
+	@Test
+	void truncatedUploadKeepsTheEntriesReadSoFar() throws IOException {
+		byte[] archive = zip(
+				"1.png", random(100, 1),
+				"2.png", random(100, 2),
+				"3.png", random(100, 3),
+				"4.png", random(10_000, 4));
+		byte[] truncated = Arrays.copyOf(archive, archive.length - 5_000);
+
+		newService(2, 1000).importArchive(GALLERY_ID, USER_ID, new ByteArrayInputStream(truncated), progress::add);
+
+		assertThat(store.batches).isEqualTo(2);
+		assertThat(store.inserted).extracting(NewPhoto::originalFilename).containsExactly("1.png", "2.png", "3.png");
+		ImportProgress summary = progress.get(progress.size() - 1);
+		assertThat(summary.imported()).isEqualTo(3);
+		assertThat(summary.reason()).startsWith("Archive upload interrupted");
+	}
+
+	@Test
+	void failedBatchIsReportedAndTheImportGoesOn() throws IOException {
+		store.failFirstBatch = true;
+		byte[] archive = zip(
+				"1.png", random(10, 1),
+				"2.png", random(10, 2),
+				"3.png", random(10, 3));
+
+		newService(2, 1000).importArchive(GALLERY_ID, USER_ID, new ByteArrayInputStream(archive), progress::add);
+
+		assertThat(entries()).extracting(ImportProgress::status)
+				.containsExactly(EntryStatus.FAILED, EntryStatus.FAILED, EntryStatus.IMPORTED);
+		assertThat(entries().get(0).reason()).isEqualTo("Failed to save: duplicate key");
+		assertSummary(3, 1, 0, 2, null);
+	}
+
+	@Test
+	void invalidArchiveImportsNothing() throws IOException {
+		newService(20, 1000).importArchive(GALLERY_ID, USER_ID,
+				new ByteArrayInputStream("not a zip".getBytes()), progress::add);
+
+		assertThat(store.inserted).isEmpty();
+		assertSummary(0, 0, 0, 0, null);
+		verify(covers, never()).refreshLater(any());
+	}
+
+	@Test
+	void listenerFailureStopsTheImport() throws IOException {
+		byte[] archive = zip("a.txt", random(10, 1), "b.png", random(10, 2));
+
+		assertThatThrownBy(() -> newService(20, 1000).importArchive(GALLERY_ID, USER_ID,
+				new ByteArrayInputStream(archive), p -> {
+					throw new IOException("Broken pipe");
+				})).isInstanceOf(IOException.class).hasMessage("Broken pipe");
+		assertThat(store.inserted).isEmpty();
+	}
+
+	private GalleryImportService newService(int batchSize, int maxEntries) {
+		IngestOptimizer optimizer = mock(IngestOptimizer.class);
+		when(optimizer.optimize(any())).thenAnswer(invocation -> invocation.getArgument(0));
+		return new GalleryImportService(mock(GalleryRepository.class), store, mock(ImageMetadataExtractor.class),
+				covers, optimizer, batchSize, 32L * 1024 * 1024, maxEntries);
+	}
+
+	private List<ImportProgress> entries() {
+		return progress.subList(0, progress.size() - 1);
+	}
+
+	private void assertSummary(int entries, int imported, int skipped, int failed, String reason) {
+		ImportProgress summary = progress.get(progress.size() - 1);
+		assertThat(summary.status()).isNull();
+		assertThat(summary.entry()).isEqualTo(entries);
+		assertThat(summary.imported()).isEqualTo(imported);
+		assertThat(summary.skipped()).isEqualTo(skipped);
+		assertThat(summary.failed()).isEqualTo(failed);
+		assertThat(summary.reason()).isEqualTo(reason);
+	}
+
+	/**
+	 * Build an archive from name and content pairs; a null content makes a directory.
+	 */
+	private static byte[] zip(Object... entries) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (ZipOutputStream zip = new ZipOutputStream(out)) {
+			for (int i = 0; i < entries.length; i += 2) {
+				zip.putNextEntry(new ZipEntry((String) entries[i]));
+				if (entries[i + 1] != null) {
+					zip.write((byte[]) entries[i + 1]);
+				}
+				zip.closeEntry();
+			}
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] random(int length, long seed) {
+		byte[] content = new byte[length];
+		new Random(seed).nextBytes(content);
+		return content;
+	}
+
+	private static final class StubContentStore extends PhotoContentStore {
+
+		final List<NewPhoto> inserted = new ArrayList<>();
+		int batches;
+		boolean failFirstBatch;
+
+		StubContentStore() {
+			super(null);
+		}
+
+		@Override
+		public void insertBatch(List<NewPhoto> photos, Long userId, Long galleryId, LocalDateTime createdAt) {
+			batches++;
+			if (failFirstBatch && batches == 1) {
+				throw new DataIntegrityViolationException("duplicate key");
+			}
+			inserted.addAll(photos);
+		}
+	}
+}
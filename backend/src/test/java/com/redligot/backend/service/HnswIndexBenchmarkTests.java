@@ -0,0 +1,85 @@
+package com.redligot.backend.service;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Times "more like this" searches over a 500k-photo library and measures their recall
+ * against an exact scan.
+ *
+ * <p>Feature vectors are drawn around 5,000 random scene centres, so each has many
+ * plausible neighbours and the graph has to tell them apart. Run with
+ * <code>mvn test -Pbenchmark</code>.</p>
+ */
+@Tag("benchmark")
+class HnswIndexBenchmarkTests {
+
+	private static final int PHOTOS = Integer.getInteger("photos", 500_000);
+	private static final int SCENES = 5_000;
+	private static final int SEARCHES = 2_000;
+	private static final int K = 10;
+
+	@Test
+	void searchLibrary() {
+		Random random = new Random(7);
+		int dimensions = VisualSimilarityService.DIMENSIONS;
+		double[][] scenes = new double[SCENES][dimensions];
+		for (double[] scene : scenes) {
+			for (int d = 0; d < dimensions; d++) {
+				scene[d] = random.nextDouble() * 80;
+			}
+		}
+		byte[][] vectors = new byte[PHOTOS][dimensions];
+		for (byte[] vector : vectors) {
+			double[] scene = scenes[random.nextInt(SCENES)];
+			for (int d = 0; d < dimensions; d++) {
+				vector[d] = (byte) Math.max(0, Math.min(255, (int) Math.round(scene[d] + random.nextGaussian() * 12)));
+			}
+		}
+
+		HnswIndex index = new HnswIndex(dimensions, 16, 100, PHOTOS);
+		for (int i = 0; i < PHOTOS; i++) {
+			index.add(i + 1, vectors[i]);
+		}
+		long start = System.nanoTime();
+		while (index.buildStep(4096)) {
+			// Build the whole graph up front
+		}
+		long built = System.nanoTime();
+
+		int[] queries = random.ints(SEARCHES, 0, PHOTOS).toArray();
+		// Warm up, then time
+		for (int q = 0; q < SEARCHES; q++) {
+			index.search(vectors[queries[q]], K, 64, queries[q] + 1);
+		}
+		long[] latencies = new long[SEARCHES];
+		List<?>[] results = new List<?>[SEARCHES];
+		for (int q = 0; q < SEARCHES; q++) {
+			long searchStart = System.nanoTime();
+			results[q] = index.search(vectors[queries[q]], K, 64, queries[q] + 1);
+			latencies[q] = System.nanoTime() - searchStart;
+		}
+
+		long hits = 0;
+		for (int q = 0; q < SEARCHES; q++) {
+			List<HnswIndex.Match> exact = index.exactSearch(vectors[queries[q]], K, queries[q] + 1);
+			int furthest = exact.get(exact.size() - 1).distance();
+			// Count ties with the k-th exact distance as hits
+			hits += results[q].stream().filter(m -> ((HnswIndex.Match) m).distance() <= furthest).count();
+		}
+		Arrays.sort(latencies);
+		double recall = (double) hits / (SEARCHES * K);
+		double average = Arrays.stream(latencies).average().orElse(0) / 1_000.0;
+		double p99 = latencies[SEARCHES * 99 / 100] / 1_000.0;
+		System.out.printf("Build of %d photos: %d s; recall@%d %.3f; search %.1f us average, %.1f us p99%n",
+				PHOTOS, (built - start) / 1_000_000_000, K, recall, average, p99);
+		assertThat(recall).isGreaterThan(0.9);
+		assertThat(p99).isLessThan(10_000);
+	}
+}
@@ -0,0 +1,94 @@
+package com.redligot.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HnswIndexTests {
+
+	@Test
+	void searchFindsExactNeighbours() {
+		Random random = new Random(42);
+		int count = 5_000;
+		byte[][] vectors = new byte[count][];
+		HnswIndex index = new HnswIndex(16, 8, 64, count);
+		for (int i = 0; i < count; i++) {
+			vectors[i] = new byte[16];
+			random.nextBytes(vectors[i]);
+			index.add(i + 1, vectors[i]);
+		}
+		while (index.buildStep(1000)) {
+			// Link everything
+		}
+		assertThat(index.pending()).isZero();
+
+		int hits = 0;
+		for (int q = 0; q < 100; q++) {
+			int query = random.nextInt(count);
+			List<HnswIndex.Match> exact = index.exactSearch(vectors[query], 10, query + 1);
+			List<HnswIndex.Match> found = index.search(vectors[query], 10, 64, query + 1);
+			assertThat(found).hasSize(10).extracting(HnswIndex.Match::photoId).doesNotContain(query + 1L);
+			int furthest = exact.get(9).distance();
+			hits += (int) found.stream().filter(m -> m.distance() <= furthest).count();
+		}
+		assertThat(hits).isGreaterThanOrEqualTo(950);
+	}
+
+	@Test
+	void keepsUpWithAddsAndRemoves() {
+		HnswIndex index = new HnswIndex(2, 4, 16, 0);
+		index.add(1, new byte[] {0, 0});
+		index.add(2, new byte[] {10, 0});
+		index.buildStep(1);
+		// Photo 2 is still pending, photo 3 arrives later; both are found
+		index.add(3, new byte[] {3, 4});
+		assertThat(index.search(new byte[] {0, 0}, 3, 8, -1))
+				.containsExactly(new HnswIndex.Match(1, 0), new HnswIndex.Match(3, 25), new HnswIndex.Match(2, 100));
+
+		index.buildStep(10);
+		index.add(1, new byte[] {(byte) 200, 0});
+		index.remove(3);
+		assertThat(index.search(new byte[] {0, 0}, 3, 8, -1)).extracting(HnswIndex.Match::photoId).containsExactly(2L, 1L);
+		assertThat(index.size()).isEqualTo(2);
+		assertThat(index.removedCount()).isEqualTo(2);
+		assertThat(index.vectorOf(1)).containsExactly(200, 0);
+	}
+
+	@Test
+	void featuresSeparateScenes() {
+		byte[] beach = VisualSimilarityService.features(scene(120, 80, new Color(70, 140, 220), new Color(230, 210, 160)));
+		byte[] beachResized = VisualSimilarityService.features(scene(64, 43, new Color(70, 140, 220), new Color(230, 210, 160)));
+		byte[] forest = VisualSimilarityService.features(scene(120, 80, new Color(30, 90, 40), new Color(90, 60, 30)));
+
+		assertThat(beach).hasSize(VisualSimilarityService.DIMENSIONS);
+		assertThat(distance(beach, beachResized)).isLessThan(distance(beach, forest) / 10);
+	}
+
+	private static BufferedImage scene(int width, int height, Color sky, Color ground) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		g.setColor(sky);
+		g.fillRect(0, 0, width, height / 2);
+		g.setColor(ground);
+		g.fillRect(0, height / 2, width, height - height / 2);
+		g.setColor(Color.WHITE);
+		g.fillOval(width / 6, height / 8, width / 5, height / 5);
+		g.dispose();
+		return image;
+	}
+
+	private static int distance(byte[] a, byte[] b) {
+		int sum = 0;
+		for (int i = 0; i < a.length; i++) {
+			int d = (a[i] & 0xff) - (b[i] & 0xff);
+			sum += d * d;
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,200 @@
+package com.redligot.backend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redligot.backend.repository.IdempotencyKeyStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IdempotencyServiceTests {
+
+	private final InMemoryKeyStore store = new InMemoryKeyStore();
+	private final IdempotencyService service = new IdempotencyService(store, new ObjectMapper(), 60, 60_000, 5_000);
+
+	@Test
+	void retryReplaysFirstResponse() throws IOException {
+		AtomicInteger runs = new AtomicInteger();
+
+		ResponseEntity<List<String>> first = service.execute(1, "key", request("/api/photos/bulk"),
+				new MockHttpServletResponse(), () -> ResponseEntity.ok(List.of("photo-" + runs.incrementAndGet())));
+		MockHttpServletResponse replayed = new MockHttpServletResponse();
+		ResponseEntity<List<String>> second = service.execute(1, "key", request("/api/photos/bulk"), replayed,
+				() -> ResponseEntity.ok(List.of("photo-" + runs.incrementAndGet())));
+
+		assertThat(first.getBody()).containsExactly("photo-1");
+		assertThat(second).isNull();
+		assertThat(runs).hasValue(1);
+		assertThat(replayed.getStatus()).isEqualTo(200);
+		assertThat(replayed.getHeader(IdempotencyService.REPLAYED_HEADER)).isEqualTo("true");
+		assertThat(replayed.getContentAsString()).isEqualTo("[\"photo-1\"]");
+	}
+
+	@Test
+	void concurrentDuplicateWaitsForFirst() throws Exception {
+		AtomicInteger runs = new AtomicInteger();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch finish = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<ResponseEntity<String>> first = executor.submit(() -> service.execute(1, "key",
+					request("/api/photos"), new MockHttpServletResponse(), () -> {
+						started.countDown();
+						await(finish);
+						return ResponseEntity.ok("photo-" + runs.incrementAndGet());
+					}));
+			assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+			MockHttpServletResponse replayed = new MockHttpServletResponse();
+			Future<ResponseEntity<String>> duplicate = executor.submit(() -> service.execute(1, "key",
+					request("/api/photos"), replayed, () -> ResponseEntity.ok("photo-" + runs.incrementAndGet())));
+
+			Thread.sleep(100);
+			assertThat(duplicate.isDone()).isFalse();
+			finish.countDown();
+
+			assertThat(first.get(5, TimeUnit.SECONDS).getBody()).isEqualTo("photo-1");
+			assertThat(duplicate.get(5, TimeUnit.SECONDS)).isNull();
+			assertThat(replayed.getContentAsString()).isEqualTo("\"photo-1\"");
+			assertThat(runs).hasValue(1);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void failedRequestReleasesKey() throws IOException {
+		assertThatThrownBy(() -> service.execute(1, "key", request("/api/photos"), new MockHttpServletResponse(),
+				() -> {
+					throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid file");
+				})).isInstanceOf(ResponseStatusException.class);
+
+		ResponseEntity<String> retry = service.execute(1, "key", request("/api/photos"), new MockHttpServletResponse(),
+				() -> ResponseEntity.ok("photo"));
+
+		assertThat(retry.getBody()).isEqualTo("photo");
+	}
+
+	@Test
+	void keyIsBoundToItsRequestAndUser() throws IOException {
+		service.execute(1, "key", request("/api/photos"), new MockHttpServletResponse(), () -> ResponseEntity.ok("a"));
+
+		assertThatThrownBy(() -> service.execute(1, "key", request("/api/photos/bulk"), new MockHttpServletResponse(),
+				() -> ResponseEntity.ok("b")))
+				.isInstanceOfSatisfying(ResponseStatusException.class,
+						e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY));
+		assertThat(service.execute(2, "key", request("/api/photos"), new MockHttpServletResponse(),
+				() -> ResponseEntity.ok("c")).getBody()).isEqualTo("c");
+	}
+
+	@Test
+	void keyIsBoundToTheRequestContent() throws IOException {
+		Object[] content = {"Beach", null, new MockMultipartFile("file", "beach.jpg", "image/jpeg", new byte[3]), 4L};
+		service.execute(1, "key", request("/api/photos"), content, new MockHttpServletResponse(),
+				() -> ResponseEntity.ok("a"));
+
+		// Same endpoint, different file
+		assertUnprocessable(new Object[] {"Beach", null,
+				new MockMultipartFile("file", "beach.jpg", "image/jpeg", new byte[4]), 4L}, request("/api/photos"));
+		// Same endpoint, different field
+		assertUnprocessable(new Object[] {"Beach", null,
+				new MockMultipartFile("file", "beach.jpg", "image/jpeg", new byte[3]), 5L}, request("/api/photos"));
+		// Same content, different query
+		MockHttpServletRequest otherQuery = request("/api/photos");
+		otherQuery.setQueryString("galleryId=5");
+		assertUnprocessable(content, otherQuery);
+
+		MockHttpServletResponse replayed = new MockHttpServletResponse();
+		assertThat(service.execute(1, "key", request("/api/photos"), new Object[] {"Beach", null,
+				new MockMultipartFile("file", "beach.jpg", "image/jpeg", new byte[3]), 4L}, replayed,
+				() -> ResponseEntity.ok("b"))).isNull();
+		assertThat(replayed.getContentAsString()).isEqualTo("\"a\"");
+	}
+
+	@Test
+	void keyPastItsTtlIsUnusedEvenBeforeCleanup() throws IOException {
+		// A negative TTL stores responses that expired a minute ago
+		IdempotencyService expiring = new IdempotencyService(store, new ObjectMapper(), -1, 60_000, 5_000);
+		expiring.execute(1, "key", request("/api/photos"), new MockHttpServletResponse(), () -> ResponseEntity.ok("a"));
+
+		ResponseEntity<String> retry = expiring.execute(1, "key", request("/api/photos/bulk"),
+				new MockHttpServletResponse(), () -> ResponseEntity.ok("b"));
+
+		assertThat(retry.getBody()).isEqualTo("b");
+	}
+
+	private void assertUnprocessable(Object[] content, MockHttpServletRequest request) {
+		assertThatThrownBy(() -> service.execute(1, "key", request, content, new MockHttpServletResponse(),
+				() -> ResponseEntity.ok("b")))
+				.isInstanceOfSatisfying(ResponseStatusException.class,
+						e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY));
+	}
+
+	private static MockHttpServletRequest request(String path) {
+		return new MockHttpServletRequest("POST", path);
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * The claim semantics of the table without a database.
+	 */
+	private static final class InMemoryKeyStore extends IdempotencyKeyStore {
+
+		private final Map<String, IdempotencyKey> keys = new ConcurrentHashMap<>();
+
+		InMemoryKeyStore() {
+			super(null);
+		}
+
+		@Override
+		public boolean claim(long userId, String key, String fingerprint, LocalDateTime expiresAt) {
+			return keys.putIfAbsent(userId + ":" + key, new IdempotencyKey(fingerprint, IN_PROGRESS, null, null, expiresAt)) == null;
+		}
+
+		@Override
+		public IdempotencyKey find(long userId, String key) {
+			return keys.get(userId + ":" + key);
+		}
+
+		@Override
+		public void complete(long userId, String key, int responseStatus, String responseBody, LocalDateTime expiresAt) {
+			keys.computeIfPresent(userId + ":" + key, (k, claimed) ->
+					new IdempotencyKey(claimed.fingerprint(), COMPLETED, responseStatus, responseBody, expiresAt));
+		}
+
+		@Override
+		public void release(long userId, String key) {
+			keys.remove(userId + ":" + key);
+		}
+
+		@Override
+		public boolean releaseIfExpired(long userId, String key, LocalDateTime now) {
+			IdempotencyKey existing = keys.get(userId + ":" + key);
+			return existing != null && existing.expiresAt().isBefore(now) && keys.remove(userId + ":" + key, existing);
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package com.redligot.backend.service;
+
+import com.redligot.backend.security.ImageUrlSigner.Variant;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Admission, coalescing and invalidation of the in-heap image cache.
+ */
+class ImageCacheTests {
+
+	private static final int IMAGE_BYTES = 10_000;
+
+	@Test
+	void servesRepeatedRequestsFromMemory() {
+		ImageCache cache = new ImageCache(100_000, IMAGE_BYTES);
+		CountingLoader loader = new CountingLoader(IMAGE_BYTES);
+
+		ImageCache.CachedImage first = cache.get(key(1, Variant.ORIGINAL), loader);
+		ImageCache.CachedImage second = cache.get(key(1, Variant.ORIGINAL), loader);
+
+		assertThat(second).isSameAs(first);
+		assertThat(loader.calls.get()).isEqualTo(1);
+		ImageCache.Stats stats = cache.stats();
+		assertThat(stats.hits()).isEqualTo(1);
+		assertThat(stats.misses()).isEqualTo(1);
+		assertThat(stats.entries()).isEqualTo(1);
+		assertThat(stats.bytes()).isEqualTo(first.weight());
+	}
+
+	@Test
+	void frequentlyRequestedImagesSurviveAScan() {
+		ImageCache cache = new ImageCache(100_000, IMAGE_BYTES);
+		CountingLoader loader = new CountingLoader(IMAGE_BYTES);
+		for (int round = 0; round < 3; round++) {
+			for (long id = 0; id < 9; id++) {
+				cache.get(key(id, Variant.ORIGINAL), loader);
+			}
+		}
+		assertThat(loader.calls.get()).isEqualTo(9);
+
+		// One-off downloads never beat the victims' frequency, so they are turned away
+		for (long id = 100; id < 150; id++) {
+			cache.get(key(id, Variant.ORIGINAL), loader);
+		}
+		loader.calls.set(0);
+		for (long id = 0; id < 9; id++) {
+			cache.get(key(id, Variant.ORIGINAL), loader);
+		}
+
+		assertThat(loader.calls.get()).isZero();
+		assertThat(cache.stats().rejections()).isPositive();
+		assertThat(cache.stats().bytes()).isLessThanOrEqualTo(100_000);
+	}
+
+	@Test
+	void rejectsImagesLargerThanTheCache() {
+		ImageCache cache = new ImageCache(100_000, IMAGE_BYTES);
+		CountingLoader loader = new CountingLoader(200_000);
+
+		cache.get(key(1, Variant.ORIGINAL), loader);
+		cache.get(key(1, Variant.ORIGINAL), loader);
+
+		assertThat(loader.calls.get()).isEqualTo(2);
+		assertThat(cache.stats().entries()).isZero();
+		assertThat(cache.stats().rejections()).isEqualTo(2);
+	}
+
+	@Test
+	void concurrentMissesShareOneLoad() throws Exception {
+		ImageCache cache = new ImageCache(100_000, IMAGE_BYTES);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger calls = new AtomicInteger();
+		Supplier<ImageCache.CachedImage> slowLoader = () -> {
+			calls.incrementAndGet();
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return new ImageCache.CachedImage("image/png", new byte[IMAGE_BYTES]);
+		};
+		AtomicReference<ImageCache.CachedImage> first = new AtomicReference<>();
+		AtomicReference<ImageCache.CachedImage> second = new AtomicReference<>();
+
+		Thread loader = Thread.ofVirtual().start(() -> first.set(cache.get(key(1, Variant.THUMB), slowLoader)));
+		assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+		Thread waiter = Thread.ofVirtual().start(() -> second.set(cache.get(key(1, Variant.THUMB), slowLoader)));
+		long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+		while (cache.stats().coalescedLoads() == 0 && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		release.countDown();
+		loader.join();
+		waiter.join();
+
+		assertThat(calls.get()).isEqualTo(1);
+		assertThat(cache.stats().coalescedLoads()).isEqualTo(1);
+		assertThat(second.get()).isSameAs(first.get());
+	}
+
+	@Test
+	void failedAndEmptyLoadsAreNotCached() {
+		ImageCache cache = new ImageCache(100_000, IMAGE_BYTES);
+
+		assertThatThrownBy(() -> cache.get(key(1, Variant.ORIGINAL), () -> {
+			throw new IllegalStateException("read failed");
+		})).isInstanceOf(IllegalStateException.class).hasMessage("read failed");
+		assertThat(cache.get(key(1, Variant.ORIGINAL), () -> null)).isNull();
+
+		CountingLoader loader = new CountingLoader(IMAGE_BYTES);
+		assertThat(cache.get(key(1, Variant.ORIGINAL), loader)).isNotNull();
+		assertThat(loader.calls.get()).isEqualTo(1);
+		assertThat(cache.stats().entries()).isEqualTo(1);
+	}
+
+	@Test
+	void invalidateDropsEveryVersionAndVariantOfAPhoto() {
+		ImageCache cache = new ImageCache(1_000_000, IMAGE_BYTES);
+		CountingLoader loader = new CountingLoader(IMAGE_BYTES);
+		cache.get(new ImageCache.Key(1, 1, Variant.ORIGINAL), loader);
+		cache.get(new ImageCache.Key(1, 2, Variant.ORIGINAL), loader);
+		cache.get(new ImageCache.Key(1, 2, Variant.THUMB), loader);
+		cache.get(new ImageCache.Key(2, 1, Variant.ORIGINAL), loader);
+
+		cache.invalidate(1);
+
+		ImageCache.Stats stats = cache.stats();
+		assertThat(stats.entries()).isEqualTo(1);
+		assertThat(stats.bytes()).isEqualTo(IMAGE_BYTES + 96);
+		loader.calls.set(0);
+		cache.get(new ImageCache.Key(2, 1, Variant.ORIGINAL), loader);
+		cache.get(new ImageCache.Key(1, 2, Variant.THUMB), loader);
+		assertThat(loader.calls.get()).isEqualTo(1);
+	}
+
+	@Test
+	void zeroCapacityDisablesCaching() {
+		ImageCache cache = new ImageCache(0, IMAGE_BYTES);
+		CountingLoader loader = new CountingLoader(IMAGE_BYTES);
+
+		cache.get(key(1, Variant.ORIGINAL), loader);
+		cache.get(key(1, Variant.ORIGINAL), loader);
+
+		assertThat(loader.calls.get()).isEqualTo(2);
+		assertThat(cache.stats().entries()).isZero();
+	}
+
+	private static ImageCache.Key key(long photoId, Variant variant) {
+		return new ImageCache.Key(photoId, 1, variant);
+	}
+
+	private static final class CountingLoader implements Supplier<ImageCache.CachedImage> {
+
+		private final int size;
+		final AtomicInteger calls = new AtomicInteger();
+
+		CountingLoader(int size) {
+			this.size = size;
+		}
+
+		@Override
+		public ImageCache.CachedImage get() {
+			calls.incrementAndGet();
+			return new ImageCache.CachedImage("image/jpeg", new byte[size]);
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package com.redligot.backend.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Subsampling and memory budget of the image decoder.
+ */
+class ImageDecodeServiceTests {
+
+	@Test
+	void decodesAtTwiceTheTargetSize() throws IOException {
+		ImageDecodeService service = new ImageDecodeService(150_000_000, 64L * 1024 * 1024, 1000);
+		byte[] png = png(new BufferedImage(1000, 800, BufferedImage.TYPE_INT_RGB));
+
+		BufferedImage decoded = service.decode(new ByteArrayInputStream(png), 100, image -> image);
+
+		assertThat(decoded.getWidth()).isEqualTo(200);
+		assertThat(decoded.getHeight()).isEqualTo(160);
+		assertThat(service.stats().decoded()).isEqualTo(1);
+		assertThat(service.stats().reservedBytes()).isZero();
+	}
+
+	@Test
+	void subsamplingAndPermitMath() {
+		assertThat(ImageDecodeService.subsampling(1000, 800, 100)).isEqualTo(5);
+		assertThat(ImageDecodeService.subsampling(150, 150, 100)).isEqualTo(1);
+		assertThat(ImageDecodeService.subsampling(1000, 10, 0)).isEqualTo(1000);
+		// 1001 / 5 rounds up to 201 columns
+		assertThat(ImageDecodeService.permits(1001, 800, 5, 4)).isEqualTo((201 * 160 * 4 + 1023) / 1024);
+		assertThat(ImageDecodeService.permits(1, 1, 1, 1)).isEqualTo(1);
+		assertThat(ImageDecodeService.permits(1_000_000, 1_000_000, 1, 8)).isEqualTo(Integer.MAX_VALUE);
+	}
+
+	@Test
+	void bytesPerPixelFollowTheDecodedType() {
+		assertThat(ImageDecodeService.bytesPerPixel(
+				ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_INT_ARGB))).isEqualTo(4);
+		assertThat(ImageDecodeService.bytesPerPixel(
+				ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_3BYTE_BGR))).isEqualTo(3);
+		assertThat(ImageDecodeService.bytesPerPixel(
+				ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_BYTE_GRAY))).isEqualTo(1);
+		assertThat(ImageDecodeService.bytesPerPixel(rgba16())).isEqualTo(8);
+	}
+
+	@Test
+	void reservesEightBytesPerPixelForSixteenBitPngs() throws IOException {
+		ImageDecodeService service = new ImageDecodeService(150_000_000, 64L * 1024 * 1024, 1000);
+		byte[] png = png(rgba16().createBufferedImage(100, 100));
+
+		long reserved = service.decode(new ByteArrayInputStream(png), 1000, image -> service.stats().reservedBytes());
+
+		assertThat(reserved).isEqualTo((100 * 100 * 8 + 1023) / 1024 * 1024L);
+	}
+
+	@Test
+	void rejectsImagesAboveThePixelLimit() throws IOException {
+		ImageDecodeService service = new ImageDecodeService(10_000, 64L * 1024 * 1024, 1000);
+		byte[] png = png(new BufferedImage(200, 200, BufferedImage.TYPE_INT_RGB));
+
+		assertThatThrownBy(() -> service.decode(new ByteArrayInputStream(png), 50, image -> image))
+				.isInstanceOfSatisfying(ResponseStatusException.class,
+						e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE));
+		assertThat(service.stats().rejected()).isEqualTo(1);
+		assertThat(service.stats().decoded()).isZero();
+	}
+
+	@Test
+	void rejectsImagesLargerThanTheWholeBudget() throws IOException {
+		ImageDecodeService service = new ImageDecodeService(150_000_000, 16 * 1024, 1000);
+		byte[] png = png(new BufferedImage(200, 200, BufferedImage.TYPE_INT_RGB));
+
+		assertThatThrownBy(() -> service.decode(new ByteArrayInputStream(png), 1000, image -> image))
+				.isInstanceOfSatisfying(ResponseStatusException.class,
+						e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE));
+		// Subsampled far enough, the same image fits
+		Integer width = service.decode(new ByteArrayInputStream(png), 20, BufferedImage::getWidth);
+		assertThat(width).isEqualTo(40);
+	}
+
+	@Test
+	void failsFastWhenTheBudgetStaysExhausted() throws Exception {
+		ImageDecodeService service = new ImageDecodeService(150_000_000, 200 * 1024, 50);
+		byte[] png = png(new BufferedImage(200, 200, BufferedImage.TYPE_INT_RGB));
+		CountDownLatch holding = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		Thread holder = Thread.ofVirtual().start(() -> {
+			try {
+				service.decode(new ByteArrayInputStream(png), 1000, image -> {
+					holding.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					return image;
+				});
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		assertThat(holding.await(10, TimeUnit.SECONDS)).isTrue();
+
+		assertThatThrownBy(() -> service.decode(new ByteArrayInputStream(png), 1000, image -> image))
+				.isInstanceOfSatisfying(ResponseStatusException.class,
+						e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE));
+		assertThat(service.stats().rejected()).isEqualTo(1);
+
+		release.countDown();
+		holder.join();
+		assertThat(service.stats().reservedBytes()).isZero();
+		Integer width = service.decode(new ByteArrayInputStream(png), 1000, BufferedImage::getWidth);
+		assertThat(width).isEqualTo(200);
+	}
+
+	@Test
+	void releasesTheReservationWhenTheProcessorFails() throws IOException {
+		ImageDecodeService service = new ImageDecodeService(150_000_000, 200 * 1024, 50);
+		byte[] png = png(new BufferedImage(200, 200, BufferedImage.TYPE_INT_RGB));
+		AtomicLong reservedInside = new AtomicLong();
+
+		assertThatThrownBy(() -> service.decode(new ByteArrayInputStream(png), 1000, image -> {
+			reservedInside.set(service.stats().reservedBytes());
+			throw new IOException("encoder failed");
+		})).isInstanceOf(IOException.class).hasMessage("encoder failed");
+
+		assertThat(reservedInside.get()).isPositive();
+		assertThat(service.stats().reservedBytes()).isZero();
+	}
+
+	@Test
+	void returnsNullForUnsupportedFormats() throws IOException {
+		ImageDecodeService service = new ImageDecodeService(150_000_000, 64L * 1024 * 1024, 1000);
+
+		BufferedImage decoded = service.decode(new ByteArrayInputStream("not an image".getBytes()), 100, image -> image);
+		assertThat(decoded).isNull();
+		assertThat(service.stats().reservedBytes()).isZero();
+	}
+
+	private static ImageTypeSpecifier rgba16() {
+		return ImageTypeSpecifier.createInterleaved(ColorSpace.getInstance(ColorSpace.CS_sRGB),
+				new int[] {0, 1, 2, 3}, DataBuffer.TYPE_USHORT, true, false);
+	}
+
+	private static byte[] png(BufferedImage image) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertThat(ImageIO.write(image, "png", out)).isTrue();
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,112 @@
+package com.redligot.backend.service;
+
+import com.redligot.backend.repository.PhotoContentStore.ImageMetadata;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImageMetadataExtractorTests {
+
+	private final ImageMetadataExtractor extractor =
+			new ImageMetadataExtractor(new BufferPool(256 * 1024, 1024 * 1024, "paranoid"), 64 * 1024);
+
+	@Test
+	void readsDimensionsWithoutMetadata() throws IOException {
+		for (String format : new String[] {"jpg", "png", "gif", "bmp"}) {
+			byte[] image = encode(format);
+			ImageMetadata metadata = extractor.parse(image, 0, image.length);
+			assertThat(metadata.width()).as(format).isEqualTo(64);
+			assertThat(metadata.height()).as(format).isEqualTo(48);
+			assertThat(metadata.takenAt()).as(format).isNull();
+		}
+	}
+
+	@Test
+	void readsExifWhileContentStreamsPast() throws IOException {
+		byte[] image = withApp1(encode("jpg"), "Exif\0\0", exif());
+
+		try (ImageMetadataExtractor.HeaderCapture capture = extractor.capture(new ByteArrayInputStream(image))) {
+			capture.transferTo(OutputStream.nullOutputStream());
+			ImageMetadata metadata = capture.metadata();
+
+			assertThat(metadata.width()).isEqualTo(64);
+			assertThat(metadata.orientation()).isEqualTo(6);
+			assertThat(metadata.cameraModel()).isEqualTo("Canon EOS");
+			assertThat(metadata.takenAt()).isEqualTo(LocalDateTime.of(2021, 7, 4, 12, 34, 56));
+			assertThat(metadata.version()).isEqualTo(ImageMetadataExtractor.VERSION);
+		}
+	}
+
+	@Test
+	void readsXmp() throws IOException {
+		String xmp = "<x:xmpmeta><rdf:Description exif:DateTimeOriginal=\"2020-01-02T03:04:05+02:00\" "
+				+ "tiff:Model=\"Pixel 7\"><tiff:Orientation>8</tiff:Orientation></rdf:Description></x:xmpmeta>";
+		byte[] image = withApp1(encode("jpg"), "http://ns.adobe.com/xap/1.0/\0", xmp.getBytes(StandardCharsets.UTF_8));
+
+		ImageMetadata metadata = extractor.extract(new ByteArrayInputStream(image));
+
+		assertThat(metadata.orientation()).isEqualTo(8);
+		assertThat(metadata.cameraModel()).isEqualTo("Pixel 7");
+		assertThat(metadata.takenAt()).isEqualTo(LocalDateTime.of(2020, 1, 2, 3, 4, 5));
+	}
+
+	@Test
+	void toleratesTruncatedAndUnknownContent() throws IOException {
+		byte[] image = withApp1(encode("jpg"), "Exif\0\0", exif());
+
+		assertThat(extractor.parse(image, 0, 40).takenAt()).isNull();
+		assertThat(extractor.parse(new byte[] {1, 2, 3}, 0, 3).width()).isNull();
+	}
+
+	private static byte[] encode(String format) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB), format, out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Little-endian TIFF with orientation and model in IFD0 and the capture time in the Exif IFD.
+	 */
+	private static byte[] exif() {
+		ByteBuffer tiff = ByteBuffer.allocate(160).order(ByteOrder.LITTLE_ENDIAN);
+		tiff.put((byte) 'I').put((byte) 'I').putShort((short) 42).putInt(8);
+		tiff.putShort((short) 3);
+		tiff.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) 6).putShort((short) 0);
+		tiff.putShort((short) 0x0110).putShort((short) 2).putInt(12).putInt(100);
+		tiff.putShort((short) 0x8769).putShort((short) 4).putInt(1).putInt(60);
+		tiff.putInt(0);
+		tiff.position(60);
+		tiff.putShort((short) 1);
+		tiff.putShort((short) 0x9003).putShort((short) 2).putInt(20).putInt(120);
+		tiff.putInt(0);
+		tiff.position(100).put("Canon EOS\0\0\0".getBytes(StandardCharsets.ISO_8859_1));
+		tiff.position(120).put("2021:07:04 12:34:56\0".getBytes(StandardCharsets.ISO_8859_1));
+		return tiff.array();
+	}
+
+	private static byte[] withApp1(byte[] jpeg, String header, byte[] payload) {
+		byte[] headerBytes = header.getBytes(StandardCharsets.ISO_8859_1);
+		int length = 2 + headerBytes.length + payload.length;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(jpeg, 0, 2);
+		out.write(0xff);
+		out.write(0xe1);
+		out.write(length >> 8);
+		out.write(length & 0xff);
+		out.writeBytes(headerBytes);
+		out.writeBytes(payload);
+		out.write(jpeg, 2, jpeg.length - 2);
+		return out.toByteArray();
+	}
+}
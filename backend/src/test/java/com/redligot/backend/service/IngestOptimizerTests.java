@@ -0,0 +1,173 @@
+package com.redligot.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IngestOptimizerTests {
+
+	@Test
+	void jpegGetsSmallerWithIdenticalPixels() throws IOException {
+		BufferedImage image = photoLike(333, 211, BufferedImage.TYPE_INT_RGB);
+		byte[] jpeg = encodeJpeg(image, 0);
+
+		assertIdenticalAndSmaller(jpeg);
+	}
+
+	@Test
+	void jpegWithRestartIntervalsAndGrayscale() throws IOException {
+		assertIdenticalAndSmaller(encodeJpeg(photoLike(300, 200, BufferedImage.TYPE_INT_RGB), 7));
+		assertIdenticalAndSmaller(encodeJpeg(photoLike(129, 65, BufferedImage.TYPE_BYTE_GRAY), 0));
+	}
+
+	@Test
+	void unsupportedJpegIsLeftAlone() {
+		assertThat(JpegHuffmanOptimizer.optimize(new byte[] {(byte) 0xFF, (byte) 0xD8, 1, 2, 3})).isNull();
+		assertThat(JpegHuffmanOptimizer.optimize(new byte[] {1, 2, 3})).isNull();
+	}
+
+	@Test
+	void pngIsRedeflatedLosslessly() throws IOException {
+		BufferedImage image = photoLike(200, 150, BufferedImage.TYPE_INT_RGB);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageWriter writer = ImageIO.getImageWritersByFormatName("png").next();
+		ImageWriteParam param = writer.getDefaultWriteParam();
+		param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+		// Fastest deflate level, as screenshot tools tend to use
+		param.setCompressionQuality(1.0f);
+		try (MemoryCacheImageOutputStream stream = new MemoryCacheImageOutputStream(out)) {
+			writer.setOutput(stream);
+			writer.write(null, new IIOImage(image, null, null), param);
+		} finally {
+			writer.dispose();
+		}
+		byte[] png = out.toByteArray();
+
+		byte[] optimized = PngRecompressor.recompress(png);
+
+		assertThat(optimized).isNotNull();
+		assertThat(optimized.length).isLessThan(png.length);
+		assertSamePixels(ImageIO.read(new ByteArrayInputStream(png)), ImageIO.read(new ByteArrayInputStream(optimized)));
+		assertThat(PngRecompressor.recompress(optimized)).isSameAs(optimized);
+		assertThat(PngRecompressor.recompress(new byte[] {1, 2, 3})).isNull();
+	}
+
+	@Test
+	void lossyModeScalesDownAndKeepsMetadata() throws IOException {
+		byte[] jpeg = withApp1(encodeJpeg(photoLike(800, 600, BufferedImage.TYPE_INT_RGB), 0, 0.98f));
+		IngestOptimizer optimizer = new IngestOptimizer(new ImageDecodeService(150_000_000, 64L << 20, 1000),
+				"lossy", false, 0, 120_000, 0.8f);
+
+		byte[] stored = optimizer.optimize(jpeg);
+
+		assertThat(stored.length).isLessThan(jpeg.length / 2);
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(stored));
+		assertThat(image.getWidth()).isEqualTo(400);
+		assertThat(image.getHeight()).isEqualTo(300);
+		IngestOptimizer.JpegSource source = IngestOptimizer.readJpegSource(stored);
+		assertThat(new String(source.metadata(), StandardCharsets.ISO_8859_1)).contains("Exif");
+		assertThat(optimizer.stats().reencoded()).isEqualTo(1);
+		assertThat(optimizer.stats().savedBytes()).isEqualTo(jpeg.length - stored.length);
+	}
+
+	@Test
+	void offModeStoresAsUploaded() throws IOException {
+		byte[] jpeg = encodeJpeg(photoLike(64, 64, BufferedImage.TYPE_INT_RGB), 0);
+		IngestOptimizer optimizer = new IngestOptimizer(new ImageDecodeService(150_000_000, 64L << 20, 1000),
+				"off", false, 0, 1, 0.8f);
+
+		assertThat(optimizer.optimize(jpeg)).isSameAs(jpeg);
+		assertThat(optimizer.stats().processed()).isZero();
+	}
+
+	private static void assertIdenticalAndSmaller(byte[] jpeg) throws IOException {
+		byte[] optimized = JpegHuffmanOptimizer.optimize(jpeg);
+
+		assertThat(optimized).isNotNull();
+		assertThat(optimized.length).isLessThan(jpeg.length);
+		assertSamePixels(ImageIO.read(new ByteArrayInputStream(jpeg)), ImageIO.read(new ByteArrayInputStream(optimized)));
+	}
+
+	private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+		assertThat(actual.getWidth()).isEqualTo(expected.getWidth());
+		assertThat(actual.getHeight()).isEqualTo(expected.getHeight());
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				assertThat(actual.getRGB(x, y)).as("pixel %d,%d", x, y).isEqualTo(expected.getRGB(x, y));
+			}
+		}
+	}
+
+	// Smooth gradients with some noise, so the symbol statistics resemble a photo's
+	private static BufferedImage photoLike(int width, int height, int type) {
+		Random random = new Random(11);
+		BufferedImage image = new BufferedImage(width, height, type);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int r = (x * 255 / width + random.nextInt(16)) & 0xff;
+				int g = (y * 255 / height + random.nextInt(16)) & 0xff;
+				int b = ((x + y) * 127 / (width + height) + random.nextInt(16)) & 0xff;
+				image.setRGB(x, y, r << 16 | g << 8 | b);
+			}
+		}
+		return image;
+	}
+
+	private static byte[] encodeJpeg(BufferedImage image, int restartInterval) throws IOException {
+		return encodeJpeg(image, restartInterval, 0.85f);
+	}
+
+	private static byte[] encodeJpeg(BufferedImage image, int restartInterval, float quality) throws IOException {
+		ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+		ImageWriteParam param = writer.getDefaultWriteParam();
+		param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+		param.setCompressionQuality(quality);
+		IIOMetadata metadata = writer.getDefaultImageMetadata(
+				ImageTypeSpecifier.createFromRenderedImage(image), param);
+		if (restartInterval > 0) {
+			IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree("javax_imageio_jpeg_image_1.0");
+			IIOMetadataNode markerSequence = (IIOMetadataNode) root.getElementsByTagName("markerSequence").item(0);
+			IIOMetadataNode dri = new IIOMetadataNode("dri");
+			dri.setAttribute("interval", Integer.toString(restartInterval));
+			markerSequence.insertBefore(dri, markerSequence.getFirstChild());
+			metadata.setFromTree("javax_imageio_jpeg_image_1.0", root);
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (MemoryCacheImageOutputStream stream = new MemoryCacheImageOutputStream(out)) {
+			writer.setOutput(stream);
+			writer.write(null, new IIOImage(image, null, metadata), param);
+		} finally {
+			writer.dispose();
+		}
+		return out.toByteArray();
+	}
+
+	// A minimal EXIF segment right after SOI, as cameras write it
+	private static byte[] withApp1(byte[] jpeg) {
+		byte[] exif = "Exif\0\0MM\0*\0\0\0\u0008\0\0".getBytes(StandardCharsets.ISO_8859_1);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(jpeg, 0, 2);
+		out.write(0xFF);
+		out.write(0xE1);
+		out.write((exif.length + 2) >> 8);
+		out.write((exif.length + 2) & 0xff);
+		out.write(exif, 0, exif.length);
+		out.write(jpeg, 2, jpeg.length - 2);
+		return out.toByteArray();
+	}
+}
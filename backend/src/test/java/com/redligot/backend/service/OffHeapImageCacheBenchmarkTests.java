@@ -0,0 +1,153 @@
+package com.redligot.backend.service;
+
+import com.redligot.backend.security.ImageUrlSigner;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares GC pauses of the heap and off-heap image caches at equal capacity.
+ *
+ * <p>Both caches hold 256 MB of originals from a catalogue twice that size, requested
+ * with an 80/20 skew by eight threads. A miss copies the image from a shared source
+ * array, like the driver does from a BLOB; a hit reads every byte, like a response
+ * does. Pauses are taken from the collectors' notifications, so concurrent phases are
+ * not counted. Run with <code>mvn test -Pbenchmark</code>.</p>
+ */
+@Tag("benchmark")
+class OffHeapImageCacheBenchmarkTests {
+
+	private static final long CAPACITY_BYTES = 256L * 1024 * 1024;
+	private static final int PHOTOS = 2_000;
+	private static final int MAX_IMAGE_BYTES = 512 * 1024;
+	private static final int THREADS = 8;
+	private static final int REQUESTS_PER_THREAD = 50_000;
+
+	private final byte[] source = new byte[MAX_IMAGE_BYTES];
+	private final int[] sizes = new int[PHOTOS];
+
+	@Test
+	void compareGcPauses() throws Exception {
+		ThreadLocalRandom.current().nextBytes(source);
+		for (int i = 0; i < PHOTOS; i++) {
+			sizes[i] = MAX_IMAGE_BYTES / 8 + ThreadLocalRandom.current().nextInt(MAX_IMAGE_BYTES * 7 / 8);
+		}
+
+		ImageCache heap = new ImageCache(CAPACITY_BYTES, MAX_IMAGE_BYTES / 2);
+		IntConsumer heapRequest = id -> {
+			ImageCache.CachedImage image = heap.get(new ImageCache.Key(id, 1, ImageUrlSigner.Variant.ORIGINAL),
+					() -> new ImageCache.CachedImage("image/jpeg", Arrays.copyOf(source, sizes[id])));
+			consume(ByteBuffer.wrap(image.data()));
+		};
+		OffHeapImageCache offHeap = new OffHeapImageCache(CAPACITY_BYTES, 32 * 1024, 64 * 1024 * 1024);
+		IntConsumer offHeapRequest = id -> {
+			try (OffHeapImageCache.Lease lease = offHeap.getOrLoad(id, 1, () -> new OffHeapImageCache.Source(1,
+					sizes[id], "image/jpeg", out -> {
+						out.write(Arrays.copyOf(source, sizes[id]));
+						return true;
+					}))) {
+				assertThat(lease).isNotNull();
+				for (ByteBuffer chunk : lease.chunks()) {
+					consume(chunk);
+				}
+			}
+		};
+
+		// Warm up both so JIT compilation and the initial fill do not skew the runs
+		run(heapRequest);
+		run(offHeapRequest);
+
+		Pauses heapPauses = run(heapRequest);
+		Pauses offHeapPauses = run(offHeapRequest);
+
+		System.out.printf("Heap cache:     %s, hit rate %.2f%n", heapPauses, heap.stats().hitRate());
+		System.out.printf("Off-heap cache: %s, hit rate %.2f%n", offHeapPauses, offHeap.stats().hitRate());
+		assertThat(offHeap.stats().usedBytes()).isLessThanOrEqualTo(CAPACITY_BYTES);
+		assertThat(offHeapPauses.count()).isNotNegative();
+	}
+
+	private Pauses run(IntConsumer request) throws Exception {
+		System.gc();
+		List<Long> pauses = new ArrayList<>();
+		NotificationListener listener = (notification, handback) -> {
+			if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+				return;
+			}
+			GarbageCollectionNotificationInfo info =
+					GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+			if (!info.getGcName().contains("Concurrent")) {
+				synchronized (pauses) {
+					pauses.add(info.getGcInfo().getDuration());
+				}
+			}
+		};
+		List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+		for (GarbageCollectorMXBean collector : collectors) {
+			((NotificationEmitter) collector).addNotificationListener(listener, null, null);
+		}
+
+		long start = System.nanoTime();
+		try (ExecutorService executor = Executors.newFixedThreadPool(THREADS)) {
+			List<Future<?>> workers = new ArrayList<>();
+			for (int t = 0; t < THREADS; t++) {
+				workers.add(executor.submit(() -> {
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+						// 80% of requests go to 20% of the photos
+						int id = random.nextInt(10) < 8 ? random.nextInt(PHOTOS / 5) : random.nextInt(PHOTOS);
+						request.accept(id);
+					}
+				}));
+			}
+			for (Future<?> worker : workers) {
+				worker.get();
+			}
+		} finally {
+			for (GarbageCollectorMXBean collector : collectors) {
+				((NotificationEmitter) collector).removeNotificationListener(listener);
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+		synchronized (pauses) {
+			return new Pauses(pauses.size(), pauses.stream().mapToLong(Long::longValue).sum(),
+					pauses.stream().mapToLong(Long::longValue).max().orElse(0), THREADS * REQUESTS_PER_THREAD / seconds);
+		}
+	}
+
+	private static final AtomicLong sink = new AtomicLong();
+
+	private static void consume(ByteBuffer content) {
+		long checksum = 0;
+		for (int i = content.position(); i < content.limit(); i += 512) {
+			checksum += content.get(i);
+		}
+		sink.addAndGet(checksum);
+	}
+
+	private record Pauses(int count, long totalMs, long maxMs, double requestsPerSecond) {
+
+		@Override
+		public String toString() {
+			return String.format("%d pauses, %d ms total, %d ms max, %.0f requests/s", count, totalMs, maxMs,
+					requestsPerSecond);
+		}
+	}
+}
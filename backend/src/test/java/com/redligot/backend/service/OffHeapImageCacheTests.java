@@ -0,0 +1,227 @@
+package com.redligot.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Pinning, eviction and invalidation of the off-heap image cache.
+ *
+ * <p>The caches here have two 4 KB slabs of 1 KB pages, so eight pages in all.</p>
+ */
+class OffHeapImageCacheTests {
+
+	private static final int PAGE = 1024;
+
+	@Test
+	void servesLoadedContentFromThePageChain() {
+		OffHeapImageCache cache = newCache();
+		byte[] content = content(2_500, 1);
+
+		try (OffHeapImageCache.Lease lease = cache.getOrLoad(1, 1, () -> source(1, content))) {
+			assertThat(lease).isNotNull();
+			assertThat(lease.contentType()).isEqualTo("image/jpeg");
+			assertThat(lease.length()).isEqualTo(content.length);
+			assertThat(lease.chunks()).hasSize(3);
+			assertThat(read(lease)).isEqualTo(content);
+		}
+		try (OffHeapImageCache.Lease lease = cache.get(1, 1)) {
+			assertThat(read(lease)).isEqualTo(content);
+		}
+
+		OffHeapImageCache.Stats stats = cache.stats();
+		assertThat(stats.loads()).isEqualTo(1);
+		assertThat(stats.hits()).isEqualTo(1);
+		assertThat(stats.entries()).isEqualTo(1);
+		assertThat(stats.usedBytes()).isEqualTo(content.length);
+		assertThat(stats.allocatedBytes()).isEqualTo(4 * PAGE);
+	}
+
+	@Test
+	void newVersionReplacesTheCachedOne() {
+		OffHeapImageCache cache = newCache();
+		cache.getOrLoad(1, 1, () -> source(1, content(PAGE, 1))).close();
+		byte[] replaced = content(PAGE, 2);
+
+		assertThat(cache.get(1, 2)).isNull();
+		try (OffHeapImageCache.Lease lease = cache.getOrLoad(1, 2, () -> source(2, replaced))) {
+			assertThat(read(lease)).isEqualTo(replaced);
+		}
+		assertThat(cache.get(1, 1)).isNull();
+		assertThat(cache.stats().entries()).isEqualTo(1);
+	}
+
+	@Test
+	void pinnedEntriesAreNeverEvicted() {
+		OffHeapImageCache cache = newCache();
+		byte[] pinnedContent = content(4 * PAGE, 1);
+		OffHeapImageCache.Lease pinned = cache.getOrLoad(1, 1, () -> source(1, pinnedContent));
+		cache.getOrLoad(2, 1, () -> source(1, content(4 * PAGE, 2))).close();
+
+		// Needs every unpinned page; only photo 2 may go
+		try (OffHeapImageCache.Lease third = cache.getOrLoad(3, 1, () -> source(1, content(4 * PAGE, 3)))) {
+			assertThat(third).isNotNull();
+		}
+
+		assertThat(cache.stats().evictions()).isEqualTo(1);
+		assertThat(cache.get(2, 1)).isNull();
+		assertThat(read(pinned)).isEqualTo(pinnedContent);
+		pinned.close();
+		try (OffHeapImageCache.Lease again = cache.get(1, 1)) {
+			assertThat(again).isNotNull();
+		}
+	}
+
+	@Test
+	void rejectsLoadsWhenEveryPageIsPinned() {
+		OffHeapImageCache cache = newCache();
+		OffHeapImageCache.Lease[] leases = new OffHeapImageCache.Lease[8];
+		for (int id = 0; id < leases.length; id++) {
+			byte[] content = content(PAGE, id);
+			leases[id] = cache.getOrLoad(id, 1, () -> source(1, content));
+			assertThat(leases[id]).isNotNull();
+		}
+
+		assertThat(cache.getOrLoad(100, 1, () -> source(1, content(10, 100)))).isNull();
+		assertThat(cache.stats().rejections()).isEqualTo(1);
+		assertThat(cache.stats().evictions()).isZero();
+
+		leases[3].close();
+		try (OffHeapImageCache.Lease lease = cache.getOrLoad(100, 1, () -> source(1, content(10, 100)))) {
+			assertThat(lease).isNotNull();
+		}
+		assertThat(cache.get(3, 1)).isNull();
+		for (int id = 0; id < leases.length; id++) {
+			if (id != 3) {
+				assertThat(read(leases[id])).isEqualTo(content(PAGE, id));
+				leases[id].close();
+			}
+		}
+	}
+
+	@Test
+	void rejectsImagesLargerThanTheCache() {
+		OffHeapImageCache cache = newCache();
+
+		assertThat(cache.getOrLoad(1, 1, () -> source(1, content(8 * PAGE + 1, 1)))).isNull();
+		assertThat(cache.stats().rejections()).isEqualTo(1);
+		assertThat(cache.stats().allocatedBytes()).isZero();
+	}
+
+	@Test
+	void invalidatedEntryStaysReadableUntilItsLastLeaseCloses() {
+		OffHeapImageCache cache = newCache();
+		byte[] content = content(8 * PAGE, 1);
+		OffHeapImageCache.Lease first = cache.getOrLoad(1, 1, () -> source(1, content));
+		OffHeapImageCache.Lease second = cache.get(1, 1);
+
+		cache.invalidate(1);
+		// Closing twice must not release the other lease's pin
+		first.close();
+		first.close();
+
+		assertThat(cache.get(1, 1)).isNull();
+		assertThat(cache.stats().entries()).isZero();
+		assertThat(cache.stats().usedBytes()).isZero();
+		assertThat(cache.getOrLoad(2, 1, () -> source(1, content(PAGE, 2)))).isNull();
+		assertThat(read(second)).isEqualTo(content);
+
+		second.close();
+		try (OffHeapImageCache.Lease lease = cache.getOrLoad(2, 1, () -> source(1, content(8 * PAGE, 2)))) {
+			assertThat(lease).isNotNull();
+		}
+	}
+
+	@Test
+	void invalidationDuringALoadKeepsItsContentOut() {
+		OffHeapImageCache cache = newCache();
+		byte[] content = content(2 * PAGE, 1);
+
+		OffHeapImageCache.Lease lease = cache.getOrLoad(1, 1, () -> new OffHeapImageCache.Source(1, content.length,
+				"image/jpeg", target -> {
+					target.write(content, 0, PAGE);
+					cache.invalidate(1);
+					target.write(content, PAGE, PAGE);
+					return true;
+				}));
+
+		assertThat(lease).isNull();
+		assertThat(cache.get(1, 1)).isNull();
+		try (OffHeapImageCache.Lease full = cache.getOrLoad(2, 1, () -> source(1, content(8 * PAGE, 2)))) {
+			assertThat(full).isNotNull();
+		}
+	}
+
+	@Test
+	void staleLengthsAreNotCached() {
+		OffHeapImageCache cache = newCache();
+		byte[] content = content(2 * PAGE, 1);
+
+		assertThat(cache.getOrLoad(1, 1, () -> new OffHeapImageCache.Source(1, PAGE, "image/jpeg", target -> {
+			target.write(content);
+			return true;
+		}))).isNull();
+		assertThat(cache.getOrLoad(1, 1, () -> new OffHeapImageCache.Source(1, 3 * PAGE, "image/jpeg", target -> {
+			target.write(content);
+			return true;
+		}))).isNull();
+		assertThat(cache.getOrLoad(1, 1, () -> new OffHeapImageCache.Source(1, content.length, "image/jpeg",
+				target -> false))).isNull();
+
+		assertThat(cache.stats().entries()).isZero();
+		try (OffHeapImageCache.Lease full = cache.getOrLoad(2, 1, () -> source(1, content(8 * PAGE, 2)))) {
+			assertThat(full).isNotNull();
+		}
+	}
+
+	@Test
+	void hashMapKeepsProbeRunsIntactOnRemove() {
+		OffHeapImageCache.LongIntHashMap map = new OffHeapImageCache.LongIntHashMap(16);
+		for (int i = 0; i < 24; i++) {
+			assertThat(map.put(i * 64L, i)).isEqualTo(-1);
+		}
+		for (int i = 0; i < 24; i += 2) {
+			assertThat(map.remove(i * 64L)).isEqualTo(i);
+		}
+
+		for (int i = 0; i < 24; i++) {
+			assertThat(map.get(i * 64L)).isEqualTo(i % 2 == 0 ? -1 : i);
+		}
+		assertThat(map.put(64L, 100)).isEqualTo(1);
+		assertThat(map.remove(12345L)).isEqualTo(-1);
+	}
+
+	private static OffHeapImageCache newCache() {
+		return new OffHeapImageCache(8 * PAGE, PAGE, 4 * PAGE);
+	}
+
+	private static OffHeapImageCache.Source source(int version, byte[] content) {
+		return new OffHeapImageCache.Source(version, content.length, "image/jpeg", target -> {
+			target.write(content);
+			return true;
+		});
+	}
+
+	private static byte[] content(int length, int seed) {
+		byte[] content = new byte[length];
+		for (int i = 0; i < length; i++) {
+			content[i] = (byte) (i * 31 + seed);
+		}
+		return content;
+	}
+
+	private static byte[] read(OffHeapImageCache.Lease lease) {
+		byte[] content = new byte[lease.length()];
+		int offset = 0;
+		for (ByteBuffer chunk : lease.chunks()) {
+			ByteBuffer view = chunk.duplicate();
+			int count = view.remaining();
+			view.get(content, offset, count);
+			offset += count;
+		}
+		return Arrays.copyOf(content, offset);
+	}
+}
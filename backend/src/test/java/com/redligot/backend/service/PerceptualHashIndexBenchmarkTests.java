@@ -0,0 +1,68 @@
+package com.redligot.backend.service;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Times near-duplicate clustering and single searches over a 100k-photo library.
+ *
+ * <p>A fifth of the photos are planted as bursts of 2 to 6 shots a few bits apart; the
+ * rest are unrelated. Run with <code>mvn test -Pbenchmark</code>.</p>
+ */
+@Tag("benchmark")
+class PerceptualHashIndexBenchmarkTests {
+
+	private static final int PHOTOS = 100_000;
+	private static final int SEARCHES = 10_000;
+
+	@Test
+	void clusterLibrary() {
+		Random random = new Random(7);
+		long[] ids = new long[PHOTOS];
+		long[] hashes = new long[PHOTOS];
+		int planted = 0;
+		for (int i = 0; i < PHOTOS; ) {
+			long base = random.nextLong();
+			int burst = random.nextInt(5) == 0 ? 2 + random.nextInt(5) : 1;
+			for (int j = 0; j < burst && i < PHOTOS; j++, i++) {
+				ids[i] = i + 1;
+				hashes[i] = j == 0 ? base : flipBits(base, 1 + random.nextInt(3), random);
+				planted += burst > 1 ? 1 : 0;
+			}
+		}
+
+		long start = System.nanoTime();
+		PerceptualHashIndex index = new PerceptualHashIndex(ids, hashes, PHOTOS);
+		long built = System.nanoTime();
+		// Warm up, then time
+		index.clusters(6);
+		long clusterStart = System.nanoTime();
+		List<long[]> clusters = index.clusters(6);
+		long clustered = System.nanoTime();
+		for (int i = 0; i < SEARCHES; i++) {
+			index.search(hashes[random.nextInt(PHOTOS)], 10, -1, 50);
+		}
+		long searched = System.nanoTime();
+
+		int inClusters = clusters.stream().mapToInt(c -> c.length).sum();
+		System.out.printf("Build: %d ms; clustering %d photos at distance 6: %d ms, %d clusters with %d photos "
+				+ "(%d planted); search at distance 10: %.1f us each%n",
+				(built - start) / 1_000_000, PHOTOS, (clustered - clusterStart) / 1_000_000, clusters.size(),
+				inClusters, planted, (searched - clustered) / 1_000.0 / SEARCHES);
+		assertThat(inClusters).isGreaterThanOrEqualTo(planted);
+		assertThat(clustered - clusterStart).isLessThan(1_000_000_000L);
+	}
+
+	private static long flipBits(long hash, int bits, Random random) {
+		long flipped = hash;
+		while (Long.bitCount(flipped ^ hash) < bits) {
+			flipped ^= 1L << random.nextInt(64);
+		}
+		return flipped;
+	}
+}
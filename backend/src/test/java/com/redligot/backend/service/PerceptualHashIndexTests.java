@@ -0,0 +1,111 @@
+package com.redligot.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PerceptualHashIndexTests {
+
+	@Test
+	void searchMatchesLinearScan() {
+		Random random = new Random(42);
+		int count = 20_000;
+		long[] ids = new long[count];
+		long[] hashes = new long[count];
+		for (int i = 0; i < count; i++) {
+			ids[i] = i + 1;
+			// Every tenth photo is a near-copy of the previous one
+			hashes[i] = i % 10 == 9 ? flipBits(hashes[i - 1], random.nextInt(9), random) : random.nextLong();
+		}
+		PerceptualHashIndex index = new PerceptualHashIndex(ids, hashes, count);
+
+		for (int q = 0; q < 200; q++) {
+			long query = flipBits(hashes[random.nextInt(count)], random.nextInt(6), random);
+			int maxDistance = random.nextInt(PerceptualHashIndex.MAX_DISTANCE + 1);
+			List<Long> expected = new ArrayList<>();
+			for (int i = 0; i < count; i++) {
+				if (Long.bitCount(query ^ hashes[i]) <= maxDistance) {
+					expected.add(ids[i]);
+				}
+			}
+			List<Long> found = index.search(query, maxDistance, -1, Integer.MAX_VALUE).stream()
+					.map(PerceptualHashIndex.Match::photoId).toList();
+			assertThat(found).containsExactlyInAnyOrderElementsOf(expected);
+		}
+	}
+
+	@Test
+	void keepsUpWithAddsAndRemoves() {
+		PerceptualHashIndex index = new PerceptualHashIndex(new long[0], new long[0], 0);
+		index.put(1, 0L);
+		index.put(2, 0b111L);
+		index.put(3, -1L);
+		assertThat(index.clusters(3)).containsExactly(new long[] {1, 2});
+
+		index.put(3, 0b1L);
+		assertThat(index.clusters(3)).containsExactly(new long[] {1, 2, 3});
+
+		index.remove(1);
+		assertThat(index.search(0L, 3, -1, 10)).extracting(PerceptualHashIndex.Match::photoId).containsExactly(3L, 2L);
+		assertThat(index.size()).isEqualTo(2);
+	}
+
+	@Test
+	void hashSurvivesResizingAndOrientation() {
+		BufferedImage original = scene(400, 300);
+		long hash = PerceptualHashService.dHash(ImageAnalysisService.orient(original, 1));
+
+		long resized = PerceptualHashService.dHash(ImageAnalysisService.orient(scale(original, 123, 92), 1));
+		assertThat(Long.bitCount(hash ^ resized)).isLessThanOrEqualTo(4);
+
+		// Stored sideways with orientation 6 (rotate 90 degrees clockwise to display)
+		BufferedImage sideways = new BufferedImage(300, 400, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < 300; y++) {
+			for (int x = 0; x < 400; x++) {
+				sideways.setRGB(y, 399 - x, original.getRGB(x, y));
+			}
+		}
+		assertThat(PerceptualHashService.dHash(ImageAnalysisService.orient(sideways, 6))).isEqualTo(hash);
+
+		long other = PerceptualHashService.dHash(ImageAnalysisService.orient(original, 2));
+		assertThat(Long.bitCount(hash ^ other)).isGreaterThan(10);
+	}
+
+	private static BufferedImage scene(int width, int height) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		g.setPaint(new GradientPaint(0, 0, Color.BLUE, width, height, Color.ORANGE));
+		g.fillRect(0, 0, width, height);
+		g.setColor(Color.WHITE);
+		g.fillOval(width / 5, height / 4, width / 3, height / 2);
+		g.setColor(Color.DARK_GRAY);
+		g.fillRect(width * 3 / 5, height / 8, width / 4, height * 3 / 4);
+		g.dispose();
+		return image;
+	}
+
+	private static BufferedImage scale(BufferedImage source, int width, int height) {
+		BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = scaled.createGraphics();
+		g.drawImage(source.getScaledInstance(width, height, Image.SCALE_SMOOTH), 0, 0, null);
+		g.dispose();
+		return scaled;
+	}
+
+	private static long flipBits(long hash, int bits, Random random) {
+		long flipped = hash;
+		while (Long.bitCount(flipped ^ hash) < bits) {
+			flipped ^= 1L << random.nextInt(64);
+		}
+		return flipped;
+	}
+}
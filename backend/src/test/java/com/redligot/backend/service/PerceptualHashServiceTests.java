@@ -0,0 +1,107 @@
+package com.redligot.backend.service;
+
+import com.redligot.backend.repository.PerceptualHashStore;
+import com.redligot.backend.repository.PhotoContentStore;
+import com.redligot.backend.security.ImageUrlSigner;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Result assembly of the near-duplicate endpoints, with stubbed stores.
+ */
+class PerceptualHashServiceTests {
+
+	private static final long USER_ID = 7;
+
+	@Test
+	void duplicateClustersListABoundedNumberOfPhotos() {
+		StubHashStore hashes = new StubHashStore();
+		for (long id = 1; id <= 80; id++) {
+			hashes.add(id, 0x0F0F0F0F0F0F0F0FL);
+		}
+		hashes.add(100, 0xFFFFFFFF00000000L);
+		hashes.add(101, 0xFFFFFFFF00000001L);
+		StubContentStore content = new StubContentStore(Set.of());
+		PerceptualHashService service = newService(hashes, content);
+
+		PerceptualHashService.DuplicateReport report = service.findDuplicates(USER_ID, 2, 10);
+
+		assertThat(report.totalClusters()).isEqualTo(2);
+		assertThat(report.totalPhotos()).isEqualTo(82);
+		assertThat(report.clusters()).extracting(PerceptualHashService.Cluster::size).containsExactly(80, 2);
+		assertThat(report.clusters().get(0).photos()).hasSize(PerceptualHashService.MAX_CLUSTER_PHOTOS);
+		assertThat(report.clusters().get(1).photos()).extracting(photo -> photo.getId()).containsExactly(100L, 101L);
+		assertThat(content.requested).hasSize(PerceptualHashService.MAX_CLUSTER_PHOTOS + 2);
+		assertThat(content.requestedFor).containsOnly(USER_ID);
+	}
+
+	@Test
+	void dropsClustersWhosePhotosAreGone() {
+		StubHashStore hashes = new StubHashStore();
+		hashes.add(1, 0L);
+		hashes.add(2, 1L);
+		hashes.add(3, 0xFFL << 32);
+		hashes.add(4, (0xFFL << 32) | 1);
+		PerceptualHashService service = newService(hashes, new StubContentStore(Set.of(2L)));
+
+		PerceptualHashService.DuplicateReport report = service.findDuplicates(USER_ID, 2, 10);
+
+		assertThat(report.totalClusters()).isEqualTo(2);
+		assertThat(report.clusters()).hasSize(1);
+		assertThat(report.clusters().get(0).photos()).extracting(photo -> photo.getImageUrl()).allMatch(url -> url != null);
+	}
+
+	private static PerceptualHashService newService(StubHashStore hashes, StubContentStore content) {
+		ImageUrlSigner signer = new ImageUrlSigner("test-secret-test-secret-test-secret", 3600, 900);
+		return new PerceptualHashService(hashes, content, signer, 4);
+	}
+
+	private static final class StubHashStore extends PerceptualHashStore {
+
+		private final List<long[]> hashes = new ArrayList<>();
+
+		StubHashStore() {
+			super(null);
+		}
+
+		void add(long photoId, long hash) {
+			hashes.add(new long[] {photoId, hash});
+		}
+
+		@Override
+		public void forEachHash(long userId, HashConsumer consumer) {
+			for (long[] entry : hashes) {
+				consumer.accept(entry[0], entry[1]);
+			}
+		}
+	}
+
+	private static final class StubContentStore extends PhotoContentStore {
+
+		private final Set<Long> deleted;
+		final List<Long> requested = new ArrayList<>();
+		final List<Long> requestedFor = new ArrayList<>();
+
+		StubContentStore(Set<Long> deleted) {
+			super(null);
+			this.deleted = deleted;
+		}
+
+		@Override
+		public List<PhotoDetails> findDetails(List<Long> ids, Long userId) {
+			requested.addAll(ids);
+			requestedFor.add(userId);
+			return ids.stream()
+					.filter(id -> !deleted.contains(id))
+					.map(id -> new PhotoDetails(id, "Photo " + id, null, id + ".jpg", "image/jpeg", 1000,
+							LocalDateTime.of(2024, 1, 1, 0, 0), userId, null, 1, 640, 480, 1, null, null, null))
+					.toList();
+		}
+	}
+}
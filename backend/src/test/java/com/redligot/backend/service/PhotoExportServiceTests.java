@@ -0,0 +1,234 @@
+package com.redligot.backend.service;
+
+import com.redligot.backend.repository.GalleryRepository;
+import com.redligot.backend.repository.PhotoContentStore;
+import com.redligot.backend.repository.PhotoContentStore.PhotoSummary;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+/**
+ * ZIP archives written by the export service, read back with {@link ZipInputStream}.
+ *
+ * <p>The buffer pool hands out 4 KB segments, so larger photos span several of them.</p>
+ */
+class PhotoExportServiceTests {
+
+	private static final long USER_ID = 7;
+	private static final int SEGMENT = 4 * 1024;
+
+	private final StubContentStore store = new StubContentStore();
+	private final BufferPool bufferPool = new BufferPool(SEGMENT, 1024 * 1024, "simple");
+
+	@Test
+	void compressedFormatsAreStoredWithTheCrcOfEverySegment() throws IOException {
+		byte[] jpeg = content(3 * SEGMENT + 100, 1);
+		byte[] bmp = content(2 * SEGMENT, 2);
+		store.add(1, "beach.jpg", "image/jpeg", jpeg);
+		store.add(2, "scan.bmp", "image/bmp", bmp);
+
+		Map<String, Entry> entries = export(store.summaries());
+
+		Entry stored = entries.get("beach.jpg");
+		assertThat(stored.method()).isEqualTo(ZipEntry.STORED);
+		assertThat(stored.crc()).isEqualTo(crc(jpeg));
+		assertThat(stored.size()).isEqualTo(jpeg.length);
+		assertThat(stored.content()).isEqualTo(jpeg);
+		Entry deflated = entries.get("scan.bmp");
+		assertThat(deflated.method()).isEqualTo(ZipEntry.DEFLATED);
+		assertThat(deflated.content()).isEqualTo(bmp);
+	}
+
+	@Test
+	void reusedSegmentsNeverLeakThePreviousPhoto() throws IOException {
+		byte[] large = content(3 * SEGMENT, 3);
+		byte[] small = content(SEGMENT + 10, 4);
+		store.add(1, "large.png", "image/png", large);
+		store.add(2, "small.png", "image/png", small);
+		store.add(3, "empty.png", "image/png", new byte[0]);
+
+		Map<String, Entry> entries = export(store.summaries());
+
+		assertThat(entries.get("small.png").content()).isEqualTo(small);
+		assertThat(entries.get("small.png").crc()).isEqualTo(crc(small));
+		assertThat(entries.get("empty.png").content()).isEmpty();
+		assertThat(bufferPool.stats().allocated()).isEqualTo(4);
+		assertThat(bufferPool.stats().outstanding()).isZero();
+	}
+
+	@Test
+	void duplicateAndUnsafeNamesAreMadeUnique() throws IOException {
+		store.add(1, "photo.jpg", "image/jpeg", content(10, 1));
+		store.add(2, "PHOTO.jpg", "image/jpeg", content(10, 2));
+		store.add(3, "../etc/passwd", "image/jpeg", content(10, 3));
+		store.add(4, null, "image/jpeg", content(10, 4));
+
+		Map<String, Entry> entries = export(store.summaries());
+
+		assertThat(entries).containsOnlyKeys("photo.jpg", "PHOTO (2).jpg", "_etc_passwd", "photo-4");
+	}
+
+	@Test
+	void photosDeletedDuringTheExportAreLeftOut() throws IOException {
+		store.add(1, "a.jpg", "image/jpeg", content(10, 1));
+		store.add(2, "b.jpg", "image/jpeg", content(10, 2));
+		List<PhotoSummary> listed = store.summaries();
+		store.contents.remove(1L);
+
+		assertThat(export(listed)).containsOnlyKeys("b.jpg");
+	}
+
+	@Test
+	void galleryExportPagesThroughEveryPhoto() throws IOException {
+		for (long id = 1; id <= 5; id++) {
+			store.add(id, id + ".gif", "image/gif", content(100, (int) id));
+		}
+		PhotoExportService service = newService(2);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		service.writeGallery(3L, USER_ID, out);
+
+		assertThat(read(out.toByteArray())).containsOnlyKeys("1.gif", "2.gif", "3.gif", "4.gif", "5.gif");
+		assertThat(store.pages).containsExactly(0L, 2L, 4L);
+	}
+
+	@Test
+	void clientDisconnectEndsTheExportQuietly() {
+		store.add(1, "a.jpg", "image/jpeg", content(3 * SEGMENT, 1));
+		store.add(2, "b.jpg", "image/jpeg", content(3 * SEGMENT, 2));
+		OutputStream gone = new OutputStream() {
+			private int written;
+
+			@Override
+			public void write(int b) throws IOException {
+				if (++written > SEGMENT) {
+					throw new IOException("Broken pipe");
+				}
+			}
+		};
+
+		newService(200).writeSelection(store.summaries(), gone);
+
+		assertThat(bufferPool.stats().outstanding()).isZero();
+	}
+
+	@Test
+	void selectionsAreBoundedAndScopedToTheOwner() {
+		PhotoExportService service = newService(200);
+
+		assertThatThrownBy(() -> service.resolveSelection(List.of(1L, 2L, 3L, 4L), USER_ID))
+				.isInstanceOfSatisfying(ResponseStatusException.class,
+						e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
+		assertThatThrownBy(() -> service.resolveSelection(List.of(1L), USER_ID))
+				.isInstanceOfSatisfying(ResponseStatusException.class,
+						e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND));
+
+		store.add(1, "a.jpg", "image/jpeg", content(10, 1));
+		assertThat(service.resolveSelection(List.of(1L, 1L, 2L), USER_ID)).extracting(PhotoSummary::id)
+				.containsExactly(1L);
+	}
+
+	private PhotoExportService newService(int pageSize) {
+		return new PhotoExportService(store, mock(GalleryRepository.class), bufferPool, pageSize, 3);
+	}
+
+	private Map<String, Entry> export(List<PhotoSummary> photos) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		newService(200).writeSelection(photos, out);
+		assertThat(bufferPool.stats().outstanding()).isZero();
+		return read(out.toByteArray());
+	}
+
+	private static Map<String, Entry> read(byte[] archive) throws IOException {
+		Map<String, Entry> entries = new LinkedHashMap<>();
+		try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive))) {
+			ZipEntry entry;
+			while ((entry = zip.getNextEntry()) != null) {
+				byte[] content = zip.readAllBytes();
+				// Read after the data: deflated entries carry their CRC in a trailing descriptor
+				entries.put(entry.getName(), new Entry(entry.getMethod(), entry.getCrc(), entry.getSize(), content));
+			}
+		}
+		return entries;
+	}
+
+	private static long crc(byte[] content) {
+		CRC32 crc = new CRC32();
+		crc.update(content);
+		return crc.getValue();
+	}
+
+	private static byte[] content(int length, int seed) {
+		byte[] content = new byte[length];
+		for (int i = 0; i < length; i++) {
+			content[i] = (byte) (i * 31 + seed);
+		}
+		return content;
+	}
+
+	private record Entry(int method, long crc, long size, byte[] content) {}
+
+	private static final class StubContentStore extends PhotoContentStore {
+
+		private final List<PhotoSummary> photos = new ArrayList<>();
+		final Map<Long, byte[]> contents = new HashMap<>();
+		final List<Long> pages = new ArrayList<>();
+
+		StubContentStore() {
+			super(null);
+		}
+
+		void add(long id, String filename, String contentType, byte[] content) {
+			photos.add(new PhotoSummary(id, "Photo " + id, filename, contentType, content.length,
+					LocalDateTime.of(2024, 1, 1, 0, 0)));
+			contents.put(id, content);
+		}
+
+		List<PhotoSummary> summaries() {
+			return List.copyOf(photos);
+		}
+
+		@Override
+		public List<PhotoSummary> findGalleryPage(Long galleryId, Long userId, long afterId, int limit) {
+			pages.add(afterId);
+			return photos.stream().filter(photo -> photo.id() > afterId).limit(limit).toList();
+		}
+
+		@Override
+		public List<PhotoSummary> findOwned(List<Long> ids, Long userId) {
+			return photos.stream().filter(photo -> ids.contains(photo.id())).toList();
+		}
+
+		@Override
+		public <T> T readContent(long id, ContentReader<T> reader) {
+			byte[] content = contents.get(id);
+			if (content == null) {
+				return null;
+			}
+			try {
+				return reader.read(new ByteArrayInputStream(content));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+}
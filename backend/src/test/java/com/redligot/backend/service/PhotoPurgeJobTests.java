@@ -0,0 +1,87 @@
+package com.redligot.backend.service;
+
+import com.redligot.backend.repository.PhotoContentStore;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PhotoPurgeJobTests {
+
+	private static final LocalDateTime CUTOFF = LocalDateTime.of(2024, 1, 1, 3, 0);
+
+	@Test
+	void stopsAtByteBudget() throws InterruptedException {
+		StubContentStore store = new StubContentStore(List.of(
+				new PhotoContentStore.DeletedPhoto(1, 4_000), new PhotoContentStore.DeletedPhoto(2, 4_000),
+				new PhotoContentStore.DeletedPhoto(3, 4_000)), Set.of());
+		PhotoPurgeJob job = new PhotoPurgeJob(store, true, 60, 10, 10_000, 0, 0, 24);
+
+		assertThat(job.purgeBatch(CUTOFF)).isEqualTo(2);
+		assertThat(store.purged).containsExactly(1L, 2L);
+	}
+
+	@Test
+	void purgesOversizedPhotoAlone() throws InterruptedException {
+		StubContentStore store = new StubContentStore(List.of(
+				new PhotoContentStore.DeletedPhoto(1, 50_000), new PhotoContentStore.DeletedPhoto(2, 10)), Set.of());
+		PhotoPurgeJob job = new PhotoPurgeJob(store, true, 60, 10, 10_000, 0, 0, 24);
+
+		assertThat(job.purgeBatch(CUTOFF)).isEqualTo(1);
+		assertThat(store.purged).containsExactly(1L);
+	}
+
+	@Test
+	void skipsPhotosRestoredMeanwhile() throws InterruptedException {
+		StubContentStore store = new StubContentStore(List.of(
+				new PhotoContentStore.DeletedPhoto(1, 10), new PhotoContentStore.DeletedPhoto(2, 10)), Set.of(1L));
+		PhotoPurgeJob job = new PhotoPurgeJob(store, true, 60, 10, 10_000, 0, 0, 24);
+
+		assertThat(job.purgeBatch(CUTOFF)).isEqualTo(1);
+		assertThat(store.purged).containsExactly(2L);
+	}
+
+	@Test
+	void purgeHoursMayWrapMidnight() {
+		PhotoPurgeJob overnight = new PhotoPurgeJob(new StubContentStore(List.of(), Set.of()), true, 60, 10, 10_000, 0, 22, 6);
+		PhotoPurgeJob anyTime = new PhotoPurgeJob(new StubContentStore(List.of(), Set.of()), true, 60, 10, 10_000, 0, 0, 24);
+
+		assertThat(overnight.isPurgeHour(23)).isTrue();
+		assertThat(overnight.isPurgeHour(5)).isTrue();
+		assertThat(overnight.isPurgeHour(6)).isFalse();
+		assertThat(overnight.isPurgeHour(12)).isFalse();
+		assertThat(anyTime.isPurgeHour(0)).isTrue();
+		assertThat(anyTime.isPurgeHour(23)).isTrue();
+	}
+
+	private static final class StubContentStore extends PhotoContentStore {
+
+		private final List<DeletedPhoto> deleted;
+		private final Set<Long> restored;
+		final List<Long> purged = new ArrayList<>();
+
+		StubContentStore(List<DeletedPhoto> deleted, Set<Long> restored) {
+			super(null);
+			this.deleted = deleted;
+			this.restored = restored;
+		}
+
+		@Override
+		public List<DeletedPhoto> findPurgeable(LocalDateTime deletedBefore, int limit) {
+			return deleted.subList(0, Math.min(limit, deleted.size()));
+		}
+
+		@Override
+		public boolean purge(long id, LocalDateTime deletedBefore) {
+			if (restored.contains(id)) {
+				return false;
+			}
+			purged.add(id);
+			return true;
+		}
+	}
+}
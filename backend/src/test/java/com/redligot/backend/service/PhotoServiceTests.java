@@ -0,0 +1,265 @@
+package com.redligot.backend.service;
+
+import com.redligot.backend.dto.CreateFromExistingRequest;
+import com.redligot.backend.dto.UploadPreflightRequest;
+import com.redligot.backend.model.Gallery;
+import com.redligot.backend.model.Photo;
+import com.redligot.backend.model.User;
+import com.redligot.backend.repository.GalleryRepository;
+import com.redligot.backend.repository.ImageBlobStore;
+import com.redligot.backend.repository.PhotoContentStore;
+import com.redligot.backend.repository.PhotoContentStore.ContentCopy;
+import com.redligot.backend.repository.PhotoContentStore.ContentReader;
+import com.redligot.backend.repository.PhotoContentStore.ImageInfo;
+import com.redligot.backend.repository.PhotoRepository;
+import com.redligot.backend.repository.ThumbnailStore.Thumbnail;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Upload preflight, content copies by digest, version-pinned image reads and deletes, with mocked stores.
+ */
+class PhotoServiceTests {
+
+	private static final long USER_ID = 7;
+	private static final String DIGEST = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+
+	private PhotoRepository photoRepository;
+	private GalleryRepository galleryRepository;
+	private PhotoContentStore contentStore;
+	private ImageAnalysisService imageAnalysisService;
+	private GalleryCoverService galleryCoverService;
+	private PhotoService service;
+	private User user;
+
+	@BeforeEach
+	void setUp() {
+		photoRepository = mock(PhotoRepository.class);
+		galleryRepository = mock(GalleryRepository.class);
+		contentStore = mock(PhotoContentStore.class);
+		imageAnalysisService = mock(ImageAnalysisService.class);
+		galleryCoverService = mock(GalleryCoverService.class);
+		service = new PhotoService(photoRepository, galleryRepository, contentStore, null, null, null, null, null,
+				null, null, imageAnalysisService, null, null, galleryCoverService, mock(TilePyramidService.class),
+				null, null, 60);
+		user = new User();
+		user.setId(USER_ID);
+	}
+
+	@Test
+	void preflightNormalizesDigestsAndAsksOnlyForTheUsersPhotos() {
+		when(contentStore.findByContentHash(eq(USER_ID), any())).thenReturn(Map.of(DIGEST, 11L));
+
+		List<PhotoService.PreflightResult> results = service.preflight(List.of(
+				digest(DIGEST.toUpperCase(), 100),
+				digest("00" + DIGEST.substring(2), 200),
+				digest(DIGEST, 100)), USER_ID);
+
+		assertThat(results).containsExactly(
+				new PhotoService.PreflightResult(DIGEST, 100, 11L),
+				new PhotoService.PreflightResult("00" + DIGEST.substring(2), 200, null),
+				new PhotoService.PreflightResult(DIGEST, 100, 11L));
+		@SuppressWarnings("unchecked")
+		ArgumentCaptor<List<String>> asked = ArgumentCaptor.forClass(List.class);
+		verify(contentStore).findByContentHash(eq(USER_ID), asked.capture());
+		assertThat(asked.getValue()).containsExactly(DIGEST, "00" + DIGEST.substring(2));
+	}
+
+	@Test
+	void createFromExistingCopiesInRequestOrder() {
+		Gallery gallery = new Gallery();
+		gallery.setId(3L);
+		when(galleryRepository.findByIdAndUserId(3L, USER_ID)).thenReturn(Optional.of(gallery));
+		when(contentStore.findByContentHash(eq(USER_ID), any())).thenReturn(Map.of(DIGEST, 11L));
+		when(contentStore.copyContents(any(), eq(USER_ID), eq(3L), any())).thenReturn(List.of(21L, 22L));
+		when(photoRepository.findAllById(List.of(21L, 22L))).thenReturn(List.of(photo(22), photo(21)));
+
+		List<Photo> photos = service.createFromExisting(List.of(
+				existing(DIGEST.toUpperCase(), "  Beach  ", "beach.jpg"),
+				existing(DIGEST, null, "copy.of.beach.jpg")), user, 3L);
+
+		assertThat(photos).extracting(Photo::getId).containsExactly(21L, 22L);
+		@SuppressWarnings("unchecked")
+		ArgumentCaptor<List<ContentCopy>> copies = ArgumentCaptor.forClass(List.class);
+		verify(contentStore).copyContents(copies.capture(), eq(USER_ID), eq(3L), any());
+		assertThat(copies.getValue()).containsExactly(
+				new ContentCopy(11, "Beach", null, "beach.jpg"),
+				new ContentCopy(11, "copy.of.beach", null, "copy.of.beach.jpg"));
+		verify(imageAnalysisService).analyzeLater(21L);
+		verify(imageAnalysisService).analyzeLater(22L);
+		verify(galleryCoverService).refreshLater(List.of(3L));
+	}
+
+	@Test
+	void createFromExistingFailsForAnUnknownDigest() {
+		when(contentStore.findByContentHash(eq(USER_ID), any())).thenReturn(Map.of(DIGEST, 11L));
+
+		assertThatThrownBy(() -> service.createFromExisting(List.of(
+				existing(DIGEST, "a", "a.jpg"),
+				existing("00" + DIGEST.substring(2), "b", "b.jpg")), user, null))
+				.isInstanceOfSatisfying(ResponseStatusException.class,
+						e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND));
+		verify(contentStore, never()).copyContents(any(), anyLong(), any(), any());
+	}
+
+	@Test
+	void createFromExistingConflictsWhenTheSourceIsDeletedMidCopy() {
+		when(contentStore.findByContentHash(eq(USER_ID), any())).thenReturn(Map.of(DIGEST, 11L));
+		when(contentStore.copyContents(any(), eq(USER_ID), any(), any()))
+				.thenThrow(new EmptyResultDataAccessException("Photo 11 no longer exists", 1));
+
+		assertThatThrownBy(() -> service.createFromExisting(List.of(existing(DIGEST, "a", "a.jpg")), user, null))
+				.isInstanceOfSatisfying(ResponseStatusException.class,
+						e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.CONFLICT));
+		verify(imageAnalysisService, never()).analyzeLater(anyLong());
+	}
+
+	@Test
+	void createFromExistingChecksTheGalleryFirst() {
+		when(galleryRepository.findByIdAndUserId(3L, USER_ID)).thenReturn(Optional.empty());
+
+		assertThatThrownBy(() -> service.createFromExisting(List.of(existing(DIGEST, "a", "a.jpg")), user, 3L))
+				.isInstanceOfSatisfying(ResponseStatusException.class,
+						e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND));
+		verify(contentStore, never()).findByContentHash(anyLong(), any());
+	}
+
+	@Test
+	void urlSignedForAReplacedVersionFindsNothing() {
+		ThumbnailService thumbnailService = mock(ThumbnailService.class);
+		OffHeapImageCache offHeapImageCache = new OffHeapImageCache(1024 * 1024, 4096, 64 * 1024);
+		PhotoService images = new PhotoService(photoRepository, galleryRepository, contentStore, thumbnailService,
+				null, null, new ImageCache(1024 * 1024, 1024), offHeapImageCache,
+				new BufferPool(4096, 1024 * 1024, "simple"), null, imageAnalysisService, null, null,
+				galleryCoverService, mock(TilePyramidService.class), null, null, 60);
+		byte[] replaced = {4, 5, 6, 7};
+		// Version 1 was replaced by version 2 after its URLs were signed
+		when(contentStore.findImageInfo(5L))
+				.thenReturn(new ImageInfo(5, USER_ID, "a.jpg", "image/jpeg", replaced.length, 2));
+		when(contentStore.readContent(eq(5L), eq(2), any())).thenAnswer(invocation -> invocation
+				.<ContentReader<?>>getArgument(2).read(new ByteArrayInputStream(replaced)));
+		when(thumbnailService.getThumbnail(5L, 2))
+				.thenReturn(new Thumbnail(5, ThumbnailService.THUMBNAIL_TYPE, 1, 1, new byte[] {9}));
+
+		assertThatThrownBy(() -> images.getOriginal(5, 1))
+				.isInstanceOfSatisfying(ResponseStatusException.class,
+						e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND));
+		assertThat(images.leaseOriginal(5, 1)).isNull();
+		assertThat(images.getThumbnail(5, 1)).isNull();
+
+		assertThat(images.getOriginal(5, 2).data()).isEqualTo(replaced);
+		assertThat(images.getThumbnail(5, 2).data()).containsExactly(9);
+		try (OffHeapImageCache.Lease lease = images.leaseOriginal(5, 2)) {
+			assertThat(lease.length()).isEqualTo(replaced.length);
+		}
+		// The new bytes are cached under their own version only
+		assertThatThrownBy(() -> images.getOriginal(5, 1)).isInstanceOf(ResponseStatusException.class);
+		assertThat(images.leaseOriginal(5, 1)).isNull();
+		verify(contentStore, never()).readContent(anyLong(), eq(1), any());
+	}
+
+	@Test
+	void deleteOfAPhotoThatWasNotMarkedIsNotFoundAndForgetsNothing() {
+		ImageBlobStore blobs = mock(ImageBlobStore.class);
+		PerceptualHashService hashes = mock(PerceptualHashService.class);
+		PhotoService deleting = deletingService(blobs, hashes);
+		when(galleryCoverService.findGalleryIds(List.of(5L))).thenReturn(List.of(3L));
+		// Another user's photo, or deleted by a concurrent request
+		when(contentStore.markDeleted(eq(List.of(5L)), eq(USER_ID), any())).thenReturn(0);
+
+		assertThatThrownBy(() -> deleting.deleteById(5L, USER_ID))
+				.isInstanceOfSatisfying(ResponseStatusException.class,
+						e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND));
+
+		verify(blobs, never()).evict(anyLong());
+		verify(hashes, never()).remove(any());
+		verify(galleryCoverService, never()).refreshLater(any());
+	}
+
+	@Test
+	void bulkDeleteCountsThePhotosInOneQuery() {
+		ImageBlobStore blobs = mock(ImageBlobStore.class);
+		PerceptualHashService hashes = mock(PerceptualHashService.class);
+		PhotoService deleting = deletingService(blobs, hashes);
+		when(contentStore.countLive(List.of(1L, 2L), USER_ID)).thenReturn(1);
+
+		assertThatThrownBy(() -> deleting.bulkDeleteByIds(List.of(1L, 2L), USER_ID))
+				.isInstanceOfSatisfying(ResponseStatusException.class,
+						e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND));
+
+		verify(photoRepository, never()).existsById(any());
+		verify(contentStore, never()).markDeleted(any(), any(), any());
+		verify(blobs, never()).evict(anyLong());
+	}
+
+	@Test
+	void bulkDeleteForgetsThePhotosOnlyOnceAllAreMarked() {
+		ImageBlobStore blobs = mock(ImageBlobStore.class);
+		PerceptualHashService hashes = mock(PerceptualHashService.class);
+		PhotoService deleting = deletingService(blobs, hashes);
+		when(contentStore.countLive(List.of(1L, 2L), USER_ID)).thenReturn(2);
+		when(galleryCoverService.findGalleryIds(List.of(1L, 2L))).thenReturn(List.of(3L));
+		when(contentStore.markDeleted(eq(List.of(1L, 2L)), eq(USER_ID), any())).thenReturn(1, 2);
+
+		// Photo 2 was deleted between the count and the update
+		assertThatThrownBy(() -> deleting.bulkDeleteByIds(List.of(1L, 2L), USER_ID))
+				.isInstanceOf(ResponseStatusException.class);
+		verify(blobs, never()).evict(anyLong());
+		verify(hashes, never()).remove(any());
+
+		// Duplicate IDs count once
+		deleting.bulkDeleteByIds(List.of(1L, 2L, 2L), USER_ID);
+
+		verify(blobs).evict(1L);
+		verify(blobs).evict(2L);
+		verify(hashes).remove(List.of(1L, 2L));
+		verify(galleryCoverService).refreshLater(List.of(3L));
+	}
+
+	private PhotoService deletingService(ImageBlobStore blobs, PerceptualHashService hashes) {
+		return new PhotoService(photoRepository, galleryRepository, contentStore, null, null, blobs,
+				new ImageCache(1024 * 1024, 1024), mock(OffHeapImageCache.class), null, null, imageAnalysisService,
+				hashes, mock(VisualSimilarityService.class), galleryCoverService, mock(TilePyramidService.class),
+				null, null, 60);
+	}
+
+	private static UploadPreflightRequest.FileDigest digest(String sha256, long size) {
+		UploadPreflightRequest.FileDigest file = new UploadPreflightRequest.FileDigest();
+		file.setSha256(sha256);
+		file.setSize(size);
+		return file;
+	}
+
+	private static CreateFromExistingRequest.ExistingFile existing(String sha256, String title, String filename) {
+		CreateFromExistingRequest.ExistingFile file = new CreateFromExistingRequest.ExistingFile();
+		file.setSha256(sha256);
+		file.setTitle(title);
+		file.setOriginalFilename(filename);
+		return file;
+	}
+
+	private static Photo photo(long id) {
+		Photo photo = new Photo();
+		photo.setId(id);
+		return photo;
+	}
+}
@@ -0,0 +1,212 @@
+package com.redligot.backend.service;
+
+import com.redligot.backend.dto.CreateUploadSessionRequest;
+import com.redligot.backend.model.Photo;
+import com.redligot.backend.model.UploadSession;
+import com.redligot.backend.model.User;
+import com.redligot.backend.repository.GalleryRepository;
+import com.redligot.backend.repository.UploadSessionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Offsets, chunk limits and expiry of resumable upload sessions, over an in-memory repository.
+ */
+class ResumableUploadServiceTests {
+
+	private static final long USER_ID = 7;
+	private static final int MAX_CHUNK = 16;
+
+	@TempDir
+	Path staging;
+
+	private final Map<String, UploadSession> sessions = new HashMap<>();
+	private PhotoService photos;
+	private ResumableUploadService service;
+	private User user;
+
+	@BeforeEach
+	void setUp() {
+		UploadSessionRepository repository = mock(UploadSessionRepository.class);
+		when(repository.save(any())).thenAnswer(invocation -> {
+			UploadSession session = invocation.getArgument(0);
+			sessions.put(session.getId(), session);
+			return session;
+		});
+		when(repository.findByIdAndUserId(anyString(), any())).thenAnswer(invocation -> Optional
+				.ofNullable(sessions.get(invocation.<String>getArgument(0)))
+				.filter(session -> session.getUserId().equals(invocation.getArgument(1))));
+		when(repository.findByExpiresAtBefore(any())).thenAnswer(invocation -> sessions.values().stream()
+				.filter(session -> session.getExpiresAt().isBefore(invocation.getArgument(0)))
+				.toList());
+		doAnswer(invocation -> sessions.remove(invocation.<UploadSession>getArgument(0).getId()))
+				.when(repository).delete(any());
+		photos = mock(PhotoService.class);
+		service = new ResumableUploadService(repository, mock(GalleryRepository.class), photos,
+				new BufferPool(8 * 1024, 1024 * 1024, "simple"), staging.toString(), MAX_CHUNK, 60);
+		user = new User();
+		user.setId(USER_ID);
+	}
+
+	@Test
+	void chunksAppendAtTheCommittedOffset() throws IOException {
+		UploadSession session = open(20);
+
+		assertThat(append(session, 0, "0123456789").getUploadOffset()).isEqualTo(10);
+		assertThat(append(session, 10, "abcdefghij").getUploadOffset()).isEqualTo(20);
+
+		assertThat(Files.readString(Path.of(session.getStagedPath()))).isEqualTo("0123456789abcdefghij");
+	}
+
+	@Test
+	void wrongOrRepeatedOffsetsAreRejected() throws IOException {
+		UploadSession session = open(20);
+		append(session, 0, "0123456789");
+
+		assertConflict(() -> append(session, 5, "56789"));
+		// A retried chunk that already landed must not be written twice
+		assertConflict(() -> append(session, 0, "0123456789"));
+		assertThat(session.getUploadOffset()).isEqualTo(10);
+		assertThat(Files.readString(Path.of(session.getStagedPath()))).isEqualTo("0123456789");
+	}
+
+	@Test
+	void oversizedChunksAreDiscarded() throws IOException {
+		UploadSession session = open(40);
+
+		assertThatThrownBy(() -> append(session, 0, "x".repeat(MAX_CHUNK + 1)))
+				.isInstanceOfSatisfying(ResponseStatusException.class,
+						e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE));
+		assertThat(session.getUploadOffset()).isZero();
+		// Past the declared length, even below the chunk limit
+		UploadSession small = open(12);
+		append(small, 0, "0123456789");
+		assertThatThrownBy(() -> append(small, 10, "abc"))
+				.isInstanceOfSatisfying(ResponseStatusException.class,
+						e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE));
+
+		assertThat(small.getUploadOffset()).isEqualTo(10);
+		assertThat(Files.size(Path.of(small.getStagedPath()))).isEqualTo(10);
+	}
+
+	@Test
+	void bytesReceivedBeforeADisconnectAreKept() throws IOException {
+		UploadSession session = open(20);
+		InputStream dropped = new InputStream() {
+			private int sent;
+
+			@Override
+			public int read() {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (sent == 6) {
+					throw new IOException("Connection reset");
+				}
+				int count = Math.min(len, 3);
+				for (int i = 0; i < count; i++) {
+					b[off + i] = (byte) ('a' + sent++);
+				}
+				return count;
+			}
+		};
+
+		UploadSession partial = service.appendChunk(session.getId(), USER_ID, 0, dropped);
+
+		assertThat(partial.getUploadOffset()).isEqualTo(6);
+		assertThat(append(session, 6, "ghij").getUploadOffset()).isEqualTo(10);
+		assertThat(Files.readString(Path.of(session.getStagedPath()))).isEqualTo("abcdefghij");
+	}
+
+	@Test
+	void completingBeforeEveryByteArrivedIsRejected() throws IOException {
+		UploadSession session = open(20);
+		append(session, 0, "0123456789");
+
+		assertConflict(() -> service.complete(session.getId(), user));
+		assertThat(session.getStatus()).isEqualTo(UploadSession.Status.ACTIVE);
+	}
+
+	@Test
+	void completeCreatesThePhotoOnce() throws IOException {
+		UploadSession session = open(10);
+		Path staged = Path.of(session.getStagedPath());
+		append(session, 0, "0123456789");
+		Photo photo = new Photo();
+		photo.setId(42L);
+		when(photos.createFromFile(any(), any(), any(), any(), eq(staged), eq(user), any())).thenReturn(photo);
+		when(photos.findById(42L)).thenReturn(photo);
+
+		assertThat(service.complete(session.getId(), user)).isSameAs(photo);
+		assertThat(service.complete(session.getId(), user)).isSameAs(photo);
+
+		verify(photos, times(1)).createFromFile(any(), any(), any(), any(), any(), any(), any());
+		assertThat(session.getStatus()).isEqualTo(UploadSession.Status.COMPLETED);
+		assertThat(staged).doesNotExist();
+		assertConflict(() -> append(session, 10, "more"));
+	}
+
+	@Test
+	void expiredSessionsAreHiddenAndPurgedWithTheirFiles() throws IOException {
+		UploadSession expired = open(10);
+		UploadSession live = open(10);
+		expired.setExpiresAt(LocalDateTime.now().minusMinutes(1));
+
+		assertThatThrownBy(() -> service.get(expired.getId(), USER_ID))
+				.isInstanceOfSatisfying(ResponseStatusException.class,
+						e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND));
+		assertThatThrownBy(() -> service.get(live.getId(), USER_ID + 1))
+				.isInstanceOfSatisfying(ResponseStatusException.class,
+						e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND));
+
+		service.purgeExpiredSessions();
+
+		assertThat(sessions).containsOnlyKeys(live.getId());
+		assertThat(Path.of(expired.getStagedPath())).doesNotExist();
+		assertThat(Path.of(live.getStagedPath())).exists();
+	}
+
+	private UploadSession open(long length) {
+		CreateUploadSessionRequest request = new CreateUploadSessionRequest();
+		request.setFilename("a.jpg");
+		request.setContentType("image/jpeg");
+		request.setLength(length);
+		return service.create(request, USER_ID);
+	}
+
+	private UploadSession append(UploadSession session, long offset, String chunk) {
+		return service.appendChunk(session.getId(), USER_ID, offset, new ByteArrayInputStream(chunk.getBytes()));
+	}
+
+	private static void assertConflict(Runnable call) {
+		assertThatThrownBy(call::run)
+				.isInstanceOfSatisfying(ResponseStatusException.class,
+						e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.CONFLICT));
+	}
+}
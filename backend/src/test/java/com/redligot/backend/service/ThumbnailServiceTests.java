@@ -0,0 +1,190 @@
+package com.redligot.backend.service;
+
+import com.redligot.backend.repository.PhotoContentStore;
+import com.redligot.backend.repository.ThumbnailStore;
+import com.redligot.backend.repository.ThumbnailStore.Thumbnail;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Batch lookup, generation and versioned caching of listing thumbnails, with stubbed stores.
+ */
+class ThumbnailServiceTests {
+
+	private static final long USER_ID = 7;
+	private static final long OTHER_USER_ID = 8;
+
+	private final StubThumbnailStore thumbnails = new StubThumbnailStore();
+	private final StubContentStore contents = new StubContentStore();
+	private final ThumbnailService service = new ThumbnailService(thumbnails, contents,
+			new ImageDecodeService(150_000_000, 64L * 1024 * 1024, 1000), 32, 0.8f, 4);
+
+	@Test
+	void batchKeepsRequestOrderAndOnlyGeneratesWhatIsMissing() throws IOException {
+		Thumbnail cached = new Thumbnail(2, ThumbnailService.THUMBNAIL_TYPE, 10, 10, new byte[] {1});
+		thumbnails.cache(cached, USER_ID);
+		contents.add(1, USER_ID, 1, png(200, 100));
+		contents.add(3, USER_ID, 4, png(50, 100));
+
+		List<Thumbnail> result = service.getThumbnails(List.of(3L, 2L, 1L, 3L), USER_ID);
+
+		assertThat(result).extracting(Thumbnail::photoId).containsExactly(3L, 2L, 1L);
+		assertThat(result.get(1)).isSameAs(cached);
+		assertThat(result.get(0).width()).isEqualTo(16);
+		assertThat(result.get(0).height()).isEqualTo(32);
+		assertThat(result.get(2).width()).isEqualTo(32);
+		assertThat(ImageIO.read(new ByteArrayInputStream(result.get(2).data())).getHeight()).isEqualTo(16);
+		assertThat(contents.requested).containsExactly(List.of(3L, 1L));
+		// Stored under the version the content was read at
+		assertThat(thumbnails.savedVersions).containsExactly(Map.entry(3L, 4), Map.entry(1L, 1));
+	}
+
+	@Test
+	void otherUsersAndUndecodablePhotosAreLeftOut() throws IOException {
+		thumbnails.cache(new Thumbnail(1, ThumbnailService.THUMBNAIL_TYPE, 10, 10, new byte[] {1}), OTHER_USER_ID);
+		contents.add(1, OTHER_USER_ID, 1, png(20, 20));
+		contents.add(2, OTHER_USER_ID, 1, png(20, 20));
+		contents.add(3, USER_ID, 1, "not an image".getBytes());
+
+		assertThat(service.getThumbnails(List.of(1L, 2L, 3L, 4L), USER_ID)).isEmpty();
+		assertThat(thumbnails.savedVersions).isEmpty();
+	}
+
+	@Test
+	void batchesAreBounded() {
+		assertThatThrownBy(() -> service.getThumbnails(List.of(1L, 2L, 3L, 4L, 5L), USER_ID))
+				.isInstanceOfSatisfying(ResponseStatusException.class,
+						e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
+		// Duplicates do not count against the limit
+		assertThat(service.getThumbnails(List.of(1L, 1L, 1L, 1L, 1L), USER_ID)).isEmpty();
+	}
+
+	@Test
+	void singleThumbnailIsGeneratedOnceAndCachedWithItsVersion() throws IOException {
+		contents.add(5, USER_ID, 3, png(64, 64));
+
+		Thumbnail first = service.getThumbnail(5L);
+		Thumbnail second = service.getThumbnail(5L);
+
+		assertThat(first.width()).isEqualTo(32);
+		assertThat(second).isSameAs(first);
+		assertThat(thumbnails.savedVersions).containsExactly(Map.entry(5L, 3));
+		assertThat(service.getThumbnail(6L)).isNull();
+	}
+
+	@Test
+	void thumbnailOfAReplacedVersionIsNeitherServedNorGenerated() throws IOException {
+		contents.add(5, USER_ID, 3, png(64, 64));
+		Thumbnail current = service.getThumbnail(5L, 3);
+
+		assertThat(current.width()).isEqualTo(32);
+		assertThat(service.getThumbnail(5L, 3)).isSameAs(current);
+		assertThat(service.getThumbnail(5L, 2)).isNull();
+		assertThat(thumbnails.savedVersions).containsExactly(Map.entry(5L, 3));
+	}
+
+	private static byte[] png(int width, int height) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", out);
+		return out.toByteArray();
+	}
+
+	private static final class StubThumbnailStore extends ThumbnailStore {
+
+		private final Map<Long, Thumbnail> cached = new HashMap<>();
+		private final Map<Long, Long> owners = new HashMap<>();
+		final Map<Long, Integer> savedVersions = new LinkedHashMap<>();
+
+		StubThumbnailStore() {
+			super(null);
+		}
+
+		void cache(Thumbnail thumbnail, long userId) {
+			cached.put(thumbnail.photoId(), thumbnail);
+			owners.put(thumbnail.photoId(), userId);
+		}
+
+		@Override
+		public List<Thumbnail> findOwned(List<Long> photoIds, Long userId) {
+			return photoIds.stream()
+					.filter(id -> cached.containsKey(id) && owners.get(id).equals(userId))
+					.map(cached::get)
+					.toList();
+		}
+
+		@Override
+		public Thumbnail find(Long photoId) {
+			return cached.get(photoId);
+		}
+
+		@Override
+		public Thumbnail find(Long photoId, int contentVersion) {
+			Integer saved = savedVersions.get(photoId);
+			return saved != null && saved == contentVersion ? cached.get(photoId) : null;
+		}
+
+		@Override
+		public void save(Thumbnail thumbnail, int contentVersion) {
+			savedVersions.put(thumbnail.photoId(), contentVersion);
+			cached.put(thumbnail.photoId(), thumbnail);
+		}
+	}
+
+	private static final class StubContentStore extends PhotoContentStore {
+
+		private record Stored(long userId, int version, byte[] data) {}
+
+		private final Map<Long, Stored> photos = new LinkedHashMap<>();
+		final List<List<Long>> requested = new ArrayList<>();
+
+		StubContentStore() {
+			super(null);
+		}
+
+		void add(long id, long userId, int version, byte[] data) {
+			photos.put(id, new Stored(userId, version, data));
+		}
+
+		@Override
+		public void forEachOwnedContent(List<Long> ids, Long userId, ContentVisitor visitor) {
+			requested.add(ids);
+			for (Long id : ids) {
+				Stored stored = photos.get(id);
+				if (stored != null && stored.userId() == userId) {
+					visit(id, stored, visitor);
+				}
+			}
+		}
+
+		@Override
+		public void visitContent(long id, ContentVisitor visitor) {
+			Stored stored = photos.get(id);
+			if (stored != null) {
+				visit(id, stored, visitor);
+			}
+		}
+
+		private static void visit(long id, Stored stored, ContentVisitor visitor) {
+			try {
+				visitor.visit(id, stored.version(), new ByteArrayInputStream(stored.data()));
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+}
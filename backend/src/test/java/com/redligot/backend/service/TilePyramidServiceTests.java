@@ -0,0 +1,105 @@
+package com.redligot.backend.service;
+
+import com.redligot.backend.repository.ImageBlobStore;
+import com.redligot.backend.repository.PhotoContentStore;
+import com.redligot.backend.repository.PhotoContentStore.ImageGeometry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TilePyramidServiceTests {
+
+	@Test
+	void sourceRegionMatchesOrientation() {
+		Random random = new Random(7);
+		BufferedImage stored = new BufferedImage(37, 23, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < stored.getHeight(); y++) {
+			for (int x = 0; x < stored.getWidth(); x++) {
+				stored.setRGB(x, y, random.nextInt(0x1000000));
+			}
+		}
+		Rectangle upright = new Rectangle(5, 3, 11, 7);
+		for (int orientation = 1; orientation <= 8; orientation++) {
+			BufferedImage expected = ImageAnalysisService.orient(stored, orientation)
+					.getSubimage(upright.x, upright.y, upright.width, upright.height);
+			Rectangle source = TilePyramidService.sourceRegion(upright, stored.getWidth(), stored.getHeight(), orientation);
+			BufferedImage actual = ImageAnalysisService.orient(
+					stored.getSubimage(source.x, source.y, source.width, source.height), orientation);
+
+			assertThat(actual.getWidth()).as("orientation %d", orientation).isEqualTo(upright.width);
+			for (int y = 0; y < upright.height; y++) {
+				for (int x = 0; x < upright.width; x++) {
+					assertThat(actual.getRGB(x, y)).as("orientation %d at %d,%d", orientation, x, y)
+							.isEqualTo(expected.getRGB(x, y));
+				}
+			}
+		}
+	}
+
+	@Test
+	void buildsEveryLevelUpright(@TempDir Path blobs) throws IOException {
+		// Red left half, blue right half; orientation 6 turns the red half to the top
+		BufferedImage stored = new BufferedImage(700, 300, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = stored.createGraphics();
+		g.setColor(Color.RED);
+		g.fillRect(0, 0, 350, 300);
+		g.setColor(Color.BLUE);
+		g.fillRect(350, 0, 350, 300);
+		g.dispose();
+		ByteArrayOutputStream png = new ByteArrayOutputStream();
+		ImageIO.write(stored, "png", png);
+
+		PhotoContentStore store = mock(PhotoContentStore.class);
+		when(store.findImageGeometry(1L)).thenReturn(new ImageGeometry(1, 7, "image/png", 3, 700, 300, 6));
+		when(store.readContent(eq(1L), any())).thenAnswer(invocation -> invocation
+				.<PhotoContentStore.ContentReader<?>>getArgument(1).read(new ByteArrayInputStream(png.toByteArray())));
+		ImageBlobStore blobStore = new ImageBlobStore(blobs.toString());
+		// Small strips, so the two largest levels are decoded in several pieces
+		TilePyramidService service = new TilePyramidService(store, blobStore,
+				new ImageDecodeService(150_000_000, 64L << 20, 1000), new BufferPool(65536, 1 << 20, "off"),
+				1, 300 * 4 * 512, 0.9f);
+
+		assertThat(service.getPyramid(1, 7).ready()).isFalse();
+		service.buildLater(1);
+		TilePyramidService.TilePyramid pyramid = service.getPyramid(1, 7);
+
+		assertThat(pyramid.ready()).isTrue();
+		assertThat(pyramid.width()).isEqualTo(300);
+		assertThat(pyramid.height()).isEqualTo(700);
+		assertThat(pyramid.maxLevel()).isEqualTo(10);
+		BufferedImage corner = tile(service, 10, 1, 2);
+		assertThat(corner.getWidth()).isEqualTo(300 - 256);
+		assertThat(corner.getHeight()).isEqualTo(700 - 512);
+		assertThat(new Color(tile(service, 10, 0, 0).getRGB(128, 128)).getRed()).isGreaterThan(200);
+		assertThat(new Color(corner.getRGB(20, 100)).getBlue()).isGreaterThan(200);
+		assertThat(new Color(tile(service, 9, 0, 0).getRGB(75, 20)).getRed()).isGreaterThan(200);
+		assertThat(tile(service, 0, 0, 0).getWidth()).isEqualTo(1);
+	}
+
+	@Test
+	void maxLevelIsHalvingsToOnePixel() {
+		assertThat(TilePyramidService.maxLevel(1, 1)).isZero();
+		assertThat(TilePyramidService.maxLevel(256, 100)).isEqualTo(8);
+		assertThat(TilePyramidService.maxLevel(100, 257)).isEqualTo(9);
+	}
+
+	private static BufferedImage tile(TilePyramidService service, int level, int x, int y) throws IOException {
+		return ImageIO.read(service.getTile(1, 7, 3, level, x, y).file().toFile());
+	}
+}
@@ -0,0 +1,197 @@
+package com.redligot.backend.service;
+
+import com.redligot.backend.model.Photo;
+import com.redligot.backend.model.UploadJob;
+import com.redligot.backend.model.UploadJobItem;
+import com.redligot.backend.model.User;
+import com.redligot.backend.repository.GalleryRepository;
+import com.redligot.backend.repository.UploadJobRepository;
+import com.redligot.backend.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Lifecycle of background upload jobs, with mocked repositories and photo service.
+ */
+class UploadJobServiceTests {
+
+	private static final long USER_ID = 7;
+
+	@TempDir
+	Path staging;
+
+	private UploadJobRepository jobs;
+	private UserRepository users;
+	private GalleryRepository galleries;
+	private PhotoService photos;
+	private PlatformTransactionManager transactions;
+	private UploadJobService service;
+
+	@BeforeEach
+	void setUp() {
+		jobs = mock(UploadJobRepository.class);
+		users = mock(UserRepository.class);
+		galleries = mock(GalleryRepository.class);
+		photos = mock(PhotoService.class);
+		transactions = mock(PlatformTransactionManager.class);
+		when(transactions.getTransaction(any())).thenAnswer(invocation -> new SimpleTransactionStatus());
+		when(jobs.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+		User user = new User();
+		user.setId(USER_ID);
+		when(users.findById(USER_ID)).thenReturn(Optional.of(user));
+		service = new UploadJobService(jobs, users, galleries, photos, transactions, staging.toString());
+	}
+
+	@Test
+	void submitStagesEveryFileAsAPendingItem() throws Exception {
+		UploadJob job = service.submit(new MultipartFile[] {file("a.jpg", "aaa"), file("b.jpg", "bb")},
+				new String[] {"First"}, null, USER_ID, null);
+
+		assertThat(job.getStatus()).isEqualTo(UploadJob.Status.PENDING);
+		assertThat(job.getTotalFiles()).isEqualTo(2);
+		assertThat(job.getItems()).extracting(UploadJobItem::getTitle).containsExactly("First", null);
+		assertThat(job.getItems()).allMatch(item -> item.getStatus() == UploadJobItem.Status.PENDING);
+		assertThat(Files.readString(Path.of(job.getItems().get(1).getStagedPath()))).isEqualTo("bb");
+	}
+
+	@Test
+	void submitRejectsAnEmptyRequest() {
+		assertThatThrownBy(() -> service.submit(new MultipartFile[0], null, null, USER_ID, null))
+				.isInstanceOfSatisfying(ResponseStatusException.class,
+						e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
+	}
+
+	@Test
+	void processCompletesEachItemInsideATransaction() throws Exception {
+		UploadJob job = stagedJob("a.jpg", "b.jpg");
+		when(photos.createFromFile(any(), any(), anyString(), any(), any(), any(), any()))
+				.thenReturn(photo(11), photo(12));
+
+		service.process(job.getId());
+
+		assertThat(job.getStatus()).isEqualTo(UploadJob.Status.COMPLETED);
+		assertThat(job.getCompletedAt()).isNotNull();
+		assertThat(job.getProcessedFiles()).isEqualTo(2);
+		assertThat(job.getItems()).extracting(UploadJobItem::getPhotoId).containsExactly(11L, 12L);
+		assertThat(job.getItems()).extracting(UploadJobItem::getStagedPath).containsOnlyNulls();
+		verify(transactions, times(2)).commit(any());
+		assertThat(staging.resolve(job.getId())).doesNotExist();
+	}
+
+	@Test
+	void failedItemsAreRecordedAndTheRestStillProcessed() throws Exception {
+		UploadJob job = stagedJob("bad.txt", "good.jpg");
+		when(photos.createFromFile(any(), any(), eq("bad.txt"), any(), any(), any(), any()))
+				.thenThrow(new ResponseStatusException(HttpStatus.BAD_REQUEST, "not a valid image file"));
+		when(photos.createFromFile(any(), any(), eq("good.jpg"), any(), any(), any(), any())).thenReturn(photo(12));
+
+		service.process(job.getId());
+
+		assertThat(job.getStatus()).isEqualTo(UploadJob.Status.COMPLETED_WITH_ERRORS);
+		assertThat(job.getFailedFiles()).isEqualTo(1);
+		assertThat(job.getProcessedFiles()).isEqualTo(2);
+		UploadJobItem bad = job.getItems().get(0);
+		assertThat(bad.getStatus()).isEqualTo(UploadJobItem.Status.FAILED);
+		assertThat(bad.getErrorMessage()).isEqualTo("not a valid image file");
+		assertThat(job.getItems().get(1).getPhotoId()).isEqualTo(12L);
+		verify(transactions).rollback(any());
+	}
+
+	@Test
+	void itemIsNotCompletedWhenItsTransactionFailsToCommit() throws Exception {
+		UploadJob job = stagedJob("a.jpg");
+		when(photos.createFromFile(any(), any(), anyString(), any(), any(), any(), any())).thenReturn(photo(11));
+		doThrow(new TransactionSystemException("commit failed")).when(transactions).commit(any());
+
+		service.process(job.getId());
+
+		UploadJobItem item = job.getItems().get(0);
+		assertThat(item.getStatus()).isEqualTo(UploadJobItem.Status.FAILED);
+		assertThat(item.getPhotoId()).isNull();
+		assertThat(job.getStatus()).isEqualTo(UploadJob.Status.COMPLETED_WITH_ERRORS);
+	}
+
+	@Test
+	void resumedJobSkipsItemsThatAlreadyFinished() throws Exception {
+		UploadJob job = stagedJob("a.jpg", "b.jpg");
+		job.setStatus(UploadJob.Status.RUNNING);
+		job.getItems().get(0).setStatus(UploadJobItem.Status.COMPLETED);
+		job.getItems().get(0).setPhotoId(11L);
+		job.setProcessedFiles(1);
+		when(photos.createFromFile(any(), any(), anyString(), any(), any(), any(), any())).thenReturn(photo(12));
+
+		service.process(job.getId());
+
+		verify(photos, never()).createFromFile(any(), any(), eq("a.jpg"), any(), any(), any(), any());
+		verify(photos).createFromFile(any(), any(), eq("b.jpg"), any(), any(), any(), any());
+		assertThat(job.getProcessedFiles()).isEqualTo(2);
+		assertThat(job.getItems()).extracting(UploadJobItem::getPhotoId).containsExactly(11L, 12L);
+		assertThat(job.getStatus()).isEqualTo(UploadJob.Status.COMPLETED);
+	}
+
+	@Test
+	void itemsFailWhenTheOwnerIsGone() throws Exception {
+		UploadJob job = stagedJob("a.jpg");
+		job.setUserId(USER_ID + 1);
+
+		service.process(job.getId());
+
+		assertThat(job.getItems().get(0).getErrorMessage()).isEqualTo("User not found");
+		assertThat(job.getStatus()).isEqualTo(UploadJob.Status.COMPLETED_WITH_ERRORS);
+		verify(photos, never()).createFromFile(any(), any(), any(), any(), any(), any(), any());
+	}
+
+	@Test
+	void jobsOfOtherUsersAreNotFound() throws Exception {
+		UploadJob job = stagedJob("a.jpg");
+
+		assertThat(service.getJob(job.getId(), USER_ID).getTotalFiles()).isEqualTo(1);
+		assertThatThrownBy(() -> service.getJob(job.getId(), USER_ID + 1))
+				.isInstanceOfSatisfying(ResponseStatusException.class,
+						e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND));
+	}
+
+	private UploadJob stagedJob(String... filenames) throws Exception {
+		MultipartFile[] files = new MultipartFile[filenames.length];
+		for (int i = 0; i < filenames.length; i++) {
+			files[i] = file(filenames[i], "content " + i);
+		}
+		UploadJob job = service.submit(files, null, null, USER_ID, null);
+		when(jobs.findWithItemsById(job.getId())).thenReturn(Optional.of(job));
+		return job;
+	}
+
+	private static MockMultipartFile file(String name, String content) {
+		return new MockMultipartFile("files", name, "image/jpeg", content.getBytes());
+	}
+
+	private static Photo photo(long id) {
+		Photo photo = new Photo();
+		photo.setId(id);
+		return photo;
+	}
+}
@@ -0,0 +1,69 @@
+package com.redligot.backend.web;
+
+import com.redligot.backend.repository.ImageBlobStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Offloading image responses to nginx with X-Accel-Redirect.
+ */
+class AccelRedirectResponderTests {
+
+	@TempDir
+	Path root;
+
+	@Test
+	void onlyRequestsThroughTheProxyAreOffloaded() {
+		AccelRedirectResponder responder = new AccelRedirectResponder(new ImageBlobStore(root.toString()), true,
+				"/internal/blobs/");
+		MockHttpServletRequest direct = new MockHttpServletRequest();
+		MockHttpServletRequest proxied = new MockHttpServletRequest();
+		proxied.addHeader(AccelRedirectResponder.SENDFILE_TYPE_HEADER, "x-accel-redirect");
+		MockHttpServletRequest otherProxy = new MockHttpServletRequest();
+		otherProxy.addHeader(AccelRedirectResponder.SENDFILE_TYPE_HEADER, "X-Sendfile");
+
+		assertThat(responder.supports(direct)).isFalse();
+		assertThat(responder.supports(proxied)).isTrue();
+		assertThat(responder.supports(otherProxy)).isFalse();
+		assertThat(new AccelRedirectResponder(new ImageBlobStore(root.toString()), false, "/internal/blobs/")
+				.supports(proxied)).isFalse();
+	}
+
+	@Test
+	void responseNamesTheBlobUnderTheInternalLocation() throws Exception {
+		// The location is normalized to end with a slash
+		AccelRedirectResponder responder = new AccelRedirectResponder(new ImageBlobStore(root.toString()), true,
+				"/internal/blobs");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		assertThat(responder.send(response, 42, 3, "thumb", "image/jpeg", out -> {
+			out.write(new byte[] {1, 2, 3});
+			return true;
+		})).isTrue();
+
+		assertThat(response.getHeader(AccelRedirectResponder.ACCEL_REDIRECT_HEADER))
+				.isEqualTo("/internal/blobs/2a/42-3-thumb.jpg");
+		assertThat(response.getContentType()).isEqualTo("image/jpeg");
+		assertThat(response.getContentAsByteArray()).isEmpty();
+		assertThat(Files.readAllBytes(root.resolve("2a/42-3-thumb.jpg"))).containsExactly(1, 2, 3);
+	}
+
+	@Test
+	void nothingIsSentWithoutContent() {
+		AccelRedirectResponder responder = new AccelRedirectResponder(new ImageBlobStore(root.toString()), true,
+				"/internal/blobs/");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		assertThat(responder.send(response, 42, 3, "original", "image/png", out -> false)).isFalse();
+
+		assertThat(response.getHeader(AccelRedirectResponder.ACCEL_REDIRECT_HEADER)).isNull();
+		assertThat(response.getContentType()).isNull();
+	}
+}
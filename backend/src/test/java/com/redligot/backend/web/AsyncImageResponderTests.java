@@ -0,0 +1,204 @@
+package com.redligot.backend.web;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Simulates slow mobile clients against the non-blocking download writer.
+ */
+class AsyncImageResponderTests {
+
+	private static final int SLOW_READERS = 500;
+	private static final int WORKER_THREADS = 8;
+	private static final int CHUNK_SIZE = 16 * 1024;
+	private static final int IMAGE_BYTES = 128 * 1024;
+	// Each client drains 4 KB every 5 ms, so a full image takes ~160 ms per reader
+	private static final int DRAIN_BYTES_PER_TICK = 4 * 1024;
+
+	private final ExecutorService workers = Executors.newFixedThreadPool(WORKER_THREADS);
+	private final ScheduledExecutorService network = Executors.newSingleThreadScheduledExecutor();
+
+	@AfterEach
+	void shutdown() {
+		workers.shutdownNow();
+		network.shutdownNow();
+	}
+
+	@Test
+	void slowReadersDoNotHoldWorkerThreads() throws Exception {
+		AsyncImageResponder responder = new AsyncImageResponder(true, CHUNK_SIZE, 60_000, Long.MAX_VALUE);
+		byte[] image = new byte[IMAGE_BYTES];
+		CountDownLatch accepted = new CountDownLatch(SLOW_READERS);
+		CountDownLatch completed = new CountDownLatch(SLOW_READERS);
+		List<SlowClientOutputStream> clients = new ArrayList<>();
+
+		for (int i = 0; i < SLOW_READERS; i++) {
+			SlowClientOutputStream client = new SlowClientOutputStream(workers);
+			clients.add(client);
+			HttpServletRequest request = mockRequest(completed);
+			HttpServletResponse response = mock(HttpServletResponse.class);
+			when(response.getOutputStream()).thenReturn(client);
+			workers.execute(() -> {
+				try {
+					responder.send(request, response, ByteBuffer.wrap(image));
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				} finally {
+					accepted.countDown();
+				}
+			});
+		}
+		network.scheduleAtFixedRate(() -> clients.forEach(c -> c.drain(DRAIN_BYTES_PER_TICK)), 5, 5, TimeUnit.MILLISECONDS);
+
+		// Blocking writes would need SLOW_READERS / WORKER_THREADS * 160 ms = 10 s just to accept everyone
+		assertThat(accepted.await(2, TimeUnit.SECONDS)).as("requests accepted while clients drain").isTrue();
+		assertThat(completed.await(30, TimeUnit.SECONDS)).as("all downloads completed").isTrue();
+
+		for (SlowClientOutputStream client : clients) {
+			assertThat(client.received).isEqualTo(IMAGE_BYTES);
+			assertThat(client.maxPending).isLessThanOrEqualTo(CHUNK_SIZE);
+		}
+		assertThat(responder.getInFlightBytes()).isZero();
+	}
+
+	@Test
+	void rejectsWhenInFlightBudgetIsExhausted() throws Exception {
+		AsyncImageResponder responder = new AsyncImageResponder(true, CHUNK_SIZE, 60_000, IMAGE_BYTES);
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		when(response.getOutputStream()).thenReturn(new SlowClientOutputStream(workers));
+
+		responder.send(mockRequest(new CountDownLatch(1)), response, ByteBuffer.wrap(new byte[IMAGE_BYTES]));
+
+		assertThatThrownBy(() ->
+				responder.send(mockRequest(new CountDownLatch(1)), response, ByteBuffer.wrap(new byte[1])))
+				.hasMessageContaining("Too many downloads");
+	}
+
+	private HttpServletRequest mockRequest(CountDownLatch completed) {
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		AsyncContext asyncContext = mock(AsyncContext.class);
+		List<AsyncListener> listeners = new ArrayList<>();
+		doAnswer(invocation -> listeners.add(invocation.getArgument(0)))
+				.when(asyncContext).addListener(any(AsyncListener.class));
+		doAnswer(invocation -> {
+			for (AsyncListener listener : listeners) {
+				listener.onComplete(null);
+			}
+			completed.countDown();
+			return null;
+		}).when(asyncContext).complete();
+		doAnswer(invocation -> null).when(asyncContext).setTimeout(anyLong());
+		when(request.startAsync()).thenReturn(asyncContext);
+		when(request.isAsyncSupported()).thenReturn(true);
+		return request;
+	}
+
+	/**
+	 * Behaves like Tomcat's non-blocking output: writes are buffered, {@link #isReady()}
+	 * turns false while anything is still buffered, and the listener is called back on
+	 * a container thread once the client has drained the buffer.
+	 */
+	private static final class SlowClientOutputStream extends ServletOutputStream {
+
+		private final ExecutorService container;
+		private final ReentrantLock lock = new ReentrantLock();
+		private WriteListener listener;
+		private boolean waiting;
+		private long pending;
+		private long received;
+		private long maxPending;
+
+		SlowClientOutputStream(ExecutorService container) {
+			this.container = container;
+		}
+
+		@Override
+		public boolean isReady() {
+			lock.lock();
+			try {
+				if (pending == 0) {
+					return true;
+				}
+				waiting = true;
+				return false;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public void setWriteListener(WriteListener writeListener) {
+			this.listener = writeListener;
+			dispatch();
+		}
+
+		@Override
+		public void write(int b) {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			lock.lock();
+			try {
+				pending += len;
+				received += len;
+				maxPending = Math.max(maxPending, pending);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void drain(int bytes) {
+			boolean notify;
+			lock.lock();
+			try {
+				pending = Math.max(0, pending - bytes);
+				notify = pending == 0 && waiting;
+				if (notify) {
+					waiting = false;
+				}
+			} finally {
+				lock.unlock();
+			}
+			if (notify) {
+				dispatch();
+			}
+		}
+
+		private void dispatch() {
+			container.execute(() -> {
+				try {
+					listener.onWritePossible();
+				} catch (IOException e) {
+					listener.onError(e);
+				}
+			});
+		}
+	}
+}
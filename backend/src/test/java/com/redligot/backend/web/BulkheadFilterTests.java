@@ -0,0 +1,48 @@
+package com.redligot.backend.web;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Mapping of requests to bulkheads.
+ */
+class BulkheadFilterTests {
+
+	@Test
+	void downloadsAreClassifiedByPath() {
+		assertThat(classify("GET", "/api/photos/1/file", null)).isEqualTo(RequestBulkhead.RequestClass.DOWNLOAD);
+		assertThat(classify("HEAD", "/api/users/1/profile-picture", null)).isEqualTo(RequestBulkhead.RequestClass.DOWNLOAD);
+		assertThat(classify("GET", "/api/galleries/1/photos.zip", null)).isEqualTo(RequestBulkhead.RequestClass.DOWNLOAD);
+		assertThat(classify("POST", "/api/photos/export.zip", "application/json")).isEqualTo(RequestBulkhead.RequestClass.DOWNLOAD);
+		assertThat(classify("GET", "/img/1/3/original", null)).isEqualTo(RequestBulkhead.RequestClass.DOWNLOAD);
+	}
+
+	@Test
+	void readsAndSmallWritesAreInteractive() {
+		assertThat(classify("GET", "/api/photos", null)).isEqualTo(RequestBulkhead.RequestClass.INTERACTIVE);
+		assertThat(classify("GET", "/img/1/3/thumb", null)).isEqualTo(RequestBulkhead.RequestClass.INTERACTIVE);
+		assertThat(classify("PUT", "/api/photos/1", "application/json")).isEqualTo(RequestBulkhead.RequestClass.INTERACTIVE);
+		assertThat(classify("POST", "/api/photos/restore", "application/json")).isEqualTo(RequestBulkhead.RequestClass.INTERACTIVE);
+		assertThat(classify("DELETE", "/api/photos/1", null)).isEqualTo(RequestBulkhead.RequestClass.INTERACTIVE);
+	}
+
+	@Test
+	void uploadsAndBulkOperationsAreBulkWrites() {
+		assertThat(classify("POST", "/api/photos", "multipart/form-data; boundary=x"))
+				.isEqualTo(RequestBulkhead.RequestClass.BULK_WRITE);
+		assertThat(classify("PUT", "/api/photos/1", "Multipart/Form-Data; boundary=x"))
+				.isEqualTo(RequestBulkhead.RequestClass.BULK_WRITE);
+		assertThat(classify("DELETE", "/api/photos/bulk", "application/json")).isEqualTo(RequestBulkhead.RequestClass.BULK_WRITE);
+		assertThat(classify("PATCH", "/api/uploads/abc", "application/offset+octet-stream"))
+				.isEqualTo(RequestBulkhead.RequestClass.BULK_WRITE);
+		assertThat(classify("POST", "/api/galleries/1/import", "application/zip")).isEqualTo(RequestBulkhead.RequestClass.BULK_WRITE);
+	}
+
+	private static RequestBulkhead.RequestClass classify(String method, String uri, String contentType) {
+		MockHttpServletRequest request = new MockHttpServletRequest(method, uri);
+		request.setContentType(contentType);
+		return BulkheadFilter.classify(request);
+	}
+}
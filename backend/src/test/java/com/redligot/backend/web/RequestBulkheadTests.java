@@ -0,0 +1,135 @@
+package com.redligot.backend.web;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Admission decisions of the request bulkheads against a mocked Hikari pool.
+ */
+class RequestBulkheadTests {
+
+	private DataSource dataSource;
+	private HikariDataSource hikari;
+	private HikariPoolMXBean pool;
+
+	@BeforeEach
+	void mockPool() throws Exception {
+		dataSource = mock(DataSource.class);
+		hikari = mock(HikariDataSource.class);
+		pool = mock(HikariPoolMXBean.class);
+		when(dataSource.isWrapperFor(HikariDataSource.class)).thenReturn(true);
+		when(dataSource.unwrap(HikariDataSource.class)).thenReturn(hikari);
+		when(hikari.getHikariPoolMXBean()).thenReturn(pool);
+	}
+
+	@Test
+	void bulkWritesDefaultToThePoolLessTheReserve() throws InterruptedException {
+		RequestBulkhead bulkhead = newBulkhead(0, 3);
+
+		RequestBulkhead.Permit first = bulkhead.tryAcquire(RequestBulkhead.RequestClass.BULK_WRITE);
+		assertThat(first).isNotNull();
+		assertThat(bulkhead.tryAcquire(RequestBulkhead.RequestClass.BULK_WRITE)).isNotNull();
+		assertThat(bulkhead.tryAcquire(RequestBulkhead.RequestClass.BULK_WRITE)).isNull();
+
+		first.release();
+		assertThat(bulkhead.tryAcquire(RequestBulkhead.RequestClass.BULK_WRITE)).isNotNull();
+	}
+
+	@Test
+	void explicitBulkWriteLimitIsKept() throws InterruptedException {
+		RequestBulkhead bulkhead = newBulkhead(1, 10);
+
+		RequestBulkhead.Permit permit = bulkhead.tryAcquire(RequestBulkhead.RequestClass.BULK_WRITE);
+		assertThat(permit).isNotNull();
+		assertThat(bulkhead.tryAcquire(RequestBulkhead.RequestClass.BULK_WRITE)).isNull();
+
+		permit.release();
+		assertThat(bulkhead.tryAcquire(RequestBulkhead.RequestClass.BULK_WRITE)).isNotNull();
+	}
+
+	@Test
+	void downloadsAndBulkWritesShareTheConnectionsOutsideTheReserve() throws InterruptedException {
+		RequestBulkhead bulkhead = newBulkhead(0, 3);
+
+		RequestBulkhead.Permit download = bulkhead.tryAcquire(RequestBulkhead.RequestClass.DOWNLOAD);
+		assertThat(download).isNotNull();
+		assertThat(bulkhead.tryAcquire(RequestBulkhead.RequestClass.BULK_WRITE)).isNotNull();
+
+		assertThat(bulkhead.tryAcquire(RequestBulkhead.RequestClass.DOWNLOAD)).isNull();
+		assertThat(bulkhead.tryAcquire(RequestBulkhead.RequestClass.BULK_WRITE)).isNull();
+		assertThat(bulkhead.tryAcquire(RequestBulkhead.RequestClass.INTERACTIVE)).isNotNull();
+		// A rejected request hands back its class permit
+		assertThat(bulkhead.availablePermits(RequestBulkhead.RequestClass.DOWNLOAD)).isEqualTo(31);
+
+		download.release();
+		assertThat(bulkhead.tryAcquire(RequestBulkhead.RequestClass.DOWNLOAD)).isNotNull();
+	}
+
+	@Test
+	void concurrentDownloadsCannotTakeTheReserve() throws Exception {
+		RequestBulkhead bulkhead = newBulkhead(0, 3);
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicInteger admitted = new AtomicInteger();
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < 16; i++) {
+			threads.add(Thread.ofVirtual().start(() -> {
+				try {
+					start.await();
+					if (bulkhead.tryAcquire(RequestBulkhead.RequestClass.DOWNLOAD) != null) {
+						admitted.incrementAndGet();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}));
+		}
+
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join(5_000);
+		}
+
+		assertThat(admitted).hasValue(2);
+	}
+
+	@Test
+	void queueTimeoutShrinksWhileThreadsWaitForConnections() throws InterruptedException {
+		RequestBulkhead bulkhead = new RequestBulkhead(dataSource, 1, 2000, 1, 1000, 0, 500, 1, 3);
+		assertThat(bulkhead.tryAcquire(RequestBulkhead.RequestClass.INTERACTIVE)).isNotNull();
+		when(pool.getThreadsAwaitingConnection()).thenReturn(19);
+
+		long start = System.nanoTime();
+		assertThat(bulkhead.tryAcquire(RequestBulkhead.RequestClass.INTERACTIVE)).isNull();
+
+		// 2000 ms shared by 20 waiters
+		assertThat((System.nanoTime() - start) / 1_000_000).isLessThan(1000);
+	}
+
+	@Test
+	void worksWithoutHikari() throws Exception {
+		DataSource plain = mock(DataSource.class);
+		when(plain.isWrapperFor(HikariDataSource.class)).thenReturn(false);
+		RequestBulkhead bulkhead = new RequestBulkhead(plain, 64, 2000, 32, 1000, 0, 10, 1, 3);
+
+		assertThat(bulkhead.tryAcquire(RequestBulkhead.RequestClass.BULK_WRITE)).isNotNull();
+		assertThat(bulkhead.tryAcquire(RequestBulkhead.RequestClass.BULK_WRITE)).isNotNull();
+		assertThat(bulkhead.tryAcquire(RequestBulkhead.RequestClass.BULK_WRITE)).isNull();
+		assertThat(bulkhead.availablePermits(RequestBulkhead.RequestClass.INTERACTIVE)).isEqualTo(64);
+	}
+
+	private RequestBulkhead newBulkhead(int bulkWriteLimit, int poolSize) {
+		return new RequestBulkhead(dataSource, 64, 2000, 32, 1000, bulkWriteLimit, 10, 1, poolSize);
+	}
+}
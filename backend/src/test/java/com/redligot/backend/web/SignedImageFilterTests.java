@@ -0,0 +1,127 @@
+package com.redligot.backend.web;
+
+import com.redligot.backend.security.ImageUrlSigner;
+import com.redligot.backend.security.ImageUrlSigner.Variant;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.util.UriComponents;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Admission of signed image URLs, directly and through the nginx verify endpoint.
+ */
+class SignedImageFilterTests {
+
+	private static final String SECRET = "test-secret-test-secret-test-secret";
+
+	private final ImageUrlSigner signer = new ImageUrlSigner(SECRET, 3600, 900);
+	private final SignedImageFilter filter = new SignedImageFilter(signer);
+
+	@Test
+	void admitsAValidUrlAndRecordsItsExpiry() throws Exception {
+		String url = signer.sign(42, 3, Variant.THUMB);
+		MockFilterChain chain = new MockFilterChain();
+		MockHttpServletRequest request = request(url);
+
+		filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+		assertThat(chain.getRequest()).isSameAs(request);
+		assertThat(request.getAttribute(SignedImageFilter.VERIFIED_ATTRIBUTE))
+				.isEqualTo(Long.parseLong(parse(url).getQueryParams().getFirst("exp")));
+	}
+
+	@Test
+	void rejectsTamperedUrls() throws Exception {
+		UriComponents url = parse(signer.sign(42, 3, Variant.THUMB));
+		String v = url.getQueryParams().getFirst("v");
+		String exp = url.getQueryParams().getFirst("exp");
+		String sig = url.getQueryParams().getFirst("sig");
+
+		assertRejected("/img/43/thumb?v=" + v + "&exp=" + exp + "&sig=" + sig, "Invalid image URL signature");
+		assertRejected("/img/42/original?v=" + v + "&exp=" + exp + "&sig=" + sig, "Invalid image URL signature");
+		assertRejected("/img/42/thumb?v=4&exp=" + exp + "&sig=" + sig, "Invalid image URL signature");
+		assertRejected("/img/42/thumb?v=" + v + "&exp=" + (Long.parseLong(exp) + 900) + "&sig=" + sig,
+				"Invalid image URL signature");
+		assertRejected("/img/42/thumb?v=" + v + "&exp=" + exp, "Invalid image URL signature");
+		assertRejected("/img/42/thumb?v=x&exp=" + exp + "&sig=" + sig, "Invalid image URL");
+		assertRejected("/img/42/thumb/extra?v=" + v + "&exp=" + exp + "&sig=" + sig, "Invalid image URL");
+		assertRejected("/img/42?v=" + v + "&exp=" + exp + "&sig=" + sig, "Invalid image URL");
+	}
+
+	@Test
+	void rejectsExpiredUrls() throws Exception {
+		// A negative TTL signs URLs that expired an hour ago
+		String expired = new ImageUrlSigner(SECRET, -3600, 1).sign(42, 3, Variant.THUMB);
+
+		assertRejected(expired, "Image URL has expired");
+	}
+
+	@Test
+	void passesOtherPathsThrough() throws Exception {
+		MockFilterChain chain = new MockFilterChain();
+		MockHttpServletRequest request = request("/api/photos");
+
+		filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+		assertThat(chain.getRequest()).isSameAs(request);
+	}
+
+	@Test
+	void verifyEndpointChecksTheOriginalUri() throws Exception {
+		String url = signer.sign(42, 3, Variant.ORIGINAL);
+		UriComponents parsed = parse(url);
+		// nginx passes the URI as the client sent it, possibly percent-encoded and with extra parameters
+		String encoded = "/img/42/original?x=1&v=" + parsed.getQueryParams().getFirst("v")
+				+ "&exp=" + parsed.getQueryParams().getFirst("exp")
+				+ "&sig=" + parsed.getQueryParams().getFirst("sig").replace("-", "%2D")
+				+ "&sig=ignored&novalue";
+
+		assertThat(verify(url).getStatus()).isEqualTo(204);
+		assertThat(verify(encoded).getStatus()).isEqualTo(204);
+		assertThat(verify(url.replace("/42/", "/43/")).getStatus()).isEqualTo(403);
+		assertThat(verify("/img/42/original").getContentAsString()).contains("Invalid image URL");
+		assertThat(verify("/api/photos?" + url.substring(url.indexOf('?') + 1)).getStatus()).isEqualTo(403);
+
+		MockHttpServletResponse missing = new MockHttpServletResponse();
+		filter.doFilter(request(SignedImageFilter.VERIFY_PATH), missing, new MockFilterChain());
+		assertThat(missing.getStatus()).isEqualTo(403);
+		assertThat(missing.getContentAsString()).contains("Missing X-Original-URI header");
+	}
+
+	private MockHttpServletResponse verify(String originalUri) throws Exception {
+		MockHttpServletRequest request = request(SignedImageFilter.VERIFY_PATH);
+		request.addHeader(SignedImageFilter.ORIGINAL_URI_HEADER, originalUri);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		MockFilterChain chain = new MockFilterChain();
+		filter.doFilter(request, response, chain);
+		assertThat(chain.getRequest()).isNull();
+		return response;
+	}
+
+	private void assertRejected(String url, String message) throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		MockFilterChain chain = new MockFilterChain();
+
+		filter.doFilter(request(url), response, chain);
+
+		assertThat(chain.getRequest()).as(url).isNull();
+		assertThat(response.getStatus()).isEqualTo(403);
+		assertThat(response.getHeader("Cache-Control")).isEqualTo("no-store");
+		assertThat(response.getContentAsString()).contains("\"message\":\"" + message + "\"");
+	}
+
+	private static MockHttpServletRequest request(String url) {
+		UriComponents parsed = parse(url);
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", parsed.getPath());
+		parsed.getQueryParams().forEach((name, values) -> values.forEach(value -> request.addParameter(name, value)));
+		return request;
+	}
+
+	private static UriComponents parse(String url) {
+		return UriComponentsBuilder.fromUriString(url).build();
+	}
+}
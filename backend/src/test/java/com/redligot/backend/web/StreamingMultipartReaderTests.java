@@ -0,0 +1,180 @@
+package com.redligot.backend.web;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Framing edge cases of the streaming multipart parser.
+ */
+class StreamingMultipartReaderTests {
+
+	private static final String BOUNDARY = "----formBoundary7MA4YWxk";
+
+	@Test
+	void findsDelimitersSplitAcrossReads() throws IOException {
+		// Content that starts like a delimiter must come through untouched
+		byte[] content = ("abc\r\n--" + BOUNDARY.substring(0, 10) + "xyz\r\n-").getBytes(StandardCharsets.ISO_8859_1);
+		String body = "--" + BOUNDARY + "\r\n"
+				+ "Content-Disposition: form-data; name=\"title\"\r\n\r\n"
+				+ "Sunset\r\n"
+				+ "--" + BOUNDARY + "\r\n"
+				+ "Content-Disposition: form-data; name=\"file\"; filename=\"a.jpg\"\r\n"
+				+ "Content-Type: image/jpeg\r\n\r\n"
+				+ new String(content, StandardCharsets.ISO_8859_1) + "\r\n"
+				+ "--" + BOUNDARY + "--\r\n";
+
+		for (int chunk : new int[] {1, 2, 7, 64}) {
+			StreamingMultipartReader reader = new StreamingMultipartReader(trickle(body, chunk), BOUNDARY);
+
+			StreamingMultipartReader.Part title = reader.next();
+			assertThat(title.getName()).isEqualTo("title");
+			assertThat(title.isFile()).isFalse();
+			assertThat(title.readString(100)).isEqualTo("Sunset");
+
+			StreamingMultipartReader.Part file = reader.next();
+			assertThat(file.getName()).isEqualTo("file");
+			assertThat(file.getFilename()).isEqualTo("a.jpg");
+			assertThat(file.getContentType()).isEqualTo("image/jpeg");
+			assertThat(file.getInputStream().readAllBytes()).isEqualTo(content);
+
+			assertThat(reader.next()).isNull();
+			assertThat(reader.next()).isNull();
+		}
+	}
+
+	@Test
+	void ignoresPreambleTransportPaddingAndEpilogue() throws IOException {
+		String body = "This is the preamble.\r\n"
+				+ "--" + BOUNDARY + " \t \r\n"
+				+ "Content-Disposition: form-data; name=\"title\"\r\n\r\n"
+				+ "Beach\r\n"
+				+ "--" + BOUNDARY + "--\r\n"
+				+ "This is the epilogue.";
+		StreamingMultipartReader reader = new StreamingMultipartReader(trickle(body, 3), BOUNDARY);
+
+		assertThat(reader.next().readString(100)).isEqualTo("Beach");
+		assertThat(reader.next()).isNull();
+	}
+
+	@Test
+	void skipsPartsThatWereNotRead() throws IOException {
+		byte[] large = new byte[100_000];
+		String body = "--" + BOUNDARY + "\r\n"
+				+ "Content-Disposition: form-data; name=\"file\"; filename=\"big.png\"\r\n\r\n"
+				+ new String(large, StandardCharsets.ISO_8859_1) + "\r\n"
+				+ "--" + BOUNDARY + "\r\n"
+				+ "Content-Disposition: form-data; name=\"description\"\r\n\r\n"
+				+ "after\r\n"
+				+ "--" + BOUNDARY + "--\r\n";
+		StreamingMultipartReader reader = new StreamingMultipartReader(trickle(body, 4096), BOUNDARY);
+
+		StreamingMultipartReader.Part skipped = reader.next();
+		assertThat(skipped.getInputStream().read(new byte[10])).isEqualTo(10);
+		StreamingMultipartReader.Part description = reader.next();
+
+		assertThat(description.getName()).isEqualTo("description");
+		assertThat(description.readString(100)).isEqualTo("after");
+		// The skipped part's stream is no longer valid
+		assertThat(skipped.getInputStream().read()).isEqualTo(-1);
+	}
+
+	@Test
+	void failsWhenTheClosingBoundaryIsMissing() throws IOException {
+		String body = "--" + BOUNDARY + "\r\n"
+				+ "Content-Disposition: form-data; name=\"file\"; filename=\"a.jpg\"\r\n\r\n"
+				+ "partial content";
+		StreamingMultipartReader reader = new StreamingMultipartReader(trickle(body, 5), BOUNDARY);
+		StreamingMultipartReader.Part file = reader.next();
+
+		assertThatThrownBy(() -> file.getInputStream().readAllBytes())
+				.isInstanceOf(IOException.class)
+				.hasMessageContaining("closing boundary missing");
+	}
+
+	@Test
+	void failsWhenTheBodyEndsInsideHeadersOrAfterABoundary() throws IOException {
+		StreamingMultipartReader inHeaders = new StreamingMultipartReader(
+				trickle("--" + BOUNDARY + "\r\nContent-Disposition: form-data; na", 8), BOUNDARY);
+		assertThatThrownBy(inHeaders::next).isInstanceOf(IOException.class).hasMessageContaining("part headers");
+
+		StreamingMultipartReader afterBoundary = new StreamingMultipartReader(trickle("--" + BOUNDARY, 8), BOUNDARY);
+		assertThatThrownBy(afterBoundary::next).isInstanceOf(IOException.class).hasMessageContaining("after boundary");
+	}
+
+	@Test
+	void rejectsOversizedHeaders() {
+		String body = "--" + BOUNDARY + "\r\n"
+				+ "Content-Disposition: form-data; name=\"file\"\r\n"
+				+ "X-Padding: " + "x".repeat(9_000) + "\r\n\r\n"
+				+ "content\r\n"
+				+ "--" + BOUNDARY + "--\r\n";
+		StreamingMultipartReader reader = new StreamingMultipartReader(trickle(body, 1024), BOUNDARY);
+
+		assertThatThrownBy(reader::next).isInstanceOf(IOException.class).hasMessageContaining("exceed");
+	}
+
+	@Test
+	void rejectsOversizedFormFields() throws IOException {
+		String body = "--" + BOUNDARY + "\r\n"
+				+ "Content-Disposition: form-data; name=\"title\"\r\n\r\n"
+				+ "0123456789\r\n"
+				+ "--" + BOUNDARY + "--\r\n";
+		StreamingMultipartReader.Part title = new StreamingMultipartReader(trickle(body, 16), BOUNDARY).next();
+
+		assertThatThrownBy(() -> title.readString(5)).isInstanceOf(IOException.class).hasMessageContaining("title");
+	}
+
+	@Test
+	void stripsQuotesAndClientPathsFromFilenames() throws IOException {
+		String body = "--" + BOUNDARY + "\r\n"
+				+ "content-disposition: form-data; name=\"a\"; filename=\"C:\\Users\\me\\My Photo.jpg\"\r\n\r\n"
+				+ "1\r\n"
+				+ "--" + BOUNDARY + "\r\n"
+				+ "Content-Disposition: form-data; name=b; FILENAME=/home/me/beach.png\r\n\r\n"
+				+ "2\r\n"
+				+ "--" + BOUNDARY + "\r\n"
+				+ "Content-Disposition: form-data; name=\"c\"; filename=\"\"\r\n\r\n"
+				+ "3\r\n"
+				+ "--" + BOUNDARY + "--\r\n";
+		StreamingMultipartReader reader = new StreamingMultipartReader(trickle(body, 32), BOUNDARY);
+
+		StreamingMultipartReader.Part a = reader.next();
+		assertThat(a.getName()).isEqualTo("a");
+		assertThat(a.getFilename()).isEqualTo("My Photo.jpg");
+		StreamingMultipartReader.Part b = reader.next();
+		assertThat(b.getName()).isEqualTo("b");
+		assertThat(b.getFilename()).isEqualTo("beach.png");
+		StreamingMultipartReader.Part c = reader.next();
+		assertThat(c.getFilename()).isEmpty();
+		assertThat(c.isFile()).isTrue();
+	}
+
+	@Test
+	void extractsTheBoundaryFromTheContentType() {
+		assertThat(StreamingMultipartReader.boundaryOf("multipart/form-data; boundary=" + BOUNDARY)).isEqualTo(BOUNDARY);
+		assertThat(StreamingMultipartReader.boundaryOf("Multipart/Form-Data; charset=UTF-8; BOUNDARY=\"a b\"")).isEqualTo("a b");
+		assertThat(StreamingMultipartReader.boundaryOf("multipart/form-data")).isNull();
+		assertThat(StreamingMultipartReader.boundaryOf("multipart/form-data; boundary=")).isNull();
+		assertThat(StreamingMultipartReader.boundaryOf("application/json")).isNull();
+		assertThat(StreamingMultipartReader.boundaryOf(null)).isNull();
+	}
+
+	/**
+	 * A body that hands out at most {@code chunk} bytes per read, like a slow client.
+	 */
+	private static InputStream trickle(String body, int chunk) {
+		return new ByteArrayInputStream(body.getBytes(StandardCharsets.ISO_8859_1)) {
+			@Override
+			public int read(byte[] b, int off, int len) {
+				return super.read(b, off, Math.min(len, chunk));
+			}
+		};
+	}
+}
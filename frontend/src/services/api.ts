@@ -13,6 +13,18 @@ export interface Photo {
   size?: number
   createdAt?: string
   galleryId?: number
+  contentVersion?: number
+  // Read from the EXIF/XMP headers at upload; absent when the file does not carry them
+  width?: number
+  height?: number
+  orientation?: number
+  takenAt?: string
+  cameraModel?: string
+  // BlurHash placeholder to paint until the thumbnail loads; see utils/blurhash.ts
+  blurHash?: string
+  // Signed, cacheable image URLs (server-relative); see resolveImageUrl
+  imageUrl?: string
+  thumbnailUrl?: string
   // data field removed - will be fetched separately when needed
 }
 
@@ -23,6 +35,29 @@ export interface PhotoMetadata {
   originalFilename?: string
   contentType?: string
   size?: number
+  imageUrl?: string
+  thumbnailUrl?: string
+}
+
+// Deep Zoom tile pyramid of a large photo; tiles are 256px JPEGs without overlap, and
+// level maxLevel is full size, each level below half the one above
+export interface TilePyramid {
+  width: number
+  height: number
+  tileSize: number
+  overlap: number
+  format: string
+  maxLevel: number
+  contentVersion: number
+  // false while the backend is still building the tiles
+  ready: boolean
+}
+
+// Turn a signed /img/... URL from the API into an absolute URL for <img src>.
+// Signed URLs need no Authorization header, so the browser and nginx can cache them.
+export const resolveImageUrl = (path?: string | null): string | null => {
+  if (!path) return null
+  return new URL(path, new URL(API_BASE_URL, window.location.href)).href
 }
 
 export interface PaginatedResponse<T> {
@@ -36,6 +71,72 @@ export interface PaginatedResponse<T> {
   numberOfElements: number
 }
 
+export interface UploadJobItem {
+  index: number
+  originalFilename?: string
+  size?: number
+  status: 'PENDING' | 'COMPLETED' | 'FAILED'
+  photoId?: number
+  error?: string
+}
+
+export interface UploadJob {
+  jobId: string
+  status: 'PENDING' | 'RUNNING' | 'COMPLETED' | 'COMPLETED_WITH_ERRORS'
+  galleryId?: number
+  totalFiles: number
+  processedFiles: number
+  failedFiles: number
+  createdAt?: string
+  completedAt?: string
+  items: UploadJobItem[]
+}
+
+// Answer of the upload preflight for one file; existingPhotoId is set when the user
+// already has a photo with the same content
+export interface UploadPreflightResult {
+  sha256: string
+  size: number
+  existingPhotoId?: number | null
+}
+
+export interface ExistingUpload {
+  sha256: string
+  title?: string
+  description?: string
+  originalFilename?: string
+}
+
+export interface UploadSession {
+  sessionId: string
+  status: 'ACTIVE' | 'COMPLETED'
+  offset: number
+  length: number
+  maxChunkSize: number
+  photoId?: number
+  expiresAt?: string
+}
+
+export interface ResumableUploadOptions {
+  title?: string
+  description?: string
+  galleryId?: number
+  onProgress?: (uploaded: number, total: number) => void
+  maxRetries?: number
+}
+
+export interface GalleryImportProgress {
+  entry: number
+  name?: string
+  status?: 'IMPORTED' | 'SKIPPED' | 'FAILED'
+  size?: number
+  reason?: string
+  // Present only on the final summary line
+  imported?: number
+  skipped?: number
+  failed?: number
+}
+
 export interface UserProfile {
   id: number
   username: string
@@ -46,6 +147,50 @@ export interface UserProfile {
   profilePictureSize?: number
 }
 
+// Most IDs the server accepts per thumbnail batch (app.thumbnails.max-batch)
+const THUMBNAIL_BATCH_SIZE = 100
+// Retries of an upload that timed out or hit a gateway error, sent with the same Idempotency-Key
+const UPLOAD_RETRIES = 2
+
+interface ThumbnailWaiter {
+  resolve: (blob: Blob) => void
+  reject: (error: unknown) => void
+}
+
+// Split a multipart/mixed thumbnail response into blobs keyed by the X-Photo-Id part header
+function parseThumbnailParts(buffer: ArrayBuffer, contentType: string): Map<number, Blob> {
+  const parts = new Map<number, Blob>()
+  const boundary = /boundary=("?)([^";]+)\1/i.exec(contentType)?.[2]
+  if (!boundary) return parts
+
+  const bytes = new Uint8Array(buffer)
+  const decoder = new TextDecoder('latin1')
+  const delimiter = `--${boundary}`
+  let pos = 0
+  for (;;) {
+    const line = decoder.decode(bytes.subarray(pos, pos + delimiter.length + 2))
+    if (!line.startsWith(delimiter) || line.endsWith('--')) break
+    pos += delimiter.length + 2
+
+    // Headers end at the first empty line
+    let end = pos
+    while (end + 3 < bytes.length && !(bytes[end] === 13 && bytes[end + 1] === 10 && bytes[end + 2] === 13 && bytes[end + 3] === 10)) {
+      end++
+    }
+    const headers = new Map<string, string>()
+    for (const header of decoder.decode(bytes.subarray(pos, end)).split('\r\n')) {
+      const colon = header.indexOf(':')
+      if (colon > 0) headers.set(header.slice(0, colon).trim().toLowerCase(), header.slice(colon + 1).trim())
+    }
+    const length = Number(headers.get('content-length'))
+    const id = Number(headers.get('x-photo-id'))
+    const start = end + 4
+    parts.set(id, new Blob([bytes.subarray(start, start + length)], { type: headers.get('content-type') }))
+    pos = start + length + 2
+  }
+  return parts
+}
+
 class ApiService {
   private api = axios.create({
     baseURL: API_BASE_URL,
@@ -132,6 +277,107 @@ class ApiService {
     return response.data
   }
 
+  // Tile pyramid of a large photo, or null if the photo is too small to be tiled
+  async getTilePyramid(id: number): Promise<TilePyramid | null> {
+    const response = await this.api.get(`/photos/${id}/tiles`, {
+      headers: this.getAuthHeaders(),
+      validateStatus: (status) => status === 200 || status === 202 || status === 404
+    })
+    return response.status === 404 ? null : response.data
+  }
+
+  // One tile; the version in the URL lets the browser cache it for good
+  async getPhotoTile(id: number, level: number, x: number, y: number, version: number): Promise<Blob> {
+    const response = await this.api.get(`/photos/${id}/tiles/${level}/${x}_${y}.jpg`, {
+      params: { v: version },
+      responseType: 'blob',
+      headers: this.getAuthHeaders()
+    })
+    return response.data
+  }
+
+  // Thumbnails for many photos in one request
+  async getPhotoThumbnails(ids: number[]): Promise<Map<number, Blob>> {
+    const response = await this.api.get('/photos/thumbnails', {
+      params: { ids: ids.join(',') },
+      responseType: 'arraybuffer',
+      headers: this.getAuthHeaders()
+    })
+    return parseThumbnailParts(response.data, response.headers['content-type'] ?? '')
+  }
+
+  // Thumbnail for a single card; requests made in the same tick are sent as one batch.
+  // Falls back to the full image when the server has no thumbnail (e.g. formats it cannot decode).
+  getPhotoThumbnail(id: number): Promise<Blob> {
+    return new Promise((resolve, reject) => {
+      const waiters = this.thumbnailQueue.get(id) ?? []
+      waiters.push({ resolve, reject })
+      this.thumbnailQueue.set(id, waiters)
+      if (!this.thumbnailTimer) {
+        this.thumbnailTimer = setTimeout(() => this.flushThumbnailQueue(), 10)
+      }
+    })
+  }
+
+  private thumbnailQueue = new Map<number, ThumbnailWaiter[]>()
+  private thumbnailTimer: ReturnType<typeof setTimeout> | null = null
+
+  private async flushThumbnailQueue() {
+    const queue = this.thumbnailQueue
+    this.thumbnailQueue = new Map()
+    this.thumbnailTimer = null
+
+    const ids = [...queue.keys()]
+    for (let i = 0; i < ids.length; i += THUMBNAIL_BATCH_SIZE) {
+      const batch = ids.slice(i, i + THUMBNAIL_BATCH_SIZE)
+      let thumbnails: Map<number, Blob>
+      try {
+        thumbnails = await this.getPhotoThumbnails(batch)
+      } catch (error) {
+        batch.forEach((id) => queue.get(id)?.forEach((waiter) => waiter.reject(error)))
+        continue
+      }
+      for (const id of batch) {
+        const waiters = queue.get(id) ?? []
+        const blob = thumbnails.get(id)
+        const result = blob ? Promise.resolve(blob) : this.getPhotoImage(id)
+        result.then(
+          (value) => waiters.forEach((waiter) => waiter.resolve(value)),
+          (error) => waiters.forEach((waiter) => waiter.reject(error))
+        )
+      }
+    }
+  }
+
+  // Send an upload with an Idempotency-Key, retrying timeouts and gateway errors with the
+  // same key so the server replays the first result instead of storing the photos again
+  private async sendUpload(method: 'post' | 'put', url: string, formData: FormData) {
+    const idempotencyKey = crypto.randomUUID()
+    for (let attempt = 0; ; attempt++) {
+      try {
+        return await this.uploadApi.request({
+          method,
+          url,
+          data: formData,
+          headers: {
+            'Content-Type': 'multipart/form-data',
+            'Idempotency-Key': idempotencyKey,
+            ...this.getAuthHeaders()
+          },
+          transformRequest: (data) => data // Prevent axios from transforming FormData
+        })
+      } catch (error: any) {
+        const status = error.response?.status
+        // 409: the first attempt is still running on the server
+        const retryable = !error.response || status === 409 || status === 502 || status === 503 || status === 504
+        if (!retryable || attempt >= UPLOAD_RETRIES) {
+          throw error
+        }
+        await new Promise((resolve) => setTimeout(resolve, 1000 * 2 ** attempt))
+      }
+    }
+  }
+
   // Create new photo
   async createPhoto(
     title: string,
@@ -152,13 +398,7 @@ class ApiService {
 
     // Use axios with proper FormData handling and URL parameters
     const url = params.toString() ? `/photos?${params.toString()}` : '/photos'
-    const response = await this.uploadApi.post(url, formData, {
-      headers: {
-        'Content-Type': 'multipart/form-data',
-        ...this.getAuthHeaders()
-      },
-      transformRequest: (data) => data // Prevent axios from transforming FormData
-    })
+    const response = await this.sendUpload('post', url, formData)
     return response.data
   }
 
@@ -222,13 +462,173 @@ class ApiService {
     // Use axios with proper FormData handling and URL parameters
     const url = params.toString() ? `/photos/bulk?${params.toString()}` : '/photos/bulk'
     
-    return this.uploadApi.post(url, formData, {
+    const response = await this.sendUpload('post', url, formData)
+    return response.data
+  }
+
+  // Ask which files, by SHA-256, the user has already uploaded
+  async preflightUploads(files: { sha256: string; size: number }[]): Promise<UploadPreflightResult[]> {
+    const response = await this.api.post('/photos/preflight', { files }, {
+      headers: this.getAuthHeaders()
+    })
+    return response.data
+  }
+
+  // Create photos from content the user already has; no image bytes are sent
+  async createPhotosFromExisting(files: ExistingUpload[], galleryId?: number): Promise<Photo[]> {
+    const response = await this.api.post('/photos/from-existing', { files, galleryId }, {
+      headers: {
+        'Idempotency-Key': crypto.randomUUID(),
+        ...this.getAuthHeaders()
+      }
+    })
+    return response.data
+  }
+
+  // Start a background bulk upload; the server answers 202 once files are staged
+  async startUploadJob(files: File[], titles?: string[], galleryId?: number): Promise<UploadJob> {
+    if (!files || files.length === 0) {
+      throw new Error('No files provided for bulk upload')
+    }
+
+    const formData = new FormData()
+    files.forEach((file) => formData.append('files', file, file.name))
+
+    const params = new URLSearchParams()
+    if (galleryId !== undefined) {
+      params.append('galleryId', galleryId.toString())
+    }
+    titles?.forEach((title) => params.append('titles', title?.trim() ?? ''))
+
+    const url = params.toString() ? `/uploads?${params.toString()}` : '/uploads'
+    const response = await this.uploadApi.post(url, formData, {
       headers: {
         'Content-Type': 'multipart/form-data',
         ...this.getAuthHeaders()
       },
       transformRequest: (data) => data // Prevent axios from transforming FormData
     })
+    return response.data
+  }
+
+  // Poll per-file progress of a background upload job
+  async getUploadJob(jobId: string): Promise<UploadJob> {
+    const response = await this.api.get(`/uploads/${jobId}`, {
+      headers: this.getAuthHeaders()
+    })
+    return response.data
+  }
+
+  // Upload a single file in chunks; an interrupted upload resumes from the server's offset,
+  // including after a page reload (the session id is kept in localStorage)
+  async resumableUpload(file: File, options: ResumableUploadOptions = {}): Promise<Photo> {
+    const storageKey = `upload-session:${file.name}:${file.size}:${file.lastModified}`
+    const maxRetries = options.maxRetries ?? 5
+    let session: UploadSession | null = null
+
+    const savedId = localStorage.getItem(storageKey)
+    if (savedId) {
+      try {
+        const response = await this.api.get(`/uploads/sessions/${savedId}`, {
+          headers: this.getAuthHeaders()
+        })
+        session = response.data
+      } catch {
+        localStorage.removeItem(storageKey)
+      }
+    }
+
+    if (!session) {
+      const response = await this.api.post('/uploads/sessions', {
+        filename: file.name,
+        contentType: file.type,
+        length: file.size,
+        title: options.title?.trim() || file.name,
+        description: options.description,
+        galleryId: options.galleryId
+      }, {
+        headers: this.getAuthHeaders()
+      })
+      session = response.data as UploadSession
+      localStorage.setItem(storageKey, session.sessionId)
+    }
+
+    const sessionUrl = `/uploads/sessions/${session.sessionId}`
+    let offset = session.offset
+    let failures = 0
+    options.onProgress?.(offset, file.size)
+
+    while (session.status === 'ACTIVE' && offset < file.size) {
+      const chunk = file.slice(offset, offset + session.maxChunkSize)
+      try {
+        const response = await this.uploadApi.patch(sessionUrl, chunk, {
+          headers: {
+            'Content-Type': 'application/offset+octet-stream',
+            'Upload-Offset': offset.toString(),
+            ...this.getAuthHeaders()
+          }
+        })
+        offset = Number(response.headers['upload-offset'])
+        failures = 0
+        options.onProgress?.(offset, file.size)
+      } catch (error: any) {
+        if (++failures > maxRetries || (error.response && error.response.status < 500 && error.response.status !== 409)) {
+          throw error
+        }
+        // Ask the server how much it kept before retrying
+        await new Promise((resolve) => setTimeout(resolve, Math.min(1000 * 2 ** (failures - 1), 10000)))
+        const head = await this.api.head(sessionUrl, { headers: this.getAuthHeaders() })
+        offset = Number(head.headers['upload-offset'])
+      }
+    }
+
+    const response = await this.api.post(`${sessionUrl}/finalize`, null, {
+      headers: this.getAuthHeaders()
+    })
+    localStorage.removeItem(storageKey)
+    return response.data
+  }
+
+  // Import a ZIP archive into a gallery; the server reports each entry as NDJSON
+  async importGalleryZip(
+    galleryId: number,
+    file: File,
+    onProgress?: (progress: GalleryImportProgress) => void
+  ): Promise<GalleryImportProgress> {
+    const response = await fetch(`${API_BASE_URL}/galleries/${galleryId}/import`, {
+      method: 'POST',
+      headers: {
+        'Content-Type': 'application/zip',
+        ...this.getAuthHeaders()
+      },
+      body: file
+    })
+    if (!response.ok || !response.body) {
+      throw new Error(`Import failed with status ${response.status}`)
+    }
+
+    const reader = response.body.pipeThrough(new TextDecoderStream()).getReader()
+    let pending = ''
+    let summary: GalleryImportProgress | undefined
+    for (;;) {
+      const { value, done } = await reader.read()
+      if (done) break
+      pending += value
+      const lines = pending.split('\n')
+      pending = lines.pop() ?? ''
+      for (const line of lines.filter((l) => l.trim())) {
+        const progress: GalleryImportProgress = JSON.parse(line)
+        if (progress.imported !== undefined) {
+          summary = progress
+        } else {
+          onProgress?.(progress)
+        }
+      }
+    }
+    if (!summary) {
+      throw new Error('Import ended without a summary')
+    }
+    return summary
   }
 
   // Update photo
@@ -254,13 +654,7 @@ class ApiService {
 
     // Use axios with proper FormData handling and URL parameters
     const url = params.toString() ? `/photos/${id}?${params.toString()}` : `/photos/${id}`
-    const response = await this.uploadApi.put(url, formData, {
-      headers: {
-        'Content-Type': 'multipart/form-data',
-        ...this.getAuthHeaders()
-      },
-      transformRequest: (data) => data // Prevent axios from transforming FormData
-    })
+    const response = await this.sendUpload('put', url, formData)
     return response.data
   }
 
@@ -279,6 +673,14 @@ class ApiService {
     })
   }
 
+  // Undo deletes; the server keeps deleted photos restorable for a limited window
+  async restorePhotos(ids: number[]): Promise<Photo[]> {
+    const response = await this.api.post('/photos/restore', ids, {
+      headers: this.getAuthHeaders()
+    })
+    return response.data
+  }
+
   // Authentication methods
   async login(usernameOrEmail: string, password: string): Promise<{ accessToken: string }> {
     const response = await this.api.post('/auth/signin', {
@@ -412,6 +814,15 @@ class ApiService {
     return response.data
   }
 
+  // 2x2 cover mosaic of the gallery's first four photos as one image; revalidated with its ETag
+  async getGalleryCover(galleryId: number): Promise<Blob> {
+    const response = await this.api.get(`/galleries/${galleryId}/cover`, {
+      responseType: 'blob',
+      headers: this.getAuthHeaders()
+    })
+    return response.data
+  }
+
   async getGallery(galleryId: number): Promise<any> {
     const response = await this.api.get(`/galleries/${galleryId}`, {
       headers: this.getAuthHeaders()
@@ -2,12 +2,15 @@ import { defineStore } from 'pinia'
 import { ref, computed } from 'vue'
 import { apiService, type Photo, type PaginatedResponse } from '@/services/api'
 import { useAuthStore } from './authStore'
+import { hashFiles } from '@/utils/contentHash'
 
 export const usePhotoStore = defineStore('photo', () => {
   // State
   const photos = ref<Photo[]>([])
   const loading = ref(false)
   const error = ref<string | null>(null)
+  // IDs of the last deleted photos, while an undo can be offered
+  const recentlyDeleted = ref<number[]>([])
   
   // Pagination state
   const currentPage = ref(0)
@@ -138,6 +141,46 @@ export const usePhotoStore = defineStore('photo', () => {
     }
   }
 
+  // Upload only the files the user does not already have; the others are created from
+  // the stored content, matched by SHA-256. If hashing or the preflight fails, every
+  // file is uploaded as before.
+  const uploadMissing = async (files: File[], titles?: string[], descriptions?: string[], galleryId?: number): Promise<Photo[]> => {
+    let digests: string[] = []
+    let existing: (number | null | undefined)[] = []
+    try {
+      digests = await hashFiles(files)
+      const results = await apiService.preflightUploads(files.map((file, i) => ({ sha256: digests[i], size: file.size })))
+      existing = results.map(result => result.existingPhotoId)
+    } catch (err) {
+      console.warn('Upload preflight failed, uploading all files:', err)
+    }
+
+    const indexes = files.map((_, i) => i)
+    const known = indexes.filter(i => existing[i] != null)
+    if (known.length === 0) {
+      return apiService.bulkCreatePhotos(files, titles, descriptions, galleryId)
+    }
+    const missing = indexes.filter(i => existing[i] == null)
+    const pick = (values: string[] | undefined, picked: number[]) => values && picked.map(i => values[i] ?? '')
+
+    const [copied, uploaded] = await Promise.all([
+      apiService.createPhotosFromExisting(known.map(i => ({
+        sha256: digests[i],
+        title: titles?.[i],
+        description: descriptions?.[i],
+        originalFilename: files[i].name
+      })), galleryId),
+      missing.length > 0
+        ? apiService.bulkCreatePhotos(missing.map(i => files[i]), pick(titles, missing), pick(descriptions, missing), galleryId)
+        : Promise.resolve([] as Photo[])
+    ])
+    // Back into selection order
+    const created: Photo[] = []
+    known.forEach((index, i) => { created[index] = copied[i] })
+    missing.forEach((index, i) => { created[index] = uploaded[i] })
+    return created.filter(photo => photo !== undefined)
+  }
+
   const bulkAddPhotos = async (files: File[], titles?: string[], descriptions?: string[], galleryId?: number) => {
     // Client-side validation for all files
     for (const file of files) {
@@ -154,7 +197,7 @@ export const usePhotoStore = defineStore('photo', () => {
     error.value = null
     
     try {
-      const newPhotos = await apiService.bulkCreatePhotos(files, titles, descriptions, galleryId)
+      const newPhotos = await uploadMissing(files, titles, descriptions, galleryId)
       // Refresh the current page to show the new photos
       await fetchPhotos(currentPage.value, pageSize.value, currentGalleryId.value)
       return newPhotos
@@ -203,6 +246,7 @@ export const usePhotoStore = defineStore('photo', () => {
     
     try {
       await apiService.deletePhoto(id)
+      recentlyDeleted.value = [id]
       // Remove the photo from the current list
       photos.value = photos.value.filter(p => p.id !== id)
       
@@ -224,6 +268,7 @@ export const usePhotoStore = defineStore('photo', () => {
     
     try {
       await apiService.bulkDeletePhotos(ids)
+      recentlyDeleted.value = [...ids]
       // Remove the deleted photos from the current list
       photos.value = photos.value.filter(p => !ids.includes(p.id))
       
@@ -239,6 +284,28 @@ export const usePhotoStore = defineStore('photo', () => {
     }
   }
 
+  // Undo the last delete while the server still allows it
+  const restoreDeleted = async () => {
+    if (recentlyDeleted.value.length === 0) return
+    loading.value = true
+    error.value = null
+
+    try {
+      await apiService.restorePhotos(recentlyDeleted.value)
+      recentlyDeleted.value = []
+      await fetchPhotos(currentPage.value, pageSize.value, currentGalleryId.value)
+    } catch (err) {
+      error.value = err instanceof Error ? err.message : 'Failed to restore photos'
+      throw err
+    } finally {
+      loading.value = false
+    }
+  }
+
+  const dismissDeleted = () => {
+    recentlyDeleted.value = []
+  }
+
   const clearError = () => {
     error.value = null
   }
@@ -247,6 +314,7 @@ export const usePhotoStore = defineStore('photo', () => {
     photos.value = []
     loading.value = false
     error.value = null
+    recentlyDeleted.value = []
     currentPage.value = 0
     pageSize.value = 5
     totalElements.value = 0
@@ -258,6 +326,7 @@ export const usePhotoStore = defineStore('photo', () => {
     photos,
     loading,
     error,
+    recentlyDeleted,
     currentPage,
     pageSize,
     totalElements,
@@ -282,6 +351,8 @@ export const usePhotoStore = defineStore('photo', () => {
     updatePhoto,
     deletePhoto,
     bulkDeletePhotos,
+    restoreDeleted,
+    dismissDeleted,
     clearError,
     clearStore
   }
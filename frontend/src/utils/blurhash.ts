@@ -0,0 +1,112 @@
+// Decoder for the BlurHash placeholders the backend returns with each photo
+// (see https://blurha.sh). Decoded placeholders are small data URLs, cached by hash.
+
+const BASE83 = '0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz#$%*+,-.:;=?@[]^_{|}~'
+
+const cache = new Map<string, string | null>()
+
+const decode83 = (value: string): number => {
+  let result = 0
+  for (const char of value) {
+    const digit = BASE83.indexOf(char)
+    if (digit < 0) throw new Error(`Invalid BlurHash character '${char}'`)
+    result = result * 83 + digit
+  }
+  return result
+}
+
+const srgbToLinear = (value: number): number => {
+  const v = value / 255
+  return v <= 0.04045 ? v / 12.92 : Math.pow((v + 0.055) / 1.055, 2.4)
+}
+
+const linearToSrgb = (value: number): number => {
+  const v = Math.max(0, Math.min(1, value))
+  return v <= 0.0031308
+    ? Math.trunc(v * 12.92 * 255 + 0.5)
+    : Math.trunc((1.055 * Math.pow(v, 1 / 2.4) - 0.055) * 255 + 0.5)
+}
+
+const signedSquare = (value: number): number => Math.sign(value) * value * value
+
+/**
+ * Decode a BlurHash into RGBA pixels
+ * @param hash - The BlurHash string
+ * @param width - Output width in pixels
+ * @param height - Output height in pixels
+ * @returns width * height * 4 bytes of RGBA
+ */
+export function decodeBlurHash(hash: string, width: number, height: number): Uint8ClampedArray {
+  const sizeFlag = decode83(hash[0])
+  const componentsX = (sizeFlag % 9) + 1
+  const componentsY = Math.floor(sizeFlag / 9) + 1
+  if (hash.length !== 4 + 2 * componentsX * componentsY) {
+    throw new Error(`Invalid BlurHash length ${hash.length}`)
+  }
+  const maxValue = (decode83(hash[1]) + 1) / 166
+
+  const colors: number[][] = []
+  const dc = decode83(hash.substring(2, 6))
+  colors.push([srgbToLinear(dc >> 16), srgbToLinear((dc >> 8) & 255), srgbToLinear(dc & 255)])
+  for (let k = 1; k < componentsX * componentsY; k++) {
+    const ac = decode83(hash.substring(4 + k * 2, 6 + k * 2))
+    colors.push([
+      signedSquare((Math.floor(ac / (19 * 19)) - 9) / 9) * maxValue,
+      signedSquare((Math.floor(ac / 19) % 19 - 9) / 9) * maxValue,
+      signedSquare((ac % 19 - 9) / 9) * maxValue
+    ])
+  }
+
+  const pixels = new Uint8ClampedArray(width * height * 4)
+  for (let y = 0; y < height; y++) {
+    for (let x = 0; x < width; x++) {
+      let r = 0
+      let g = 0
+      let b = 0
+      for (let j = 0; j < componentsY; j++) {
+        const cosY = Math.cos((Math.PI * y * j) / height)
+        for (let i = 0; i < componentsX; i++) {
+          const basis = Math.cos((Math.PI * x * i) / width) * cosY
+          const color = colors[i + j * componentsX]
+          r += color[0] * basis
+          g += color[1] * basis
+          b += color[2] * basis
+        }
+      }
+      const offset = 4 * (x + y * width)
+      pixels[offset] = linearToSrgb(r)
+      pixels[offset + 1] = linearToSrgb(g)
+      pixels[offset + 2] = linearToSrgb(b)
+      pixels[offset + 3] = 255
+    }
+  }
+  return pixels
+}
+
+/**
+ * Render a BlurHash as a small PNG data URL, for use as a CSS background
+ * @param hash - The BlurHash string, if the photo has one
+ * @returns data URL, or null if there is no usable hash
+ */
+export function blurHashToDataUrl(hash: string | null | undefined): string | null {
+  if (!hash) return null
+  if (cache.has(hash)) return cache.get(hash) ?? null
+
+  let url: string | null = null
+  try {
+    // The browser scales the image up smoothly, so a few pixels per component are enough
+    const size = 32
+    const canvas = document.createElement('canvas')
+    canvas.width = size
+    canvas.height = size
+    const context = canvas.getContext('2d')
+    if (context) {
+      context.putImageData(new ImageData(decodeBlurHash(hash, size, size), size, size), 0, 0)
+      url = canvas.toDataURL()
+    }
+  } catch (error) {
+    console.warn('Could not decode BlurHash:', error)
+  }
+  cache.set(hash, url)
+  return url
+}
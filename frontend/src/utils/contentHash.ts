@@ -0,0 +1,44 @@
+// SHA-256 of files to upload, computed in workers/hashWorker.ts. The backend keeps the
+// same digest of every upload, so files the user already has need not be sent again.
+
+let worker: Worker | null = null
+let nextId = 0
+const pending = new Map<number, { resolve: (sha256: string) => void; reject: (error: Error) => void }>()
+
+const getWorker = (): Worker => {
+  if (!worker) {
+    worker = new Worker(new URL('../workers/hashWorker.ts', import.meta.url), { type: 'module' })
+    worker.onmessage = (event: MessageEvent<{ id: number; sha256?: string; error?: string }>) => {
+      const { id, sha256, error } = event.data
+      const request = pending.get(id)
+      if (!request) return
+      pending.delete(id)
+      if (sha256) {
+        request.resolve(sha256)
+      } else {
+        request.reject(new Error(error || 'Hashing failed'))
+      }
+    }
+    worker.onerror = (event) => {
+      pending.forEach((request) => request.reject(new Error(event.message || 'Hash worker failed')))
+      pending.clear()
+      worker?.terminate()
+      worker = null
+    }
+  }
+  return worker
+}
+
+// Hex SHA-256 of each file, in order
+export const hashFiles = (files: File[]): Promise<string[]> => {
+  return Promise.all(
+    files.map(
+      (file) =>
+        new Promise<string>((resolve, reject) => {
+          const id = nextId++
+          pending.set(id, { resolve, reject })
+          getWorker().postMessage({ id, file })
+        })
+    )
+  )
+}
@@ -0,0 +1,13 @@
+// Hashes upload candidates off the main thread, so a large selection does not freeze the
+// modal. Each message is { id, file }; the reply is { id, sha256 } or { id, error }.
+
+self.onmessage = async (event: MessageEvent<{ id: number; file: File }>) => {
+  const { id, file } = event.data
+  try {
+    const digest = await crypto.subtle.digest('SHA-256', await file.arrayBuffer())
+    const sha256 = Array.from(new Uint8Array(digest), (byte) => byte.toString(16).padStart(2, '0')).join('')
+    self.postMessage({ id, sha256 })
+  } catch (error) {
+    self.postMessage({ id, error: error instanceof Error ? error.message : String(error) })
+  }
+}